@@ -0,0 +1,37 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.os.Build;
+import android.os.Debug;
+
+/**
+ * Reads allocations of benchmarked code from ART runtime statistics.
+ */
+class AllocationStats {
+
+    private static final String ALLOCATED_BYTES_STAT = "art.gc.bytes-allocated";
+
+    private AllocationStats() {
+    }
+
+    /**
+     * Returns number of bytes allocated by the process so far or -1 when not available, e.g. below API 23.
+     */
+    static long getAllocatedBytes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        String value = Debug.getRuntimeStat(ALLOCATED_BYTES_STAT);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
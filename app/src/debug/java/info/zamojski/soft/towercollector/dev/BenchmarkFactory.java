@@ -0,0 +1,30 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import java.util.Arrays;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.R;
+
+public class BenchmarkFactory {
+    public List<Benchmark> createBenchmarks() {
+        return Arrays.asList(
+                new Benchmark("parser_benchmark", R.string.preferences_parser_benchmark_title,
+                        R.string.preferences_parser_benchmark_summary, ParserBenchmark::runBenchmark),
+                new Benchmark("csv_formatter_benchmark", R.string.preferences_csv_formatter_benchmark_title,
+                        R.string.preferences_csv_formatter_benchmark_summary, CsvFormatterBenchmark::runBenchmark),
+                new Benchmark("json_formatter_benchmark", R.string.preferences_json_formatter_benchmark_title,
+                        R.string.preferences_json_formatter_benchmark_summary, JsonFormatterBenchmark::runBenchmark),
+                new Benchmark("export_benchmark", R.string.preferences_export_benchmark_title,
+                        R.string.preferences_export_benchmark_summary, ExportBenchmark::runBenchmark),
+                new Benchmark("compression_benchmark", R.string.preferences_compression_benchmark_title,
+                        R.string.preferences_compression_benchmark_summary, CompressionBenchmark::runBenchmark),
+                new Benchmark("columnar_benchmark", R.string.preferences_columnar_benchmark_title,
+                        R.string.preferences_columnar_benchmark_summary, ColumnarBenchmark::runBenchmark),
+                new Benchmark("upload_benchmark", R.string.preferences_upload_benchmark_title,
+                        R.string.preferences_upload_benchmark_summary, UploadBenchmark::runBenchmark));
+    }
+}
@@ -0,0 +1,193 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.files.formatters.columnar.ColumnarWriter;
+import info.zamojski.soft.towercollector.files.formatters.csv.CsvExportFormatter;
+import info.zamojski.soft.towercollector.files.formatters.csv.ICsvFormatter;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResultType;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import timber.log.Timber;
+
+/**
+ * Compares size and write time of the columnar format with CSV, both plain and compressed with GZIP.
+ */
+public class ColumnarBenchmark {
+
+    private static final int MEASUREMENTS = 100000;
+    private static final int GZIP_LEVEL = 6;
+    private static final int WARM_UP_ITERATIONS = 1;
+    private static final int MEASURED_ITERATIONS = 3;
+    private static final long RANDOM_SEED = 20130417;
+    private static final String REPORT_FILE_NAME = "columnar_benchmark.csv";
+
+    private interface Encoder {
+        void write(List<Measurement> measurements, OutputStream outputStream) throws IOException;
+    }
+
+    public static void runBenchmark(Context context) {
+        new Thread(() -> {
+            Timber.d("runBenchmark(): Starting columnar benchmark");
+            StringBuilder report = new StringBuilder();
+            try {
+                List<Measurement> measurements = createMeasurements();
+                benchmarkFormats(report, measurements);
+                boolean saved = saveReport(report.toString());
+                Timber.d("runBenchmark(): Columnar benchmark finished, report saved = %s", saved);
+                String message;
+                if (!saved)
+                    message = context.getString(R.string.storage_access_denied);
+                else
+                    message = "Columnar benchmark saved to " + REPORT_FILE_NAME;
+                showToast(context, message);
+            } catch (Exception ex) {
+                Timber.e(ex, "runBenchmark(): Columnar benchmark failed");
+                showToast(context, "Columnar benchmark failed: " + ex.getMessage());
+            }
+        }, ColumnarBenchmark.class.getSimpleName()).start();
+    }
+
+    private static void benchmarkFormats(StringBuilder report, List<Measurement> measurements) throws IOException {
+        report.append("format,compressed,bytes,bytes_per_measurement,ratio_to_csv_gzip,write_ms,measurements_per_second\n");
+        Encoder csvEncoder = ColumnarBenchmark::writeCsv;
+        Encoder columnarEncoder = ColumnarBenchmark::writeColumnar;
+        long csvGzipBytes = encode(measurements, csvEncoder, true).length;
+        measure(report, "csv", false, measurements, csvEncoder, csvGzipBytes);
+        measure(report, "csv", true, measurements, csvEncoder, csvGzipBytes);
+        measure(report, "columnar", false, measurements, columnarEncoder, csvGzipBytes);
+        measure(report, "columnar", true, measurements, columnarEncoder, csvGzipBytes);
+    }
+
+    private static void measure(StringBuilder report, String formatName, boolean compressed, List<Measurement> measurements, Encoder encoder, long referenceBytes) throws IOException {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            encode(measurements, encoder, compressed);
+        }
+        byte[] output = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            output = encode(measurements, encoder, compressed);
+        }
+        long duration = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+        long writeMillis = duration / 1000000L;
+        long measurementsPerSecond = measurements.size() * 1000000000L / Math.max(duration, 1);
+        double bytesPerMeasurement = (double) output.length / measurements.size();
+        double ratio = (referenceBytes > 0 ? (double) output.length / referenceBytes : 1);
+        Timber.i("measure(): %s, compressed = %s: %s bytes, %.2f bytes/measurement, ratio to CSV+GZIP %.4f, %s ms, %s measurements/s",
+                formatName, compressed, output.length, bytesPerMeasurement, ratio, writeMillis, measurementsPerSecond);
+        report.append(formatName).append(',')
+                .append(compressed).append(',')
+                .append(output.length).append(',')
+                .append(String.format("%.2f", bytesPerMeasurement)).append(',')
+                .append(String.format("%.4f", ratio)).append(',')
+                .append(writeMillis).append(',')
+                .append(measurementsPerSecond).append('\n');
+    }
+
+    private static byte[] encode(List<Measurement> measurements, Encoder encoder, boolean compressed) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream outputStream = (compressed ? new FileWriter.LeveledGZipOutputStream(output, GZIP_LEVEL) : output)) {
+            encoder.write(measurements, outputStream);
+        }
+        return output.toByteArray();
+    }
+
+    private static void writeCsv(List<Measurement> measurements, OutputStream outputStream) throws IOException {
+        // the same writer as in export
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream));
+        ICsvFormatter formatter = new CsvExportFormatter();
+        writer.write(formatter.formatHeader());
+        for (Measurement m : measurements) {
+            formatter.writeEntry(m, writer);
+        }
+        writer.flush();
+    }
+
+    private static void writeColumnar(List<Measurement> measurements, OutputStream outputStream) throws IOException {
+        ColumnarWriter writer = new ColumnarWriter(outputStream, "benchmark", ColumnarWriter.DEFAULT_MEASUREMENTS_PER_ROW_GROUP);
+        writer.writeHeader();
+        for (Measurement m : measurements) {
+            writer.write(m);
+        }
+        writer.finish();
+    }
+
+    private static List<Measurement> createMeasurements() {
+        Random random = new Random(RANDOM_SEED);
+        List<Measurement> measurements = new ArrayList<>(MEASUREMENTS);
+        long timestamp = System.currentTimeMillis() - MEASUREMENTS * 2000L;
+        double latitude = 52.0693267;
+        double longitude = 19.4781224;
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            // route driven with measurements every few seconds
+            timestamp += 1000 + random.nextInt(4000);
+            latitude += (random.nextDouble() - 0.5) * 0.001;
+            longitude += (random.nextDouble() - 0.5) * 0.001;
+            MeasurementBuilder builder = new MeasurementBuilder()
+                    .setLocation(latitude, longitude, 150 + random.nextInt(50), 3 + random.nextFloat() * 20)
+                    .setMovement(random.nextFloat() * 360, random.nextFloat() * 30)
+                    .setTime(timestamp);
+            int cellId = i / 50 + random.nextInt(3);
+            if (i % 3 == 0) {
+                builder.setGsmCell(260, 6, 5114, 10558 + cellId).setGsmSignal(15, -83, Cell.UNKNOWN_SIGNAL, -83, 50);
+            } else {
+                builder.setLteCell(260, 6, 49101, 26888192 + cellId, 172).setLteSignal(30, -110 + random.nextInt(20), 5, -110, -11, -80, 12, 10, 1850);
+            }
+            Measurement m = builder.build();
+            // neighboring cells without identity
+            int neighboringCount = random.nextInt(4);
+            for (int j = 0; j < neighboringCount; j++) {
+                Cell neighbor = new Cell();
+                neighbor.setLteCellInfo(Cell.UNKNOWN_CID, Cell.UNKNOWN_CID, Cell.UNKNOWN_CID, Cell.UNKNOWN_CID_LONG, 100 + random.nextInt(20));
+                neighbor.setLteSignalInfo(Cell.UNKNOWN_SIGNAL, -120 + random.nextInt(20), Cell.UNKNOWN_SIGNAL, -120, -15, Cell.UNKNOWN_SIGNAL, Cell.UNKNOWN_SIGNAL, Cell.UNKNOWN_SIGNAL, 1850);
+                neighbor.setNeighboring(true);
+                m.addCell(neighbor);
+            }
+            measurements.add(m);
+        }
+        return measurements;
+    }
+
+    private static boolean saveReport(String report) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("saveReport(): Storage access denied");
+            return false;
+        }
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                outputStream.write(report.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        };
+        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, REPORT_FILE_NAME);
+        return result.getResultType() == WriteResultType.Success;
+    }
+
+    private static void showToast(Context context, String message) {
+        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(context, message, Toast.LENGTH_LONG).show());
+    }
+}
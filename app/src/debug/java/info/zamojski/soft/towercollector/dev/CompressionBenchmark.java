@@ -0,0 +1,165 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.files.formatters.csv.CsvExportFormatter;
+import info.zamojski.soft.towercollector.files.formatters.csv.ICsvFormatter;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.ParallelGZipOutputStream;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResultType;
+import info.zamojski.soft.towercollector.model.Cell;
+import timber.log.Timber;
+
+/**
+ * Measures throughput of GZIP compression of exported CSV data using a single stream and parallel blocks
+ * with 1 to N threads for selected compression levels. Size of parallel output is compared with
+ * a single stream at the same level.
+ */
+public class CompressionBenchmark {
+
+    private static final int MEASUREMENTS = 40000;
+    private static final int[] LEVELS = {Deflater.BEST_SPEED, 3, 6, Deflater.BEST_COMPRESSION};
+    private static final int WARM_UP_ITERATIONS = 1;
+    private static final int MEASURED_ITERATIONS = 3;
+    private static final long RANDOM_SEED = 20130417;
+    private static final String REPORT_FILE_NAME = "compression_benchmark.csv";
+
+    private interface CompressorFactory {
+        OutputStream create(OutputStream outputStream) throws IOException;
+    }
+
+    public static void runBenchmark(Context context) {
+        new Thread(() -> {
+            Timber.d("runBenchmark(): Starting compression benchmark");
+            StringBuilder report = new StringBuilder();
+            try {
+                byte[] input = createInput();
+                benchmarkCompression(report, input);
+                boolean saved = saveReport(report.toString());
+                Timber.d("runBenchmark(): Compression benchmark finished, report saved = %s", saved);
+                String message;
+                if (!saved)
+                    message = context.getString(R.string.storage_access_denied);
+                else
+                    message = "Compression benchmark saved to " + REPORT_FILE_NAME;
+                showToast(context, message);
+            } catch (Exception ex) {
+                Timber.e(ex, "runBenchmark(): Compression benchmark failed");
+                showToast(context, "Compression benchmark failed: " + ex.getMessage());
+            }
+        }, CompressionBenchmark.class.getSimpleName()).start();
+    }
+
+    private static void benchmarkCompression(StringBuilder report, byte[] input) throws IOException {
+        report.append("method,level,threads,megabytes_per_second,compressed_bytes,ratio,ratio_to_gzip\n");
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int level : LEVELS) {
+            long referenceBytes = measure(report, "gzip", level, 1, input, 0,
+                    outputStream -> new FileWriter.LeveledGZipOutputStream(outputStream, level));
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                int compressionThreads = threads;
+                measure(report, "parallel_gzip", level, threads, input, referenceBytes,
+                        outputStream -> new ParallelGZipOutputStream(outputStream, level, compressionThreads));
+            }
+        }
+    }
+
+    private static long measure(StringBuilder report, String method, int level, int threads, byte[] input, long referenceBytes, CompressorFactory factory) throws IOException {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            compress(input, factory);
+        }
+        byte[] compressed = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            compressed = compress(input, factory);
+        }
+        long duration = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+        long megabytesPerSecond = input.length * 1000000000L / Math.max(duration, 1) / (1024 * 1024);
+        double ratio = (double) compressed.length / input.length;
+        double ratioToGzip = (referenceBytes > 0 ? (double) compressed.length / referenceBytes : 1);
+        Timber.i("measure(): %s level %s, %s threads: %s MB/s, %s bytes, ratio %.4f, ratio to gzip %.4f",
+                method, level, threads, megabytesPerSecond, compressed.length, ratio, ratioToGzip);
+        report.append(method).append(',')
+                .append(level).append(',')
+                .append(threads).append(',')
+                .append(megabytesPerSecond).append(',')
+                .append(compressed.length).append(',')
+                .append(String.format("%.4f", ratio)).append(',')
+                .append(String.format("%.4f", ratioToGzip)).append('\n');
+        return compressed.length;
+    }
+
+    private static byte[] compress(byte[] input, CompressorFactory factory) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 4);
+        try (OutputStream outputStream = factory.create(compressed)) {
+            // same chunk size as BufferedWriter used by export
+            for (int offset = 0; offset < input.length; offset += 8192) {
+                outputStream.write(input, offset, Math.min(8192, input.length - offset));
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] createInput() throws IOException {
+        Random random = new Random(RANDOM_SEED);
+        ICsvFormatter formatter = new CsvExportFormatter();
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(input, StandardCharsets.UTF_8);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            MeasurementBuilder builder = new MeasurementBuilder()
+                    .setLocation(52 + random.nextDouble(), 19 + random.nextDouble(), 150 + random.nextDouble() * 50, 3 + random.nextFloat() * 20)
+                    .setMovement(random.nextFloat() * 360, random.nextFloat() * 30)
+                    .setTime(timestamp + i * 1000L);
+            if (i % 2 == 0) {
+                builder.setGsmCell(260, 6, 5114, 10558 + random.nextInt(100)).setGsmSignal(15, -83, Cell.UNKNOWN_SIGNAL, -83, 50);
+            } else {
+                builder.setLteCell(260, 6, 49101, 26888192 + random.nextInt(100), 172).setLteSignal(30, -110, 5, -110, -11, -80, 12, 10, 1850);
+            }
+            formatter.writeEntry(builder.build(), writer);
+        }
+        writer.flush();
+        return input.toByteArray();
+    }
+
+    private static boolean saveReport(String report) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("saveReport(): Storage access denied");
+            return false;
+        }
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                outputStream.write(report.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        };
+        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, REPORT_FILE_NAME);
+        return result.getResultType() == WriteResultType.Success;
+    }
+
+    private static void showToast(Context context, String message) {
+        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(context, message, Toast.LENGTH_LONG).show());
+    }
+}
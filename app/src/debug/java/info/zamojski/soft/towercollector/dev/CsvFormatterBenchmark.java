@@ -0,0 +1,176 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.files.formatters.csv.CsvExportFormatter;
+import info.zamojski.soft.towercollector.files.formatters.csv.CsvUploadFormatter;
+import info.zamojski.soft.towercollector.files.formatters.csv.ICsvFormatter;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResultType;
+import info.zamojski.soft.towercollector.model.Measurement;
+import timber.log.Timber;
+
+/**
+ * Measures throughput and allocations of formatting synthetic rows by CSV formatters.
+ */
+public class CsvFormatterBenchmark {
+
+    private static final int ROWS = 2000;
+    private static final int WARM_UP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+    private static final long RANDOM_SEED = 20130417;
+    private static final String REPORT_FILE_NAME = "csv_formatter_benchmark.csv";
+
+    private interface Stage {
+        void run(List<Measurement> measurements) throws Exception;
+    }
+
+    public static void runBenchmark(Context context) {
+        new Thread(() -> {
+            Timber.d("runBenchmark(): Starting CSV formatter benchmark");
+            StringBuilder report = new StringBuilder();
+            try {
+                benchmarkFormatters(report);
+                boolean saved = saveReport(report.toString());
+                Timber.d("runBenchmark(): CSV formatter benchmark finished, report saved = %s", saved);
+                String message;
+                if (!saved)
+                    message = context.getString(R.string.storage_access_denied);
+                else
+                    message = "CSV formatter benchmark saved to " + REPORT_FILE_NAME;
+                showToast(context, message);
+            } catch (Exception ex) {
+                Timber.e(ex, "runBenchmark(): CSV formatter benchmark failed");
+                showToast(context, "CSV formatter benchmark failed: " + ex.getMessage());
+            }
+        }, CsvFormatterBenchmark.class.getSimpleName()).start();
+    }
+
+    private static void benchmarkFormatters(StringBuilder report) throws Exception {
+        report.append("formatter,method,rows_per_second,bytes_per_row\n");
+        List<Measurement> measurements = createMeasurements();
+        Writer nullWriter = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ICsvFormatter exportFormatter = new CsvExportFormatter();
+        ICsvFormatter uploadFormatter = new CsvUploadFormatter();
+        measure(report, "export", "format_entry", measurements, list -> {
+            for (Measurement m : list) {
+                nullWriter.write(exportFormatter.formatEntry(m));
+            }
+        });
+        measure(report, "export", "write_entry", measurements, list -> {
+            for (Measurement m : list) {
+                exportFormatter.writeEntry(m, nullWriter);
+            }
+        });
+        measure(report, "upload", "format_entry", measurements, list -> {
+            for (Measurement m : list) {
+                nullWriter.write(uploadFormatter.formatEntry(m));
+            }
+        });
+        measure(report, "upload", "write_entry", measurements, list -> {
+            for (Measurement m : list) {
+                uploadFormatter.writeEntry(m, nullWriter);
+            }
+        });
+    }
+
+    private static void measure(StringBuilder report, String formatterName, String methodName, List<Measurement> measurements, Stage stage) throws Exception {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            stage.run(measurements);
+        }
+        long bytesBefore = AllocationStats.getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            stage.run(measurements);
+        }
+        long duration = System.nanoTime() - start;
+        long bytesAfter = AllocationStats.getAllocatedBytes();
+        long rows = (long) measurements.size() * MEASURED_ITERATIONS;
+        long rowsPerSecond = rows * 1000000000L / Math.max(duration, 1);
+        long bytesPerRow = (bytesBefore < 0 || bytesAfter < 0) ? -1 : (bytesAfter - bytesBefore) / rows;
+        Timber.i("measure(): %s, %s: %s rows/s, %s bytes/row", formatterName, methodName, rowsPerSecond, bytesPerRow);
+        report.append(formatterName).append(',')
+                .append(methodName).append(',')
+                .append(rowsPerSecond).append(',')
+                .append(bytesPerRow).append('\n');
+    }
+
+    private static List<Measurement> createMeasurements() {
+        Random random = new Random(RANDOM_SEED);
+        List<Measurement> measurements = new ArrayList<>(ROWS);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < ROWS; i++) {
+            MeasurementBuilder builder = new MeasurementBuilder()
+                    .setLocation(52 + random.nextDouble(), 19 + random.nextDouble(), 150 + random.nextInt(50), 3 + random.nextFloat() * 20)
+                    .setMovement(random.nextFloat() * 360, random.nextFloat() * 30)
+                    .setTime(timestamp + i * 1000L);
+            switch (i % 4) {
+                case 0:
+                    builder.setGsmCell(260, 6, 5114, 10558 + i).setGsmSignal(15, -83, 1, -83, 50);
+                    break;
+                case 1:
+                    builder.setWcdmaCell(260, 6, 5114, 268435455 - i, 211).setWcdmaSignal(20, -73, -10, 10688);
+                    break;
+                case 2:
+                    builder.setLteCell(260, 6, 49101, 26888192 + i, 172).setLteSignal(30, -110, 5, -110, -11, -80, 12, 10, 1850);
+                    break;
+                default:
+                    builder.setNrCell(260, 6, 49101, 68719476735L - i, 500).setNrSignal(40, -95, -95, -11, 15, -94, -10, 16, 643334);
+                    break;
+            }
+            measurements.add(builder.build());
+        }
+        return measurements;
+    }
+
+    private static boolean saveReport(String report) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("saveReport(): Storage access denied");
+            return false;
+        }
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                outputStream.write(report.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        };
+        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, REPORT_FILE_NAME);
+        return result.getResultType() == WriteResultType.Success;
+    }
+
+    private static void showToast(Context context, String message) {
+        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(context, message, Toast.LENGTH_LONG).show());
+    }
+}
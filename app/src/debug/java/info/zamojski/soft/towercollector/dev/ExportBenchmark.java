@@ -0,0 +1,264 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.files.formatters.csv.CsvExportFormatter;
+import info.zamojski.soft.towercollector.files.formatters.csv.ICsvFormatter;
+import info.zamojski.soft.towercollector.files.formatters.gpx.GpxExportFormatter;
+import info.zamojski.soft.towercollector.files.formatters.gpx.IGpxFormatter;
+import info.zamojski.soft.towercollector.files.formatters.json.IJsonFormatter;
+import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaExportFormatter;
+import info.zamojski.soft.towercollector.files.formatters.kml.IKmlFormatter;
+import info.zamojski.soft.towercollector.files.formatters.kml.KmlExportFormatter;
+import info.zamojski.soft.towercollector.files.generators.wrappers.FileTextGeneratorWrapperBase;
+import info.zamojski.soft.towercollector.files.generators.wrappers.OrderedPartPipeline;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResultType;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import timber.log.Timber;
+
+/**
+ * Measures how export scales with number of formatting threads. Parts of synthetic measurements are formatted
+ * to all text formats on a pool of 1 to N threads, merged in order and compressed with GZIP like during export.
+ * Checksum of merged output is compared with sequential run to make sure order of parts is preserved.
+ */
+public class ExportBenchmark {
+
+    private static final int MEASUREMENTS = 8000;
+    private static final int WARM_UP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long RANDOM_SEED = 20130417;
+    private static final String REPORT_FILE_NAME = "export_benchmark.csv";
+
+    private static final ThreadLocal<ICsvFormatter> csvFormatters = new ThreadLocal<ICsvFormatter>() {
+        @Override
+        protected ICsvFormatter initialValue() {
+            return new CsvExportFormatter();
+        }
+    };
+    private static final ThreadLocal<IGpxFormatter> gpxFormatters = new ThreadLocal<IGpxFormatter>() {
+        @Override
+        protected IGpxFormatter initialValue() {
+            return new GpxExportFormatter();
+        }
+    };
+    private static final ThreadLocal<IKmlFormatter> kmlFormatters = new ThreadLocal<IKmlFormatter>() {
+        @Override
+        protected IKmlFormatter initialValue() {
+            return new KmlExportFormatter();
+        }
+    };
+    private static final ThreadLocal<IJsonFormatter> jsonFormatters = new ThreadLocal<IJsonFormatter>() {
+        @Override
+        protected IJsonFormatter initialValue() {
+            return new JsonMozillaExportFormatter();
+        }
+    };
+
+    public static void runBenchmark(Context context) {
+        new Thread(() -> {
+            Timber.d("runBenchmark(): Starting export benchmark");
+            StringBuilder report = new StringBuilder();
+            try {
+                List<List<Measurement>> parts = createParts();
+                int mismatches = benchmarkExport(report, parts);
+                boolean saved = saveReport(report.toString());
+                Timber.d("runBenchmark(): Export benchmark finished, %s mismatches, report saved = %s", mismatches, saved);
+                String message;
+                if (!saved)
+                    message = context.getString(R.string.storage_access_denied);
+                else if (mismatches > 0)
+                    message = "Export benchmark found " + mismatches + " mismatches, see " + REPORT_FILE_NAME;
+                else
+                    message = "Export benchmark saved to " + REPORT_FILE_NAME;
+                showToast(context, message);
+            } catch (Exception ex) {
+                Timber.e(ex, "runBenchmark(): Export benchmark failed");
+                showToast(context, "Export benchmark failed: " + ex.getMessage());
+            }
+        }, ExportBenchmark.class.getSimpleName()).start();
+    }
+
+    private static int benchmarkExport(StringBuilder report, List<List<Measurement>> parts) throws Exception {
+        report.append("threads,parts_per_second,measurements_per_second,speedup,compressed_bytes,checksum_matches\n");
+        Result sequential = measure(report, 0, parts, 0, 0);
+        int mismatches = 0;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            Result result = measure(report, threads, parts, sequential.duration, sequential.checksum);
+            if (result.checksum != sequential.checksum)
+                mismatches++;
+        }
+        return mismatches;
+    }
+
+    private static Result measure(StringBuilder report, int threads, List<List<Measurement>> parts, long sequentialDuration, long expectedChecksum) throws Exception {
+        ExecutorService executor = (threads > 0 ? Executors.newFixedThreadPool(threads) : null);
+        try {
+            for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                export(executor, threads, parts);
+            }
+            Result result = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                result = export(executor, threads, parts);
+            }
+            result.duration = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+            long partsPerSecond = parts.size() * 1000000000L / Math.max(result.duration, 1);
+            long measurementsPerSecond = MEASUREMENTS * 1000000000L / Math.max(result.duration, 1);
+            double speedup = (sequentialDuration > 0 ? (double) sequentialDuration / result.duration : 1);
+            boolean checksumMatches = (threads == 0 || result.checksum == expectedChecksum);
+            Timber.i("measure(): %s threads: %s parts/s, %s measurements/s, speedup %.2f, checksum matches = %s", threads, partsPerSecond, measurementsPerSecond, speedup, checksumMatches);
+            report.append(threads).append(',')
+                    .append(partsPerSecond).append(',')
+                    .append(measurementsPerSecond).append(',')
+                    .append(String.format("%.2f", speedup)).append(',')
+                    .append(result.compressedBytes).append(',')
+                    .append(checksumMatches).append('\n');
+            return result;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static Result export(ExecutorService executor, int threads, List<List<Measurement>> parts) throws Exception {
+        CountingOutputStream countingStream = new CountingOutputStream();
+        CheckedOutputStream checkedStream = new CheckedOutputStream(new GZIPOutputStream(countingStream), new CRC32());
+        Writer writer = new OutputStreamWriter(checkedStream, StandardCharsets.UTF_8);
+        OrderedPartPipeline<String> pipeline = new OrderedPartPipeline<>(executor, threads + 1,
+                ExportBenchmark::formatPart,
+                (part, formattedPart) -> writer.write(formattedPart));
+        try {
+            for (List<Measurement> part : parts) {
+                pipeline.submit(part);
+            }
+            pipeline.finish();
+            writer.close();
+        } finally {
+            pipeline.cancel();
+        }
+        Result result = new Result();
+        result.checksum = checkedStream.getChecksum().getValue();
+        result.compressedBytes = countingStream.count;
+        return result;
+    }
+
+    private static String formatPart(List<Measurement> part) throws IOException {
+        ICsvFormatter csvFormatter = csvFormatters.get();
+        IGpxFormatter gpxFormatter = gpxFormatters.get();
+        IKmlFormatter kmlFormatter = kmlFormatters.get();
+        StringWriter writer = new StringWriter();
+        for (int i = 0; i < part.size(); i++) {
+            Measurement m = part.get(i);
+            csvFormatter.writeEntry(m, writer);
+            writer.write(gpxFormatter.formatEntry(m));
+            writer.write(kmlFormatter.formatEntry(m));
+            writer.write(kmlFormatter.formatLineEntry(m));
+        }
+        jsonFormatters.get().writeList(part, writer);
+        return writer.toString();
+    }
+
+    private static List<List<Measurement>> createParts() {
+        Random random = new Random(RANDOM_SEED);
+        List<List<Measurement>> parts = new ArrayList<>();
+        int partSize = FileTextGeneratorWrapperBase.LOCATIONS_PER_PART;
+        List<Measurement> part = new ArrayList<>(partSize);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            MeasurementBuilder builder = new MeasurementBuilder()
+                    .setLocation(52 + random.nextDouble(), 19 + random.nextDouble(), 150 + random.nextDouble() * 50, 3 + random.nextFloat() * 20)
+                    .setMovement(random.nextFloat() * 360, random.nextFloat() * 30)
+                    .setTime(timestamp + i * 1000L);
+            switch (i % 3) {
+                case 0:
+                    builder.setGsmCell(260, 6, 5114, 10558 + i).setGsmSignal(15, -83, Cell.UNKNOWN_SIGNAL, -83, 50);
+                    break;
+                case 1:
+                    builder.setWcdmaCell(260, 6, 5114, 268435455 - i, 211).setWcdmaSignal(20, -73, -10, 10688);
+                    break;
+                default:
+                    builder.setLteCell(260, 6, 49101, 26888192 + i, 172).setLteSignal(30, -110, 5, -110, -11, -80, 12, 10, 1850);
+                    break;
+            }
+            part.add(builder.build());
+            if (part.size() == partSize) {
+                parts.add(part);
+                part = new ArrayList<>(partSize);
+            }
+        }
+        if (!part.isEmpty())
+            parts.add(part);
+        return parts;
+    }
+
+    private static boolean saveReport(String report) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("saveReport(): Storage access denied");
+            return false;
+        }
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                outputStream.write(report.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        };
+        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, REPORT_FILE_NAME);
+        return result.getResultType() == WriteResultType.Success;
+    }
+
+    private static void showToast(Context context, String message) {
+        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(context, message, Toast.LENGTH_LONG).show());
+    }
+
+    static class Result {
+        private long duration;
+        private long checksum;
+        private long compressedBytes;
+    }
+
+    static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.files.formatters.json.IJsonFormatter;
+import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaExportFormatter;
+import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaUploadFormatter;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResultType;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.providers.ICellUtils;
+import info.zamojski.soft.towercollector.providers.MozillaCellUtils;
+import info.zamojski.soft.towercollector.utils.StringUtils;
+import timber.log.Timber;
+
+/**
+ * Measures throughput and allocations of streaming JSON formatters and JSON object trees built the way formatters
+ * did before on synthetic measurements.
+ */
+public class JsonFormatterBenchmark {
+
+    private static final int MEASUREMENTS = 2000;
+    // same as upload part size
+    private static final int MEASUREMENTS_PER_PART = 85;
+    private static final int WARM_UP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final long RANDOM_SEED = 20130417;
+    private static final String REPORT_FILE_NAME = "json_formatter_benchmark.csv";
+
+    private static final ICellUtils mozillaCellUtils = new MozillaCellUtils();
+
+    private interface Stage {
+        void run(List<List<Measurement>> parts) throws Exception;
+    }
+
+    public static void runBenchmark(Context context) {
+        new Thread(() -> {
+            Timber.d("runBenchmark(): Starting JSON formatter benchmark");
+            StringBuilder report = new StringBuilder();
+            try {
+                List<List<Measurement>> parts = createParts();
+                benchmarkFormatters(report, parts);
+                boolean saved = saveReport(report.toString());
+                Timber.d("runBenchmark(): JSON formatter benchmark finished, report saved = %s", saved);
+                String message;
+                if (!saved)
+                    message = context.getString(R.string.storage_access_denied);
+                else
+                    message = "JSON formatter benchmark saved to " + REPORT_FILE_NAME;
+                showToast(context, message);
+            } catch (Exception ex) {
+                Timber.e(ex, "runBenchmark(): JSON formatter benchmark failed");
+                showToast(context, "JSON formatter benchmark failed: " + ex.getMessage());
+            }
+        }, JsonFormatterBenchmark.class.getSimpleName()).start();
+    }
+
+    private static void benchmarkFormatters(StringBuilder report, List<List<Measurement>> parts) throws Exception {
+        report.append("formatter,method,measurements_per_second,bytes_per_measurement\n");
+        Writer nullWriter = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        IJsonFormatter exportFormatter = new JsonMozillaExportFormatter();
+        IJsonFormatter uploadFormatter = new JsonMozillaUploadFormatter();
+        measure(report, "mozilla_export", "json_tree", parts, list -> {
+            for (List<Measurement> part : list) {
+                nullWriter.write(formatLegacyExport(part));
+            }
+        });
+        measure(report, "mozilla_export", "stream", parts, list -> {
+            for (List<Measurement> part : list) {
+                exportFormatter.writeList(part, nullWriter);
+            }
+        });
+        measure(report, "mozilla_upload", "json_tree", parts, list -> {
+            for (List<Measurement> part : list) {
+                nullWriter.write(formatLegacyUpload(part));
+            }
+        });
+        measure(report, "mozilla_upload", "stream", parts, list -> {
+            for (List<Measurement> part : list) {
+                uploadFormatter.writeList(part, nullWriter);
+            }
+        });
+    }
+
+    private static void measure(StringBuilder report, String formatterName, String methodName, List<List<Measurement>> parts, Stage stage) throws Exception {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            stage.run(parts);
+        }
+        long bytesBefore = AllocationStats.getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            stage.run(parts);
+        }
+        long duration = System.nanoTime() - start;
+        long bytesAfter = AllocationStats.getAllocatedBytes();
+        long measurements = (long) MEASUREMENTS * MEASURED_ITERATIONS;
+        long measurementsPerSecond = measurements * 1000000000L / Math.max(duration, 1);
+        long bytesPerMeasurement = (bytesBefore < 0 || bytesAfter < 0) ? -1 : (bytesAfter - bytesBefore) / measurements;
+        Timber.i("measure(): %s, %s: %s measurements/s, %s bytes/measurement", formatterName, methodName, measurementsPerSecond, bytesPerMeasurement);
+        report.append(formatterName).append(',')
+                .append(methodName).append(',')
+                .append(measurementsPerSecond).append(',')
+                .append(bytesPerMeasurement).append('\n');
+    }
+
+    private static List<List<Measurement>> createParts() {
+        Random random = new Random(RANDOM_SEED);
+        List<List<Measurement>> parts = new ArrayList<>();
+        List<Measurement> part = new ArrayList<>(MEASUREMENTS_PER_PART);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            MeasurementBuilder builder = new MeasurementBuilder()
+                    .setLocation(52 + random.nextDouble(), 19 + random.nextDouble(), random.nextInt(10) == 0 ? 0 : 150 + random.nextDouble() * 50, 3 + random.nextFloat() * 20)
+                    .setMovement(random.nextFloat() * 360, random.nextInt(5) == 0 ? 0 : random.nextFloat() * 30)
+                    .setTime(timestamp + i * 1000L);
+            // all network types, including ones not supported by Mozilla
+            switch (i % 6) {
+                case 0:
+                    builder.setGsmCell(260, 6, 5114, 10558 + i).setGsmSignal(15, -83, i % 3 == 0 ? Cell.UNKNOWN_SIGNAL : 1, -83, 50);
+                    break;
+                case 1:
+                    builder.setWcdmaCell(260, 6, 5114, 268435455 - i, 211).setWcdmaSignal(20, -73, -10, 10688);
+                    break;
+                case 2:
+                    builder.setLteCell(260, 6, 49101, 26888192 + i, 172).setLteSignal(30, -110, 5, -110, -11, -80, 12, 10, 1850);
+                    break;
+                case 3:
+                    builder.setCdmaCell(7, 4, 1500 + i).setCdmaSignal(10, -95, -95, -120, -90, -60, 8);
+                    break;
+                case 4:
+                    builder.setNrCell(260, 6, 49101, 68719476735L - i, 500).setNrSignal(40, -95, -95, -11, 15, -94, -10, 16, 643334);
+                    break;
+                default:
+                    builder.setTdscdmaCell(460, 0, 4321, 1234 + i, 12).setTdscdmaSignal(25, -85, -85, 10054);
+                    break;
+            }
+            part.add(builder.build());
+            if (part.size() == MEASUREMENTS_PER_PART) {
+                parts.add(part);
+                part = new ArrayList<>(MEASUREMENTS_PER_PART);
+            }
+        }
+        if (!part.isEmpty())
+            parts.add(part);
+        return parts;
+    }
+
+    // reference implementation based on JSON object trees
+
+    private static String formatLegacyExport(List<Measurement> ms) throws JSONException {
+        StringBuilder sb = new StringBuilder();
+        boolean notFirst = false;
+        for (JSONObject rawItem : formatLegacyItems(ms)) {
+            if (notFirst) {
+                sb.append(",\r\n");
+            }
+            notFirst = true;
+            sb.append(rawItem.toString());
+        }
+        return sb.toString();
+    }
+
+    private static String formatLegacyUpload(List<Measurement> ms) throws JSONException {
+        if (ms.size() == 0) {
+            return new JSONObject().toString();
+        }
+        JSONArray items = new JSONArray();
+        for (JSONObject rawItem : formatLegacyItems(ms)) {
+            items.put(rawItem);
+        }
+        JSONObject root = new JSONObject();
+        root.put("items", items);
+        return root.toString();
+    }
+
+    private static List<JSONObject> formatLegacyItems(List<Measurement> ms) throws JSONException {
+        List<JSONObject> items = new ArrayList<>();
+        for (Measurement m : ms) {
+            JSONObject item = new JSONObject();
+            item.put("timestamp", m.getMeasuredAt());
+            JSONObject position = new JSONObject();
+            position.put("latitude", round(m.getLatitude(), 12));
+            position.put("longitude", round(m.getLongitude(), 12));
+            position.put("longitude", round(m.getLongitude(), 12));
+            position.put("accuracy", round(m.getGpsAccuracy(), 2));
+            position.put("altitude", round(m.getGpsAltitude(), 2));
+            position.put("heading", round(m.getGpsBearing(), 2));
+            position.put("speed", round(m.getGpsSpeed(), 2));
+            position.put("source", "gps");
+            item.put("position", position);
+            JSONArray cellTowers = new JSONArray();
+            for (Cell c : m.getCells()) {
+                if (c.getNetworkType() == NetworkGroup.Cdma || c.getMcc() == Cell.UNKNOWN_CID || c.getNetworkType() == NetworkGroup.Tdscdma || c.getNetworkType() == NetworkGroup.Nr)
+                    continue;
+                JSONObject cellTower = new JSONObject();
+                String systemType = mozillaCellUtils.getSystemType(c.getNetworkType());
+                cellTower.put("radioType", StringUtils.isNullEmptyOrWhitespace(systemType) ? JSONObject.NULL : systemType);
+                cellTower.put("mobileCountryCode", c.getMcc());
+                cellTower.put("mobileNetworkCode", c.getMnc());
+                cellTower.put("locationAreaCode", c.getLac());
+                cellTower.put("cellId", c.getCid());
+                if (c.getPsc() != Cell.UNKNOWN_CID)
+                    cellTower.put("primaryScramblingCode", c.getPsc());
+                if (c.getAsu() != Cell.UNKNOWN_SIGNAL)
+                    cellTower.put("asu", c.getAsu());
+                if (c.getDbm() != Cell.UNKNOWN_SIGNAL)
+                    cellTower.put("signalStrength", c.getDbm());
+                if (c.getTa() != Cell.UNKNOWN_SIGNAL)
+                    cellTower.put("timingAdvance", c.getTa());
+                cellTower.put("serving", c.isNeighboring() ? 0 : 1);
+                cellTowers.put(cellTower);
+            }
+            item.put("cellTowers", cellTowers);
+            if (cellTowers.length() > 0)
+                items.add(item);
+        }
+        return items;
+    }
+
+    private static double round(double value, int scale) {
+        return new BigDecimal(value).setScale(scale, BigDecimal.ROUND_HALF_EVEN).doubleValue();
+    }
+
+    private static boolean saveReport(String report) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("saveReport(): Storage access denied");
+            return false;
+        }
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                outputStream.write(report.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        };
+        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, REPORT_FILE_NAME);
+        return result.getResultType() == WriteResultType.Success;
+    }
+
+    private static void showToast(Context context, String message) {
+        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(context, message, Toast.LENGTH_LONG).show());
+    }
+}
@@ -0,0 +1,287 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.CellInfo;
+import android.telephony.NeighboringCellInfo;
+import android.telephony.TelephonyManager;
+import android.telephony.gsm.GsmCellLocation;
+import android.widget.Toast;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import cz.mroczis.netmonster.core.model.cell.ICell;
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.collector.converters.CellIdentityConverter;
+import info.zamojski.soft.towercollector.collector.converters.CellLocationConverter;
+import info.zamojski.soft.towercollector.collector.converters.CellLocationSignalConverter;
+import info.zamojski.soft.towercollector.collector.converters.CellSignalConverter;
+import info.zamojski.soft.towercollector.collector.converters.NetMonsterCellConverter;
+import info.zamojski.soft.towercollector.collector.converters.NetMonsterSignalConverter;
+import info.zamojski.soft.towercollector.collector.validators.CellIdentityValidator;
+import info.zamojski.soft.towercollector.collector.validators.CellLocationValidator;
+import info.zamojski.soft.towercollector.collector.validators.NetMonsterCellValidator;
+import info.zamojski.soft.towercollector.collector.validators.specific.WcdmaCellValidator;
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResultType;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.utils.GeoUtils;
+import info.zamojski.soft.towercollector.utils.MobileUtils;
+import timber.log.Timber;
+
+/**
+ * Measures cost of the per-fix validator, converter and distance condition stages used by the measurement parsers.
+ * Legacy input is fully synthetic, API 17+ and NetMonster input is built by repeating cells currently reported by the device.
+ */
+public class ParserBenchmark {
+
+    private static final int[] CELLS_PER_FIX = {1, 2, 4, 8, 16, 32, 64};
+    private static final int WARM_UP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 1000;
+    private static final int MCC = 260;
+    private static final int MNC = 6;
+    private static final String REPORT_FILE_NAME = "parser_benchmark.csv";
+
+    private interface Stage<T> {
+        void run(List<T> cells, List<Cell> convertedCells);
+    }
+
+    public static void runBenchmark(Context context) {
+        new Thread(() -> {
+            Timber.d("runBenchmark(): Starting parser benchmark");
+            StringBuilder report = new StringBuilder("parser,cells_per_fix,stage,ns_per_fix,bytes_per_fix\n");
+            try {
+                benchmarkLegacy(report);
+                benchmarkApi17(context, report);
+                benchmarkNetMonster(context, report);
+                benchmarkDistance(report);
+                boolean saved = saveReport(report.toString());
+                Timber.d("runBenchmark(): Parser benchmark finished, report saved = %s", saved);
+                showToast(context, saved ? "Parser benchmark saved to " + REPORT_FILE_NAME : context.getString(R.string.storage_access_denied));
+            } catch (Exception ex) {
+                Timber.e(ex, "runBenchmark(): Parser benchmark failed");
+                showToast(context, "Parser benchmark failed: " + ex.getMessage());
+            }
+        }, ParserBenchmark.class.getSimpleName()).start();
+    }
+
+    private static void benchmarkLegacy(StringBuilder report) {
+        CellLocationValidator validator = new CellLocationValidator();
+        CellLocationConverter converter = new CellLocationConverter();
+        CellLocationSignalConverter signalConverter = new CellLocationSignalConverter();
+        GsmCellLocation mainCell = new GsmCellLocation();
+        mainCell.setLacAndCid(5114, 10558);
+        for (int cellsPerFix : CELLS_PER_FIX) {
+            List<NeighboringCellInfo> neighbors = new ArrayList<>(cellsPerFix);
+            for (int i = 1; i < cellsPerFix; i++) {
+                String location = String.format(Locale.ENGLISH, "%04X%04X", 5114, 10558 + i);
+                neighbors.add(new NeighboringCellInfo(-80 - i % 30, location, TelephonyManager.NETWORK_TYPE_GPRS));
+            }
+            List<Cell> converted = new ArrayList<>(cellsPerFix);
+            converted.add(converter.convert(mainCell, MCC, MNC, NetworkGroup.Gsm));
+            for (NeighboringCellInfo neighbor : neighbors) {
+                converted.add(converter.convert(neighbor, MCC, MNC, mainCell.getLac(), mainCell.getCid()));
+            }
+            measure(report, "legacy", cellsPerFix, "validate", neighbors, converted, (cells, convertedCells) -> {
+                validator.isValid(mainCell, MCC, MNC);
+                for (NeighboringCellInfo cell : cells) {
+                    validator.isValid(cell, MCC, MNC);
+                }
+            });
+            measure(report, "legacy", cellsPerFix, "convert_identity", neighbors, converted, (cells, convertedCells) -> {
+                converter.convert(mainCell, MCC, MNC, NetworkGroup.Gsm);
+                for (NeighboringCellInfo cell : cells) {
+                    converter.convert(cell, MCC, MNC, mainCell.getLac(), mainCell.getCid());
+                }
+            });
+            measure(report, "legacy", cellsPerFix, "convert_signal", neighbors, converted, (cells, convertedCells) -> {
+                for (int i = 0; i < cells.size(); i++) {
+                    signalConverter.update(convertedCells.get(i + 1), cells.get(i).getRssi());
+                }
+            });
+        }
+    }
+
+    private static void benchmarkApi17(Context context, StringBuilder report) {
+        if (!MobileUtils.isApi17FullyCompatible(context)) {
+            Timber.w("benchmarkApi17(): API 17 not supported, skipping");
+            return;
+        }
+        List<CellInfo> deviceCells;
+        try {
+            TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+            deviceCells = telephonyManager.getAllCellInfo();
+        } catch (SecurityException ex) {
+            Timber.w(ex, "benchmarkApi17(): Permission denied, skipping");
+            return;
+        }
+        if (deviceCells == null || deviceCells.isEmpty()) {
+            Timber.w("benchmarkApi17(): No cells reported, skipping");
+            return;
+        }
+        CellIdentityValidator validator = new CellIdentityValidator();
+        CellIdentityConverter converter = new CellIdentityConverter(new WcdmaCellValidator());
+        CellSignalConverter signalConverter = new CellSignalConverter();
+        for (int cellsPerFix : CELLS_PER_FIX) {
+            List<CellInfo> input = repeat(deviceCells, cellsPerFix);
+            List<Cell> converted = new ArrayList<>(cellsPerFix);
+            for (CellInfo cell : input) {
+                converted.add(converter.convert(cell));
+            }
+            measure(report, "api17", cellsPerFix, "create_key", input, converted, (cells, convertedCells) -> {
+                for (CellInfo cell : cells) {
+                    converter.createCellKey(cell);
+                }
+            });
+            measure(report, "api17", cellsPerFix, "validate", input, converted, (cells, convertedCells) -> {
+                for (CellInfo cell : cells) {
+                    validator.isValid(cell);
+                }
+            });
+            measure(report, "api17", cellsPerFix, "convert_identity", input, converted, (cells, convertedCells) -> {
+                for (CellInfo cell : cells) {
+                    converter.convert(cell);
+                }
+            });
+            measure(report, "api17", cellsPerFix, "convert_signal", input, converted, (cells, convertedCells) -> {
+                for (int i = 0; i < cells.size(); i++) {
+                    signalConverter.update(convertedCells.get(i), cells.get(i));
+                }
+            });
+        }
+    }
+
+    private static void benchmarkNetMonster(Context context, StringBuilder report) {
+        if (!MobileUtils.isNetMonsterCoreApiCompatible(context)) {
+            Timber.w("benchmarkNetMonster(): NetMonster Core not supported, skipping");
+            return;
+        }
+        List<ICell> deviceCells;
+        try {
+            deviceCells = MobileUtils.getNetMonsterCore(context).getCells();
+        } catch (SecurityException ex) {
+            Timber.w(ex, "benchmarkNetMonster(): Permission denied, skipping");
+            return;
+        }
+        if (deviceCells == null || deviceCells.isEmpty()) {
+            Timber.w("benchmarkNetMonster(): No cells reported, skipping");
+            return;
+        }
+        NetMonsterCellValidator validator = new NetMonsterCellValidator();
+        NetMonsterCellConverter converter = new NetMonsterCellConverter();
+        NetMonsterSignalConverter signalConverter = new NetMonsterSignalConverter();
+        for (int cellsPerFix : CELLS_PER_FIX) {
+            List<ICell> input = repeat(deviceCells, cellsPerFix);
+            List<Cell> converted = new ArrayList<>(cellsPerFix);
+            for (ICell cell : input) {
+                converted.add(converter.convert(cell));
+            }
+            measure(report, "netmonster", cellsPerFix, "create_key", input, converted, (cells, convertedCells) -> {
+                for (ICell cell : cells) {
+                    converter.createCellKey(cell);
+                }
+            });
+            measure(report, "netmonster", cellsPerFix, "validate", input, converted, (cells, convertedCells) -> {
+                for (ICell cell : cells) {
+                    validator.isValid(cell);
+                }
+            });
+            measure(report, "netmonster", cellsPerFix, "convert_identity", input, converted, (cells, convertedCells) -> {
+                for (ICell cell : cells) {
+                    converter.convert(cell);
+                }
+            });
+            measure(report, "netmonster", cellsPerFix, "convert_signal", input, converted, (cells, convertedCells) -> {
+                for (int i = 0; i < cells.size(); i++) {
+                    signalConverter.update(convertedCells.get(i), cells.get(i));
+                }
+            });
+        }
+    }
+
+    private static void benchmarkDistance(StringBuilder report) {
+        // single distance check per fix regardless of number of cells
+        List<Location> input = new ArrayList<>(1);
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(52.0693267);
+        location.setLongitude(19.4781224);
+        input.add(location);
+        measure(report, "conditions", 1, "location_distance", input, Collections.emptyList(), (locations, convertedCells) -> {
+            // same as previous implementation which simulated location of last measurement on every fix
+            Location previousLocation = new Location(LocationManager.PASSIVE_PROVIDER);
+            previousLocation.setLatitude(52.0694);
+            previousLocation.setLongitude(19.4783);
+            locations.get(0).distanceTo(previousLocation);
+        });
+        measure(report, "conditions", 1, "approximate_distance", input, Collections.emptyList(), (locations, convertedCells) -> {
+            Location currentLocation = locations.get(0);
+            GeoUtils.getApproximateDistance(52.0694, 19.4783, currentLocation.getLatitude(), currentLocation.getLongitude());
+        });
+    }
+
+    private static <T> void measure(StringBuilder report, String parser, int cellsPerFix, String stageName,
+                                    List<T> cells, List<Cell> convertedCells, Stage<T> stage) {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            stage.run(cells, convertedCells);
+        }
+        long bytesBefore = AllocationStats.getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            stage.run(cells, convertedCells);
+        }
+        long nsPerFix = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+        long bytesAfter = AllocationStats.getAllocatedBytes();
+        long bytesPerFix = (bytesBefore < 0 || bytesAfter < 0) ? -1 : (bytesAfter - bytesBefore) / MEASURED_ITERATIONS;
+        Timber.i("measure(): %s, %s cells, %s: %s ns/fix, %s bytes/fix", parser, cellsPerFix, stageName, nsPerFix, bytesPerFix);
+        report.append(parser).append(',')
+                .append(cellsPerFix).append(',')
+                .append(stageName).append(',')
+                .append(nsPerFix).append(',')
+                .append(bytesPerFix).append('\n');
+    }
+
+    private static <T> List<T> repeat(List<T> source, int count) {
+        List<T> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(source.get(i % source.size()));
+        }
+        return result;
+    }
+
+    private static boolean saveReport(String report) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("saveReport(): Storage access denied");
+            return false;
+        }
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                outputStream.write(report.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        };
+        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, REPORT_FILE_NAME);
+        return result.getResultType() == WriteResultType.Success;
+    }
+
+    private static void showToast(Context context, String message) {
+        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(context, message, Toast.LENGTH_LONG).show());
+    }
+}
@@ -0,0 +1,307 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.files.formatters.csv.CsvUploadFormatter;
+import info.zamojski.soft.towercollector.files.formatters.csv.ICsvFormatter;
+import info.zamojski.soft.towercollector.files.formatters.json.IJsonFormatter;
+import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaUploadFormatter;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResultType;
+import info.zamojski.soft.towercollector.io.network.HttpClientProvider;
+import info.zamojski.soft.towercollector.io.network.IContentWriter;
+import info.zamojski.soft.towercollector.io.network.IUploadClient;
+import info.zamojski.soft.towercollector.io.network.MozillaUploadClient;
+import info.zamojski.soft.towercollector.io.network.OcidUploadClient;
+import info.zamojski.soft.towercollector.io.network.RequestResult;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import timber.log.Timber;
+
+/**
+ * Measures upload throughput against local mock server with simulated round trip time,
+ * comparing a new HTTP client created for every part with the shared client reusing connections.
+ * Then sends parts to OCID and MLS mock servers with different delays one after another and concurrently
+ * like the uploader does, where time of a part should be close to the slower server instead of the sum.
+ */
+public class UploadBenchmark {
+
+    private static final int PARTS = 40;
+    private static final int LOCATIONS_PER_PART = 85;
+    private static final int[] ROUND_TRIP_MILLIS = {0, 50, 150};
+    private static final int OCID_ROUND_TRIP_MILLIS = 50;
+    private static final int MLS_ROUND_TRIP_MILLIS = 150;
+    private static final long RANDOM_SEED = 20130417;
+    private static final String REPORT_FILE_NAME = "upload_benchmark.csv";
+
+    private interface ClientFactory {
+        IUploadClient create(String url);
+    }
+
+    public static void runBenchmark(Context context) {
+        new Thread(() -> {
+            Timber.d("runBenchmark(): Starting upload benchmark");
+            StringBuilder report = new StringBuilder();
+            try {
+                List<Measurement> measurements = createMeasurements();
+                IContentWriter csvContent = formatCsv(measurements);
+                IContentWriter jsonContent = formatJson(measurements);
+                int failures = benchmarkUpload(report, csvContent);
+                failures += benchmarkTargets(report, csvContent, jsonContent);
+                boolean saved = saveReport(report.toString());
+                Timber.d("runBenchmark(): Upload benchmark finished, %s failures, report saved = %s", failures, saved);
+                String message;
+                if (!saved)
+                    message = context.getString(R.string.storage_access_denied);
+                else if (failures > 0)
+                    message = "Upload benchmark had " + failures + " failed parts, see " + REPORT_FILE_NAME;
+                else
+                    message = "Upload benchmark saved to " + REPORT_FILE_NAME;
+                showToast(context, message);
+            } catch (Exception ex) {
+                Timber.e(ex, "runBenchmark(): Upload benchmark failed");
+                showToast(context, "Upload benchmark failed: " + ex.getMessage());
+            }
+        }, UploadBenchmark.class.getSimpleName()).start();
+    }
+
+    private static int benchmarkUpload(StringBuilder report, IContentWriter content) throws IOException {
+        report.append("client,round_trip_ms,parts,duration_ms,parts_per_second,kilobytes_per_second,sent_kilobytes,connections,failures\n");
+        int failures = 0;
+        for (int roundTripMillis : ROUND_TRIP_MILLIS) {
+            UploadDispatcher dispatcher = new UploadDispatcher(roundTripMillis);
+            MockWebServer server = startServer(dispatcher);
+            try {
+                failures += measure(report, "new_per_part", roundTripMillis, server, dispatcher, content,
+                        url -> new OcidUploadClient(HttpClientProvider.newClientBuilder().build(), url, "benchmark", "benchmark"));
+                failures += measure(report, "shared", roundTripMillis, server, dispatcher, content,
+                        url -> new OcidUploadClient(HttpClientProvider.getClient(), url, "benchmark", "benchmark"));
+                failures += measure(report, "shared_gzip", roundTripMillis, server, dispatcher, content,
+                        url -> new OcidUploadClient(HttpClientProvider.getClient(), url, "benchmark", "benchmark", true));
+            } finally {
+                server.shutdown();
+            }
+        }
+        return failures;
+    }
+
+    private static int benchmarkTargets(StringBuilder report, IContentWriter csvContent, IContentWriter jsonContent) throws IOException, InterruptedException {
+        report.append("\ntargets,ocid_round_trip_ms,mls_round_trip_ms,parts,duration_ms,milliseconds_per_part,failures\n");
+        int failures = 0;
+        MockWebServer ocidServer = startServer(new UploadDispatcher(OCID_ROUND_TRIP_MILLIS));
+        MockWebServer mlsServer = startServer(new UploadDispatcher(MLS_ROUND_TRIP_MILLIS));
+        ExecutorService targetExecutor = Executors.newSingleThreadExecutor();
+        try {
+            IUploadClient ocidClient = new OcidUploadClient(HttpClientProvider.getClient(), ocidServer.url("/measure/uploadCsv").toString(), "benchmark", "benchmark");
+            IUploadClient mlsClient = new MozillaUploadClient(HttpClientProvider.getClient(), mlsServer.url("/v2/geosubmit").toString());
+            // warm up connections to both servers
+            ocidClient.uploadMeasurements(csvContent);
+            mlsClient.uploadMeasurements(jsonContent);
+            failures += measureTargets(report, "sequential", ocidClient, csvContent, mlsClient, jsonContent, null);
+            failures += measureTargets(report, "concurrent", ocidClient, csvContent, mlsClient, jsonContent, targetExecutor);
+        } finally {
+            targetExecutor.shutdownNow();
+            ocidServer.shutdown();
+            mlsServer.shutdown();
+        }
+        return failures;
+    }
+
+    private static int measureTargets(StringBuilder report, String mode, IUploadClient ocidClient, IContentWriter csvContent, IUploadClient mlsClient, IContentWriter jsonContent, ExecutorService targetExecutor) throws InterruptedException {
+        int failures = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < PARTS; i++) {
+            RequestResult ocidResult;
+            RequestResult mlsResult;
+            if (targetExecutor != null) {
+                Future<RequestResult> mlsFuture = targetExecutor.submit(() -> mlsClient.uploadMeasurements(jsonContent));
+                ocidResult = ocidClient.uploadMeasurements(csvContent);
+                try {
+                    mlsResult = mlsFuture.get();
+                } catch (ExecutionException ex) {
+                    Timber.e(ex.getCause(), "measureTargets(): MLS upload failed");
+                    mlsResult = RequestResult.Failure;
+                }
+            } else {
+                ocidResult = ocidClient.uploadMeasurements(csvContent);
+                mlsResult = mlsClient.uploadMeasurements(jsonContent);
+            }
+            if (ocidResult != RequestResult.Success)
+                failures++;
+            if (mlsResult != RequestResult.Success)
+                failures++;
+        }
+        long durationMillis = Math.max((System.nanoTime() - start) / 1000000, 1);
+        long millisPerPart = durationMillis / PARTS;
+        Timber.i("measureTargets(): %s, OCID RTT %s ms, MLS RTT %s ms: %s parts in %s ms, %s ms per part, %s failures",
+                mode, OCID_ROUND_TRIP_MILLIS, MLS_ROUND_TRIP_MILLIS, PARTS, durationMillis, millisPerPart, failures);
+        report.append(mode).append(',')
+                .append(OCID_ROUND_TRIP_MILLIS).append(',')
+                .append(MLS_ROUND_TRIP_MILLIS).append(',')
+                .append(PARTS).append(',')
+                .append(durationMillis).append(',')
+                .append(millisPerPart).append(',')
+                .append(failures).append('\n');
+        return failures;
+    }
+
+    private static int measure(StringBuilder report, String clientName, int roundTripMillis, MockWebServer server, UploadDispatcher dispatcher, IContentWriter content, ClientFactory factory) {
+        String url = server.url("/measure/uploadCsv").toString();
+        // warm up class loading and the shared client so only connection handling is measured
+        factory.create(url).uploadMeasurements(content);
+        dispatcher.resetCounters();
+        int failures = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < PARTS; i++) {
+            // the same as uploader which creates a client for every part
+            IUploadClient client = factory.create(url);
+            if (client.uploadMeasurements(content) != RequestResult.Success)
+                failures++;
+        }
+        long durationMillis = Math.max((System.nanoTime() - start) / 1000000, 1);
+        long partsPerSecond = PARTS * 1000L / durationMillis;
+        long kilobytesPerSecond = dispatcher.getReceivedBytes() * 1000 / durationMillis / 1024;
+        Timber.i("measure(): %s client, RTT %s ms: %s parts in %s ms, %s parts/s, %s KB/s, %s connections, %s failures",
+                clientName, roundTripMillis, PARTS, durationMillis, partsPerSecond, kilobytesPerSecond, dispatcher.getConnectionCount(), failures);
+        report.append(clientName).append(',')
+                .append(roundTripMillis).append(',')
+                .append(PARTS).append(',')
+                .append(durationMillis).append(',')
+                .append(partsPerSecond).append(',')
+                .append(kilobytesPerSecond).append(',')
+                .append(dispatcher.getReceivedBytes() / 1024).append(',')
+                .append(dispatcher.getConnectionCount()).append(',')
+                .append(failures).append('\n');
+        return failures;
+    }
+
+    private static MockWebServer startServer(UploadDispatcher dispatcher) throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        return server;
+    }
+
+    private static List<Measurement> createMeasurements() {
+        Random random = new Random(RANDOM_SEED);
+        List<Measurement> measurements = new ArrayList<>(LOCATIONS_PER_PART);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < LOCATIONS_PER_PART; i++) {
+            MeasurementBuilder builder = new MeasurementBuilder()
+                    .setLocation(52 + random.nextDouble(), 19 + random.nextDouble(), 150 + random.nextDouble() * 50, 3 + random.nextFloat() * 20)
+                    .setMovement(random.nextFloat() * 360, random.nextFloat() * 30)
+                    .setTime(timestamp + i * 1000L);
+            if (i % 2 == 0) {
+                builder.setGsmCell(260, 6, 5114, 10558 + random.nextInt(100)).setGsmSignal(15, -83, Cell.UNKNOWN_SIGNAL, -83, 50);
+            } else {
+                builder.setLteCell(260, 6, 49101, 26888192 + random.nextInt(100), 172).setLteSignal(30, -110, 5, -110, -11, -80, 12, 10, 1850);
+            }
+            measurements.add(builder.build());
+        }
+        return measurements;
+    }
+
+    private static IContentWriter formatCsv(List<Measurement> measurements) {
+        // formatted while sending the same as uploader
+        ICsvFormatter formatter = new CsvUploadFormatter();
+        return writer -> {
+            writer.write(formatter.formatHeader());
+            for (Measurement m : measurements) {
+                formatter.writeEntry(m, writer);
+            }
+        };
+    }
+
+    private static IContentWriter formatJson(List<Measurement> measurements) {
+        IJsonFormatter formatter = new JsonMozillaUploadFormatter();
+        return writer -> formatter.writeList(measurements, writer);
+    }
+
+    private static boolean saveReport(String report) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("saveReport(): Storage access denied");
+            return false;
+        }
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                outputStream.write(report.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        };
+        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, REPORT_FILE_NAME);
+        return result.getResultType() == WriteResultType.Success;
+    }
+
+    private static void showToast(Context context, String message) {
+        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(context, message, Toast.LENGTH_LONG).show());
+    }
+
+    /**
+     * Accepts every upload after simulated round trip time and counts received bytes and opened connections.
+     */
+    private static class UploadDispatcher extends Dispatcher {
+
+        private final int roundTripMillis;
+        private final AtomicLong receivedBytes = new AtomicLong();
+        private final AtomicInteger connectionCount = new AtomicInteger();
+
+        private UploadDispatcher(int roundTripMillis) {
+            this.roundTripMillis = roundTripMillis;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            receivedBytes.addAndGet(request.getBodySize());
+            // first request on the connection
+            if (request.getSequenceNumber() == 0)
+                connectionCount.incrementAndGet();
+            return new MockResponse()
+                    .setHeadersDelay(roundTripMillis, TimeUnit.MILLISECONDS)
+                    .setBody("0,OK");
+        }
+
+        private long getReceivedBytes() {
+            return receivedBytes.get();
+        }
+
+        private int getConnectionCount() {
+            return connectionCount.get();
+        }
+
+        private void resetCounters() {
+            receivedBytes.set(0);
+            connectionCount.set(0);
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.greenrobot.eventbus.ThreadMode;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
@@ -59,11 +60,14 @@ import info.zamojski.soft.towercollector.broadcast.LocationModeOrProvidersChange
 import info.zamojski.soft.towercollector.collector.CollectorNotificationHelper;
 import info.zamojski.soft.towercollector.collector.MeasurementUpdater;
 import info.zamojski.soft.towercollector.collector.ParseResult;
+import info.zamojski.soft.towercollector.collector.SubscriptionCellInfoFilter;
 import info.zamojski.soft.towercollector.collector.TelephonyTriple;
+import info.zamojski.soft.towercollector.collector.converters.CellIdentityConverter;
 import info.zamojski.soft.towercollector.collector.parsers.MeasurementParser;
 import info.zamojski.soft.towercollector.collector.parsers.MeasurementParserFactory;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.SystemTimeValidator;
+import info.zamojski.soft.towercollector.collector.validators.specific.WcdmaCellValidator;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.GpsStatus;
 import info.zamojski.soft.towercollector.enums.KeepScreenOnMode;
@@ -121,6 +125,7 @@ public class CollectorService extends Service {
     private ExternalBroadcastSender externalBroadcastSender;
 
     private MeasurementUpdater measurementUpdater = new MeasurementUpdater();
+    private SubscriptionCellInfoFilter subscriptionCellInfoFilter = new SubscriptionCellInfoFilter(new CellIdentityConverter(new WcdmaCellValidator()));
 
     private float lastGpsAccuracy;
     private LocationValidator locationValidator;
@@ -177,7 +182,7 @@ public class CollectorService extends Service {
                     Timber.d("onCreate(): Multi SIM - %s active subscriptions found", activeSubscriptions.size());
                     for (SubscriptionInfo subscription : activeSubscriptions) {
                         TelephonyManager telephonyManager = defaultTelephonyManager.createForSubscriptionId(subscription.getSubscriptionId());
-                        telephonyTriples.add(new TelephonyTriple(telephonyManager));
+                        telephonyTriples.add(new TelephonyTriple(telephonyManager, subscription.getSubscriptionId()));
                     }
                     // if due to some stupid bug active subscription don't have telephony manager
                     if (telephonyTriples.isEmpty()) {
@@ -319,6 +324,7 @@ public class CollectorService extends Service {
         }
         if (measurementParser != null) {
             measurementParser.stop();
+            Timber.d("onDestroy(): %s of %s near-duplicate measurements suppressed", measurementParser.getSuppressedMeasurementsCount(), measurementParser.getCheckedMeasurementsCount());
         }
         if (externalBroadcastSender != null) {
             externalBroadcastSender.stop();
@@ -358,6 +364,10 @@ public class CollectorService extends Service {
         AnalyticsStatistics stats = new AnalyticsStatistics();
         stats.setLocations(numberOfCollectedLocations);
         stats.setCells(numberOfCollectedCells);
+        if (measurementParser != null) {
+            stats.setCheckedLocations(measurementParser.getCheckedMeasurementsCount());
+            stats.setSuppressedLocations(measurementParser.getSuppressedMeasurementsCount());
+        }
         MyApplication.getAnalytics().sendCollectorFinished(startIntentSource, transportMode.name(), apiVersionUsed, duration, stats, collectedCellTypes);
         super.onDestroy();
     }
@@ -408,12 +418,14 @@ public class CollectorService extends Service {
     private void registerApi17PhoneStateListener() {
         Timber.d("registerApi17PhoneStateListener(): Registering API 17 phone state listener");
         boolean collectNeighboringCells = MyApplication.getPreferencesProvider().getCollectNeighboringCells();
-        measurementParser = new MeasurementParserFactory().CreateApi17Parser(transportMode.getAccuracy(), collectNeighboringCells);
+        boolean suppressNearDuplicates = MyApplication.getPreferencesProvider().getSuppressNearDuplicateMeasurements();
+        measurementParser = new MeasurementParserFactory().CreateApi17Parser(transportMode.getAccuracy(), collectNeighboringCells, suppressNearDuplicates);
         getMeasurementParserHandler().post(measurementParser);
         int telephonyManagerIndex = 0;
         for (TelephonyTriple telephonyTriple : telephonyTriples) {
             TelephonyManager telephonyManager = telephonyTriple.getTelephonyManager();
-            // callback is registered for all sim cards but it's hard to union 2 data sets reported at different time to process them as one, so calling getAllCellInfo to get at least partially refreshed data in a single call
+            int subscriptionId = telephonyTriple.getSubscriptionId();
+            // callback is registered for all sim cards, cells reported by every subscription at different time are kept separately and merged by the updater
             final int finalTelephonyManagerIndex = telephonyManagerIndex;
             PhoneStateListener phoneStateListener = new PhoneStateListener() {
                 private final String INNER_TAG = CollectorService.class.getSimpleName() + ".Api17Plus" + PhoneStateListener.class.getSimpleName() + "ForIndex" + finalTelephonyManagerIndex;
@@ -426,14 +438,8 @@ public class CollectorService extends Service {
                     } else {
                         Timber.tag(INNER_TAG).d("onCellInfoChanged(): Cell info changed: %s ", cellInfo);
                     }
-                    try {
-                        List<CellInfo> allCellInfo = telephonyManager.getAllCellInfo();
-                        Timber.tag(INNER_TAG).d("onCellInfoChanged(): Number of cells changed: %s, ignoring result from this subscription only, passing %s cells instead", cellInfo.size(), allCellInfo == null ? "null" : allCellInfo.size());
-                        processCellInfo(allCellInfo);
-                    } catch (SecurityException ex) {
-                        Timber.tag(INNER_TAG).e(ex, "onCellInfoChanged(): Coarse location or phone permission is denied");
-                        stopSelf();
-                    }
+                    Timber.tag(INNER_TAG).d("onCellInfoChanged(): Number of cells changed: %s for subscription %s", cellInfo.size(), subscriptionId);
+                    processCellInfo(subscriptionId, cellInfo);
                 }
             };
             try {
@@ -445,7 +451,7 @@ public class CollectorService extends Service {
             }
 
             if (MobileUtils.isApi29Limited()) {
-                // callback is registered for all sim cards but it's hard to union 2 data sets reported at different time to process them as one, so calling getAllCellInfo to get at least partially refreshed data in a single call
+                // callback is registered for all sim cards, cells reported by every subscription at different time are kept separately and merged by the updater
                 TelephonyManager.CellInfoCallback cellInfoUpdateRequestCallback = new TelephonyManager.CellInfoCallback() {
                     private final String INNER_TAG = CollectorService.class.getSimpleName() + "." + TelephonyManager.CellInfoCallback.class.getSimpleName();
 
@@ -457,14 +463,8 @@ public class CollectorService extends Service {
                         } else {
                             Timber.tag(INNER_TAG).d("onCellInfo(): Cell info update result: %s ", cellInfo);
                         }
-                        try {
-                            List<CellInfo> allCellInfo = telephonyManager.getAllCellInfo();
-                            Timber.tag(INNER_TAG).d("onCellInfo(): Number of cells updated: %s, ignoring result from this subscription only, passing %s cells instead", cellInfo.size(), allCellInfo == null ? "null" : allCellInfo.size());
-                            processCellInfo(allCellInfo);
-                        } catch (SecurityException ex) {
-                            Timber.tag(INNER_TAG).e(ex, "onCellInfo(): Coarse location or phone permission is denied");
-                            stopSelf();
-                        }
+                        Timber.tag(INNER_TAG).d("onCellInfo(): Number of cells updated: %s for subscription %s", cellInfo.size(), subscriptionId);
+                        processCellInfo(subscriptionId, cellInfo);
                     }
 
                     @Override
@@ -484,7 +484,6 @@ public class CollectorService extends Service {
             @Override
             public void run() {
                 try {
-                    List<CellInfo> cellInfo;
                     if (MobileUtils.isApi29Limited()) {
                         for (TelephonyTriple telephonyTriple : telephonyTriples) {
                             TelephonyManager telephonyManager = telephonyTriple.getTelephonyManager();
@@ -493,14 +492,28 @@ public class CollectorService extends Service {
                             telephonyManager.requestCellInfoUpdate(getMainExecutor(), cellInfoUpdateRequestCallback);
                         }
                     } else {
-                        // value should be refreshed on the call
-                        cellInfo = telephonyTriples.get(0).getTelephonyManager().getAllCellInfo();
-                        if (cellInfo == null) {
-                            Timber.tag(INNER_TAG).d("run(): Null reported");
+                        // value should be refreshed on the call, all subscriptions are passed at once to process them as one measurement
+                        Map<Integer, List<CellInfo>> cellInfoBySubscription = new LinkedHashMap<>(telephonyTriples.size());
+                        boolean keepUnknownOperator = true;
+                        for (TelephonyTriple telephonyTriple : telephonyTriples) {
+                            TelephonyManager telephonyManager = telephonyTriple.getTelephonyManager();
+                            List<CellInfo> cellInfo = telephonyManager.getAllCellInfo();
+                            if (cellInfo == null) {
+                                Timber.tag(INNER_TAG).d("run(): Null reported for subscription %s", telephonyTriple.getSubscriptionId());
+                                continue;
+                            }
+                            if (telephonyTriples.size() > 1) {
+                                // cells of all radios are returned, only cells of the subscription are kept to tag them correctly
+                                cellInfo = subscriptionCellInfoFilter.filter(cellInfo, telephonyManager.getNetworkOperator(), keepUnknownOperator);
+                                keepUnknownOperator = false;
+                            }
+                            Timber.tag(INNER_TAG).d("run(): Number of cells: %s for subscription %s", cellInfo.size(), telephonyTriple.getSubscriptionId());
+                            cellInfoBySubscription.put(telephonyTriple.getSubscriptionId(), cellInfo);
+                        }
+                        if (cellInfoBySubscription.isEmpty()) {
                             return;
                         }
-                        Timber.tag(INNER_TAG).d("run(): Number of cells: %s", cellInfo.size());
-                        processCellInfo(cellInfo);
+                        processCellInfo(cellInfoBySubscription);
                     }
                 } catch (SecurityException ex) {
                     Timber.tag(INNER_TAG).e(ex, "run(): coarse location or phone permission is denied");
@@ -514,7 +527,8 @@ public class CollectorService extends Service {
     private void registerApi1PhoneStateListener() {
         Timber.d("registerApi1PhoneStateListener(): Registering API 1 phone state listener");
         boolean collectNeighboringCells = MyApplication.getPreferencesProvider().getCollectNeighboringCells();
-        measurementParser = new MeasurementParserFactory().CreateApi1Parser(transportMode.getAccuracy(), collectNeighboringCells);
+        boolean suppressNearDuplicates = MyApplication.getPreferencesProvider().getSuppressNearDuplicateMeasurements();
+        measurementParser = new MeasurementParserFactory().CreateApi1Parser(transportMode.getAccuracy(), collectNeighboringCells, suppressNearDuplicates);
         getMeasurementParserHandler().post(measurementParser);
         TelephonyTriple telephonyTriple = telephonyTriples.get(0);
         TelephonyManager telephonyManager = telephonyTriple.getTelephonyManager();
@@ -579,7 +593,8 @@ public class CollectorService extends Service {
         Timber.d("registerNetMonsterListener(): Registering NetMonster Core listener");
         INetMonster netMonster = MobileUtils.getNetMonsterCore(MyApplication.getApplication());
         boolean collectNeighboringCells = MyApplication.getPreferencesProvider().getCollectNeighboringCells();
-        measurementParser = new MeasurementParserFactory().CreateNetMonsterParser(transportMode.getAccuracy(), collectNeighboringCells);
+        boolean suppressNearDuplicates = MyApplication.getPreferencesProvider().getSuppressNearDuplicateMeasurements();
+        measurementParser = new MeasurementParserFactory().CreateNetMonsterParser(transportMode.getAccuracy(), collectNeighboringCells, suppressNearDuplicates);
         getMeasurementParserHandler().post(measurementParser);
 
         // run scheduled cell listener
@@ -605,8 +620,12 @@ public class CollectorService extends Service {
         apiVersionUsed = 100;
     }
 
-    private void processCellInfo(List<CellInfo> cellInfo) {
-        measurementUpdater.setLastCellInfo(cellInfo);
+    private void processCellInfo(int subscriptionId, List<CellInfo> cellInfo) {
+        measurementUpdater.setLastCellInfo(subscriptionId, cellInfo);
+    }
+
+    private void processCellInfo(Map<Integer, List<CellInfo>> cellInfoBySubscription) {
+        measurementUpdater.setLastCellInfo(cellInfoBySubscription);
     }
 
     private void processNetMonsterCell(List<ICell> cells) {
@@ -752,7 +771,7 @@ public class CollectorService extends Service {
             conditionsNotAchievedCounter = CONDITIONS_NOT_ACHIEVED_COUNTER_INIT;
             return;
         } else if (result == ParseResult.AccuracyNotAchieved || result == ParseResult.NoNetworkSignal
-                || result == ParseResult.DistanceNotAchieved) {
+                || result == ParseResult.DistanceNotAchieved || result == ParseResult.NearDuplicateSuppressed) {
             if (currentIntervalValue.get() != transportMode.getMaxTime()) {
                 if (conditionsNotAchievedCounter <= 0) {
                     Timber.d("updateDynamicInterval(): GPS reconnected with max interval: %s because of fail: %s", transportMode.getMaxTime(), result);
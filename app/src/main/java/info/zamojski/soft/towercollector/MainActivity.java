@@ -1219,6 +1219,8 @@ public class MainActivity extends AppCompatActivity
             kmlExportCheckbox.setChecked(recentFileTypes.contains(FileType.Kml));
             final CheckBox kmzExportCheckbox = dialogLayout.findViewById(R.id.kmz_export_dialog_checkbox);
             kmzExportCheckbox.setChecked(recentFileTypes.contains(FileType.Kmz));
+            final CheckBox columnarExportCheckbox = dialogLayout.findViewById(R.id.columnar_export_dialog_checkbox);
+            columnarExportCheckbox.setChecked(recentFileTypes.contains(FileType.Columnar));
             final CheckBox csvOcidExportCheckbox = dialogLayout.findViewById(R.id.csv_ocid_export_dialog_checkbox);
             csvOcidExportCheckbox.setChecked(recentFileTypes.contains(FileType.CsvOcid));
             final CheckBox jsonMlsExportCheckbox = dialogLayout.findViewById(R.id.json_mls_export_dialog_checkbox);
@@ -1239,6 +1241,8 @@ public class MainActivity extends AppCompatActivity
                     selectedFileTypes.add(FileType.Kml);
                 if (kmzExportCheckbox.isChecked())
                     selectedFileTypes.add(FileType.Kmz);
+                if (columnarExportCheckbox.isChecked())
+                    selectedFileTypes.add(FileType.Columnar);
                 if (csvOcidExportCheckbox.isChecked())
                     selectedFileTypes.add(FileType.CsvOcid);
                 if (jsonMlsExportCheckbox.isChecked())
@@ -9,6 +9,7 @@ public class Parameter {
     public static final String Action = "Action";
     public static final String AppTheme = "AppTheme";
     public static final String Cells = "Cells";
+    public static final String CheckedLocations = "CheckedLocations";
     public static final String CollectorApiVersion = "ApiVersion";
     public static final String Days = "Days";
     public static final String DbVersion = "DbVersion";
@@ -21,5 +22,6 @@ public class Parameter {
     public static final String MeansOfTransport = "MeansOfTransport";
     public static final String NetworkType = "NetworkType";
     public static final String Source = "Source";
+    public static final String SuppressedLocations = "SuppressedLocations";
     public static final String Target = "Target";
 }
@@ -12,6 +12,7 @@ import android.widget.Toast;
 
 import androidx.core.content.ContextCompat;
 import androidx.work.Data;
+import androidx.work.BackoffPolicy;
 import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkManager;
 import androidx.work.WorkRequest;
@@ -19,16 +20,23 @@ import androidx.work.WorkRequest;
 import org.acra.ACRA;
 import org.greenrobot.eventbus.EventBus;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import info.zamojski.soft.towercollector.CollectorService;
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
 import info.zamojski.soft.towercollector.analytics.IntentSource;
 import info.zamojski.soft.towercollector.enums.FileType;
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
 import info.zamojski.soft.towercollector.events.CollectorStartedEvent;
 import info.zamojski.soft.towercollector.export.ExportWorker;
+import info.zamojski.soft.towercollector.model.Boundaries;
+import info.zamojski.soft.towercollector.model.ExportFilter;
 import info.zamojski.soft.towercollector.providers.preferences.PreferencesProvider;
+import info.zamojski.soft.towercollector.uploader.PeriodicUploadScheduler;
 import info.zamojski.soft.towercollector.uploader.UploaderWorker;
 import info.zamojski.soft.towercollector.utils.ApkUtils;
 import info.zamojski.soft.towercollector.utils.BackgroundTaskHelper;
@@ -50,6 +58,12 @@ public class ExternalBroadcastReceiver extends BroadcastReceiver {
     private static final String exportStartAction = "info.zamojski.soft.towercollector.EXPORT_START";
     public static final String ExportStopAction = "info.zamojski.soft.towercollector.EXPORT_STOP";
 
+    private static final String exportMeasuredFromExtra = "measured_from";
+    private static final String exportMeasuredToExtra = "measured_to";
+    private static final String exportBoundsExtra = "bounds";
+    private static final String exportNetworkTypesExtra = "network_types";
+    private static final String exportServingOnlyExtra = "serving_only";
+
     @Override
     public void onReceive(Context context, Intent intent) {
         String action = intent.getAction();
@@ -60,9 +74,19 @@ public class ExternalBroadcastReceiver extends BroadcastReceiver {
         } else if (uploaderStartAction.equals(action)) {
             startUploaderWorker(context, IntentSource.Application);
         } else if (UploaderStopAction.equals(action)) {
-            stopUploaderWorker(context);
+            // periodic upload is stopped in background, receiver is kept alive until it finishes
+            PendingResult pendingResult = goAsync();
+            stopUploaderWorker(context, pendingResult::finish);
         } else if (exportStartAction.equals(action)) {
-            startExportWorker(context, IntentSource.Application);
+            ExportFilter filter;
+            try {
+                filter = getExportFilter(intent);
+            } catch (IllegalArgumentException ex) {
+                Timber.w(ex, "onReceive(): Invalid export filter");
+                Toast.makeText(context, context.getString(R.string.export_toast_invalid_filter, ex.getMessage()), Toast.LENGTH_LONG).show();
+                return;
+            }
+            startExportWorker(context, IntentSource.Application, filter);
         } else if (ExportStopAction.equals(action)) {
             stopExportWorker(context);
         } else if (Intent.ACTION_BOOT_COMPLETED.equals(action) || quickBootPowerOnAction.equals(action)) {
@@ -144,6 +168,8 @@ public class ExternalBroadcastReceiver extends BroadcastReceiver {
                         .putBoolean(UploaderWorker.INTENT_KEY_UPLOAD_TRY_REUPLOAD, isReuploadIfUploadFailsEnabled)
                         .putString(UploaderWorker.INTENT_KEY_START_INTENT_SOURCE, source.name())
                         .build())
+                // retried when all targets failed temporarily
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, UploaderWorker.RETRY_BACKOFF_DELAY_MILLIS, TimeUnit.MILLISECONDS)
                 .addTag(UploaderWorker.WORKER_TAG)
                 .build();
         // TODO attach to main window and start from there to block the screen when you starting from QS when app is open
@@ -153,22 +179,31 @@ public class ExternalBroadcastReceiver extends BroadcastReceiver {
     }
 
     public void stopUploaderWorker(Context context) {
+        stopUploaderWorker(context, null);
+    }
+
+    private void stopUploaderWorker(Context context, Runnable onFinished) {
         Timber.d("stopUploaderWorker(): Stopping worker from broadcast");
         WorkManager.getInstance(MyApplication.getApplication())
                 .cancelAllWorkByTag(UploaderWorker.WORKER_TAG);
+        PeriodicUploadScheduler.stopRunningUpload(context, onFinished);
         ApkUtils.reportShortcutUsage(context, R.string.shortcut_id_uploader_toggle);
     }
 
     public void startExportWorker(Context context, IntentSource source) {
+        startExportWorker(context, source, ExportFilter.NONE);
+    }
+
+    public void startExportWorker(Context context, IntentSource source, ExportFilter filter) {
         if (!canStartBackgroundService(context))
             return;
-        Timber.d("startExportWorker(): Starting worker from broadcast");
+        Timber.d("startExportWorker(): Starting worker from broadcast with %s", filter);
         List<FileType> recentFileTypes = MyApplication.getPreferencesProvider().getEnabledExportFileTypes();
+        Data.Builder inputDataBuilder = new Data.Builder()
+                .putStringArray(ExportWorker.SELECTED_FILE_TYPES, FileType.toNames(recentFileTypes).toArray(new String[0]))
+                .putString(ExportWorker.INTENT_SOURCE, source.name());
         WorkRequest exportWorkRequest = new OneTimeWorkRequest.Builder(ExportWorker.class)
-                .setInputData(new Data.Builder()
-                        .putStringArray(ExportWorker.SELECTED_FILE_TYPES, FileType.toNames(recentFileTypes).toArray(new String[0]))
-                        .putString(ExportWorker.INTENT_SOURCE, source.name())
-                        .build())
+                .setInputData(ExportWorker.putExportFilter(inputDataBuilder, filter).build())
                 .addTag(ExportWorker.WORKER_TAG)
                 .build();
         // TODO attach to main window and start from there to block the screen when you starting from QS when app is open
@@ -184,6 +219,65 @@ public class ExternalBroadcastReceiver extends BroadcastReceiver {
         ApkUtils.reportShortcutUsage(context, R.string.shortcut_id_export_toggle);
     }
 
+    private ExportFilter getExportFilter(Intent intent) {
+        Long measuredFrom = getLongExtra(intent, exportMeasuredFromExtra);
+        Long measuredTo = getLongExtra(intent, exportMeasuredToExtra);
+        if (measuredFrom != null && measuredTo != null && measuredFrom > measuredTo)
+            throw new IllegalArgumentException(exportMeasuredToExtra);
+        Boundaries boundaries = null;
+        String bounds = getStringExtra(intent, exportBoundsExtra);
+        if (bounds != null) {
+            String[] values = bounds.split(",");
+            if (values.length != 4)
+                throw new IllegalArgumentException(exportBoundsExtra);
+            try {
+                boundaries = new Boundaries(Double.parseDouble(values[0].trim()), Double.parseDouble(values[1].trim()),
+                        Double.parseDouble(values[2].trim()), Double.parseDouble(values[3].trim()));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(exportBoundsExtra, ex);
+            }
+            if (boundaries.getMinLat() > boundaries.getMaxLat() || boundaries.getMinLon() > boundaries.getMaxLon())
+                throw new IllegalArgumentException(exportBoundsExtra);
+        }
+        Set<NetworkGroup> networkGroups = EnumSet.noneOf(NetworkGroup.class);
+        String networkTypes = getStringExtra(intent, exportNetworkTypesExtra);
+        if (networkTypes != null) {
+            for (String networkType : networkTypes.split(",")) {
+                NetworkGroup networkGroup = findNetworkGroup(networkType.trim());
+                if (networkGroup == null)
+                    throw new IllegalArgumentException(exportNetworkTypesExtra);
+                networkGroups.add(networkGroup);
+            }
+        }
+        boolean servingOnly = Boolean.parseBoolean(getStringExtra(intent, exportServingOnlyExtra));
+        return new ExportFilter(measuredFrom, measuredTo, boundaries, networkGroups, servingOnly);
+    }
+
+    private Long getLongExtra(Intent intent, String name) {
+        String value = getStringExtra(intent, name);
+        if (value == null)
+            return null;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(name, ex);
+        }
+    }
+
+    private String getStringExtra(Intent intent, String name) {
+        // extras sent from shell or automation apps can be typed differently
+        Object value = (intent.getExtras() != null ? intent.getExtras().get(name) : null);
+        return (value != null ? String.valueOf(value) : null);
+    }
+
+    private NetworkGroup findNetworkGroup(String name) {
+        for (NetworkGroup networkGroup : NetworkGroup.values()) {
+            if (networkGroup.name().equalsIgnoreCase(name))
+                return networkGroup;
+        }
+        return null;
+    }
+
     private boolean canStartBackgroundService(Context context) {
         String runningTaskClassName = MyApplication.getBackgroundTaskName();
         if (runningTaskClassName != null) {
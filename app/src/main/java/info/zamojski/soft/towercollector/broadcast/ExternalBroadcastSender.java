@@ -9,7 +9,6 @@ import android.content.Intent;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
-import org.json.JSONException;
 
 import java.util.Collections;
 import java.util.List;
@@ -41,7 +40,7 @@ public class ExternalBroadcastSender implements Runnable {
             intent.putExtra(MEASUREMENTS_EXTRA_KEY, extra);
             MyApplication.getApplication().sendBroadcast(intent);
             Timber.d("sendMeasurementsCollectedBroadcast(): Broadcast %s", extra);
-        } catch (JSONException ex) {
+        } catch (IllegalArgumentException ex) {
             Timber.e(ex, "sendMeasurementsCollectedBroadcast(): Failed to serialize list of measurements to JSON");
         }
     }
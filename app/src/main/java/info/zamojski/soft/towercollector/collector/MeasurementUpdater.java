@@ -4,8 +4,15 @@
 
 package info.zamojski.soft.towercollector.collector;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.greenrobot.eventbus.EventBus;
 
@@ -14,6 +21,8 @@ import info.zamojski.soft.towercollector.enums.NetworkGroup;
 import info.zamojski.soft.towercollector.events.Api17PlusMeasurementProcessingEvent;
 import info.zamojski.soft.towercollector.events.LegacyMeasurementProcessingEvent;
 import info.zamojski.soft.towercollector.events.NetMonsterMeasurementProcessingEvent;
+import info.zamojski.soft.towercollector.uploader.IClock;
+import info.zamojski.soft.towercollector.uploader.RealClock;
 import timber.log.Timber;
 
 import android.location.Location;
@@ -27,104 +36,194 @@ import android.telephony.gsm.GsmCellLocation;
 public class MeasurementUpdater {
 
 
-    private final List<NeighboringCellInfo> EMPTY_NEIGHBORING_CELL_LIST = new ArrayList<NeighboringCellInfo>(0);
+    private static final List<NeighboringCellInfo> EMPTY_NEIGHBORING_CELL_LIST = new ArrayList<NeighboringCellInfo>(0);
+    private static final List<CellInfo> EMPTY_CELL_INFO_LIST = new ArrayList<CellInfo>(0);
 
-    private Location lastLocation;
-    private long lastLocationObtainedTime;
+    // cells of a subscription which stopped reporting are not merged into new measurements after this time
+    static final long MAX_CELL_INFO_LANE_AGE = 30000; // milliseconds
 
-    private NetworkGroup lastNetworkType;
-    private String lastOperatorCode;
-    private String lastOperatorName;
+    /**
+     * Current state, replaced as a whole on every update so that callbacks from different threads never block each other
+     * and readiness is always checked against a consistent snapshot.
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(new State());
 
-    private List<CellInfo> lastCellInfo;
+    private final EventBus eventBus;
+    private final IClock clock;
 
-    private List<ICell> netMonsterCells;
+    private final Object postLock = new Object();
+    /**
+     * Version of the last snapshot queued for processing, guarded by postLock. Events are posted in order of versions
+     * so that a snapshot delayed by its thread is never processed after a newer one.
+     */
+    private long postedVersion;
+    // events waiting to be posted in order of versions, guarded by postLock
+    private final Queue<Object> pendingEvents = new ArrayDeque<>();
+    // whether any thread is posting pending events, guarded by postLock
+    private boolean posting;
 
-    private SignalStrength lastSignalStrength;
-    private CellLocation lastCellLocation;
-    private List<NeighboringCellInfo> neighboringCells;
+    public MeasurementUpdater() {
+        this(EventBus.getDefault());
+    }
+
+    public MeasurementUpdater(EventBus eventBus) {
+        this(eventBus, new RealClock());
+    }
 
-    private int minDistance;
+    public MeasurementUpdater(EventBus eventBus, IClock clock) {
+        this.eventBus = eventBus;
+        this.clock = clock;
+    }
 
-    public synchronized void setLastLocation(Location location, long locationObtainedTime) {
+    public void setLastLocation(Location location, long locationObtainedTime) {
         Timber.d("setLastLocation(): Location updated: %s obtained at %s", location, locationObtainedTime);
-        this.lastLocation = location;
-        this.lastLocationObtainedTime = locationObtainedTime;
-        notifyIfReadyToProcess();
+        State newState = update(current -> current.withLocation(location, locationObtainedTime));
+        notifyIfReadyToProcess(newState);
     }
 
-    public synchronized void setLastCellInfo(List<CellInfo> cellInfo) {
-        Timber.d("setLastCellInfo(): Cell info updated: %s ", cellInfo);
-        this.lastCellInfo = cellInfo;
-        notifyIfReadyToProcess();
+    /**
+     * Updates cells reported by a single subscription, cells of other subscriptions are kept
+     * and merged into one measurement when ready to process. Subscriptions report one after another,
+     * so the measurement is processed when all of them reported since the last one, not for every subscription.
+     */
+    public void setLastCellInfo(int subscriptionId, List<CellInfo> cellInfo) {
+        Timber.d("setLastCellInfo(): Cell info updated for subscription %s: %s ", subscriptionId, cellInfo);
+        Map<Integer, List<CellInfo>> cellInfoBySubscription = new LinkedHashMap<>(1);
+        cellInfoBySubscription.put(subscriptionId, cellInfo);
+        State newState = update(current -> current.withCellInfo(cellInfoBySubscription, clock.currentTimeMillis()));
+        notifyIfReadyToProcess(newState, true);
+    }
+
+    /**
+     * Updates cells reported by many subscriptions at once so that only one measurement is processed for all of them.
+     */
+    public void setLastCellInfo(Map<Integer, List<CellInfo>> cellInfoBySubscription) {
+        Timber.d("setLastCellInfo(): Cell info updated for %s subscriptions", cellInfoBySubscription.size());
+        State newState = update(current -> current.withCellInfo(cellInfoBySubscription, clock.currentTimeMillis()));
+        notifyIfReadyToProcess(newState);
     }
 
     public void setLastNetMonsterCell(List<ICell> cells) {
         Timber.d("setLastNetMonsterCell(): Cell updated: %s ", cells);
-        this.netMonsterCells = cells;
-        notifyIfReadyToProcess();
+        State newState = update(current -> current.withNetMonsterCells(cells));
+        notifyIfReadyToProcess(newState);
     }
 
-    public synchronized void setLastCellLocation(CellLocation cellLocation, NetworkGroup networkType,
-                                                 String operatorCode, String operatorName, List<NeighboringCellInfo> neighboringCells) {
+    public void setLastCellLocation(CellLocation cellLocation, NetworkGroup networkType,
+                                    String operatorCode, String operatorName, List<NeighboringCellInfo> neighboringCells) {
         Timber.d("setLastCellLocation(): Cell location updated: %s, network type: %s, operator code: %s, operator name: %s", cellLocation, networkType, operatorCode, operatorName);
-        // check if any changes
-        boolean cellChanged = (!isCellLocationEqual(lastCellLocation, cellLocation)
-                || lastNetworkType != networkType
-                || !lastOperatorCode.equals(operatorCode)
-                || !lastOperatorName.equals(operatorName));
-        // update last cell
-        this.lastCellLocation = cellLocation;
-        this.lastNetworkType = networkType;
-        this.lastOperatorCode = operatorCode;
-        this.lastOperatorName = operatorName;
-        this.neighboringCells = neighboringCells;
-        if (this.neighboringCells == null) {
-            this.neighboringCells = EMPTY_NEIGHBORING_CELL_LIST;
-        }
+        List<NeighboringCellInfo> nonNullNeighboringCells = (neighboringCells != null ? neighboringCells : EMPTY_NEIGHBORING_CELL_LIST);
+        State current;
+        State newState;
+        boolean cellChanged;
+        do {
+            current = state.get();
+            // check if any changes
+            cellChanged = (!isCellLocationEqual(current.lastCellLocation, cellLocation)
+                    || current.lastNetworkType != networkType
+                    || !current.lastOperatorCode.equals(operatorCode)
+                    || !current.lastOperatorName.equals(operatorName));
+            // update last cell
+            newState = current.withCellLocation(cellLocation, networkType, operatorCode, operatorName, nonNullNeighboringCells);
+        } while (!state.compareAndSet(current, newState));
         if (cellChanged) {
-            notifyIfReadyToProcess();
+            notifyIfReadyToProcess(newState);
         }
     }
 
-    public synchronized void setLastSignalStrength(SignalStrength signalStrength) {
+    public void setLastSignalStrength(SignalStrength signalStrength) {
         Timber.d("setLastSignalStrength(): Signal strength updated: %s", signalStrength);
-        this.lastSignalStrength = signalStrength;
+        update(current -> current.withSignalStrength(signalStrength));
     }
 
-    public synchronized void setMinDistanceAndInterval(int minDistance, int minInterval) {
+    public void setMinDistanceAndInterval(int minDistance, int minInterval) {
         Timber.d("setMinDistanceAndInterval(): Min distance: %s, interval: %s updated", minDistance, minInterval);
-        this.minDistance = minDistance;
+        update(current -> current.withMinDistance(minDistance));
     }
 
-    private void notifyIfReadyToProcess() {
-        if (isNetMonsterCompleted()) {
-            Timber.d("notifyIfReadyToProcess(): NetMonster collected");
-            NetMonsterMeasurementProcessingEvent event = new NetMonsterMeasurementProcessingEvent(lastLocation, new ArrayList<>(netMonsterCells), minDistance);
-            EventBus.getDefault().post(event);
-        } else if (isApi17PlusCompleted()) {
-            Timber.d("notifyIfReadyToProcess(): Api17Plus collected");
-            Api17PlusMeasurementProcessingEvent event = new Api17PlusMeasurementProcessingEvent(lastLocation, new ArrayList<>(lastCellInfo), minDistance);
-            EventBus.getDefault().post(event);
-        } else if (isLegacyCompleted()) {
-            Timber.d("notifyIfReadyToProcess(): Legacy collected");
-            LegacyMeasurementProcessingEvent event = new LegacyMeasurementProcessingEvent(lastLocation, lastLocationObtainedTime,
-                    lastCellLocation, lastSignalStrength, lastNetworkType, lastOperatorCode, lastOperatorName,
-                    new ArrayList<>(neighboringCells), minDistance);
-            EventBus.getDefault().post(event);
-        }
+    private State update(StateUpdate stateUpdate) {
+        State current;
+        State newState;
+        do {
+            current = state.get();
+            newState = stateUpdate.apply(current);
+        } while (!state.compareAndSet(current, newState));
+        return newState;
     }
 
-    private boolean isLegacyCompleted() {
-        return (lastLocation != null && lastCellLocation != null);
+    private void notifyIfReadyToProcess(State snapshot) {
+        notifyIfReadyToProcess(snapshot, false);
     }
 
-    private boolean isApi17PlusCompleted() {
-        return (lastLocation != null && lastCellInfo != null && lastCellInfo.size() > 0);
+    private void notifyIfReadyToProcess(State snapshot, boolean cellInfoUpdated) {
+        // parsers process events one by one in order of posting, so events are queued in order of snapshots
+        // and posted by one thread at a time outside of the lock, callbacks never wait for processing of other events
+        synchronized (postLock) {
+            if (snapshot.version <= postedVersion) {
+                Timber.d("notifyIfReadyToProcess(): Snapshot %s outdated by already posted %s", snapshot.version, postedVersion);
+                return;
+            }
+            Object event = createProcessingEvent(snapshot, cellInfoUpdated);
+            if (event == null)
+                return;
+            postedVersion = snapshot.version;
+            pendingEvents.add(event);
+            if (posting) {
+                Timber.d("notifyIfReadyToProcess(): Snapshot %s queued for posting", snapshot.version);
+                return;
+            }
+            posting = true;
+        }
+        postPendingEvents();
     }
 
-    private boolean isNetMonsterCompleted() {
-        return (lastLocation != null && netMonsterCells != null && netMonsterCells.size() > 0);
+    private void postPendingEvents() {
+        while (true) {
+            Object event;
+            synchronized (postLock) {
+                event = pendingEvents.poll();
+                if (event == null) {
+                    posting = false;
+                    return;
+                }
+            }
+            try {
+                eventBus.post(event);
+            } catch (RuntimeException ex) {
+                // let the next update post remaining events
+                synchronized (postLock) {
+                    posting = false;
+                }
+                throw ex;
+            }
+        }
+    }
+
+    private Object createProcessingEvent(State snapshot, boolean cellInfoUpdated) {
+        if (snapshot.isNetMonsterCompleted()) {
+            Timber.d("createProcessingEvent(): NetMonster collected");
+            return new NetMonsterMeasurementProcessingEvent(snapshot.lastLocation, new ArrayList<>(snapshot.netMonsterCells), snapshot.minDistance);
+        } else if (snapshot.isApi17PlusCompleted()) {
+            long now = clock.currentTimeMillis();
+            if (cellInfoUpdated && !snapshot.isCellInfoReportedSince(postedVersion, now)) {
+                Timber.d("createProcessingEvent(): Api17Plus waiting for other subscriptions");
+                return null;
+            }
+            Map<CellInfo, Integer> subscriptionIds = new IdentityHashMap<>();
+            List<CellInfo> cellInfo = snapshot.mergeCellInfo(now, subscriptionIds);
+            if (cellInfo.isEmpty()) {
+                Timber.d("createProcessingEvent(): Api17Plus cells outdated");
+                return null;
+            }
+            Timber.d("createProcessingEvent(): Api17Plus collected %s cells from %s subscriptions", cellInfo.size(), snapshot.lastCellInfo.size());
+            return new Api17PlusMeasurementProcessingEvent(snapshot.lastLocation, cellInfo, subscriptionIds, snapshot.minDistance);
+        } else if (snapshot.isLegacyCompleted()) {
+            Timber.d("createProcessingEvent(): Legacy collected");
+            return new LegacyMeasurementProcessingEvent(snapshot.lastLocation, snapshot.lastLocationObtainedTime,
+                    snapshot.lastCellLocation, snapshot.lastSignalStrength, snapshot.lastNetworkType, snapshot.lastOperatorCode, snapshot.lastOperatorName,
+                    new ArrayList<>(snapshot.neighboringCells), snapshot.minDistance);
+        }
+        return null;
     }
 
     private boolean isCellLocationEqual(CellLocation cl1, CellLocation cl2) {
@@ -150,4 +249,154 @@ public class MeasurementUpdater {
         }
         return result;
     }
+
+    private interface StateUpdate {
+        State apply(State current);
+    }
+
+    private static final class State {
+
+        // increased on every update, tells which of two snapshots is newer
+        private final long version;
+
+        private final Location lastLocation;
+        private final long lastLocationObtainedTime;
+
+        private final NetworkGroup lastNetworkType;
+        private final String lastOperatorCode;
+        private final String lastOperatorName;
+
+        private final Map<Integer, CellInfoLane> lastCellInfo;
+
+        private final List<ICell> netMonsterCells;
+
+        private final SignalStrength lastSignalStrength;
+        private final CellLocation lastCellLocation;
+        private final List<NeighboringCellInfo> neighboringCells;
+
+        private final int minDistance;
+
+        private State() {
+            this(0, null, 0, null, null, null, null, null, null, null, null, 0);
+        }
+
+        private State(long version, Location lastLocation, long lastLocationObtainedTime, NetworkGroup lastNetworkType,
+                      String lastOperatorCode, String lastOperatorName, Map<Integer, CellInfoLane> lastCellInfo, List<ICell> netMonsterCells,
+                      SignalStrength lastSignalStrength, CellLocation lastCellLocation, List<NeighboringCellInfo> neighboringCells,
+                      int minDistance) {
+            this.version = version;
+            this.lastLocation = lastLocation;
+            this.lastLocationObtainedTime = lastLocationObtainedTime;
+            this.lastNetworkType = lastNetworkType;
+            this.lastOperatorCode = lastOperatorCode;
+            this.lastOperatorName = lastOperatorName;
+            this.lastCellInfo = lastCellInfo;
+            this.netMonsterCells = netMonsterCells;
+            this.lastSignalStrength = lastSignalStrength;
+            this.lastCellLocation = lastCellLocation;
+            this.neighboringCells = neighboringCells;
+            this.minDistance = minDistance;
+        }
+
+        private State withLocation(Location location, long locationObtainedTime) {
+            return new State(version + 1, location, locationObtainedTime, lastNetworkType, lastOperatorCode, lastOperatorName,
+                    lastCellInfo, netMonsterCells, lastSignalStrength, lastCellLocation, neighboringCells, minDistance);
+        }
+
+        private State withCellInfo(Map<Integer, List<CellInfo>> cellInfoBySubscription, long updatedAt) {
+            // copy on write, map of the current state may be read concurrently
+            Map<Integer, CellInfoLane> cellInfo = (lastCellInfo != null ? new LinkedHashMap<>(lastCellInfo) : new LinkedHashMap<>());
+            for (Map.Entry<Integer, List<CellInfo>> entry : cellInfoBySubscription.entrySet()) {
+                List<CellInfo> cells = (entry.getValue() != null ? entry.getValue() : EMPTY_CELL_INFO_LIST);
+                cellInfo.put(entry.getKey(), new CellInfoLane(cells, updatedAt, version + 1));
+            }
+            return new State(version + 1, lastLocation, lastLocationObtainedTime, lastNetworkType, lastOperatorCode, lastOperatorName,
+                    Collections.unmodifiableMap(cellInfo), netMonsterCells, lastSignalStrength, lastCellLocation, neighboringCells, minDistance);
+        }
+
+        private State withNetMonsterCells(List<ICell> cells) {
+            return new State(version + 1, lastLocation, lastLocationObtainedTime, lastNetworkType, lastOperatorCode, lastOperatorName,
+                    lastCellInfo, cells, lastSignalStrength, lastCellLocation, neighboringCells, minDistance);
+        }
+
+        private State withCellLocation(CellLocation cellLocation, NetworkGroup networkType, String operatorCode,
+                                       String operatorName, List<NeighboringCellInfo> neighboringCells) {
+            return new State(version + 1, lastLocation, lastLocationObtainedTime, networkType, operatorCode, operatorName,
+                    lastCellInfo, netMonsterCells, lastSignalStrength, cellLocation, neighboringCells, minDistance);
+        }
+
+        private State withSignalStrength(SignalStrength signalStrength) {
+            return new State(version + 1, lastLocation, lastLocationObtainedTime, lastNetworkType, lastOperatorCode, lastOperatorName,
+                    lastCellInfo, netMonsterCells, signalStrength, lastCellLocation, neighboringCells, minDistance);
+        }
+
+        private State withMinDistance(int minDistance) {
+            return new State(version + 1, lastLocation, lastLocationObtainedTime, lastNetworkType, lastOperatorCode, lastOperatorName,
+                    lastCellInfo, netMonsterCells, lastSignalStrength, lastCellLocation, neighboringCells, minDistance);
+        }
+
+        private boolean isLegacyCompleted() {
+            return (lastLocation != null && lastCellLocation != null);
+        }
+
+        private boolean isApi17PlusCompleted() {
+            if (lastLocation == null || lastCellInfo == null)
+                return false;
+            for (CellInfoLane lane : lastCellInfo.values()) {
+                if (!lane.cellInfo.isEmpty())
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Checks if all up to date subscriptions reported cells after the snapshot of given version.
+         */
+        private boolean isCellInfoReportedSince(long version, long now) {
+            for (CellInfoLane lane : lastCellInfo.values()) {
+                if (now - lane.updatedAt <= MAX_CELL_INFO_LANE_AGE && lane.version <= version)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Returns up to date cells of all subscriptions in a single list and fills the subscription of every cell.
+         */
+        private List<CellInfo> mergeCellInfo(long now, Map<CellInfo, Integer> subscriptionIds) {
+            List<CellInfo> mergedCellInfo = new ArrayList<>();
+            for (Map.Entry<Integer, CellInfoLane> entry : lastCellInfo.entrySet()) {
+                CellInfoLane lane = entry.getValue();
+                if (now - lane.updatedAt > MAX_CELL_INFO_LANE_AGE) {
+                    Timber.d("mergeCellInfo(): Skipping outdated cells of subscription %s", entry.getKey());
+                    continue;
+                }
+                for (CellInfo cell : lane.cellInfo) {
+                    if (cell == null)
+                        continue;
+                    mergedCellInfo.add(cell);
+                    subscriptionIds.put(cell, entry.getKey());
+                }
+            }
+            return mergedCellInfo;
+        }
+
+        private boolean isNetMonsterCompleted() {
+            return (lastLocation != null && netMonsterCells != null && netMonsterCells.size() > 0);
+        }
+    }
+
+    private static final class CellInfoLane {
+
+        private final List<CellInfo> cellInfo;
+        private final long updatedAt;
+        // version of the snapshot which received the cells
+        private final long version;
+
+        private CellInfoLane(List<CellInfo> cellInfo, long updatedAt, long version) {
+            this.cellInfo = cellInfo;
+            this.updatedAt = updatedAt;
+            this.version = version;
+        }
+    }
 }
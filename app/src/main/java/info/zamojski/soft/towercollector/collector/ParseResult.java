@@ -5,5 +5,5 @@
 package info.zamojski.soft.towercollector.collector;
 
 public enum ParseResult {
-    AccuracyNotAchieved, NoNetworkSignal, DistanceNotAchieved, LocationTooOld, SaveFailed, Saved
+    AccuracyNotAchieved, NoNetworkSignal, DistanceNotAchieved, LocationTooOld, NearDuplicateSuppressed, SaveFailed, Saved
 }
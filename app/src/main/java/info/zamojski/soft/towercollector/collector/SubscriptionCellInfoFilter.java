@@ -0,0 +1,63 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector;
+
+import android.telephony.CellInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.collector.converters.CellIdentityConverter;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.utils.StringUtils;
+import timber.log.Timber;
+
+/**
+ * Keeps cells of a single subscription. TelephonyManager.getAllCellInfo returns cells of all radios
+ * even when the manager is created for a subscription, so cells are matched on operator of the network
+ * the subscription is registered to.
+ */
+public class SubscriptionCellInfoFilter {
+
+    private final CellIdentityConverter cellIdentityConverter;
+
+    public SubscriptionCellInfoFilter(CellIdentityConverter cellIdentityConverter) {
+        this.cellIdentityConverter = cellIdentityConverter;
+    }
+
+    /**
+     * @param networkOperator     MCC and MNC of the registered network as returned by TelephonyManager.getNetworkOperator
+     * @param keepUnknownOperator whether to keep cells without MCC and MNC (usually neighboring cells), which can't be assigned
+     *                            to any subscription and should be kept by one of them only
+     */
+    public List<CellInfo> filter(List<CellInfo> cellInfo, String networkOperator, boolean keepUnknownOperator) {
+        int mcc = Cell.UNKNOWN_CID;
+        int mnc = Cell.UNKNOWN_CID;
+        if (networkOperator != null && networkOperator.length() > 3) {
+            mcc = StringUtils.toInteger(networkOperator.substring(0, 3), Cell.UNKNOWN_CID);
+            mnc = StringUtils.toInteger(networkOperator.substring(3), Cell.UNKNOWN_CID);
+        }
+        List<CellInfo> subscriptionCellInfo = new ArrayList<>(cellInfo.size());
+        for (CellInfo cell : cellInfo) {
+            if (cell == null)
+                continue;
+            Cell convertedCell;
+            try {
+                convertedCell = cellIdentityConverter.convert(cell);
+            } catch (UnsupportedOperationException ex) {
+                Timber.d("filter(): Skipping unsupported cell: %s", cell);
+                continue;
+            }
+            if (convertedCell.getMcc() == Cell.UNKNOWN_CID || convertedCell.getMnc() == Cell.UNKNOWN_CID) {
+                if (keepUnknownOperator)
+                    subscriptionCellInfo.add(cell);
+            } else if (convertedCell.getMcc() == mcc && convertedCell.getMnc() == mnc) {
+                subscriptionCellInfo.add(cell);
+            }
+        }
+        Timber.d("filter(): Kept %s of %s cells of network operator %s", subscriptionCellInfo.size(), cellInfo.size(), networkOperator);
+        return subscriptionCellInfo;
+    }
+}
@@ -7,19 +7,31 @@ package info.zamojski.soft.towercollector.collector;
 import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 
+import info.zamojski.soft.towercollector.model.Cell;
+
 public class TelephonyTriple {
     private final TelephonyManager telephonyManager;
+    private final int subscriptionId;
     private PhoneStateListener phoneStateListener;
     private Object cellInfoUpdateRequestCallback; // object to reuse the type on lower api TelephonyManager.CellInfoCallback on which it's always null
 
     public TelephonyTriple(TelephonyManager telephonyManager) {
+        this(telephonyManager, Cell.UNKNOWN_SUBSCRIPTION_ID);
+    }
+
+    public TelephonyTriple(TelephonyManager telephonyManager, int subscriptionId) {
         this.telephonyManager = telephonyManager;
+        this.subscriptionId = subscriptionId;
     }
 
     public TelephonyManager getTelephonyManager() {
         return telephonyManager;
     }
 
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
     public PhoneStateListener getPhoneStateListener() {
         return phoneStateListener;
     }
@@ -12,14 +12,19 @@ import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.collector.ParseResult;
 import info.zamojski.soft.towercollector.collector.converters.CellIdentityConverter;
 import info.zamojski.soft.towercollector.collector.converters.CellSignalConverter;
+import info.zamojski.soft.towercollector.collector.suppressors.IMeasurementSuppressor;
 import info.zamojski.soft.towercollector.collector.validators.CellIdentityValidator;
 import info.zamojski.soft.towercollector.collector.validators.ConditionsValidator;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
@@ -43,14 +48,14 @@ public class Api17PlusMeasurementParser extends MeasurementParser {
     public Api17PlusMeasurementParser(LocationValidator locationValidator, CellIdentityValidator cellValidator,
                                       ConditionsValidator conditionsValidator, SystemTimeValidator systemTimeValidator,
                                       CellIdentityConverter cellIdentityConverter, CellSignalConverter cellSignalConverter,
-                                      boolean collectNeighboringCells) {
-        super(locationValidator, conditionsValidator, systemTimeValidator, collectNeighboringCells);
+                                      IMeasurementSuppressor measurementSuppressor, boolean collectNeighboringCells) {
+        super(locationValidator, conditionsValidator, systemTimeValidator, measurementSuppressor, collectNeighboringCells);
         this.cellValidator = cellValidator;
         this.cellIdentityConverter = cellIdentityConverter;
         this.cellSignalConverter = cellSignalConverter;
     }
 
-    private ParseResult parse(Location location, List<CellInfo> cells,
+    private ParseResult parse(Location location, List<CellInfo> cells, Map<CellInfo, Integer> subscriptionIds,
                               long timestamp, int minDistance) {
         // if required accuracy was achieved
         if (!locationValidator.isValid(location)) {
@@ -70,7 +75,7 @@ public class Api17PlusMeasurementParser extends MeasurementParser {
         // remove invalid cells
         removeInvalidCells(cells);
         // if the same cell check distance condition, otherwise accept
-        if (lastSavedMeasurement != null && lastSavedLocation != null && !conditionsValidator.isMinDistanceSatisfied(lastSavedLocation, location, minDistance)) {
+        if (lastSavedMeasurement != null && hasLastSavedLocation && !conditionsValidator.isMinDistanceSatisfied(lastSavedLatitude, lastSavedLongitude, location, minDistance)) {
             List<String> lastMeasurementsCellKeys = new ArrayList<>();
             for (Cell lastCell : lastSavedMeasurement.getCells()) {
                 lastMeasurementsCellKeys.add(cellIdentityConverter.createCellKey(lastCell));
@@ -107,6 +112,11 @@ public class Api17PlusMeasurementParser extends MeasurementParser {
             Cell tempCell = cellIdentityConverter.convert(cellInfo);
             // update measurement with signal strength
             cellSignalConverter.update(tempCell, cellInfo);
+            // tag with subscription which reported the cell
+            Integer subscriptionId = subscriptionIds.get(cellInfo);
+            if (subscriptionId != null) {
+                tempCell.setSubscriptionId(subscriptionId);
+            }
             // write to database
             Timber.d("parse(): Cell valid: %s", cellInfo);
             measurement.addCell(tempCell);
@@ -116,12 +126,16 @@ public class Api17PlusMeasurementParser extends MeasurementParser {
             Timber.d("parse(): All cells invalid or skipped");
             return ParseResult.NoNetworkSignal;
         }
+        // skip if almost the same as recently saved
+        if (isSuppressed(measurement)) {
+            Timber.d("parse(): Near-duplicate measurement suppressed");
+            return ParseResult.NearDuplicateSuppressed;
+        }
         // write to database
         Timber.d("parse(): Measurement: %s", measurement);
         boolean inserted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).insertMeasurement(measurement);
         if (inserted) {
-            lastSavedLocation = location;
-            lastSavedMeasurement = measurement;
+            onMeasurementSaved(measurement);
             Timber.d("parse(): Measurement saved");
             // broadcast information to main activity
             Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
@@ -134,23 +148,37 @@ public class Api17PlusMeasurementParser extends MeasurementParser {
         }
     }
 
-    private void removeDuplicatedCells(List<CellInfo> cells) {
-        List<CellInfo> cellsToRemove = new ArrayList<CellInfo>();
-        Set<String> uniqueCellKeys = new HashSet<String>();
+    /**
+     * Removes cells reported more than once, e.g. by many subscriptions. The registered cell is kept
+     * so that it's tagged with the subscription registered to it instead of the one which sees it as a neighbor.
+     */
+    void removeDuplicatedCells(List<CellInfo> cells) {
+        Map<String, CellInfo> uniqueCells = new HashMap<String, CellInfo>();
+        // reported cells may be equal, so removed by identity
+        Set<CellInfo> cellsToRemove = Collections.newSetFromMap(new IdentityHashMap<CellInfo, Boolean>());
 
         for (CellInfo cell : cells) {
             if (cell == null)
                 continue;
             String key = cellIdentityConverter.createCellKey(cell);
-            if (uniqueCellKeys.contains(key)) {
+            CellInfo uniqueCell = uniqueCells.get(key);
+            if (uniqueCell == null) {
+                uniqueCells.put(key, cell);
+            } else if (cell.isRegistered() && !uniqueCell.isRegistered()) {
+                Timber.d("removeDuplicatedCells(): Replace duplicated neighboring cell: %s", key);
+                uniqueCells.put(key, cell);
+                cellsToRemove.add(uniqueCell);
+            } else {
                 Timber.d("removeDuplicatedCells(): Remove duplicated cell: %s", key);
                 cellsToRemove.add(cell);
-            } else {
-                uniqueCellKeys.add(key);
             }
         }
 
-        cells.removeAll(cellsToRemove);
+        Iterator<CellInfo> iterator = cells.iterator();
+        while (iterator.hasNext()) {
+            if (cellsToRemove.contains(iterator.next()))
+                iterator.remove();
+        }
     }
 
     private void removeInvalidCells(List<CellInfo> cells) {
@@ -171,7 +199,7 @@ public class Api17PlusMeasurementParser extends MeasurementParser {
 
     @Subscribe(threadMode = ThreadMode.BACKGROUND)
     public void onEvent(Api17PlusMeasurementProcessingEvent event) {
-        ParseResult result = parse(event.getLastLocation(), event.getLastCellInfo(),
+        ParseResult result = parse(event.getLastLocation(), event.getLastCellInfo(), event.getSubscriptionIds(),
                 System.currentTimeMillis(), event.getMinDistance());
         // when saved different event is published
         if (result != ParseResult.Saved) {
@@ -23,6 +23,7 @@ import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.collector.ParseResult;
 import info.zamojski.soft.towercollector.collector.converters.CellLocationConverter;
 import info.zamojski.soft.towercollector.collector.converters.CellLocationSignalConverter;
+import info.zamojski.soft.towercollector.collector.suppressors.IMeasurementSuppressor;
 import info.zamojski.soft.towercollector.collector.validators.CellLocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.ConditionsValidator;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
@@ -48,8 +49,8 @@ public class LegacyMeasurementParser extends MeasurementParser {
     public LegacyMeasurementParser(LocationValidator locationValidator, CellLocationValidator cellLocationValidator,
                                    ConditionsValidator conditionsValidator, SystemTimeValidator systemTimeValidator,
                                    CellLocationConverter cellLocationConverter, CellLocationSignalConverter cellSignalConverter,
-                                   boolean collectNeighboringCells) {
-        super(locationValidator, conditionsValidator, systemTimeValidator, collectNeighboringCells);
+                                   IMeasurementSuppressor measurementSuppressor, boolean collectNeighboringCells) {
+        super(locationValidator, conditionsValidator, systemTimeValidator, measurementSuppressor, collectNeighboringCells);
         this.cellLocationValidator = cellLocationValidator;
         this.cellLocationConverter = cellLocationConverter;
         this.cellSignalConverter = cellSignalConverter;
@@ -93,7 +94,7 @@ public class LegacyMeasurementParser extends MeasurementParser {
         // fix time if incorrect
         fixMeasurementTimestamp(measurement, location);
         // if the same cell check distance condition, otherwise accept
-        if (lastSavedMeasurement != null && lastSavedLocation != null && !conditionsValidator.isMinDistanceSatisfied(lastSavedLocation, location, minDistance)) {
+        if (lastSavedMeasurement != null && hasLastSavedLocation && !conditionsValidator.isMinDistanceSatisfied(lastSavedLatitude, lastSavedLongitude, location, minDistance)) {
             List<String> lastMeasurementsCellKeys = new ArrayList<>();
             for (Cell lastCell : lastSavedMeasurement.getCells()) {
                 lastMeasurementsCellKeys.add(createCellKey(lastCell));
@@ -137,12 +138,16 @@ public class LegacyMeasurementParser extends MeasurementParser {
                 }
             }
         }
+        // skip if almost the same as recently saved
+        if (isSuppressed(measurement)) {
+            Timber.d("parse(): Near-duplicate measurement suppressed");
+            return ParseResult.NearDuplicateSuppressed;
+        }
         // write to database
         Timber.d("parse(): Measurement: %s", measurement);
         boolean inserted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).insertMeasurement(measurement);
         if (inserted) {
-            lastSavedLocation = location;
-            lastSavedMeasurement = measurement;
+            onMeasurementSaved(measurement);
             Timber.d("parse(): Measurement saved");
             // broadcast information to main activity
             Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
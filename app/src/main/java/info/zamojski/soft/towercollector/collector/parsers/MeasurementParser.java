@@ -9,6 +9,7 @@ import org.greenrobot.eventbus.EventBus;
 import info.zamojski.soft.towercollector.BuildConfig;
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.collector.ParseResult;
+import info.zamojski.soft.towercollector.collector.suppressors.IMeasurementSuppressor;
 import info.zamojski.soft.towercollector.collector.validators.ConditionsValidator;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.SystemTimeValidator;
@@ -18,7 +19,6 @@ import info.zamojski.soft.towercollector.model.Measurement;
 import timber.log.Timber;
 
 import android.location.Location;
-import android.location.LocationManager;
 
 public abstract class MeasurementParser implements Runnable {
 
@@ -30,34 +30,39 @@ public abstract class MeasurementParser implements Runnable {
 
     protected SystemTimeValidator systemTimeValidator;
 
+    protected IMeasurementSuppressor measurementSuppressor;
+
     protected Measurement lastSavedMeasurement;
-    protected Location lastSavedLocation;
+    protected boolean hasLastSavedLocation;
+    protected double lastSavedLatitude;
+    protected double lastSavedLongitude;
 
     protected boolean collectNeighboringCells;
 
     protected MeasurementParser(LocationValidator locationValidator, ConditionsValidator conditionsValidator,
-                                SystemTimeValidator systemTimeValidator, boolean collectNeighboringCells) {
+                                SystemTimeValidator systemTimeValidator, IMeasurementSuppressor measurementSuppressor,
+                                boolean collectNeighboringCells) {
         this.locationValidator = locationValidator;
         this.conditionsValidator = conditionsValidator;
         this.systemTimeValidator = systemTimeValidator;
+        this.measurementSuppressor = measurementSuppressor;
         this.collectNeighboringCells = collectNeighboringCells;
     }
 
     protected void getAndSetLastLocation() {
         lastSavedMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
         if (lastSavedMeasurement != null) {
-            // simulate location if there is starting point (some values may not be used, but don't know which exactly)
-            lastSavedLocation = new Location(LocationManager.PASSIVE_PROVIDER);
-            lastSavedLocation.setLatitude(lastSavedMeasurement.getLatitude());
-            lastSavedLocation.setLongitude(lastSavedMeasurement.getLongitude());
-            lastSavedLocation.setAccuracy(lastSavedMeasurement.getGpsAccuracy());
-            lastSavedLocation.setSpeed(lastSavedMeasurement.getGpsSpeed());
-            lastSavedLocation.setBearing(lastSavedMeasurement.getGpsBearing());
-            lastSavedLocation.setAltitude(lastSavedMeasurement.getGpsAltitude());
-            lastSavedLocation.setTime(lastSavedMeasurement.getMeasuredAt());
+            // keep only coordinates of the starting point, no need to simulate whole location
+            setLastSavedLocation(lastSavedMeasurement.getLatitude(), lastSavedMeasurement.getLongitude());
         }
     }
 
+    protected void setLastSavedLocation(double latitude, double longitude) {
+        hasLastSavedLocation = true;
+        lastSavedLatitude = latitude;
+        lastSavedLongitude = longitude;
+    }
+
     protected void updateMeasurementWithLocation(Measurement measurement, Location location) {
         measurement.setLatitude(location.getLatitude());
         measurement.setLongitude(location.getLongitude());
@@ -89,6 +94,26 @@ public abstract class MeasurementParser implements Runnable {
         }
     }
 
+    protected boolean isSuppressed(Measurement measurement) {
+        return (measurementSuppressor != null && measurementSuppressor.isSuppressed(measurement));
+    }
+
+    protected void onMeasurementSaved(Measurement measurement) {
+        setLastSavedLocation(measurement.getLatitude(), measurement.getLongitude());
+        lastSavedMeasurement = measurement;
+        if (measurementSuppressor != null) {
+            measurementSuppressor.onSaved(measurement);
+        }
+    }
+
+    public int getCheckedMeasurementsCount() {
+        return (measurementSuppressor != null ? measurementSuppressor.getCheckedCount() : 0);
+    }
+
+    public int getSuppressedMeasurementsCount() {
+        return (measurementSuppressor != null ? measurementSuppressor.getSuppressedCount() : 0);
+    }
+
     protected void notifyResult(ParseResult result) {
         EventBus.getDefault().post(new MeasurementProcessedEvent(result));
     }
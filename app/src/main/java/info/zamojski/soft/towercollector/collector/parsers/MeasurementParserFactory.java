@@ -10,6 +10,8 @@ import info.zamojski.soft.towercollector.collector.converters.CellLocationSignal
 import info.zamojski.soft.towercollector.collector.converters.CellSignalConverter;
 import info.zamojski.soft.towercollector.collector.converters.NetMonsterCellConverter;
 import info.zamojski.soft.towercollector.collector.converters.NetMonsterSignalConverter;
+import info.zamojski.soft.towercollector.collector.suppressors.IMeasurementSuppressor;
+import info.zamojski.soft.towercollector.collector.suppressors.NearDuplicateMeasurementSuppressor;
 import info.zamojski.soft.towercollector.collector.validators.CellIdentityValidator;
 import info.zamojski.soft.towercollector.collector.validators.CellLocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.ConditionsValidator;
@@ -20,7 +22,7 @@ import info.zamojski.soft.towercollector.collector.validators.specific.WcdmaCell
 
 public class MeasurementParserFactory {
 
-    public MeasurementParser CreateApi17Parser(float requiredAccuracy, boolean collectNeighboringCells) {
+    public MeasurementParser CreateApi17Parser(float requiredAccuracy, boolean collectNeighboringCells, boolean suppressNearDuplicates) {
         LocationValidator locationValidator = new LocationValidator(requiredAccuracy);
         CellIdentityValidator cellValidator = new CellIdentityValidator();
         ConditionsValidator conditionsValidator = new ConditionsValidator();
@@ -28,10 +30,10 @@ public class MeasurementParserFactory {
         CellIdentityConverter cellIdentityConverter = new CellIdentityConverter(new WcdmaCellValidator());
         CellSignalConverter cellSignalConverter = new CellSignalConverter();
         return new Api17PlusMeasurementParser(locationValidator, cellValidator, conditionsValidator,
-                systemTimeValidator, cellIdentityConverter, cellSignalConverter, collectNeighboringCells);
+                systemTimeValidator, cellIdentityConverter, cellSignalConverter, createMeasurementSuppressor(suppressNearDuplicates), collectNeighboringCells);
     }
 
-    public MeasurementParser CreateApi1Parser(float requiredAccuracy, boolean collectNeighboringCells) {
+    public MeasurementParser CreateApi1Parser(float requiredAccuracy, boolean collectNeighboringCells, boolean suppressNearDuplicates) {
         LocationValidator locationValidator = new LocationValidator(requiredAccuracy);
         CellLocationValidator cellLocationValidator = new CellLocationValidator();
         ConditionsValidator conditionsValidator = new ConditionsValidator();
@@ -39,10 +41,10 @@ public class MeasurementParserFactory {
         CellLocationConverter cellLocationConverter = new CellLocationConverter();
         CellLocationSignalConverter cellSignalConverter = new CellLocationSignalConverter();
         return new LegacyMeasurementParser(locationValidator, cellLocationValidator, conditionsValidator,
-                systemTimeValidator, cellLocationConverter, cellSignalConverter, collectNeighboringCells);
+                systemTimeValidator, cellLocationConverter, cellSignalConverter, createMeasurementSuppressor(suppressNearDuplicates), collectNeighboringCells);
     }
 
-    public MeasurementParser CreateNetMonsterParser(float requiredAccuracy, boolean collectNeighboringCells) {
+    public MeasurementParser CreateNetMonsterParser(float requiredAccuracy, boolean collectNeighboringCells, boolean suppressNearDuplicates) {
         LocationValidator locationValidator = new LocationValidator(requiredAccuracy);
         NetMonsterCellValidator cellValidator = new NetMonsterCellValidator();
         ConditionsValidator conditionsValidator = new ConditionsValidator();
@@ -50,6 +52,10 @@ public class MeasurementParserFactory {
         NetMonsterCellConverter cellConverter = new NetMonsterCellConverter();
         NetMonsterSignalConverter signalConverter = new NetMonsterSignalConverter();
         return new NetMonsterMeasurementParser(locationValidator, cellValidator, conditionsValidator,
-                systemTimeValidator, cellConverter, signalConverter, collectNeighboringCells);
+                systemTimeValidator, cellConverter, signalConverter, createMeasurementSuppressor(suppressNearDuplicates), collectNeighboringCells);
+    }
+
+    private IMeasurementSuppressor createMeasurementSuppressor(boolean suppressNearDuplicates) {
+        return (suppressNearDuplicates ? new NearDuplicateMeasurementSuppressor() : null);
     }
 }
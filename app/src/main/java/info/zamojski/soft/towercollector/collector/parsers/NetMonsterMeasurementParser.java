@@ -21,6 +21,7 @@ import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.collector.ParseResult;
 import info.zamojski.soft.towercollector.collector.converters.NetMonsterCellConverter;
 import info.zamojski.soft.towercollector.collector.converters.NetMonsterSignalConverter;
+import info.zamojski.soft.towercollector.collector.suppressors.IMeasurementSuppressor;
 import info.zamojski.soft.towercollector.collector.validators.ConditionsValidator;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.NetMonsterCellValidator;
@@ -44,8 +45,8 @@ public class NetMonsterMeasurementParser extends MeasurementParser {
     public NetMonsterMeasurementParser(LocationValidator locationValidator, NetMonsterCellValidator cellValidator,
                                        ConditionsValidator conditionsValidator, SystemTimeValidator systemTimeValidator,
                                        NetMonsterCellConverter cellConverter, NetMonsterSignalConverter signalConverter,
-                                       boolean collectNeighboringCells) {
-        super(locationValidator, conditionsValidator, systemTimeValidator, collectNeighboringCells);
+                                       IMeasurementSuppressor measurementSuppressor, boolean collectNeighboringCells) {
+        super(locationValidator, conditionsValidator, systemTimeValidator, measurementSuppressor, collectNeighboringCells);
         this.cellValidator = cellValidator;
         this.cellConverter = cellConverter;
         this.signalConverter = signalConverter;
@@ -70,7 +71,7 @@ public class NetMonsterMeasurementParser extends MeasurementParser {
         // remove invalid cells
         removeInvalidCells(cells);
         // if the same cell check distance condition, otherwise accept
-        if (lastSavedMeasurement != null && lastSavedLocation != null && !conditionsValidator.isMinDistanceSatisfied(lastSavedLocation, location, minDistance)) {
+        if (lastSavedMeasurement != null && hasLastSavedLocation && !conditionsValidator.isMinDistanceSatisfied(lastSavedLatitude, lastSavedLongitude, location, minDistance)) {
             List<String> lastMeasurementsCellKeys = new ArrayList<>();
             for (Cell lastCell : lastSavedMeasurement.getCells()) {
                 lastMeasurementsCellKeys.add(cellConverter.createCellKey(lastCell));
@@ -107,6 +108,8 @@ public class NetMonsterMeasurementParser extends MeasurementParser {
             Cell tempCell = cellConverter.convert(cell);
             // update measurement with signal strength
             signalConverter.update(tempCell, cell);
+            // tag with subscription which reported the cell
+            tempCell.setSubscriptionId(cell.getSubscriptionId());
             // write to database
             Timber.d("parse(): Cell valid: %s", cell);
             measurement.addCell(tempCell);
@@ -116,12 +119,16 @@ public class NetMonsterMeasurementParser extends MeasurementParser {
             Timber.d("parse(): All cells invalid or skipped");
             return ParseResult.NoNetworkSignal;
         }
+        // skip if almost the same as recently saved
+        if (isSuppressed(measurement)) {
+            Timber.d("parse(): Near-duplicate measurement suppressed");
+            return ParseResult.NearDuplicateSuppressed;
+        }
         // write to database
         Timber.d("parse(): Measurement: %s", measurement);
         boolean inserted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).insertMeasurement(measurement);
         if (inserted) {
-            lastSavedLocation = location;
-            lastSavedMeasurement = measurement;
+            onMeasurementSaved(measurement);
             Timber.d("parse(): Measurement saved");
             // broadcast information to main activity
             Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
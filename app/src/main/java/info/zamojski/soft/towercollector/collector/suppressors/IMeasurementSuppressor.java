@@ -0,0 +1,18 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector.suppressors;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+public interface IMeasurementSuppressor {
+
+    boolean isSuppressed(Measurement measurement);
+
+    void onSaved(Measurement measurement);
+
+    int getCheckedCount();
+
+    int getSuppressedCount();
+}
@@ -0,0 +1,121 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector.suppressors;
+
+import java.util.Arrays;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.utils.GeoUtils;
+import timber.log.Timber;
+
+/**
+ * Suppresses measurements which have exactly the same cells as one of recently saved measurements,
+ * signal of every cell changed less than the threshold and the location changed less than the reported accuracy.
+ */
+public class NearDuplicateMeasurementSuppressor implements IMeasurementSuppressor {
+
+    public static final int DEFAULT_HISTORY_SIZE = 4;
+    public static final int DEFAULT_MAX_SIGNAL_DIFF = 3; // in dB
+
+    private final Fingerprint[] history;
+    private final int maxSignalDiff;
+    private int nextHistoryIndex;
+
+    private int checkedCount;
+    private int suppressedCount;
+
+    public NearDuplicateMeasurementSuppressor() {
+        this(DEFAULT_HISTORY_SIZE, DEFAULT_MAX_SIGNAL_DIFF);
+    }
+
+    public NearDuplicateMeasurementSuppressor(int historySize, int maxSignalDiff) {
+        this.history = new Fingerprint[historySize];
+        this.maxSignalDiff = maxSignalDiff;
+    }
+
+    @Override
+    public boolean isSuppressed(Measurement measurement) {
+        checkedCount++;
+        Fingerprint fingerprint = new Fingerprint(measurement);
+        for (Fingerprint previous : history) {
+            if (previous != null && isNearDuplicate(previous, fingerprint)) {
+                suppressedCount++;
+                Timber.d("isSuppressed(): Near-duplicate measurement, %s of %s suppressed so far", suppressedCount, checkedCount);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onSaved(Measurement measurement) {
+        history[nextHistoryIndex] = new Fingerprint(measurement);
+        nextHistoryIndex = (nextHistoryIndex + 1) % history.length;
+    }
+
+    @Override
+    public int getCheckedCount() {
+        return checkedCount;
+    }
+
+    @Override
+    public int getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    private boolean isNearDuplicate(Fingerprint previous, Fingerprint current) {
+        if (!Arrays.equals(previous.cellKeys, current.cellKeys))
+            return false;
+        for (int i = 0; i < current.signals.length; i++) {
+            int previousSignal = previous.signals[i];
+            int currentSignal = current.signals[i];
+            if (previousSignal == Cell.UNKNOWN_SIGNAL || currentSignal == Cell.UNKNOWN_SIGNAL) {
+                if (previousSignal != currentSignal)
+                    return false;
+            } else if (Math.abs(previousSignal - currentSignal) > maxSignalDiff) {
+                return false;
+            }
+        }
+        float distance = GeoUtils.getApproximateDistance(previous.latitude, previous.longitude, current.latitude, current.longitude);
+        return distance < Math.max(previous.accuracy, current.accuracy);
+    }
+
+    private static class Fingerprint {
+
+        private final double latitude;
+        private final double longitude;
+        private final float accuracy;
+        private final String[] cellKeys;
+        private final int[] signals;
+
+        private Fingerprint(Measurement measurement) {
+            this.latitude = measurement.getLatitude();
+            this.longitude = measurement.getLongitude();
+            this.accuracy = measurement.getGpsAccuracy();
+            List<Cell> cells = measurement.getCells();
+            String[] keys = new String[cells.size()];
+            Integer[] order = new Integer[cells.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = createCellKey(cells.get(i));
+                order[i] = i;
+            }
+            // cells may be reported in different order
+            Arrays.sort(order, (i1, i2) -> keys[i1].compareTo(keys[i2]));
+            this.cellKeys = new String[keys.length];
+            this.signals = new int[keys.length];
+            for (int i = 0; i < order.length; i++) {
+                cellKeys[i] = keys[order[i]];
+                signals[i] = cells.get(order[i]).getDbm();
+            }
+        }
+
+        private static String createCellKey(Cell cell) {
+            return cell.getNetworkType() + "_" + cell.getMcc() + "_" + cell.getMnc() + "_" + cell.getLac()
+                    + "_" + cell.getCid() + "_" + cell.getPsc() + "_" + cell.isNeighboring();
+        }
+    }
+}
@@ -7,6 +7,7 @@ package info.zamojski.soft.towercollector.collector.validators;
 import android.location.Location;
 
 import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.utils.GeoUtils;
 import timber.log.Timber;
 
 public class ConditionsValidator {
@@ -17,9 +18,9 @@ public class ConditionsValidator {
                 && c1.getPsc() == c2.getPsc());
     }
 
-    public boolean isMinDistanceSatisfied(Location previousLocation, Location currentLocation, int minDistance) {
+    public boolean isMinDistanceSatisfied(double previousLatitude, double previousLongitude, Location currentLocation, int minDistance) {
         // approximate match with 10% tolerance
-        float distanceDiff = previousLocation.distanceTo(currentLocation);
+        float distanceDiff = GeoUtils.getApproximateDistance(previousLatitude, previousLongitude, currentLocation.getLatitude(), currentLocation.getLongitude());
         int distanceCondition = minDistance;
         // check conditions
         boolean valid = (1.1f * distanceDiff >= distanceCondition);
@@ -34,6 +34,7 @@ final class CellSignalsTable implements ITable {
     static final String COLUMN_EVDO_SNR = "evdo_snr";
     static final String COLUMN_EC_NO = "ec_no";
     static final String COLUMN_ARFCN = "arfcn";
+    static final String COLUMN_SUBSCRIPTION_ID = "subscription_id";
 
     private static final String QUERY_DROP_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME;
 
@@ -65,6 +66,7 @@ final class CellSignalsTable implements ITable {
             COLUMN_EVDO_SNR + " INTEGER NOT NULL, " +
             COLUMN_EC_NO + " INTEGER NOT NULL, " +
             COLUMN_ARFCN + " INTEGER NOT NULL, " +
+            COLUMN_SUBSCRIPTION_ID + " INTEGER NOT NULL, " +
             "FOREIGN KEY(" + COLUMN_MEASUREMENT_ID + ") REFERENCES " + MeasurementsTable.TABLE_NAME + "(" + MeasurementsTable.COLUMN_ROW_ID + ")," +
             "FOREIGN KEY(" + COLUMN_CELL_ID + ") REFERENCES " + CellsTable.TABLE_NAME + "(" + CellsTable.COLUMN_ROW_ID + "))";
 
@@ -27,6 +27,8 @@ final class CellsTable implements ITable {
             COLUMN_DISCOVERED_AT + " INTEGER NOT NULL, " +
             "UNIQUE (" + COLUMN_CID + ", " + COLUMN_LAC + ", " + COLUMN_MNC + ", " + COLUMN_MCC + ", " + COLUMN_NET_TYPE + ") ON CONFLICT IGNORE)";
 
+    private static final String QUERY_CREATE_INDEX_NET_TYPE = "CREATE INDEX 'IX_" + TABLE_NAME + "_" + COLUMN_NET_TYPE + "' ON " + TABLE_NAME + " (" + COLUMN_NET_TYPE + " ASC)";
+
     private static final String QUERY_CREATE_TRIGGER_ON_INSERT = "CREATE TRIGGER 'update_cells_stats' AFTER INSERT ON " + TABLE_NAME + " " +
             "BEGIN " +
             "   UPDATE " + StatsTable.TABLE_NAME + " SET " + StatsTable.COLUMN_TOTAL_DISCOVERED_CELLS + "  = " + StatsTable.COLUMN_TOTAL_DISCOVERED_CELLS + " + 1; " +
@@ -37,6 +39,7 @@ final class CellsTable implements ITable {
         return new String[]{
                 QUERY_DROP_TABLE,
                 QUERY_CREATE_TABLE,
+                QUERY_CREATE_INDEX_NET_TYPE,
                 QUERY_CREATE_TRIGGER_ON_INSERT
         };
     }
@@ -0,0 +1,38 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+final class ExportCheckpointsTable implements ITable {
+
+    static final String TABLE_NAME = "export_checkpoints";
+    static final String COLUMN_FILE_TYPE = "file_type";
+    static final String COLUMN_JOB_ID = "job_id";
+    static final String COLUMN_FILE_NAME = "file_name";
+    static final String COLUMN_COMPRESSED_EXTENSION = "compressed_extension";
+    static final String COLUMN_MEASURED_AT = "measured_at";
+    static final String COLUMN_MEASUREMENT_ID = "measurement_id";
+    static final String COLUMN_FILE_OFFSET = "file_offset";
+    static final String COLUMN_FILE_FINGERPRINT = "file_fingerprint";
+
+    private static final String QUERY_DROP_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME;
+
+    static final String QUERY_CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" +
+            COLUMN_FILE_TYPE + " TEXT PRIMARY KEY NOT NULL, " +
+            COLUMN_JOB_ID + " TEXT NOT NULL, " +
+            COLUMN_FILE_NAME + " TEXT NOT NULL, " +
+            COLUMN_COMPRESSED_EXTENSION + " TEXT DEFAULT NULL, " +
+            COLUMN_MEASURED_AT + " INTEGER NOT NULL, " +
+            COLUMN_MEASUREMENT_ID + " INTEGER NOT NULL, " +
+            COLUMN_FILE_OFFSET + " INTEGER NOT NULL, " +
+            COLUMN_FILE_FINGERPRINT + " INTEGER NOT NULL)";
+
+    @Override
+    public String[] getCreateQueries() {
+        return new String[]{
+                QUERY_DROP_TABLE,
+                QUERY_CREATE_TABLE
+        };
+    }
+}
@@ -0,0 +1,42 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+final class ExportWatermarksTable implements ITable {
+
+    static final String TABLE_NAME = "export_watermarks";
+    static final String COLUMN_FILE_TYPE = "file_type";
+    static final String COLUMN_MEASURED_AT = "measured_at";
+    static final String COLUMN_MEASUREMENT_ID = "measurement_id";
+    static final String COLUMN_FILE_NAME = "file_name";
+    static final String COLUMN_COMPRESSED_EXTENSION = "compressed_extension";
+    static final String COLUMN_PENDING_MEASURED_AT = "pending_measured_at";
+    static final String COLUMN_PENDING_MEASUREMENT_ID = "pending_measurement_id";
+    static final String COLUMN_PENDING_FILE_NAME = "pending_file_name";
+    static final String COLUMN_PENDING_COMPRESSED_EXTENSION = "pending_compressed_extension";
+    static final String COLUMN_PENDING_FILE_LENGTH = "pending_file_length";
+
+    private static final String QUERY_DROP_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME;
+
+    static final String QUERY_CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" +
+            COLUMN_FILE_TYPE + " TEXT PRIMARY KEY NOT NULL, " +
+            COLUMN_MEASURED_AT + " INTEGER NOT NULL, " +
+            COLUMN_MEASUREMENT_ID + " INTEGER NOT NULL, " +
+            COLUMN_FILE_NAME + " TEXT DEFAULT NULL, " +
+            COLUMN_COMPRESSED_EXTENSION + " TEXT DEFAULT NULL, " +
+            COLUMN_PENDING_MEASURED_AT + " INTEGER DEFAULT NULL, " +
+            COLUMN_PENDING_MEASUREMENT_ID + " INTEGER DEFAULT NULL, " +
+            COLUMN_PENDING_FILE_NAME + " TEXT DEFAULT NULL, " +
+            COLUMN_PENDING_COMPRESSED_EXTENSION + " TEXT DEFAULT NULL, " +
+            COLUMN_PENDING_FILE_LENGTH + " INTEGER DEFAULT NULL)";
+
+    @Override
+    public String[] getCreateQueries() {
+        return new String[]{
+                QUERY_DROP_TABLE,
+                QUERY_CREATE_TABLE
+        };
+    }
+}
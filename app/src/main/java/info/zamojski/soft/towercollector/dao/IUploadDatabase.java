@@ -0,0 +1,35 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.Statistics;
+import info.zamojski.soft.towercollector.model.UploadJournalEntry;
+
+/**
+ * Measurements and upload journal as used by the uploader.
+ */
+public interface IUploadDatabase {
+
+    Statistics getMeasurementsStatistics();
+
+    List<Measurement> getMeasurementsPartIncludingPartiallyUploaded(int offset, int limit);
+
+    int markAsUploaded(int[] measurementIds, Long uploadedToOcidAt, Long uploadedToMlsAt);
+
+    int clearOlderUploadedPartiallyAndUploadedFully();
+
+    long insertUploadJournalEntry(UploadJournalEntry entry);
+
+    void updateUploadJournalEntryState(UploadJournalEntry entry);
+
+    List<UploadJournalEntry> getUploadJournalEntries();
+
+    int markUploadJournalEntryAsUploaded(UploadJournalEntry entry);
+
+    int deleteUploadJournalEntries(boolean keepAcknowledged);
+}
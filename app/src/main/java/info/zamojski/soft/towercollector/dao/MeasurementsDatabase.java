@@ -11,10 +11,12 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.text.TextUtils;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,21 +24,27 @@ import java.util.Map;
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.dao.migration.DbMigrationHelper;
 import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.enums.UploadJournalState;
 import info.zamojski.soft.towercollector.model.AnalyticsStatistics;
 import info.zamojski.soft.towercollector.model.Boundaries;
 import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.ExportCheckpoint;
+import info.zamojski.soft.towercollector.model.ExportFilter;
+import info.zamojski.soft.towercollector.model.ExportRange;
+import info.zamojski.soft.towercollector.model.ExportWatermark;
 import info.zamojski.soft.towercollector.model.MapCell;
 import info.zamojski.soft.towercollector.model.MapMeasurement;
 import info.zamojski.soft.towercollector.model.Measurement;
 import info.zamojski.soft.towercollector.model.Statistics;
+import info.zamojski.soft.towercollector.model.UploadJournalEntry;
 import info.zamojski.soft.towercollector.utils.DateUtils;
 import info.zamojski.soft.towercollector.utils.HashUtils;
 import timber.log.Timber;
 
-public class MeasurementsDatabase {
+public class MeasurementsDatabase implements IUploadDatabase {
 
     public static final String DATABASE_FILE_NAME = "measurements.db";
-    public static final int DATABASE_FILE_VERSION = 17;
+    public static final int DATABASE_FILE_VERSION = 23;
 
     private static final int NUM_OF_DELETIONS_PER_ONE_QUERY = 50;
 
@@ -162,6 +170,7 @@ public class MeasurementsDatabase {
                     values.put(CellSignalsTable.COLUMN_EVDO_SNR, cell.getEvdoSnr());
                     values.put(CellSignalsTable.COLUMN_EC_NO, cell.getEcNo());
                     values.put(CellSignalsTable.COLUMN_ARFCN, cell.getArfcn());
+                    values.put(CellSignalsTable.COLUMN_SUBSCRIPTION_ID, cell.getSubscriptionId());
                     long rowId = db.insert(CellSignalsTable.TABLE_NAME, null, values);
                     boolean localResult = false;
                     if (rowId != -1) {
@@ -256,6 +265,57 @@ public class MeasurementsDatabase {
         return count;
     }
 
+    /**
+     * Returns number of locations not uploaded yet to at least one of the given targets.
+     */
+    public int getPendingLocationsCount(boolean ocid, boolean mls) {
+        Timber.d("getPendingLocationsCount(): Getting number of locations pending for OCID = %s, MLS = %s", ocid, mls);
+        if (!ocid && !mls)
+            return 0;
+        int count = 0;
+        SQLiteDatabase db = helper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + MeasurementsTable.TABLE_NAME + " WHERE " + getPendingSelection(ocid, mls), null);
+        if (cursor.moveToNext()) {
+            count = cursor.getInt(0);
+        }
+        cursor.close();
+        return count;
+    }
+
+    /**
+     * Returns position of the oldest location not uploaded yet to at least one of the given targets
+     * among all locations ordered by time, the same way as parts are read by {@link #getMeasurementsPartIncludingPartiallyUploaded}.
+     * Returns 0 when there is no such location.
+     */
+    public int getFirstPendingLocationOffset(boolean ocid, boolean mls) {
+        Timber.d("getFirstPendingLocationOffset(): Getting offset of first location pending for OCID = %s, MLS = %s", ocid, mls);
+        if (!ocid && !mls)
+            return 0;
+        int offset = 0;
+        SQLiteDatabase db = helper.getReadableDatabase();
+        String query = "SELECT COUNT(*) FROM " + MeasurementsTable.TABLE_NAME + " tm, (SELECT " + MeasurementsTable.COLUMN_MEASURED_AT + ", " + MeasurementsTable.COLUMN_ROW_ID
+                + " FROM " + MeasurementsTable.TABLE_NAME + " WHERE " + getPendingSelection(ocid, mls)
+                + " ORDER BY " + MeasurementsTable.COLUMN_MEASURED_AT + " ASC, " + MeasurementsTable.COLUMN_ROW_ID + " ASC LIMIT 1) tf"
+                + " WHERE tm." + MeasurementsTable.COLUMN_MEASURED_AT + " < tf." + MeasurementsTable.COLUMN_MEASURED_AT
+                + " OR (tm." + MeasurementsTable.COLUMN_MEASURED_AT + " = tf." + MeasurementsTable.COLUMN_MEASURED_AT + " AND tm." + MeasurementsTable.COLUMN_ROW_ID + " < tf." + MeasurementsTable.COLUMN_ROW_ID + ")";
+        Cursor cursor = db.rawQuery(query, null);
+        if (cursor.moveToNext()) {
+            offset = cursor.getInt(0);
+        }
+        cursor.close();
+        return offset;
+    }
+
+    private String getPendingSelection(boolean ocid, boolean mls) {
+        List<String> conditions = new ArrayList<>();
+        if (ocid)
+            conditions.add(MeasurementsTable.COLUMN_UPLOADED_TO_OCID_AT + " IS NULL");
+        if (mls)
+            conditions.add(MeasurementsTable.COLUMN_UPLOADED_TO_MLS_AT + " IS NULL");
+        return "(" + TextUtils.join(" OR ", conditions) + ")";
+    }
+
+    @Override
     public Statistics getMeasurementsStatistics() {
         // Try to get from cache then read from DB (copy to local to avoid null if invalidated in the meantime)
         Statistics lastStatisticsCacheCopy = this.lastStatisticsCache;
@@ -367,6 +427,7 @@ public class MeasurementsDatabase {
         return boundaries;
     }
 
+    @Override
     public List<Measurement> getMeasurementsPartIncludingPartiallyUploaded(int offset, int limit) {
         Timber.d("getMeasurementsPartIncludingPartiallyUploaded(): Getting %s measurements skipping first %s", limit, offset);
         return getMeasurements(CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_MEASUREMENT_ID + " IN(SELECT tm." + MeasurementsTable.COLUMN_ROW_ID + " FROM " + MeasurementsTable.TABLE_NAME + " tm ORDER BY tm." + MeasurementsTable.COLUMN_MEASURED_AT + " ASC, tm." + MeasurementsTable.COLUMN_ROW_ID + " ASC LIMIT " + String.valueOf(offset) + ", " + String.valueOf(limit) + ")",
@@ -379,6 +440,93 @@ public class MeasurementsDatabase {
                 null, null, null, null, null, false);
     }
 
+    public int getLocationsCount(ExportRange range, ExportFilter filter) {
+        Timber.d("getLocationsCount(): Getting number of locations in %s matching %s", range, filter);
+        int count = 0;
+        SQLiteDatabase db = helper.getReadableDatabase();
+        List<String> selectionArgs = new ArrayList<>();
+        String query = "SELECT COUNT(*) FROM " + NotUploadedMeasurementsView.VIEW_NAME + " tm WHERE " + getRangeSelection("tm", range, selectionArgs) + getFilterSelection("tm", filter, selectionArgs);
+        Cursor cursor = db.rawQuery(query, selectionArgs.toArray(new String[0]));
+        if (cursor.moveToNext()) {
+            count = cursor.getInt(0);
+        }
+        cursor.close();
+        return count;
+    }
+
+    /**
+     * Returns first measurements from the range, next part is read by starting the range after the last returned measurement
+     * what is faster than skipping rows and stable when measurements are added in the meantime.
+     * Only cells matching the filter are returned.
+     */
+    public List<Measurement> getMeasurementsPart(ExportRange range, ExportFilter filter, int limit) {
+        Timber.d("getMeasurementsPart(): Getting %s measurements in %s matching %s", limit, range, filter);
+        List<String> selectionArgs = new ArrayList<>();
+        String selection = CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_MEASUREMENT_ID + " IN(SELECT tm." + MeasurementsTable.COLUMN_ROW_ID + " FROM " + NotUploadedMeasurementsView.VIEW_NAME + " tm WHERE " + getRangeSelection("tm", range, selectionArgs) + getFilterSelection("tm", filter, selectionArgs) + " ORDER BY tm." + MeasurementsTable.COLUMN_MEASURED_AT + " ASC, tm." + MeasurementsTable.COLUMN_ROW_ID + " ASC LIMIT " + String.valueOf(limit) + ")";
+        if (filter.hasCellConditions()) {
+            selection += " AND " + getCellFilterSelection(CellSignalsTable.TABLE_NAME, CellsTable.TABLE_NAME, filter, selectionArgs);
+        }
+        return getMeasurements(selection, selectionArgs.toArray(new String[0]), null, null, null, null, false);
+    }
+
+    private String getRangeSelection(String alias, ExportRange range, List<String> selectionArgs) {
+        String measuredAt = alias + "." + MeasurementsTable.COLUMN_MEASURED_AT;
+        String rowId = alias + "." + MeasurementsTable.COLUMN_ROW_ID;
+        String after = String.valueOf(range.getAfterMeasuredAt());
+        String until = String.valueOf(range.getUntilMeasuredAt());
+        Collections.addAll(selectionArgs, after, after, String.valueOf(range.getAfterMeasurementId()), until, until, String.valueOf(range.getUntilMeasurementId()));
+        // separate bounds on time allow use of the index
+        return measuredAt + " >= ? AND (" + measuredAt + " > ? OR " + rowId + " > ?) AND "
+                + measuredAt + " <= ? AND (" + measuredAt + " < ? OR " + rowId + " <= ?)";
+    }
+
+    /**
+     * Returns conditions on the measurement appended to other conditions, every condition can use an index.
+     */
+    private String getFilterSelection(String alias, ExportFilter filter, List<String> selectionArgs) {
+        StringBuilder selection = new StringBuilder();
+        if (filter.getMeasuredFrom() != null) {
+            selection.append(" AND ").append(alias).append('.').append(MeasurementsTable.COLUMN_MEASURED_AT).append(" >= ?");
+            selectionArgs.add(String.valueOf(filter.getMeasuredFrom()));
+        }
+        if (filter.getMeasuredTo() != null) {
+            selection.append(" AND ").append(alias).append('.').append(MeasurementsTable.COLUMN_MEASURED_AT).append(" <= ?");
+            selectionArgs.add(String.valueOf(filter.getMeasuredTo()));
+        }
+        Boundaries boundaries = filter.getBoundaries();
+        if (boundaries != null) {
+            selection.append(" AND ").append(alias).append('.').append(MeasurementsTable.COLUMN_LATITUDE).append(" BETWEEN ? AND ?")
+                    .append(" AND ").append(alias).append('.').append(MeasurementsTable.COLUMN_LONGITUDE).append(" BETWEEN ? AND ?");
+            Collections.addAll(selectionArgs, String.valueOf(boundaries.getMinLat()), String.valueOf(boundaries.getMaxLat()),
+                    String.valueOf(boundaries.getMinLon()), String.valueOf(boundaries.getMaxLon()));
+        }
+        if (filter.hasCellConditions()) {
+            // matching cells are found by network type index and joined to measurements by primary key
+            selection.append(" AND ").append(alias).append('.').append(MeasurementsTable.COLUMN_ROW_ID)
+                    .append(" IN (SELECT fcs.").append(CellSignalsTable.COLUMN_MEASUREMENT_ID).append(" FROM ").append(CellSignalsTable.TABLE_NAME).append(" fcs")
+                    .append(" INNER JOIN ").append(CellsTable.TABLE_NAME).append(" fc ON (fcs.").append(CellSignalsTable.COLUMN_CELL_ID).append(" = fc.").append(CellsTable.COLUMN_ROW_ID).append(")")
+                    .append(" WHERE ").append(getCellFilterSelection("fcs", "fc", filter, selectionArgs)).append(")");
+        }
+        return selection.toString();
+    }
+
+    private String getCellFilterSelection(String cellSignalsAlias, String cellsAlias, ExportFilter filter, List<String> selectionArgs) {
+        List<String> conditions = new ArrayList<>();
+        if (!filter.getNetworkGroups().isEmpty()) {
+            List<String> placeholders = new ArrayList<>();
+            for (NetworkGroup networkGroup : filter.getNetworkGroups()) {
+                placeholders.add("?");
+                // stored as ordinal
+                selectionArgs.add(String.valueOf(networkGroup.ordinal()));
+            }
+            conditions.add(cellsAlias + "." + CellsTable.COLUMN_NET_TYPE + " IN (" + TextUtils.join(", ", placeholders) + ")");
+        }
+        if (filter.isServingOnly()) {
+            conditions.add(cellSignalsAlias + "." + CellSignalsTable.COLUMN_NEIGHBORING + " = 0");
+        }
+        return TextUtils.join(" AND ", conditions);
+    }
+
     private List<Measurement> getMeasurements(String selection, String[] selectionArgs, String groupBy, String having, String sortOrder, String limit, boolean includePartiallyUploaded) {
         Timber.d("getMeasurements(): Getting selected measurements");
         final String MEASUREMENT_ROW_ID = "measurement_" + MeasurementsTable.COLUMN_ROW_ID;
@@ -420,6 +568,7 @@ public class MeasurementsDatabase {
                 CellSignalsTable.COLUMN_EVDO_SNR,
                 CellSignalsTable.COLUMN_EC_NO,
                 CellSignalsTable.COLUMN_ARFCN,
+                CellSignalsTable.COLUMN_SUBSCRIPTION_ID,
                 MeasurementsTable.COLUMN_MEASURED_AT,
                 MeasurementsTable.COLUMN_UPLOADED_TO_OCID_AT,
                 MeasurementsTable.COLUMN_UPLOADED_TO_MLS_AT,
@@ -471,6 +620,7 @@ public class MeasurementsDatabase {
         int evdoSnrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EVDO_SNR);
         int ecNoColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EC_NO);
         int arfcnColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_ARFCN);
+        int subscriptionIdColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_SUBSCRIPTION_ID);
         int latitudeColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_LATITUDE);
         int longitudeColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_LONGITUDE);
         int gpsAccuracyColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_ACCURACY);
@@ -536,6 +686,7 @@ public class MeasurementsDatabase {
             cell.setEvdoSnr(cursor.getInt(evdoSnrColumnIndex));
             cell.setEcNo(cursor.getInt(ecNoColumnIndex));
             cell.setArfcn(cursor.getInt(arfcnColumnIndex));
+            cell.setSubscriptionId(cursor.getInt(subscriptionIdColumnIndex));
             measurement.addCell(cell);
         }
         cursor.close();
@@ -613,6 +764,276 @@ public class MeasurementsDatabase {
         return measurementList;
     }
 
+    public ExportWatermark getExportWatermark(String fileType) {
+        Timber.d("getExportWatermark(): Getting watermark of %s", fileType);
+        ExportWatermark watermark = null;
+        SQLiteDatabase db = helper.getReadableDatabase();
+        Cursor cursor = db.query(ExportWatermarksTable.TABLE_NAME, null, ExportWatermarksTable.COLUMN_FILE_TYPE + " = ?", new String[]{fileType}, null, null, null);
+        if (cursor.moveToNext()) {
+            watermark = new ExportWatermark();
+            watermark.setFileType(fileType);
+            watermark.setMeasuredAt(cursor.getLong(cursor.getColumnIndex(ExportWatermarksTable.COLUMN_MEASURED_AT)));
+            watermark.setMeasurementId(cursor.getInt(cursor.getColumnIndex(ExportWatermarksTable.COLUMN_MEASUREMENT_ID)));
+            watermark.setFileName(cursor.getString(cursor.getColumnIndex(ExportWatermarksTable.COLUMN_FILE_NAME)));
+            watermark.setCompressedExtension(cursor.getString(cursor.getColumnIndex(ExportWatermarksTable.COLUMN_COMPRESSED_EXTENSION)));
+            watermark.setPending(!cursor.isNull(cursor.getColumnIndex(ExportWatermarksTable.COLUMN_PENDING_MEASURED_AT)));
+            watermark.setPendingFileName(cursor.getString(cursor.getColumnIndex(ExportWatermarksTable.COLUMN_PENDING_FILE_NAME)));
+            watermark.setPendingCompressedExtension(cursor.getString(cursor.getColumnIndex(ExportWatermarksTable.COLUMN_PENDING_COMPRESSED_EXTENSION)));
+            int pendingFileLengthColumnIndex = cursor.getColumnIndex(ExportWatermarksTable.COLUMN_PENDING_FILE_LENGTH);
+            if (!cursor.isNull(pendingFileLengthColumnIndex))
+                watermark.setPendingFileLength(cursor.getLong(pendingFileLengthColumnIndex));
+        }
+        cursor.close();
+        Timber.d("getExportWatermark(): %s", watermark);
+        return watermark;
+    }
+
+    /**
+     * Records export in progress before the file is written, so it can be rolled back if the app is killed.
+     */
+    public void beginExportWatermark(String fileType, ExportRange range, String fileName, String compressedExtension, Long fileLength) {
+        Timber.d("beginExportWatermark(): Exporting %s to %s, file length before = %s", range, fileType, fileLength);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            // nothing exported yet
+            ContentValues initialValues = new ContentValues();
+            initialValues.put(ExportWatermarksTable.COLUMN_FILE_TYPE, fileType);
+            initialValues.put(ExportWatermarksTable.COLUMN_MEASURED_AT, Long.MIN_VALUE);
+            initialValues.put(ExportWatermarksTable.COLUMN_MEASUREMENT_ID, Integer.MIN_VALUE);
+            db.insertWithOnConflict(ExportWatermarksTable.TABLE_NAME, null, initialValues, SQLiteDatabase.CONFLICT_IGNORE);
+            ContentValues cv = new ContentValues();
+            cv.put(ExportWatermarksTable.COLUMN_PENDING_MEASURED_AT, range.getUntilMeasuredAt());
+            cv.put(ExportWatermarksTable.COLUMN_PENDING_MEASUREMENT_ID, range.getUntilMeasurementId());
+            cv.put(ExportWatermarksTable.COLUMN_PENDING_FILE_NAME, fileName);
+            cv.put(ExportWatermarksTable.COLUMN_PENDING_COMPRESSED_EXTENSION, compressedExtension);
+            cv.put(ExportWatermarksTable.COLUMN_PENDING_FILE_LENGTH, fileLength);
+            db.update(ExportWatermarksTable.TABLE_NAME, cv, ExportWatermarksTable.COLUMN_FILE_TYPE + " = ?", new String[]{fileType});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Moves watermarks of all file types to the end of pending exports at once.
+     */
+    public void commitExportWatermarks(List<String> fileTypes) {
+        Timber.d("commitExportWatermarks(): Committing watermarks of %s", fileTypes);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String fileType : fileTypes) {
+                db.execSQL("UPDATE " + ExportWatermarksTable.TABLE_NAME + " SET "
+                                + ExportWatermarksTable.COLUMN_MEASURED_AT + " = " + ExportWatermarksTable.COLUMN_PENDING_MEASURED_AT + ", "
+                                + ExportWatermarksTable.COLUMN_MEASUREMENT_ID + " = " + ExportWatermarksTable.COLUMN_PENDING_MEASUREMENT_ID + ", "
+                                + ExportWatermarksTable.COLUMN_FILE_NAME + " = " + ExportWatermarksTable.COLUMN_PENDING_FILE_NAME + ", "
+                                + ExportWatermarksTable.COLUMN_COMPRESSED_EXTENSION + " = " + ExportWatermarksTable.COLUMN_PENDING_COMPRESSED_EXTENSION + ", "
+                                + ExportWatermarksTable.COLUMN_PENDING_MEASURED_AT + " = NULL, "
+                                + ExportWatermarksTable.COLUMN_PENDING_MEASUREMENT_ID + " = NULL, "
+                                + ExportWatermarksTable.COLUMN_PENDING_FILE_NAME + " = NULL, "
+                                + ExportWatermarksTable.COLUMN_PENDING_COMPRESSED_EXTENSION + " = NULL, "
+                                + ExportWatermarksTable.COLUMN_PENDING_FILE_LENGTH + " = NULL"
+                                + " WHERE " + ExportWatermarksTable.COLUMN_FILE_TYPE + " = ? AND " + ExportWatermarksTable.COLUMN_PENDING_MEASURED_AT + " IS NOT NULL",
+                        new Object[]{fileType});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void clearPendingExportWatermark(String fileType) {
+        Timber.d("clearPendingExportWatermark(): Clearing pending export of %s", fileType);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        ContentValues cv = new ContentValues();
+        cv.putNull(ExportWatermarksTable.COLUMN_PENDING_MEASURED_AT);
+        cv.putNull(ExportWatermarksTable.COLUMN_PENDING_MEASUREMENT_ID);
+        cv.putNull(ExportWatermarksTable.COLUMN_PENDING_FILE_NAME);
+        cv.putNull(ExportWatermarksTable.COLUMN_PENDING_COMPRESSED_EXTENSION);
+        cv.putNull(ExportWatermarksTable.COLUMN_PENDING_FILE_LENGTH);
+        db.update(ExportWatermarksTable.TABLE_NAME, cv, ExportWatermarksTable.COLUMN_FILE_TYPE + " = ?", new String[]{fileType});
+    }
+
+    public int clearExportWatermarks() {
+        Timber.d("clearExportWatermarks(): Clearing watermarks of incremental export");
+        SQLiteDatabase db = helper.getWritableDatabase();
+        return db.delete(ExportWatermarksTable.TABLE_NAME, "1", null);
+    }
+
+    public ExportCheckpoint getExportCheckpoint(String fileType) {
+        Timber.d("getExportCheckpoint(): Getting checkpoint of %s", fileType);
+        ExportCheckpoint checkpoint = null;
+        SQLiteDatabase db = helper.getReadableDatabase();
+        Cursor cursor = db.query(ExportCheckpointsTable.TABLE_NAME, null, ExportCheckpointsTable.COLUMN_FILE_TYPE + " = ?", new String[]{fileType}, null, null, null);
+        if (cursor.moveToNext()) {
+            checkpoint = new ExportCheckpoint();
+            checkpoint.setFileType(fileType);
+            checkpoint.setJobId(cursor.getString(cursor.getColumnIndex(ExportCheckpointsTable.COLUMN_JOB_ID)));
+            checkpoint.setFileName(cursor.getString(cursor.getColumnIndex(ExportCheckpointsTable.COLUMN_FILE_NAME)));
+            checkpoint.setCompressedExtension(cursor.getString(cursor.getColumnIndex(ExportCheckpointsTable.COLUMN_COMPRESSED_EXTENSION)));
+            checkpoint.setMeasuredAt(cursor.getLong(cursor.getColumnIndex(ExportCheckpointsTable.COLUMN_MEASURED_AT)));
+            checkpoint.setMeasurementId(cursor.getInt(cursor.getColumnIndex(ExportCheckpointsTable.COLUMN_MEASUREMENT_ID)));
+            checkpoint.setFileOffset(cursor.getLong(cursor.getColumnIndex(ExportCheckpointsTable.COLUMN_FILE_OFFSET)));
+            checkpoint.setFileFingerprint(cursor.getLong(cursor.getColumnIndex(ExportCheckpointsTable.COLUMN_FILE_FINGERPRINT)));
+        }
+        cursor.close();
+        Timber.d("getExportCheckpoint(): %s", checkpoint);
+        return checkpoint;
+    }
+
+    public void saveExportCheckpoint(ExportCheckpoint checkpoint) {
+        Timber.d("saveExportCheckpoint(): Saving %s", checkpoint);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        ContentValues cv = new ContentValues();
+        cv.put(ExportCheckpointsTable.COLUMN_FILE_TYPE, checkpoint.getFileType());
+        cv.put(ExportCheckpointsTable.COLUMN_JOB_ID, checkpoint.getJobId());
+        cv.put(ExportCheckpointsTable.COLUMN_FILE_NAME, checkpoint.getFileName());
+        cv.put(ExportCheckpointsTable.COLUMN_COMPRESSED_EXTENSION, checkpoint.getCompressedExtension());
+        cv.put(ExportCheckpointsTable.COLUMN_MEASURED_AT, checkpoint.getMeasuredAt());
+        cv.put(ExportCheckpointsTable.COLUMN_MEASUREMENT_ID, checkpoint.getMeasurementId());
+        cv.put(ExportCheckpointsTable.COLUMN_FILE_OFFSET, checkpoint.getFileOffset());
+        cv.put(ExportCheckpointsTable.COLUMN_FILE_FINGERPRINT, checkpoint.getFileFingerprint());
+        db.insertWithOnConflict(ExportCheckpointsTable.TABLE_NAME, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    public int deleteExportCheckpoint(String fileType) {
+        Timber.d("deleteExportCheckpoint(): Deleting checkpoint of %s", fileType);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        return db.delete(ExportCheckpointsTable.TABLE_NAME, ExportCheckpointsTable.COLUMN_FILE_TYPE + " = ?", new String[]{fileType});
+    }
+
+    /**
+     * Deletes checkpoints of the job or of all other jobs.
+     */
+    public int deleteExportCheckpoints(String jobId, boolean otherJobs) {
+        Timber.d("deleteExportCheckpoints(): Deleting checkpoints of %s, other jobs = %s", jobId, otherJobs);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        return db.delete(ExportCheckpointsTable.TABLE_NAME, ExportCheckpointsTable.COLUMN_JOB_ID + (otherJobs ? " <> ?" : " = ?"), new String[]{jobId});
+    }
+
+    @Override
+    public long insertUploadJournalEntry(UploadJournalEntry entry) {
+        Timber.d("insertUploadJournalEntry(): Inserting %s", entry);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        ContentValues cv = new ContentValues();
+        cv.put(UploadJournalTable.COLUMN_TARGET, entry.getTarget());
+        cv.put(UploadJournalTable.COLUMN_STATE, entry.getState().getValue());
+        cv.put(UploadJournalTable.COLUMN_FIRST_MEASURED_AT, entry.getFirstMeasuredAt());
+        cv.put(UploadJournalTable.COLUMN_FIRST_MEASUREMENT_ID, entry.getFirstMeasurementId());
+        cv.put(UploadJournalTable.COLUMN_LAST_MEASURED_AT, entry.getLastMeasuredAt());
+        cv.put(UploadJournalTable.COLUMN_LAST_MEASUREMENT_ID, entry.getLastMeasurementId());
+        cv.put(UploadJournalTable.COLUMN_MAX_MEASUREMENT_ID, entry.getMaxMeasurementId());
+        cv.put(UploadJournalTable.COLUMN_MEASUREMENTS_COUNT, entry.getMeasurementsCount());
+        cv.put(UploadJournalTable.COLUMN_MARK_ALL_TARGETS, entry.isMarkAllTargets());
+        cv.put(UploadJournalTable.COLUMN_UPDATED_AT, entry.getUpdatedAt());
+        long entryId = db.insert(UploadJournalTable.TABLE_NAME, null, cv);
+        entry.setEntryId(entryId);
+        return entryId;
+    }
+
+    @Override
+    public void updateUploadJournalEntryState(UploadJournalEntry entry) {
+        Timber.d("updateUploadJournalEntryState(): Changing state of entry %s to %s", entry.getEntryId(), entry.getState());
+        SQLiteDatabase db = helper.getWritableDatabase();
+        ContentValues cv = new ContentValues();
+        cv.put(UploadJournalTable.COLUMN_STATE, entry.getState().getValue());
+        cv.put(UploadJournalTable.COLUMN_UPDATED_AT, entry.getUpdatedAt());
+        db.update(UploadJournalTable.TABLE_NAME, cv, UploadJournalTable.COLUMN_ROW_ID + " = ?", new String[]{String.valueOf(entry.getEntryId())});
+    }
+
+    @Override
+    public List<UploadJournalEntry> getUploadJournalEntries() {
+        Timber.d("getUploadJournalEntries(): Getting upload journal");
+        List<UploadJournalEntry> entries = new ArrayList<>();
+        SQLiteDatabase db = helper.getReadableDatabase();
+        Cursor cursor = db.query(UploadJournalTable.TABLE_NAME, null, null, null, null, null, UploadJournalTable.COLUMN_ROW_ID + " ASC");
+        int rowIdColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_ROW_ID);
+        int targetColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_TARGET);
+        int stateColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_STATE);
+        int firstMeasuredAtColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_FIRST_MEASURED_AT);
+        int firstMeasurementIdColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_FIRST_MEASUREMENT_ID);
+        int lastMeasuredAtColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_LAST_MEASURED_AT);
+        int lastMeasurementIdColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_LAST_MEASUREMENT_ID);
+        int maxMeasurementIdColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_MAX_MEASUREMENT_ID);
+        int measurementsCountColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_MEASUREMENTS_COUNT);
+        int markAllTargetsColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_MARK_ALL_TARGETS);
+        int updatedAtColumnIndex = cursor.getColumnIndex(UploadJournalTable.COLUMN_UPDATED_AT);
+        while (cursor.moveToNext()) {
+            UploadJournalEntry entry = new UploadJournalEntry();
+            entry.setEntryId(cursor.getLong(rowIdColumnIndex));
+            entry.setTarget(cursor.getString(targetColumnIndex));
+            entry.setState(UploadJournalState.fromValue(cursor.getInt(stateColumnIndex)));
+            entry.setFirstMeasuredAt(cursor.getLong(firstMeasuredAtColumnIndex));
+            entry.setFirstMeasurementId(cursor.getInt(firstMeasurementIdColumnIndex));
+            entry.setLastMeasuredAt(cursor.getLong(lastMeasuredAtColumnIndex));
+            entry.setLastMeasurementId(cursor.getInt(lastMeasurementIdColumnIndex));
+            entry.setMaxMeasurementId(cursor.getInt(maxMeasurementIdColumnIndex));
+            entry.setMeasurementsCount(cursor.getInt(measurementsCountColumnIndex));
+            entry.setMarkAllTargets(cursor.getInt(markAllTargetsColumnIndex) == 1);
+            entry.setUpdatedAt(cursor.getLong(updatedAtColumnIndex));
+            entries.add(entry);
+        }
+        cursor.close();
+        return entries;
+    }
+
+    /**
+     * Marks measurements of the journal entry as uploaded to its target (or to all targets when the entry says so)
+     * at time when the part was acknowledged, together with the entry itself.
+     * Measurements already marked keep their time, so it can be repeated safely.
+     */
+    @Override
+    public int markUploadJournalEntryAsUploaded(UploadJournalEntry entry) {
+        Timber.d("markUploadJournalEntryAsUploaded(): Marking measurements of %s", entry);
+        boolean isOcidEntry = UploadJournalEntry.TARGET_OCID.equals(entry.getTarget());
+        int updated = 0;
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (isOcidEntry || entry.isMarkAllTargets())
+                updated = Math.max(updated, markUploadJournalEntryAsUploaded(db, entry, MeasurementsTable.COLUMN_UPLOADED_TO_OCID_AT));
+            if (!isOcidEntry || entry.isMarkAllTargets())
+                updated = Math.max(updated, markUploadJournalEntryAsUploaded(db, entry, MeasurementsTable.COLUMN_UPLOADED_TO_MLS_AT));
+            ContentValues entryValues = new ContentValues();
+            entryValues.put(UploadJournalTable.COLUMN_STATE, UploadJournalState.Marked.getValue());
+            db.update(UploadJournalTable.TABLE_NAME, entryValues, UploadJournalTable.COLUMN_ROW_ID + " = ?", new String[]{String.valueOf(entry.getEntryId())});
+            db.setTransactionSuccessful();
+            Timber.d("markUploadJournalEntryAsUploaded(): Marked %s of %s measurements", updated, entry.getMeasurementsCount());
+        } finally {
+            invalidateCache();
+            db.endTransaction();
+        }
+        return updated;
+    }
+
+    private int markUploadJournalEntryAsUploaded(SQLiteDatabase db, UploadJournalEntry entry, String uploadedAtColumn) {
+        ContentValues cv = new ContentValues();
+        cv.put(uploadedAtColumn, entry.getUpdatedAt());
+        // the same order as parts are read in
+        String whereClause = uploadedAtColumn + " IS NULL AND " + MeasurementsTable.COLUMN_ROW_ID + " <= ?"
+                + " AND (" + MeasurementsTable.COLUMN_MEASURED_AT + " > ? OR (" + MeasurementsTable.COLUMN_MEASURED_AT + " = ? AND " + MeasurementsTable.COLUMN_ROW_ID + " >= ?))"
+                + " AND (" + MeasurementsTable.COLUMN_MEASURED_AT + " < ? OR (" + MeasurementsTable.COLUMN_MEASURED_AT + " = ? AND " + MeasurementsTable.COLUMN_ROW_ID + " <= ?))";
+        String[] whereArgs = new String[]{
+                String.valueOf(entry.getMaxMeasurementId()),
+                String.valueOf(entry.getFirstMeasuredAt()), String.valueOf(entry.getFirstMeasuredAt()), String.valueOf(entry.getFirstMeasurementId()),
+                String.valueOf(entry.getLastMeasuredAt()), String.valueOf(entry.getLastMeasuredAt()), String.valueOf(entry.getLastMeasurementId())
+        };
+        return db.update(MeasurementsTable.TABLE_NAME, cv, whereClause, whereArgs);
+    }
+
+    /**
+     * Deletes journal entries, acknowledged entries can be kept until their measurements are marked.
+     */
+    @Override
+    public int deleteUploadJournalEntries(boolean keepAcknowledged) {
+        Timber.d("deleteUploadJournalEntries(): Deleting upload journal, keep acknowledged = %s", keepAcknowledged);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        if (keepAcknowledged)
+            return db.delete(UploadJournalTable.TABLE_NAME, UploadJournalTable.COLUMN_STATE + " <> ?", new String[]{String.valueOf(UploadJournalState.Acknowledged.getValue())});
+        return db.delete(UploadJournalTable.TABLE_NAME, "1", null);
+    }
+
     public int deleteAllMeasurements() {
         Timber.d("deleteAllMeasurements(): Deleting all measurements");
         SQLiteDatabase db = helper.getWritableDatabase();
@@ -621,6 +1042,8 @@ public class MeasurementsDatabase {
         try {
             deletedCellSignals = db.delete(CellSignalsTable.TABLE_NAME, "1", null);
             int deletedMeasurements = db.delete(MeasurementsTable.TABLE_NAME, "1", null);
+            // journal refers to deleted measurements
+            db.delete(UploadJournalTable.TABLE_NAME, "1", null);
             db.setTransactionSuccessful();
             Timber.d("deleteAllMeasurements(): Deleted %s cell signals, %s measurements", deletedCellSignals, deletedMeasurements);
         } finally {
@@ -630,6 +1053,7 @@ public class MeasurementsDatabase {
         return deletedCellSignals;
     }
 
+    @Override
     public int markAsUploaded(int[] measurementIds, Long uploadedToOcidAt, Long uploadedToMlsAt) {
         if (measurementIds == null || measurementIds.length == 0) {
             Timber.d("markAsUploaded(): Nothing to mark");
@@ -680,6 +1104,7 @@ public class MeasurementsDatabase {
         return updated;
     }
 
+    @Override
     public int clearOlderUploadedPartiallyAndUploadedFully() {
         Timber.d("clearOlderUploadedPartiallyAndUploadedFully(): Executing in transaction");
         // in transaction
@@ -716,6 +1141,8 @@ public class MeasurementsDatabase {
         try {
             deletedCellSignals = db.delete(CellSignalsTable.TABLE_NAME, "1", null);
             int deletedMeasurements = db.delete(MeasurementsTable.TABLE_NAME, "1", null);
+            // journal refers to deleted measurements
+            db.delete(UploadJournalTable.TABLE_NAME, "1", null);
             int deletedCells = db.delete(CellsTable.TABLE_NAME, "1", null);
             ContentValues cv = new ContentValues();
             cv.put(StatsTable.COLUMN_TOTAL_MEASUREMENTS, 0);
@@ -950,6 +1377,9 @@ public class MeasurementsDatabase {
             tables.add(new CellsTable());
             tables.add(new CellSignalsTable());
             tables.add(new NotUploadedMeasurementsView());
+            tables.add(new ExportWatermarksTable());
+            tables.add(new ExportCheckpointsTable());
+            tables.add(new UploadJournalTable());
 
             try {
                 createSchema(sqliteDatabase, tables);
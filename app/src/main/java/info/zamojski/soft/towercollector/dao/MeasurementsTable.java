@@ -43,6 +43,9 @@ final class MeasurementsTable implements ITable {
     private static final String QUERY_CREATE_INDEX_UPLOADED_TO_MLS_AT = "CREATE INDEX 'IX_" + TABLE_NAME + "_" + COLUMN_UPLOADED_TO_MLS_AT +
             "' ON " + TABLE_NAME + " (" + COLUMN_UPLOADED_TO_MLS_AT + " ASC)";
 
+    private static final String QUERY_CREATE_INDEX_LOCATION = "CREATE INDEX 'IX_" + TABLE_NAME + "_" + COLUMN_LATITUDE + "_" + COLUMN_LONGITUDE +
+            "' ON " + TABLE_NAME + " (" + COLUMN_LATITUDE + " ASC, " + COLUMN_LONGITUDE + " ASC)";
+
     @Override
     public String[] getCreateQueries() {
         return new String[]{
@@ -50,7 +53,8 @@ final class MeasurementsTable implements ITable {
                 QUERY_CREATE_TABLE,
                 QUERY_CREATE_INDEX_MEASURED_AT,
                 QUERY_CREATE_INDEX_UPLOADED_TO_OCID_AT,
-                QUERY_CREATE_INDEX_UPLOADED_TO_MLS_AT
+                QUERY_CREATE_INDEX_UPLOADED_TO_MLS_AT,
+                QUERY_CREATE_INDEX_LOCATION
         };
     }
 }
@@ -0,0 +1,44 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+final class UploadJournalTable implements ITable {
+
+    static final String TABLE_NAME = "upload_journal";
+    static final String COLUMN_ROW_ID = "row_id";
+    static final String COLUMN_TARGET = "target";
+    static final String COLUMN_STATE = "state";
+    static final String COLUMN_FIRST_MEASURED_AT = "first_measured_at";
+    static final String COLUMN_FIRST_MEASUREMENT_ID = "first_measurement_id";
+    static final String COLUMN_LAST_MEASURED_AT = "last_measured_at";
+    static final String COLUMN_LAST_MEASUREMENT_ID = "last_measurement_id";
+    static final String COLUMN_MAX_MEASUREMENT_ID = "max_measurement_id";
+    static final String COLUMN_MEASUREMENTS_COUNT = "measurements_count";
+    static final String COLUMN_MARK_ALL_TARGETS = "mark_all_targets";
+    static final String COLUMN_UPDATED_AT = "updated_at";
+
+    private static final String QUERY_DROP_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME;
+
+    static final String QUERY_CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" +
+            COLUMN_ROW_ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            COLUMN_TARGET + " TEXT NOT NULL, " +
+            COLUMN_STATE + " INTEGER NOT NULL, " +
+            COLUMN_FIRST_MEASURED_AT + " INTEGER NOT NULL, " +
+            COLUMN_FIRST_MEASUREMENT_ID + " INTEGER NOT NULL, " +
+            COLUMN_LAST_MEASURED_AT + " INTEGER NOT NULL, " +
+            COLUMN_LAST_MEASUREMENT_ID + " INTEGER NOT NULL, " +
+            COLUMN_MAX_MEASUREMENT_ID + " INTEGER NOT NULL, " +
+            COLUMN_MEASUREMENTS_COUNT + " INTEGER NOT NULL, " +
+            COLUMN_MARK_ALL_TARGETS + " INTEGER NOT NULL, " +
+            COLUMN_UPDATED_AT + " INTEGER NOT NULL)";
+
+    @Override
+    public String[] getCreateQueries() {
+        return new String[]{
+                QUERY_DROP_TABLE,
+                QUERY_CREATE_TABLE
+        };
+    }
+}
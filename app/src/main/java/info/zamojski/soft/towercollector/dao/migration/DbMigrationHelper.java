@@ -84,6 +84,24 @@ public class DbMigrationHelper {
         if (from < 17) {
             this.upgradeScripts.add(new UpgradeScript17());
         }
+        if (from < 18) {
+            this.upgradeScripts.add(new UpgradeScript18());
+        }
+        if (from < 19) {
+            this.upgradeScripts.add(new UpgradeScript19());
+        }
+        if (from < 20) {
+            this.upgradeScripts.add(new UpgradeScript20());
+        }
+        if (from < 21) {
+            this.upgradeScripts.add(new UpgradeScript21());
+        }
+        if (from < 22) {
+            this.upgradeScripts.add(new UpgradeScript22());
+        }
+        if (from < 23) {
+            this.upgradeScripts.add(new UpgradeScript23());
+        }
     }
 
 }
@@ -0,0 +1,16 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+
+class UpgradeScript19 implements IUpgradeScript {
+
+    @Override
+    public void performUpgrade(SQLiteDatabase database) {
+        // add table for incremental export
+        database.execSQL("CREATE TABLE export_watermarks (file_type TEXT PRIMARY KEY NOT NULL, measured_at INTEGER NOT NULL, measurement_id INTEGER NOT NULL, file_name TEXT DEFAULT NULL, compressed_extension TEXT DEFAULT NULL, pending_measured_at INTEGER DEFAULT NULL, pending_measurement_id INTEGER DEFAULT NULL, pending_file_name TEXT DEFAULT NULL, pending_compressed_extension TEXT DEFAULT NULL, pending_file_length INTEGER DEFAULT NULL)");
+    }
+}
@@ -0,0 +1,16 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+
+class UpgradeScript20 implements IUpgradeScript {
+
+    @Override
+    public void performUpgrade(SQLiteDatabase database) {
+        // add table for resumable export
+        database.execSQL("CREATE TABLE export_checkpoints (file_type TEXT PRIMARY KEY NOT NULL, job_id TEXT NOT NULL, file_name TEXT NOT NULL, compressed_extension TEXT DEFAULT NULL, measured_at INTEGER NOT NULL, measurement_id INTEGER NOT NULL, file_offset INTEGER NOT NULL)");
+    }
+}
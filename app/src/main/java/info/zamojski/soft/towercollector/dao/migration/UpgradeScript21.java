@@ -0,0 +1,17 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+
+class UpgradeScript21 implements IUpgradeScript {
+
+    @Override
+    public void performUpgrade(SQLiteDatabase database) {
+        // add indexes for filtered export
+        database.execSQL("CREATE INDEX 'IX_measurements_lat_lon' ON measurements (lat ASC, lon ASC);");
+        database.execSQL("CREATE INDEX 'IX_cells_net_type' ON cells (net_type ASC);");
+    }
+}
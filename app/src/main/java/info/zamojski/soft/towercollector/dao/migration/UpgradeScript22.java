@@ -0,0 +1,16 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+
+class UpgradeScript22 implements IUpgradeScript {
+
+    @Override
+    public void performUpgrade(SQLiteDatabase database) {
+        // add journal of upload parts
+        database.execSQL("CREATE TABLE upload_journal (row_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, target TEXT NOT NULL, state INTEGER NOT NULL, first_measured_at INTEGER NOT NULL, first_measurement_id INTEGER NOT NULL, last_measured_at INTEGER NOT NULL, last_measurement_id INTEGER NOT NULL, max_measurement_id INTEGER NOT NULL, measurements_count INTEGER NOT NULL, mark_all_targets INTEGER NOT NULL, updated_at INTEGER NOT NULL)");
+    }
+}
@@ -0,0 +1,16 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+
+class UpgradeScript23 implements IUpgradeScript {
+
+    @Override
+    public void performUpgrade(SQLiteDatabase database) {
+        // add fingerprint of checkpoint file, checkpoints saved before have none and are restarted
+        database.execSQL("ALTER TABLE export_checkpoints ADD COLUMN file_fingerprint INTEGER NOT NULL DEFAULT 0");
+    }
+}
@@ -0,0 +1,45 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.content.Context;
+
+/**
+ * Benchmark listed in advanced preferences, created by BenchmarkFactory of the build type.
+ */
+public class Benchmark {
+
+    public interface Runner {
+        void run(Context context);
+    }
+
+    private final String key;
+    private final int titleResId;
+    private final int summaryResId;
+    private final Runner runner;
+
+    public Benchmark(String key, int titleResId, int summaryResId, Runner runner) {
+        this.key = key;
+        this.titleResId = titleResId;
+        this.summaryResId = summaryResId;
+        this.runner = runner;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getTitleResId() {
+        return titleResId;
+    }
+
+    public int getSummaryResId() {
+        return summaryResId;
+    }
+
+    public void run(Context context) {
+        runner.run(context);
+    }
+}
@@ -8,7 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public enum FileType {
-    Unknown, Csv, CsvOcid, Gpx, JsonMls, Kml, Kmz, Compress;
+    Unknown, Csv, CsvOcid, Gpx, JsonMls, Kml, Kmz, Columnar, Compress;
 
     public static FileType[] valuesOf(String[] values) {
         List<FileType> fileTypes = new ArrayList<>();
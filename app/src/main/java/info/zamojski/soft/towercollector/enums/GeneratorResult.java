@@ -5,5 +5,5 @@
 package info.zamojski.soft.towercollector.enums;
 
 public enum GeneratorResult {
-    Unknown, NoData, Succeeded, Failed, Cancelled
+    Unknown, NoData, Succeeded, Failed, Cancelled, RestartRequired
 }
@@ -0,0 +1,36 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.enums;
+
+public enum UploadJournalState {
+    Prepared(0),
+    Sent(1),
+    Acknowledged(2),
+    Marked(3);
+
+    private int value;
+
+    private UploadJournalState(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public static UploadJournalState fromValue(int value) {
+        switch (value) {
+            case 1:
+                return Sent;
+            case 2:
+                return Acknowledged;
+            case 3:
+                return Marked;
+            case 0:
+            default:
+                return Prepared;
+        }
+    }
+}
@@ -5,6 +5,7 @@
 package info.zamojski.soft.towercollector.events;
 
 import java.util.List;
+import java.util.Map;
 
 import android.location.Location;
 import android.telephony.CellInfo;
@@ -15,11 +16,14 @@ public class Api17PlusMeasurementProcessingEvent {
 
     private List<CellInfo> lastCellInfo;
 
+    private Map<CellInfo, Integer> subscriptionIds;
+
     private int minDistance;
 
-    public Api17PlusMeasurementProcessingEvent(Location lastLocation, List<CellInfo> lastCellInfo, int minDistance) {
+    public Api17PlusMeasurementProcessingEvent(Location lastLocation, List<CellInfo> lastCellInfo, Map<CellInfo, Integer> subscriptionIds, int minDistance) {
         this.lastLocation = lastLocation;
         this.lastCellInfo = lastCellInfo;
+        this.subscriptionIds = subscriptionIds;
         this.minDistance = minDistance;
     }
 
@@ -31,6 +35,10 @@ public class Api17PlusMeasurementProcessingEvent {
         return lastCellInfo;
     }
 
+    public Map<CellInfo, Integer> getSubscriptionIds() {
+        return subscriptionIds;
+    }
+
     public int getMinDistance() {
         return minDistance;
     }
@@ -0,0 +1,96 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.export;
+
+import android.content.Context;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.IOException;
+
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.enums.FileType;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.model.ExportCheckpoint;
+import info.zamojski.soft.towercollector.utils.StorageUtils;
+import timber.log.Timber;
+
+/**
+ * Keeps checkpoints of files written by the export job, so the job restarted by WorkManager continues files
+ * from the last checkpoint instead of exporting everything again. Checkpoints of other jobs are discarded.
+ */
+public class ExportCheckpointManager {
+
+    private final Context context;
+    private final Uri storageUri;
+    private final String jobId;
+    private final MeasurementsDatabase database;
+
+    public ExportCheckpointManager(Context context, Uri storageUri, String jobId) {
+        this.context = context;
+        this.storageUri = storageUri;
+        this.jobId = jobId;
+        this.database = MeasurementsDatabase.getInstance(context);
+        database.deleteExportCheckpoints(jobId, true);
+    }
+
+    /**
+     * Returns checkpoint to resume the file from or null if the file has to be written from scratch.
+     */
+    public ExportCheckpoint getCheckpoint(FileType fileType, String compressedExtension) {
+        ExportCheckpoint checkpoint = database.getExportCheckpoint(fileType.name());
+        if (checkpoint == null)
+            return null;
+        String reason = null;
+        if (!TextUtils.equals(checkpoint.getCompressedExtension(), compressedExtension)) {
+            reason = "compression changed";
+        } else {
+            String compressedFileName = checkpoint.getFileName() + (compressedExtension != null ? "." + compressedExtension : "");
+            DocumentFile file = StorageUtils.findFile(storageUri, compressedFileName);
+            if (file == null) {
+                reason = "file not found";
+            } else if (file.length() < checkpoint.getFileOffset()) {
+                reason = "file shorter than checkpoint";
+            } else {
+                try {
+                    if (FileWriter.getFingerprint(context, file.getUri(), checkpoint.getFileOffset()) != checkpoint.getFileFingerprint())
+                        reason = "file changed since checkpoint";
+                } catch (IOException ex) {
+                    Timber.w(ex, "getCheckpoint(): Failed to compute fingerprint of %s", compressedFileName);
+                    reason = "file not readable";
+                }
+            }
+        }
+        if (reason != null) {
+            Timber.i("getCheckpoint(): Restarting export of %s, %s", fileType, reason);
+            database.deleteExportCheckpoint(fileType.name());
+            return null;
+        }
+        Timber.i("getCheckpoint(): Resuming export of %s from %s", fileType, checkpoint);
+        return checkpoint;
+    }
+
+    public void save(FileType fileType, String fileName, String compressedExtension, long measuredAt, int measurementId, long fileOffset, long fileFingerprint) {
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        checkpoint.setFileType(fileType.name());
+        checkpoint.setJobId(jobId);
+        checkpoint.setFileName(fileName);
+        checkpoint.setCompressedExtension(compressedExtension);
+        checkpoint.setMeasuredAt(measuredAt);
+        checkpoint.setMeasurementId(measurementId);
+        checkpoint.setFileOffset(fileOffset);
+        checkpoint.setFileFingerprint(fileFingerprint);
+        database.saveExportCheckpoint(checkpoint);
+    }
+
+    /**
+     * Forgets all checkpoints of the job after it finished or will not be resumed.
+     */
+    public void clear() {
+        database.deleteExportCheckpoints(jobId, false);
+    }
+}
@@ -9,19 +9,25 @@ import android.app.NotificationManager;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Build;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.StringRes;
 import androidx.documentfile.provider.DocumentFile;
 import androidx.work.Data;
 import androidx.work.ForegroundInfo;
+import androidx.work.WorkInfo;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
 
 import info.zamojski.soft.towercollector.ExportQuickSettingsTileService;
 import info.zamojski.soft.towercollector.MyApplication;
@@ -29,21 +35,30 @@ import info.zamojski.soft.towercollector.R;
 import info.zamojski.soft.towercollector.analytics.IntentSource;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.FileType;
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
 import info.zamojski.soft.towercollector.files.FileGeneratorResult;
 import info.zamojski.soft.towercollector.files.formatters.csv.CsvExportFormatter;
 import info.zamojski.soft.towercollector.files.formatters.csv.CsvUploadFormatter;
 import info.zamojski.soft.towercollector.files.formatters.gpx.GpxExportFormatter;
 import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaExportFormatter;
 import info.zamojski.soft.towercollector.files.formatters.kml.KmlExportFormatter;
+import info.zamojski.soft.towercollector.files.generators.wrappers.ColumnarGeneratorWrapper;
 import info.zamojski.soft.towercollector.files.generators.wrappers.CompositeTextGeneratorWrapper;
 import info.zamojski.soft.towercollector.files.generators.wrappers.CsvTextGeneratorWrapper;
+import info.zamojski.soft.towercollector.files.generators.wrappers.FileTextGeneratorWrapperBase;
 import info.zamojski.soft.towercollector.files.generators.wrappers.GpxTextGeneratorWrapper;
 import info.zamojski.soft.towercollector.files.generators.wrappers.JsonTextGeneratorWrapper;
 import info.zamojski.soft.towercollector.files.generators.wrappers.KmlTextGeneratorWrapper;
 import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
-import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressiveTextGeneratorWrapper;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IStreamingTextGeneratorWrapper;
 import info.zamojski.soft.towercollector.io.filesystem.CompressionFormat;
 import info.zamojski.soft.towercollector.model.AnalyticsStatistics;
+import info.zamojski.soft.towercollector.model.Boundaries;
+import info.zamojski.soft.towercollector.model.ExportCheckpoint;
+import info.zamojski.soft.towercollector.model.ExportFilter;
+import info.zamojski.soft.towercollector.model.ExportRange;
+import info.zamojski.soft.towercollector.model.ExportWatermark;
+import info.zamojski.soft.towercollector.model.Measurement;
 import info.zamojski.soft.towercollector.utils.FileUtils;
 import info.zamojski.soft.towercollector.utils.StringUtils;
 import timber.log.Timber;
@@ -63,10 +78,22 @@ public class ExportWorker extends Worker implements IProgressListener {
     public static final String DIR_PATH = "EXPORTED_DIR_PATH";
     public static final String FILE_PATHS = "EXPORTED_FILE_PATHS";
     public static final String WORKER_TAG = "EXPORT_WORKER";
+    public static final String FILTER_MEASURED_FROM = "FILTER_MEASURED_FROM";
+    public static final String FILTER_MEASURED_TO = "FILTER_MEASURED_TO";
+    public static final String FILTER_BOUNDARIES = "FILTER_BOUNDARIES";
+    public static final String FILTER_NETWORK_GROUPS = "FILTER_NETWORK_GROUPS";
+    public static final String FILTER_SERVING_ONLY = "FILTER_SERVING_ONLY";
+
+    private static final int FAST_COMPRESSION_LEVEL = 3;
+    private static final int MEASUREMENTS_PER_CHECKPOINT = 10000;
 
     private Uri storageUri;
     private CompositeTextGeneratorWrapper generator;
+    private IncrementalExportManager incrementalExportManager;
+    private ExportCheckpointManager checkpointManager;
+    private volatile boolean stoppedBySystem;
     private IntentSource intentSource;
+    private ExportFilter exportFilter;
 
     private final NotificationManager notificationManager;
     private final ExportNotificationHelper notificationHelper;
@@ -92,7 +119,12 @@ public class ExportWorker extends Worker implements IProgressListener {
             List<FileType> fileTypes = new ArrayList<>(Arrays.asList(FileType.valuesOf(getInputData().getStringArray(SELECTED_FILE_TYPES))));
             storageUri = MyApplication.getPreferencesProvider().getStorageUri();
             intentSource = IntentSource.valueOf(getInputData().getString(INTENT_SOURCE));
+            exportFilter = getExportFilter(getInputData());
             CreateGenerators(fileTypes);
+            if (generator.getSubGenerators().isEmpty()) {
+                Timber.d("doWork(): No new measurements to export");
+                return Result.failure(getMessageData(getStringById(R.string.export_toast_no_data)));
+            }
 
             Timber.d("doWork(): Starting export");
             MyApplication.startBackgroundTask(this);
@@ -113,16 +145,31 @@ public class ExportWorker extends Worker implements IProgressListener {
             // check result
             switch (result.getResult()) {
                 case NoData:
+                    deleteFile();
                     return Result.failure(getMessageData(getStringById(R.string.export_toast_no_data)));
                 case Succeeded:
+                    // forget checkpoints first, interrupted commit is rolled back on next export
+                    checkpointManager.clear();
+                    if (incrementalExportManager != null) {
+                        incrementalExportManager.commit();
+                    }
                     Data resultData = new Data.Builder()
                             .putString(DIR_PATH, storageUri.getPath())
                             .putStringArray(FILE_PATHS, getGeneratedFiles())
                             .build();
                     return Result.success(resultData);
                 case Cancelled:
+                    if (stoppedBySystem) {
+                        // keep files and checkpoints, WorkManager will run the job again
+                        Timber.d("doWork(): Export interrupted, will be resumed from checkpoint");
+                        return Result.retry();
+                    }
                     deleteFile();
                     return Result.failure(getMessageData(getStringById(R.string.export_toast_cancelled))); // this message is not delivered if the Worker is cancelled
+                case RestartRequired:
+                    // checkpoint of the changed file is discarded on next run and the file is written from scratch
+                    Timber.d("doWork(): File changed since checkpoint, export will be restarted");
+                    return Result.retry();
                 case Failed:
                 case Unknown:
                 default:
@@ -150,6 +197,12 @@ public class ExportWorker extends Worker implements IProgressListener {
             }
         } catch (Exception ex) {
             Timber.e(ex, "doWork(): Export failed");
+            if (checkpointManager != null) {
+                checkpointManager.clear();
+            }
+            if (incrementalExportManager != null) {
+                incrementalExportManager.rollback();
+            }
             return Result.failure(getMessageData(ex.getMessage()));
         } finally {
             MyApplication.stopBackgroundTask();
@@ -164,6 +217,10 @@ public class ExportWorker extends Worker implements IProgressListener {
     @Override
     public void onStopped() {
         Timber.d("onStopped(): Export cancelled");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            // WorkManager runs the job again unless it was cancelled
+            stoppedBySystem = (getStopReason() != WorkInfo.STOP_REASON_CANCELLED_BY_APP);
+        }
         Notification notification = notificationHelper.updateNotificationCancelling();
         notificationManager.notify(NOTIFICATION_ID, notification);
         generator.cancel();
@@ -183,50 +240,188 @@ public class ExportWorker extends Worker implements IProgressListener {
         notificationManager.notify(NOTIFICATION_ID, notification);
     }
 
-    private void CreateGenerators(List<FileType> fileTypes) {
+    private void CreateGenerators(List<FileType> fileTypes) throws IOException {
         boolean compressFiles = fileTypes.contains(FileType.Compress);
         fileTypes.remove(FileType.Compress); // not a separate format
-        List<IProgressiveTextGeneratorWrapper> subGenerators = new ArrayList<>();
+        List<IStreamingTextGeneratorWrapper> subGenerators = new ArrayList<>();
         Date currentDateTime = new Date();
         CompressionFormat compressionFormat = getCompressionFormat(compressFiles);
         String compressedExtension = getCompressedExtension(compressionFormat);
+        int compressionLevel = getCompressionLevel();
+        MeasurementsDatabase database = MeasurementsDatabase.getInstance(MyApplication.getApplication());
+        // the same job restarted by WorkManager continues files from checkpoints
+        checkpointManager = new ExportCheckpointManager(MyApplication.getApplication(), storageUri, getId().toString());
+        ExportRange range = ExportRange.ALL;
+        if (MyApplication.getPreferencesProvider().isExportIncremental() && !exportFilter.isEmpty()) {
+            // filtered measurements would be marked as exported
+            Timber.d("CreateGenerators(): Incremental export disabled for %s", exportFilter);
+        } else if (MyApplication.getPreferencesProvider().isExportIncremental()) {
+            incrementalExportManager = new IncrementalExportManager(MyApplication.getApplication(), storageUri);
+            // measurements collected during export will be exported next time
+            Measurement lastMeasurement = database.getLastMeasurement();
+            range = (lastMeasurement != null ? ExportRange.until(lastMeasurement) : null);
+        }
+        ExportRange readRange = null;
         for (FileType fileType : fileTypes) {
-            switch (fileType) {
-                case Csv: {
-                    String fileName = FileUtils.getCurrentDateFileName(currentDateTime, "", "csv");
-                    subGenerators.add(new CsvTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, new CsvExportFormatter()));
-                    break;
+            // KMZ is always compressed
+            String fileCompressedExtension = (fileType == FileType.Kmz ? null : compressedExtension);
+            CompressionFormat fileCompressionFormat = (fileType == FileType.Kmz ? CompressionFormat.Zip : compressionFormat);
+            ExportCheckpoint checkpoint = checkpointManager.getCheckpoint(fileType, fileCompressedExtension);
+            String fileName = (checkpoint != null ? checkpoint.getFileName() : getFileName(fileType, currentDateTime));
+            ExportRange fileRange = range;
+            boolean append = false;
+            if (incrementalExportManager != null) {
+                ExportWatermark watermark = null;
+                if (checkpoint != null) {
+                    // continue pending export instead of rolling it back
+                    watermark = incrementalExportManager.resume(fileType);
+                    if (watermark == null || !TextUtils.equals(watermark.getPendingFileName(), fileName)) {
+                        checkpoint = null;
+                        fileName = getFileName(fileType, currentDateTime);
+                    }
                 }
-                case CsvOcid: {
-                    String fileName = FileUtils.getCurrentDateFileName(currentDateTime, "-ocid", "csv");
-                    subGenerators.add(new CsvTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, new CsvUploadFormatter()));
+                if (checkpoint == null) {
+                    watermark = incrementalExportManager.prepare(fileType);
                 }
-                break;
-                case Gpx: {
-                    String fileName = FileUtils.getCurrentDateFileName(currentDateTime, "", "gpx");
-                    subGenerators.add(new GpxTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, new GpxExportFormatter()));
+                if (range == null) {
+                    continue;
                 }
-                break;
-                case JsonMls: {
-                    String fileName = FileUtils.getCurrentDateFileName(currentDateTime, "-mls", "json");
-                    subGenerators.add(new JsonTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, new JsonMozillaExportFormatter()));
+                if (watermark != null) {
+                    fileRange = range.startingAfter(watermark.getMeasuredAt(), watermark.getMeasurementId());
                 }
-                break;
-                case Kml: {
-                    String fileName = FileUtils.getCurrentDateFileName(currentDateTime, "", "kml");
-                    subGenerators.add(new KmlTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, new KmlExportFormatter()));
+                if (checkpoint == null && database.getLocationsCount(fileRange, exportFilter) == 0) {
+                    Timber.d("CreateGenerators(): No new measurements to export to %s", fileType);
+                    continue;
                 }
-                break;
-                case Kmz: {
-                    String fileName = FileUtils.getCurrentDateFileName(currentDateTime, "", "kmz");
-                    subGenerators.add(new KmlTextGeneratorWrapper(storageUri, fileName, null, CompressionFormat.Zip, new KmlExportFormatter()));
+                Long fileLength = null;
+                if (checkpoint != null) {
+                    // length before the interrupted export to roll back to
+                    fileLength = watermark.getPendingFileLength();
+                } else if (canAppend(fileType, fileCompressionFormat) && watermark != null && watermark.getFileName() != null
+                        && TextUtils.equals(watermark.getCompressedExtension(), fileCompressedExtension)) {
+                    fileLength = incrementalExportManager.getFileLength(watermark.getFileName(), fileCompressedExtension);
+                    if (fileLength != null && fileLength > 0) {
+                        fileName = watermark.getFileName();
+                        append = true;
+                    } else {
+                        fileLength = null;
+                    }
                 }
-                break;
-                default:
-                    throw new UnsupportedOperationException("This file type " + fileType + " is not supported");
+                Timber.d("CreateGenerators(): Exporting %s to %s, append = %s", fileRange, fileName, append);
+                incrementalExportManager.begin(fileType, fileRange, fileName, fileCompressedExtension, fileLength);
+            }
+            if (checkpoint != null) {
+                fileRange = fileRange.startingAfter(checkpoint.getMeasuredAt(), checkpoint.getMeasurementId());
+            }
+            readRange = (readRange == null ? fileRange : readRange.union(fileRange));
+            FileTextGeneratorWrapperBase<?> subGenerator = createSubGenerator(fileType, fileName, fileCompressedExtension, fileCompressionFormat, compressionLevel);
+            subGenerator.setExportRange(fileRange);
+            subGenerator.setAppendToExistingFile(append);
+            if (subGenerator.isResumable()) {
+                String checkpointFileName = fileName;
+                subGenerator.setResumeCheckpoint(checkpoint);
+                subGenerator.setCheckpointListener((measuredAt, measurementId, fileOffset, fileFingerprint) ->
+                        checkpointManager.save(fileType, checkpointFileName, fileCompressedExtension, measuredAt, measurementId, fileOffset, fileFingerprint), MEASUREMENTS_PER_CHECKPOINT);
+            }
+            subGenerators.add(subGenerator);
+        }
+        generator = new CompositeTextGeneratorWrapper(subGenerators, intentSource, getFormattingThreads(), readRange, exportFilter);
+    }
+
+    /**
+     * Puts the filter into input data of the worker, empty filter is not stored.
+     */
+    public static Data.Builder putExportFilter(Data.Builder builder, ExportFilter filter) {
+        if (filter.getMeasuredFrom() != null)
+            builder.putLong(FILTER_MEASURED_FROM, filter.getMeasuredFrom());
+        if (filter.getMeasuredTo() != null)
+            builder.putLong(FILTER_MEASURED_TO, filter.getMeasuredTo());
+        Boundaries boundaries = filter.getBoundaries();
+        if (boundaries != null)
+            builder.putDoubleArray(FILTER_BOUNDARIES, new double[]{boundaries.getMinLat(), boundaries.getMinLon(), boundaries.getMaxLat(), boundaries.getMaxLon()});
+        if (!filter.getNetworkGroups().isEmpty()) {
+            List<String> networkGroups = new ArrayList<>();
+            for (NetworkGroup networkGroup : filter.getNetworkGroups()) {
+                networkGroups.add(networkGroup.name());
             }
+            builder.putStringArray(FILTER_NETWORK_GROUPS, networkGroups.toArray(new String[0]));
         }
-        generator = new CompositeTextGeneratorWrapper(subGenerators, intentSource);
+        if (filter.isServingOnly())
+            builder.putBoolean(FILTER_SERVING_ONLY, true);
+        return builder;
+    }
+
+    private ExportFilter getExportFilter(Data data) {
+        Long measuredFrom = (data.hasKeyWithValueOfType(FILTER_MEASURED_FROM, Long.class) ? data.getLong(FILTER_MEASURED_FROM, 0) : null);
+        Long measuredTo = (data.hasKeyWithValueOfType(FILTER_MEASURED_TO, Long.class) ? data.getLong(FILTER_MEASURED_TO, 0) : null);
+        double[] bounds = data.getDoubleArray(FILTER_BOUNDARIES);
+        Boundaries boundaries = (bounds != null && bounds.length == 4 ? new Boundaries(bounds[0], bounds[1], bounds[2], bounds[3]) : null);
+        Set<NetworkGroup> networkGroups = EnumSet.noneOf(NetworkGroup.class);
+        String[] networkGroupNames = data.getStringArray(FILTER_NETWORK_GROUPS);
+        if (networkGroupNames != null) {
+            for (String networkGroupName : networkGroupNames) {
+                networkGroups.add(NetworkGroup.valueOf(networkGroupName));
+            }
+        }
+        boolean servingOnly = data.getBoolean(FILTER_SERVING_ONLY, false);
+        ExportFilter filter = new ExportFilter(measuredFrom, measuredTo, boundaries, networkGroups, servingOnly);
+        Timber.d("getExportFilter(): %s", filter);
+        return filter;
+    }
+
+    private String getFileName(FileType fileType, Date currentDateTime) {
+        switch (fileType) {
+            case Csv:
+                return FileUtils.getCurrentDateFileName(currentDateTime, "", "csv");
+            case CsvOcid:
+                return FileUtils.getCurrentDateFileName(currentDateTime, "-ocid", "csv");
+            case Gpx:
+                return FileUtils.getCurrentDateFileName(currentDateTime, "", "gpx");
+            case JsonMls:
+                return FileUtils.getCurrentDateFileName(currentDateTime, "-mls", "json");
+            case Kml:
+                return FileUtils.getCurrentDateFileName(currentDateTime, "", "kml");
+            case Kmz:
+                return FileUtils.getCurrentDateFileName(currentDateTime, "", "kmz");
+            case Columnar:
+                return FileUtils.getCurrentDateFileName(currentDateTime, "", "tcc");
+            default:
+                throw new UnsupportedOperationException("This file type " + fileType + " is not supported");
+        }
+    }
+
+    private FileTextGeneratorWrapperBase<?> createSubGenerator(FileType fileType, String fileName, String compressedExtension, CompressionFormat compressionFormat, int compressionLevel) {
+        switch (fileType) {
+            case Csv:
+                return new CsvTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel, CsvExportFormatter::new);
+            case CsvOcid:
+                return new CsvTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel, CsvUploadFormatter::new);
+            case Gpx:
+                return new GpxTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel, GpxExportFormatter::new);
+            case JsonMls:
+                return new JsonTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel, JsonMozillaExportFormatter::new);
+            case Kml:
+            case Kmz:
+                return new KmlTextGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel, KmlExportFormatter::new);
+            case Columnar:
+                return new ColumnarGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel);
+            default:
+                throw new UnsupportedOperationException("This file type " + fileType + " is not supported");
+        }
+    }
+
+    /**
+     * CSV files have no footer, so new entries can be appended to the previous file unless it is a ZIP archive.
+     */
+    private boolean canAppend(FileType fileType, CompressionFormat compressionFormat) {
+        return (fileType == FileType.Csv || fileType == FileType.CsvOcid) && compressionFormat != CompressionFormat.Zip;
+    }
+
+    private int getFormattingThreads() {
+        if (MyApplication.getPreferencesProvider().getExportParallelFormatting()) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return 0;
     }
 
     private CompressionFormat getCompressionFormat(boolean compressFiles) {
@@ -236,16 +431,31 @@ public class ExportWorker extends Worker implements IProgressListener {
                 return CompressionFormat.Zip;
             } else if (getStringById(R.string.preferences_export_compression_format_entries_value_gzip).equals(compressionFormat)) {
                 return CompressionFormat.GZip;
+            } else if (getStringById(R.string.preferences_export_compression_format_entries_value_parallel_gzip).equals(compressionFormat)) {
+                return CompressionFormat.ParallelGZip;
             }
         }
         return CompressionFormat.None;
     }
 
+    private int getCompressionLevel() {
+        String compressionLevel = MyApplication.getPreferencesProvider().getExportCompressionLevel();
+        if (getStringById(R.string.preferences_export_compression_level_entries_value_fastest).equals(compressionLevel)) {
+            return Deflater.BEST_SPEED;
+        } else if (getStringById(R.string.preferences_export_compression_level_entries_value_fast).equals(compressionLevel)) {
+            return FAST_COMPRESSION_LEVEL;
+        } else if (getStringById(R.string.preferences_export_compression_level_entries_value_best).equals(compressionLevel)) {
+            return Deflater.BEST_COMPRESSION;
+        }
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+
     private String getCompressedExtension(CompressionFormat compressionFormat) {
         switch (compressionFormat) {
             case Zip:
                 return "zip";
             case GZip:
+            case ParallelGZip:
                 return "gz";
             default:
                 return null; // no compression
@@ -253,7 +463,13 @@ public class ExportWorker extends Worker implements IProgressListener {
     }
 
     private void deleteFile() {
-        for (IProgressiveTextGeneratorWrapper subGenerator : generator.getSubGenerators()) {
+        checkpointManager.clear();
+        if (incrementalExportManager != null) {
+            // restores appended files and deletes new ones
+            incrementalExportManager.rollback();
+            return;
+        }
+        for (IStreamingTextGeneratorWrapper subGenerator : generator.getSubGenerators()) {
             // delete file if exists
             Uri fullPath = subGenerator.getFullPath();
             if (fullPath != null) {
@@ -272,7 +488,7 @@ public class ExportWorker extends Worker implements IProgressListener {
 
     private String[] getGeneratedFiles() {
         ArrayList<String> result = new ArrayList<>();
-        for (IProgressiveTextGeneratorWrapper subGenerator : generator.getSubGenerators()) {
+        for (IStreamingTextGeneratorWrapper subGenerator : generator.getSubGenerators()) {
             Uri fullPath = subGenerator.getFullPath();
             if (fullPath != null && DocumentFile.fromSingleUri(MyApplication.getApplication(), fullPath).exists()) {
                 result.add(fullPath.toString());
@@ -0,0 +1,117 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.export;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.enums.FileType;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.model.ExportRange;
+import info.zamojski.soft.towercollector.model.ExportWatermark;
+import info.zamojski.soft.towercollector.utils.StorageUtils;
+import timber.log.Timber;
+
+/**
+ * Keeps watermarks of incremental export consistent with exported files. Export of every file type is recorded
+ * as pending before the file is written and all pending exports are committed in one transaction after all files are written.
+ * Otherwise files are rolled back by truncating appended file to its previous length or deleting new file,
+ * also on next export if the app was killed in the meantime, so measurements are never skipped or written twice.
+ */
+public class IncrementalExportManager {
+
+    private final Context context;
+    private final Uri storageUri;
+    private final MeasurementsDatabase database;
+    private final List<String> pendingFileTypes = new ArrayList<>();
+
+    public IncrementalExportManager(Context context, Uri storageUri) {
+        this.context = context;
+        this.storageUri = storageUri;
+        this.database = MeasurementsDatabase.getInstance(context);
+    }
+
+    /**
+     * Rolls back export interrupted before commit and returns the last committed watermark or null if nothing was exported yet.
+     */
+    public ExportWatermark prepare(FileType fileType) throws IOException {
+        ExportWatermark watermark = database.getExportWatermark(fileType.name());
+        if (watermark != null && watermark.isPending()) {
+            Timber.i("prepare(): Rolling back interrupted export of %s", fileType);
+            rollback(watermark);
+        }
+        return watermark;
+    }
+
+    /**
+     * Returns pending watermark of export interrupted before commit to continue it or null if there is nothing to continue.
+     */
+    public ExportWatermark resume(FileType fileType) {
+        ExportWatermark watermark = database.getExportWatermark(fileType.name());
+        return (watermark != null && watermark.isPending() ? watermark : null);
+    }
+
+    /**
+     * Returns length of the existing file or null if it doesn't exist.
+     */
+    public Long getFileLength(String fileName, String compressedExtension) {
+        DocumentFile file = findFile(fileName, compressedExtension);
+        return (file == null ? null : file.length());
+    }
+
+    public void begin(FileType fileType, ExportRange range, String fileName, String compressedExtension, Long fileLength) {
+        database.beginExportWatermark(fileType.name(), range, fileName, compressedExtension, fileLength);
+        pendingFileTypes.add(fileType.name());
+    }
+
+    public void commit() {
+        database.commitExportWatermarks(pendingFileTypes);
+        pendingFileTypes.clear();
+    }
+
+    public void rollback() {
+        for (String fileType : pendingFileTypes) {
+            ExportWatermark watermark = database.getExportWatermark(fileType);
+            if (watermark == null || !watermark.isPending())
+                continue;
+            try {
+                rollback(watermark);
+            } catch (IOException ex) {
+                // watermark stays pending and rollback is repeated on next export
+                Timber.w(ex, "rollback(): Failed to roll back export of %s", fileType);
+            }
+        }
+        pendingFileTypes.clear();
+    }
+
+    private void rollback(ExportWatermark watermark) throws IOException {
+        DocumentFile file = findFile(watermark.getPendingFileName(), watermark.getPendingCompressedExtension());
+        Long previousLength = watermark.getPendingFileLength();
+        if (file == null) {
+            Timber.d("rollback(): File %s not found", watermark.getPendingFileName());
+        } else if (previousLength == null) {
+            Timber.d("rollback(): Deleting new file %s", file.getUri());
+            if (!file.delete())
+                throw new IOException("Cannot delete file " + file.getUri());
+        } else {
+            Timber.d("rollback(): Truncating appended file %s to %s bytes", file.getUri(), previousLength);
+            FileWriter.truncateFile(context, file.getUri(), previousLength);
+        }
+        database.clearPendingExportWatermark(watermark.getFileType());
+    }
+
+    private DocumentFile findFile(String fileName, String compressedExtension) {
+        if (fileName == null)
+            return null;
+        return StorageUtils.findFile(storageUri, fileName + (compressedExtension != null ? "." + compressedExtension : ""));
+    }
+}
@@ -0,0 +1,77 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.columnar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer with varint encoding, reused between row groups to avoid allocations.
+ */
+class ColumnarBuffer {
+
+    private byte[] data;
+    private int size;
+
+    ColumnarBuffer(int initialCapacity) {
+        this.data = new byte[initialCapacity];
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        data[size++] = (byte) value;
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    void writeBuffer(ColumnarBuffer buffer) {
+        writeBytes(buffer.data, 0, buffer.size);
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    void writeSignedVarLong(long value) {
+        writeVarLong(ColumnarFormat.encodeZigZag(value));
+    }
+
+    void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(data, 0, size);
+    }
+
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.columnar;
+
+import info.zamojski.soft.towercollector.model.Cell;
+
+/**
+ * Layout of the compact columnar export file. Numbers are LEB128 varints, signed numbers are zigzag encoded first.
+ * <pre>
+ * file      = magic version rowGroup* footer footerLength magic
+ * rowGroup  = measurementCount cellCount columnCount column*
+ * column    = columnId encoding dataLength data
+ * footer    = deviceNameLength deviceName(UTF-8) rowGroupCount rowGroupIndex*
+ * rowGroupIndex = offset length measurementCount cellCount minMeasuredAt(signed) maxMeasuredAtDelta
+ * </pre>
+ * Footer length is a 4 byte big endian integer, so the footer can be read from the end of the file.
+ * Measurement columns have one value per measurement, cell columns one value per cell in order of measurements.
+ * Columns unknown to the reader can be skipped by their length.
+ */
+public final class ColumnarFormat {
+
+    public static final byte[] MAGIC = {'T', 'C', 'C', 'F'};
+    public static final int VERSION = 1;
+    public static final int FOOTER_LENGTH_SIZE = 4;
+
+    // first value and then differences between consecutive values
+    public static final int ENCODING_DELTA = 1;
+    public static final int ENCODING_VARINT = 2;
+    // distinct entries and then index of entry for every value
+    public static final int ENCODING_DICTIONARY = 3;
+    // bit for every value, lowest bit first
+    public static final int ENCODING_BITMAP = 4;
+    // bitmap of present values and then present values only
+    public static final int ENCODING_NULL_BITMAP = 5;
+
+    // epoch milliseconds, delta
+    public static final int COLUMN_MEASURED_AT = 1;
+    // degrees multiplied by COORDINATE_SCALE, delta
+    public static final int COLUMN_LATITUDE = 2;
+    public static final int COLUMN_LONGITUDE = 3;
+    // values multiplied by GPS_VALUE_SCALE, varint
+    public static final int COLUMN_GPS_ACCURACY = 4;
+    public static final int COLUMN_GPS_SPEED = 5;
+    public static final int COLUMN_GPS_BEARING = 6;
+    public static final int COLUMN_GPS_ALTITUDE = 7;
+    // number of cells of the measurement, varint
+    public static final int COLUMN_CELL_COUNT = 8;
+    // entries: network type, mcc, mnc, lac, cid, psc, discovered at (delta to previous entry), dictionary
+    public static final int COLUMN_CELL = 20;
+    public static final int COLUMN_NEIGHBORING = 21;
+
+    public static final double COORDINATE_SCALE = 1e7;
+    public static final double GPS_VALUE_SCALE = 100;
+
+    /**
+     * Signal columns, all use {@link #ENCODING_NULL_BITMAP} with value unknown to the device treated as null.
+     */
+    public static final SignalColumn[] SIGNAL_COLUMNS = {
+            new SignalColumn(30, Cell.UNKNOWN_SIGNAL, Cell::getAsu, Cell::setAsu),
+            new SignalColumn(31, Cell.UNKNOWN_SIGNAL, Cell::getDbm, Cell::setDbm),
+            new SignalColumn(32, Cell.UNKNOWN_SIGNAL, Cell::getTa, Cell::setTa),
+            new SignalColumn(33, Cell.UNKNOWN_SIGNAL, Cell::getRsrp, Cell::setRsrp),
+            new SignalColumn(34, Cell.UNKNOWN_SIGNAL, Cell::getRsrq, Cell::setRsrq),
+            new SignalColumn(35, Cell.UNKNOWN_SIGNAL, Cell::getRssi, Cell::setRssi),
+            new SignalColumn(36, Cell.UNKNOWN_SIGNAL, Cell::getRssnr, Cell::setRssnr),
+            new SignalColumn(37, Cell.UNKNOWN_SIGNAL, Cell::getCqi, Cell::setCqi),
+            new SignalColumn(38, Cell.UNKNOWN_SIGNAL, Cell::getRscp, Cell::setRscp),
+            new SignalColumn(39, Cell.UNKNOWN_SIGNAL, Cell::getCsiRsrp, Cell::setCsiRsrp),
+            new SignalColumn(40, Cell.UNKNOWN_SIGNAL, Cell::getCsiRsrq, Cell::setCsiRsrq),
+            new SignalColumn(41, Cell.UNKNOWN_SIGNAL, Cell::getCsiSinr, Cell::setCsiSinr),
+            new SignalColumn(42, Cell.UNKNOWN_SIGNAL, Cell::getSsRsrp, Cell::setSsRsrp),
+            new SignalColumn(43, Cell.UNKNOWN_SIGNAL, Cell::getSsRsrq, Cell::setSsRsrq),
+            new SignalColumn(44, Cell.UNKNOWN_SIGNAL, Cell::getSsSinr, Cell::setSsSinr),
+            new SignalColumn(45, Cell.UNKNOWN_SIGNAL, Cell::getCdmaDbm, Cell::setCdmaDbm),
+            new SignalColumn(46, Cell.UNKNOWN_SIGNAL, Cell::getCdmaEcio, Cell::setCdmaEcio),
+            new SignalColumn(47, Cell.UNKNOWN_SIGNAL, Cell::getEvdoDbm, Cell::setEvdoDbm),
+            new SignalColumn(48, Cell.UNKNOWN_SIGNAL, Cell::getEvdoEcio, Cell::setEvdoEcio),
+            new SignalColumn(49, Cell.UNKNOWN_SIGNAL, Cell::getEvdoSnr, Cell::setEvdoSnr),
+            new SignalColumn(50, Cell.UNKNOWN_SIGNAL, Cell::getEcNo, Cell::setEcNo),
+            new SignalColumn(51, Cell.UNKNOWN_CID, Cell::getArfcn, Cell::setArfcn),
+            new SignalColumn(52, Cell.UNKNOWN_SUBSCRIPTION_ID, Cell::getSubscriptionId, Cell::setSubscriptionId),
+    };
+
+    private ColumnarFormat() {
+    }
+
+    public static long toFixedPoint(double value, double scale) {
+        return Math.round(value * scale);
+    }
+
+    public static double fromFixedPoint(long value, double scale) {
+        return value / scale;
+    }
+
+    public static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    interface CellValueGetter {
+        int get(Cell cell);
+    }
+
+    interface CellValueSetter {
+        void set(Cell cell, int value);
+    }
+
+    public static final class SignalColumn {
+
+        private final int columnId;
+        private final int nullValue;
+        private final CellValueGetter getter;
+        private final CellValueSetter setter;
+
+        private SignalColumn(int columnId, int nullValue, CellValueGetter getter, CellValueSetter setter) {
+            this.columnId = columnId;
+            this.nullValue = nullValue;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public int getColumnId() {
+            return columnId;
+        }
+
+        public int getNullValue() {
+            return nullValue;
+        }
+
+        public int getValue(Cell cell) {
+            return getter.get(cell);
+        }
+
+        public void setValue(Cell cell, int value) {
+            setter.set(cell, value);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.columnar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Reference reader of the format described by {@link ColumnarFormat}, reads the footer index first
+ * and then decodes requested row groups. Values are restored with precision of the format.
+ */
+public class ColumnarReader {
+
+    private final byte[] data;
+    private final String deviceName;
+    private final List<ColumnarRowGroup> rowGroups;
+
+    public ColumnarReader(byte[] data) throws IOException {
+        this.data = data;
+        int magicLength = ColumnarFormat.MAGIC.length;
+        if (data.length < 2 * magicLength + 1 + ColumnarFormat.FOOTER_LENGTH_SIZE
+                || !hasMagic(0) || !hasMagic(data.length - magicLength))
+            throw new IOException("Not a columnar file");
+        if (data[magicLength] != ColumnarFormat.VERSION)
+            throw new IOException("Unsupported columnar file version " + data[magicLength]);
+        int footerLengthOffset = data.length - magicLength - ColumnarFormat.FOOTER_LENGTH_SIZE;
+        int footerLength = ((data[footerLengthOffset] & 0xFF) << 24) | ((data[footerLengthOffset + 1] & 0xFF) << 16)
+                | ((data[footerLengthOffset + 2] & 0xFF) << 8) | (data[footerLengthOffset + 3] & 0xFF);
+        if (footerLength < 0 || footerLength > footerLengthOffset - magicLength - 1)
+            throw new IOException("Invalid footer length " + footerLength);
+        Input footer = new Input(data, footerLengthOffset - footerLength, footerLengthOffset);
+        int deviceNameLength = footer.readInt();
+        this.deviceName = new String(data, footer.skip(deviceNameLength), deviceNameLength, StandardCharsets.UTF_8);
+        int rowGroupCount = footer.readInt();
+        List<ColumnarRowGroup> rowGroups = new ArrayList<>(rowGroupCount);
+        for (int i = 0; i < rowGroupCount; i++) {
+            long offset = footer.readVarLong();
+            long length = footer.readVarLong();
+            int measurementCount = footer.readInt();
+            int cellCount = footer.readInt();
+            long minMeasuredAt = footer.readSignedVarLong();
+            long maxMeasuredAt = minMeasuredAt + footer.readVarLong();
+            rowGroups.add(new ColumnarRowGroup(offset, length, measurementCount, cellCount, minMeasuredAt, maxMeasuredAt));
+        }
+        this.rowGroups = Collections.unmodifiableList(rowGroups);
+    }
+
+    public static ColumnarReader read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, count);
+        }
+        return new ColumnarReader(outputStream.toByteArray());
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public List<ColumnarRowGroup> getRowGroups() {
+        return rowGroups;
+    }
+
+    public List<Measurement> readAll() throws IOException {
+        List<Measurement> measurements = new ArrayList<>();
+        for (ColumnarRowGroup rowGroup : rowGroups) {
+            measurements.addAll(readRowGroup(rowGroup));
+        }
+        return measurements;
+    }
+
+    public List<Measurement> readRowGroup(ColumnarRowGroup rowGroup) throws IOException {
+        if (rowGroup.getOffset() < 0 || rowGroup.getLength() < 0 || rowGroup.getOffset() + rowGroup.getLength() > data.length)
+            throw new IOException("Row group out of file " + rowGroup);
+        Input input = new Input(data, (int) rowGroup.getOffset(), (int) (rowGroup.getOffset() + rowGroup.getLength()));
+        int measurementCount = input.readInt();
+        int cellCount = input.readInt();
+        if (measurementCount != rowGroup.getMeasurementCount() || cellCount != rowGroup.getCellCount())
+            throw new IOException("Row group does not match index " + rowGroup);
+        Measurement[] measurements = new Measurement[measurementCount];
+        for (int i = 0; i < measurementCount; i++) {
+            measurements[i] = new Measurement();
+        }
+        Cell[] cells = new Cell[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            cells[i] = new Cell();
+        }
+        int[] cellCounts = null;
+        int columnCount = input.readInt();
+        for (int i = 0; i < columnCount; i++) {
+            int columnId = input.readInt();
+            int encoding = input.readInt();
+            int length = input.readInt();
+            Input column = new Input(data, input.skip(length), input.position);
+            switch (columnId) {
+                case ColumnarFormat.COLUMN_MEASURED_AT: {
+                    long[] values = readLongs(column, encoding, measurementCount);
+                    for (int j = 0; j < measurementCount; j++)
+                        measurements[j].setMeasuredAt(values[j]);
+                    break;
+                }
+                case ColumnarFormat.COLUMN_LATITUDE: {
+                    long[] values = readLongs(column, encoding, measurementCount);
+                    for (int j = 0; j < measurementCount; j++)
+                        measurements[j].setLatitude(ColumnarFormat.fromFixedPoint(values[j], ColumnarFormat.COORDINATE_SCALE));
+                    break;
+                }
+                case ColumnarFormat.COLUMN_LONGITUDE: {
+                    long[] values = readLongs(column, encoding, measurementCount);
+                    for (int j = 0; j < measurementCount; j++)
+                        measurements[j].setLongitude(ColumnarFormat.fromFixedPoint(values[j], ColumnarFormat.COORDINATE_SCALE));
+                    break;
+                }
+                case ColumnarFormat.COLUMN_GPS_ACCURACY: {
+                    long[] values = readLongs(column, encoding, measurementCount);
+                    for (int j = 0; j < measurementCount; j++)
+                        measurements[j].setGpsAccuracy((float) ColumnarFormat.fromFixedPoint(values[j], ColumnarFormat.GPS_VALUE_SCALE));
+                    break;
+                }
+                case ColumnarFormat.COLUMN_GPS_SPEED: {
+                    long[] values = readLongs(column, encoding, measurementCount);
+                    for (int j = 0; j < measurementCount; j++)
+                        measurements[j].setGpsSpeed((float) ColumnarFormat.fromFixedPoint(values[j], ColumnarFormat.GPS_VALUE_SCALE));
+                    break;
+                }
+                case ColumnarFormat.COLUMN_GPS_BEARING: {
+                    long[] values = readLongs(column, encoding, measurementCount);
+                    for (int j = 0; j < measurementCount; j++)
+                        measurements[j].setGpsBearing((float) ColumnarFormat.fromFixedPoint(values[j], ColumnarFormat.GPS_VALUE_SCALE));
+                    break;
+                }
+                case ColumnarFormat.COLUMN_GPS_ALTITUDE: {
+                    long[] values = readLongs(column, encoding, measurementCount);
+                    for (int j = 0; j < measurementCount; j++)
+                        measurements[j].setGpsAltitude(ColumnarFormat.fromFixedPoint(values[j], ColumnarFormat.GPS_VALUE_SCALE));
+                    break;
+                }
+                case ColumnarFormat.COLUMN_CELL_COUNT: {
+                    long[] values = readLongs(column, encoding, measurementCount);
+                    cellCounts = new int[measurementCount];
+                    for (int j = 0; j < measurementCount; j++)
+                        cellCounts[j] = (int) values[j];
+                    break;
+                }
+                case ColumnarFormat.COLUMN_CELL:
+                    readCellDictionary(column, encoding, cells);
+                    break;
+                case ColumnarFormat.COLUMN_NEIGHBORING: {
+                    checkEncoding(columnId, encoding, ColumnarFormat.ENCODING_BITMAP);
+                    int bitmapOffset = column.skip(getBitmapLength(cellCount));
+                    for (int j = 0; j < cellCount; j++)
+                        cells[j].setNeighboring(isBitSet(bitmapOffset, j));
+                    break;
+                }
+                default:
+                    ColumnarFormat.SignalColumn signalColumn = findSignalColumn(columnId);
+                    if (signalColumn != null) {
+                        readSignals(column, encoding, signalColumn, cells);
+                    }
+                    // other columns are skipped
+                    break;
+            }
+        }
+        if (cellCounts == null)
+            throw new IOException("Missing cell count column");
+        List<Measurement> result = new ArrayList<>(measurementCount);
+        int cellIndex = 0;
+        for (int i = 0; i < measurementCount; i++) {
+            if (cellIndex + cellCounts[i] > cellCount)
+                throw new IOException("Cell counts do not match number of cells");
+            for (int j = 0; j < cellCounts[i]; j++) {
+                measurements[i].addCell(cells[cellIndex++]);
+            }
+            result.add(measurements[i]);
+        }
+        return result;
+    }
+
+    private long[] readLongs(Input column, int encoding, int count) throws IOException {
+        if (encoding != ColumnarFormat.ENCODING_DELTA && encoding != ColumnarFormat.ENCODING_VARINT)
+            throw new IOException("Unsupported encoding " + encoding);
+        long[] values = new long[count];
+        long previousValue = 0;
+        for (int i = 0; i < count; i++) {
+            long value = column.readSignedVarLong();
+            if (encoding == ColumnarFormat.ENCODING_DELTA) {
+                value += previousValue;
+                previousValue = value;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private void readCellDictionary(Input column, int encoding, Cell[] cells) throws IOException {
+        checkEncoding(ColumnarFormat.COLUMN_CELL, encoding, ColumnarFormat.ENCODING_DICTIONARY);
+        int entryCount = column.readInt();
+        Cell[] entries = new Cell[entryCount];
+        long discoveredAt = 0;
+        for (int i = 0; i < entryCount; i++) {
+            Cell entry = new Cell();
+            entry.setNetworkType(NetworkGroup.fromValue(column.readInt()));
+            entry.setMcc((int) column.readSignedVarLong());
+            entry.setMnc((int) column.readSignedVarLong());
+            entry.setLac((int) column.readSignedVarLong());
+            entry.setCid(column.readSignedVarLong());
+            entry.setPsc((int) column.readSignedVarLong());
+            discoveredAt += column.readSignedVarLong();
+            entry.setDiscoveredAt(discoveredAt);
+            entries[i] = entry;
+        }
+        for (Cell cell : cells) {
+            int index = column.readInt();
+            if (index >= entryCount)
+                throw new IOException("Invalid dictionary index " + index);
+            Cell entry = entries[index];
+            cell.setNetworkType(entry.getNetworkType());
+            cell.setMcc(entry.getMcc());
+            cell.setMnc(entry.getMnc());
+            cell.setLac(entry.getLac());
+            cell.setCid(entry.getCid());
+            cell.setPsc(entry.getPsc());
+            cell.setDiscoveredAt(entry.getDiscoveredAt());
+        }
+    }
+
+    private void readSignals(Input column, int encoding, ColumnarFormat.SignalColumn signalColumn, Cell[] cells) throws IOException {
+        checkEncoding(signalColumn.getColumnId(), encoding, ColumnarFormat.ENCODING_NULL_BITMAP);
+        int bitmapOffset = column.skip(getBitmapLength(cells.length));
+        for (int i = 0; i < cells.length; i++) {
+            int value = (isBitSet(bitmapOffset, i) ? (int) column.readSignedVarLong() : signalColumn.getNullValue());
+            signalColumn.setValue(cells[i], value);
+        }
+    }
+
+    private ColumnarFormat.SignalColumn findSignalColumn(int columnId) {
+        for (ColumnarFormat.SignalColumn signalColumn : ColumnarFormat.SIGNAL_COLUMNS) {
+            if (signalColumn.getColumnId() == columnId)
+                return signalColumn;
+        }
+        return null;
+    }
+
+    private void checkEncoding(int columnId, int encoding, int expectedEncoding) throws IOException {
+        if (encoding != expectedEncoding)
+            throw new IOException("Unsupported encoding " + encoding + " of column " + columnId);
+    }
+
+    private int getBitmapLength(int count) {
+        return (count + 7) / 8;
+    }
+
+    private boolean isBitSet(int bitmapOffset, int index) {
+        return (data[bitmapOffset + index / 8] & (1 << (index & 7))) != 0;
+    }
+
+    private boolean hasMagic(int offset) {
+        byte[] magic = ColumnarFormat.MAGIC;
+        return Arrays.equals(magic, Arrays.copyOfRange(data, offset, offset + magic.length));
+    }
+
+    private static class Input {
+
+        private final byte[] data;
+        private final int limit;
+        private int position;
+
+        Input(byte[] data, int position, int limit) {
+            this.data = data;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit)
+                    throw new IOException("Unexpected end of data");
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long readSignedVarLong() throws IOException {
+            return ColumnarFormat.decodeZigZag(readVarLong());
+        }
+
+        int readInt() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE)
+                throw new IOException("Value out of range " + value);
+            return (int) value;
+        }
+
+        /**
+         * Skips given number of bytes and returns position of the first one.
+         */
+        int skip(int length) throws IOException {
+            if (length < 0 || length > limit - position)
+                throw new IOException("Unexpected end of data");
+            int start = position;
+            position += length;
+            return start;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.columnar;
+
+/**
+ * Entry of the footer index, allows reading only row groups of the required time range.
+ */
+public class ColumnarRowGroup {
+
+    private final long offset;
+    private final long length;
+    private final int measurementCount;
+    private final int cellCount;
+    private final long minMeasuredAt;
+    private final long maxMeasuredAt;
+
+    public ColumnarRowGroup(long offset, long length, int measurementCount, int cellCount, long minMeasuredAt, long maxMeasuredAt) {
+        this.offset = offset;
+        this.length = length;
+        this.measurementCount = measurementCount;
+        this.cellCount = cellCount;
+        this.minMeasuredAt = minMeasuredAt;
+        this.maxMeasuredAt = maxMeasuredAt;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public int getMeasurementCount() {
+        return measurementCount;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public long getMinMeasuredAt() {
+        return minMeasuredAt;
+    }
+
+    public long getMaxMeasuredAt() {
+        return maxMeasuredAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarRowGroup [offset=" + offset + ", length=" + length + ", measurementCount=" + measurementCount
+                + ", cellCount=" + cellCount + ", minMeasuredAt=" + minMeasuredAt + ", maxMeasuredAt=" + maxMeasuredAt + "]";
+    }
+}
@@ -0,0 +1,418 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.columnar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Writes measurements in the format described by {@link ColumnarFormat}. Values are encoded into column buffers
+ * as measurements are added and the row group is written when it is full, so measurements are not kept in memory.
+ */
+public class ColumnarWriter {
+
+    public static final int DEFAULT_MEASUREMENTS_PER_ROW_GROUP = 10000;
+
+    private final OutputStream outputStream;
+    private final String deviceName;
+    private final int measurementsPerRowGroup;
+    private final ColumnarBuffer rowGroupBuffer = new ColumnarBuffer(64 * 1024);
+    private final List<ColumnarRowGroup> rowGroups = new ArrayList<>();
+
+    private final DeltaColumn measuredAtColumn = new DeltaColumn(ColumnarFormat.COLUMN_MEASURED_AT);
+    private final DeltaColumn latitudeColumn = new DeltaColumn(ColumnarFormat.COLUMN_LATITUDE);
+    private final DeltaColumn longitudeColumn = new DeltaColumn(ColumnarFormat.COLUMN_LONGITUDE);
+    private final VarIntColumn gpsAccuracyColumn = new VarIntColumn(ColumnarFormat.COLUMN_GPS_ACCURACY);
+    private final VarIntColumn gpsSpeedColumn = new VarIntColumn(ColumnarFormat.COLUMN_GPS_SPEED);
+    private final VarIntColumn gpsBearingColumn = new VarIntColumn(ColumnarFormat.COLUMN_GPS_BEARING);
+    private final VarIntColumn gpsAltitudeColumn = new VarIntColumn(ColumnarFormat.COLUMN_GPS_ALTITUDE);
+    private final VarIntColumn cellCountColumn = new VarIntColumn(ColumnarFormat.COLUMN_CELL_COUNT);
+    private final CellDictionaryColumn cellColumn = new CellDictionaryColumn(ColumnarFormat.COLUMN_CELL);
+    private final BitmapColumn neighboringColumn = new BitmapColumn(ColumnarFormat.COLUMN_NEIGHBORING);
+    private final NullBitmapColumn[] signalColumns = new NullBitmapColumn[ColumnarFormat.SIGNAL_COLUMNS.length];
+    private final List<Column> columns = new ArrayList<>();
+
+    private long position;
+    private int measurementCount;
+    private int cellCount;
+    private long minMeasuredAt;
+    private long maxMeasuredAt;
+
+    public ColumnarWriter(OutputStream outputStream, String deviceName, int measurementsPerRowGroup) {
+        this.outputStream = outputStream;
+        this.deviceName = deviceName;
+        this.measurementsPerRowGroup = measurementsPerRowGroup;
+        Collections.addAll(columns, measuredAtColumn, latitudeColumn, longitudeColumn, gpsAccuracyColumn, gpsSpeedColumn,
+                gpsBearingColumn, gpsAltitudeColumn, cellCountColumn, cellColumn, neighboringColumn);
+        for (int i = 0; i < ColumnarFormat.SIGNAL_COLUMNS.length; i++) {
+            signalColumns[i] = new NullBitmapColumn(ColumnarFormat.SIGNAL_COLUMNS[i].getColumnId(), ColumnarFormat.SIGNAL_COLUMNS[i].getNullValue());
+            columns.add(signalColumns[i]);
+        }
+    }
+
+    public void writeHeader() throws IOException {
+        outputStream.write(ColumnarFormat.MAGIC);
+        outputStream.write(ColumnarFormat.VERSION);
+        position = ColumnarFormat.MAGIC.length + 1;
+    }
+
+    public void write(Measurement m) throws IOException {
+        long measuredAt = m.getMeasuredAt();
+        if (measurementCount == 0) {
+            minMeasuredAt = measuredAt;
+            maxMeasuredAt = measuredAt;
+        } else {
+            minMeasuredAt = Math.min(minMeasuredAt, measuredAt);
+            maxMeasuredAt = Math.max(maxMeasuredAt, measuredAt);
+        }
+        measuredAtColumn.add(measuredAt);
+        latitudeColumn.add(ColumnarFormat.toFixedPoint(m.getLatitude(), ColumnarFormat.COORDINATE_SCALE));
+        longitudeColumn.add(ColumnarFormat.toFixedPoint(m.getLongitude(), ColumnarFormat.COORDINATE_SCALE));
+        gpsAccuracyColumn.add(ColumnarFormat.toFixedPoint(m.getGpsAccuracy(), ColumnarFormat.GPS_VALUE_SCALE));
+        gpsSpeedColumn.add(ColumnarFormat.toFixedPoint(m.getGpsSpeed(), ColumnarFormat.GPS_VALUE_SCALE));
+        gpsBearingColumn.add(ColumnarFormat.toFixedPoint(m.getGpsBearing(), ColumnarFormat.GPS_VALUE_SCALE));
+        gpsAltitudeColumn.add(ColumnarFormat.toFixedPoint(m.getGpsAltitude(), ColumnarFormat.GPS_VALUE_SCALE));
+        List<Cell> cells = m.getCells();
+        cellCountColumn.add(cells.size());
+        for (int i = 0; i < cells.size(); i++) {
+            Cell c = cells.get(i);
+            cellColumn.add(c);
+            neighboringColumn.add(c.isNeighboring());
+            for (int j = 0; j < signalColumns.length; j++) {
+                signalColumns[j].add(ColumnarFormat.SIGNAL_COLUMNS[j].getValue(c));
+            }
+        }
+        cellCount += cells.size();
+        measurementCount++;
+        if (measurementCount >= measurementsPerRowGroup) {
+            writeRowGroup();
+        }
+    }
+
+    /**
+     * Writes remaining measurements and the footer, the stream is not closed.
+     */
+    public void finish() throws IOException {
+        if (measurementCount > 0) {
+            writeRowGroup();
+        }
+        ColumnarBuffer footer = rowGroupBuffer;
+        footer.clear();
+        byte[] deviceNameBytes = deviceName.getBytes(StandardCharsets.UTF_8);
+        footer.writeVarLong(deviceNameBytes.length);
+        footer.writeBytes(deviceNameBytes, 0, deviceNameBytes.length);
+        footer.writeVarLong(rowGroups.size());
+        for (ColumnarRowGroup rowGroup : rowGroups) {
+            footer.writeVarLong(rowGroup.getOffset());
+            footer.writeVarLong(rowGroup.getLength());
+            footer.writeVarLong(rowGroup.getMeasurementCount());
+            footer.writeVarLong(rowGroup.getCellCount());
+            footer.writeSignedVarLong(rowGroup.getMinMeasuredAt());
+            footer.writeVarLong(rowGroup.getMaxMeasuredAt() - rowGroup.getMinMeasuredAt());
+        }
+        int footerLength = footer.size();
+        footer.writeByte(footerLength >>> 24);
+        footer.writeByte(footerLength >>> 16);
+        footer.writeByte(footerLength >>> 8);
+        footer.writeByte(footerLength);
+        footer.writeBytes(ColumnarFormat.MAGIC, 0, ColumnarFormat.MAGIC.length);
+        footer.writeTo(outputStream);
+        position += footer.size();
+    }
+
+    public List<ColumnarRowGroup> getRowGroups() {
+        return rowGroups;
+    }
+
+    private void writeRowGroup() throws IOException {
+        rowGroupBuffer.clear();
+        rowGroupBuffer.writeVarLong(measurementCount);
+        rowGroupBuffer.writeVarLong(cellCount);
+        rowGroupBuffer.writeVarLong(columns.size());
+        for (Column column : columns) {
+            column.writeTo(rowGroupBuffer);
+            column.clear();
+        }
+        rowGroupBuffer.writeTo(outputStream);
+        rowGroups.add(new ColumnarRowGroup(position, rowGroupBuffer.size(), measurementCount, cellCount, minMeasuredAt, maxMeasuredAt));
+        position += rowGroupBuffer.size();
+        measurementCount = 0;
+        cellCount = 0;
+    }
+
+    private static abstract class Column {
+
+        private final int columnId;
+        private final int encoding;
+
+        Column(int columnId, int encoding) {
+            this.columnId = columnId;
+            this.encoding = encoding;
+        }
+
+        void writeHeader(ColumnarBuffer rowGroup, int length) {
+            rowGroup.writeVarLong(columnId);
+            rowGroup.writeVarLong(encoding);
+            rowGroup.writeVarLong(length);
+        }
+
+        abstract void writeTo(ColumnarBuffer rowGroup);
+
+        abstract void clear();
+    }
+
+    private static class VarIntColumn extends Column {
+
+        final ColumnarBuffer values = new ColumnarBuffer(4096);
+
+        VarIntColumn(int columnId) {
+            this(columnId, ColumnarFormat.ENCODING_VARINT);
+        }
+
+        VarIntColumn(int columnId, int encoding) {
+            super(columnId, encoding);
+        }
+
+        void add(long value) {
+            values.writeSignedVarLong(value);
+        }
+
+        @Override
+        void writeTo(ColumnarBuffer rowGroup) {
+            writeHeader(rowGroup, values.size());
+            rowGroup.writeBuffer(values);
+        }
+
+        @Override
+        void clear() {
+            values.clear();
+        }
+    }
+
+    private static class DeltaColumn extends VarIntColumn {
+
+        private long previousValue;
+
+        DeltaColumn(int columnId) {
+            super(columnId, ColumnarFormat.ENCODING_DELTA);
+        }
+
+        @Override
+        void add(long value) {
+            super.add(value - previousValue);
+            previousValue = value;
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            previousValue = 0;
+        }
+    }
+
+    private static class Bitmap {
+
+        private final ColumnarBuffer bytes = new ColumnarBuffer(1024);
+        private int currentByte;
+        private int bitCount;
+
+        void add(boolean value) {
+            if (value) {
+                currentByte |= 1 << (bitCount & 7);
+            }
+            bitCount++;
+            if ((bitCount & 7) == 0) {
+                bytes.writeByte(currentByte);
+                currentByte = 0;
+            }
+        }
+
+        int size() {
+            return bytes.size() + ((bitCount & 7) != 0 ? 1 : 0);
+        }
+
+        void writeTo(ColumnarBuffer buffer) {
+            buffer.writeBuffer(bytes);
+            if ((bitCount & 7) != 0) {
+                buffer.writeByte(currentByte);
+            }
+        }
+
+        void clear() {
+            bytes.clear();
+            currentByte = 0;
+            bitCount = 0;
+        }
+    }
+
+    private static class BitmapColumn extends Column {
+
+        private final Bitmap bitmap = new Bitmap();
+
+        BitmapColumn(int columnId) {
+            super(columnId, ColumnarFormat.ENCODING_BITMAP);
+        }
+
+        void add(boolean value) {
+            bitmap.add(value);
+        }
+
+        @Override
+        void writeTo(ColumnarBuffer rowGroup) {
+            writeHeader(rowGroup, bitmap.size());
+            bitmap.writeTo(rowGroup);
+        }
+
+        @Override
+        void clear() {
+            bitmap.clear();
+        }
+    }
+
+    private static class NullBitmapColumn extends Column {
+
+        private final int nullValue;
+        private final Bitmap presence = new Bitmap();
+        private final ColumnarBuffer values = new ColumnarBuffer(4096);
+
+        NullBitmapColumn(int columnId, int nullValue) {
+            super(columnId, ColumnarFormat.ENCODING_NULL_BITMAP);
+            this.nullValue = nullValue;
+        }
+
+        void add(int value) {
+            boolean present = (value != nullValue);
+            presence.add(present);
+            if (present) {
+                values.writeSignedVarLong(value);
+            }
+        }
+
+        @Override
+        void writeTo(ColumnarBuffer rowGroup) {
+            writeHeader(rowGroup, presence.size() + values.size());
+            presence.writeTo(rowGroup);
+            rowGroup.writeBuffer(values);
+        }
+
+        @Override
+        void clear() {
+            presence.clear();
+            values.clear();
+        }
+    }
+
+    private static class CellDictionaryColumn extends Column {
+
+        private final Map<CellKey, Integer> dictionary = new HashMap<>();
+        private final CellKey probe = new CellKey();
+        private final ColumnarBuffer entries = new ColumnarBuffer(4096);
+        private final ColumnarBuffer indices = new ColumnarBuffer(4096);
+        private long previousDiscoveredAt;
+
+        CellDictionaryColumn(int columnId) {
+            super(columnId, ColumnarFormat.ENCODING_DICTIONARY);
+        }
+
+        void add(Cell c) {
+            probe.set(c);
+            Integer index = dictionary.get(probe);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(probe.copy(), index);
+                entries.writeVarLong(probe.networkType);
+                entries.writeSignedVarLong(probe.mcc);
+                entries.writeSignedVarLong(probe.mnc);
+                entries.writeSignedVarLong(probe.lac);
+                entries.writeSignedVarLong(probe.cid);
+                entries.writeSignedVarLong(probe.psc);
+                entries.writeSignedVarLong(probe.discoveredAt - previousDiscoveredAt);
+                previousDiscoveredAt = probe.discoveredAt;
+            }
+            indices.writeVarLong(index);
+        }
+
+        @Override
+        void writeTo(ColumnarBuffer rowGroup) {
+            writeHeader(rowGroup, ColumnarBuffer.varLongSize(dictionary.size()) + entries.size() + indices.size());
+            rowGroup.writeVarLong(dictionary.size());
+            rowGroup.writeBuffer(entries);
+            rowGroup.writeBuffer(indices);
+        }
+
+        @Override
+        void clear() {
+            dictionary.clear();
+            entries.clear();
+            indices.clear();
+            previousDiscoveredAt = 0;
+        }
+    }
+
+    private static class CellKey {
+
+        private int networkType;
+        private int mcc;
+        private int mnc;
+        private int lac;
+        private long cid;
+        private int psc;
+        private long discoveredAt;
+
+        void set(Cell c) {
+            networkType = c.getNetworkType().getValue();
+            mcc = c.getMcc();
+            mnc = c.getMnc();
+            lac = c.getLac();
+            cid = c.getCid();
+            psc = c.getPsc();
+            discoveredAt = c.getDiscoveredAt();
+        }
+
+        CellKey copy() {
+            CellKey key = new CellKey();
+            key.networkType = networkType;
+            key.mcc = mcc;
+            key.mnc = mnc;
+            key.lac = lac;
+            key.cid = cid;
+            key.psc = psc;
+            key.discoveredAt = discoveredAt;
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof CellKey))
+                return false;
+            CellKey key = (CellKey) o;
+            return networkType == key.networkType && mcc == key.mcc && mnc == key.mnc && lac == key.lac
+                    && cid == key.cid && psc == key.psc && discoveredAt == key.discoveredAt;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = networkType;
+            result = 31 * result + mcc;
+            result = 31 * result + mnc;
+            result = 31 * result + lac;
+            result = 31 * result + (int) (cid ^ (cid >>> 32));
+            result = 31 * result + psc;
+            result = 31 * result + (int) (discoveredAt ^ (discoveredAt >>> 32));
+            return result;
+        }
+    }
+}
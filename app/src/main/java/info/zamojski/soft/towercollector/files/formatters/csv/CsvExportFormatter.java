@@ -4,10 +4,7 @@
 
 package info.zamojski.soft.towercollector.files.formatters.csv;
 
-import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.TimeZone;
+import java.util.List;
 
 import info.zamojski.soft.towercollector.model.Cell;
 import info.zamojski.soft.towercollector.model.Measurement;
@@ -16,19 +13,10 @@ import info.zamojski.soft.towercollector.providers.ICellUtils;
 
 public class CsvExportFormatter extends CsvFormatter {
 
-    private static final NumberFormat gpsDoubleFormatter;
-    private static final SimpleDateFormat exportDateFormatter;
-
     private static final ICellUtils cellUtils;
 
     static {
-        gpsDoubleFormatter = NumberFormat.getNumberInstance(LOCALE);
-        gpsDoubleFormatter.setGroupingUsed(false);
-        gpsDoubleFormatter.setMinimumFractionDigits(0);
-        gpsDoubleFormatter.setMaximumFractionDigits(2);
         cellUtils = new GeneralCellUtils();
-        exportDateFormatter = new SimpleDateFormat("\"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'\"", LOCALE);
-        exportDateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
     }
 
     @Override
@@ -37,177 +25,162 @@ public class CsvExportFormatter extends CsvFormatter {
     }
 
     @Override
-    public String formatEntry(Measurement m) {
-        StringBuilder sb = new StringBuilder(150);
-
-        for (Cell c : m.getCells()) {
+    protected void appendEntry(CsvRowBuffer row, Measurement m) {
+        List<Cell> cells = m.getCells();
+        for (int i = 0; i < cells.size(); i++) {
+            Cell c = cells.get(i);
             // mcc value only when defined
             int mcc = c.getMcc();
             if (mcc != Cell.UNKNOWN_CID)
-                sb.append(formatInt(mcc));
-            sb.append(',');
-            sb.append(formatInt(c.getMnc()));
-            sb.append(',');
-            sb.append(formatInt(c.getLac()));
-            sb.append(',');
-            sb.append(formatLong(c.getCid()));
-            sb.append(',');
+                row.appendInt(mcc);
+            row.append(',');
+            row.appendInt(c.getMnc());
+            row.append(',');
+            row.appendInt(c.getLac());
+            row.append(',');
+            row.appendLong(c.getCid());
+            row.append(',');
             long shortCid = c.getShortCid();
             if (shortCid != Cell.UNKNOWN_CID_LONG)
-                sb.append(formatLong(shortCid));
-            sb.append(',');
+                row.appendLong(shortCid);
+            row.append(',');
             long rnc = c.getRnc();
             if (rnc != Cell.UNKNOWN_CID_LONG)
-                sb.append(formatLong(rnc));
-            sb.append(',');
+                row.appendLong(rnc);
+            row.append(',');
             int psc = c.getPsc();
             if (psc != Cell.UNKNOWN_CID)
-                sb.append(formatInt(psc));
-            sb.append(',');
+                row.appendInt(psc);
+            row.append(',');
 
-            sb.append(formatAsuSignal(c.getAsu()));
-            sb.append(',');
-            sb.append(formatDbmSignal(c.getDbm()));
-            sb.append(',');
+            appendSignal(row, c.getAsu());
+            row.append(',');
+            appendSignal(row, c.getDbm());
+            row.append(',');
             int ta = c.getTa();
             if (ta != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(ta));
-            sb.append(',');
+                row.appendInt(ta);
+            row.append(',');
 
-            sb.append(formatCoordinate(m.getLatitude()));
-            sb.append(',');
-            sb.append(formatCoordinate(m.getLongitude()));
-            sb.append(',');
+            row.appendCoordinate(m.getLatitude());
+            row.append(',');
+            row.appendCoordinate(m.getLongitude());
+            row.append(',');
 
-            sb.append(formatGpsValue(m.getGpsAccuracy()));
-            sb.append(',');
-            sb.append(formatGpsValue(m.getGpsSpeed()));
-            sb.append(',');
-            sb.append(formatGpsValue(m.getGpsBearing()));
-            sb.append(',');
-            sb.append(formatGpsValue(m.getGpsAltitude()));
-            sb.append(',');
+            row.appendGpsValue(m.getGpsAccuracy());
+            row.append(',');
+            row.appendGpsValue(m.getGpsSpeed());
+            row.append(',');
+            row.appendGpsValue(m.getGpsBearing());
+            row.append(',');
+            row.appendGpsValue(m.getGpsAltitude());
+            row.append(',');
 
-            sb.append(formatDate(m.getMeasuredAt()));
-            sb.append(',');
+            appendDate(row, m.getMeasuredAt());
+            row.append(',');
 
-            sb.append(cellUtils.getSystemType(c.getNetworkType()));
-            sb.append(',');
+            row.append(cellUtils.getSystemType(c.getNetworkType()));
+            row.append(',');
 
-            sb.append(c.isNeighboring());
-            sb.append(',');
+            row.append(c.isNeighboring());
+            row.append(',');
 
-            sb.append(formatDate(c.getDiscoveredAt()));
-            sb.append(',');
+            appendDate(row, c.getDiscoveredAt());
+            row.append(',');
 
-            sb.append("\"");
-            sb.append(deviceName);
-            sb.append("\"");
+            row.append('"');
+            row.append(deviceName);
+            row.append('"');
 
-            sb.append(',');
+            row.append(',');
             int rsrp = c.getRsrp();
             if (rsrp != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(rsrp));
-            sb.append(',');
+                row.appendInt(rsrp);
+            row.append(',');
             int rsrq = c.getRsrq();
             if (rsrq != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(rsrq));
-            sb.append(',');
+                row.appendInt(rsrq);
+            row.append(',');
             int rssi = c.getRssi();
             if (rssi != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(rssi));
-            sb.append(',');
+                row.appendInt(rssi);
+            row.append(',');
             int rssnr = c.getRssnr();
             if (rssnr != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(rssnr));
-            sb.append(',');
+                row.appendInt(rssnr);
+            row.append(',');
             int cqi = c.getCqi();
             if (cqi != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(cqi));
-            sb.append(',');
+                row.appendInt(cqi);
+            row.append(',');
             int rscp = c.getRscp();
             if (rscp != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(rscp));
-            sb.append(',');
+                row.appendInt(rscp);
+            row.append(',');
             int csiRsrp = c.getCsiRsrp();
             if (csiRsrp != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(csiRsrp));
-            sb.append(',');
+                row.appendInt(csiRsrp);
+            row.append(',');
             int csiRsrq = c.getCsiRsrq();
             if (csiRsrq != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(csiRsrq));
-            sb.append(',');
+                row.appendInt(csiRsrq);
+            row.append(',');
             int csiSinr = c.getCsiSinr();
             if (csiSinr != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(csiSinr));
-            sb.append(',');
+                row.appendInt(csiSinr);
+            row.append(',');
             int ssRsrp = c.getSsRsrp();
             if (ssRsrp != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(ssRsrp));
-            sb.append(',');
+                row.appendInt(ssRsrp);
+            row.append(',');
             int ssRsrq = c.getSsRsrq();
             if (ssRsrq != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(ssRsrq));
-            sb.append(',');
+                row.appendInt(ssRsrq);
+            row.append(',');
             int ssSinr = c.getSsSinr();
             if (ssSinr != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(ssSinr));
-            sb.append(',');
+                row.appendInt(ssSinr);
+            row.append(',');
             int cdmaDbm = c.getCdmaDbm();
             if (cdmaDbm != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(cdmaDbm));
-            sb.append(',');
+                row.appendInt(cdmaDbm);
+            row.append(',');
             int cdmaEcio = c.getCdmaEcio();
             if (cdmaEcio != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(cdmaEcio));
-            sb.append(',');
+                row.appendInt(cdmaEcio);
+            row.append(',');
             int evdoDbm = c.getEvdoDbm();
             if (evdoDbm != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(evdoDbm));
-            sb.append(',');
+                row.appendInt(evdoDbm);
+            row.append(',');
             int evdoEcio = c.getEvdoEcio();
             if (evdoEcio != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(evdoEcio));
-            sb.append(',');
+                row.appendInt(evdoEcio);
+            row.append(',');
             int evdoSnr = c.getEvdoSnr();
             if (evdoSnr != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(evdoSnr));
-            sb.append(',');
+                row.appendInt(evdoSnr);
+            row.append(',');
             int ecNo = c.getEcNo();
             if (ecNo != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(ecNo));
-            sb.append(',');
+                row.appendInt(ecNo);
+            row.append(',');
             int arfcn = c.getArfcn();
             if (arfcn != Cell.UNKNOWN_CID)
-                sb.append(formatInt(arfcn));
+                row.appendInt(arfcn);
 
-            sb.append("\r\n");
+            row.append("\r\n");
         }
-
-        return sb.toString();
-    }
-
-    private String formatGpsValue(double value) {
-        return gpsDoubleFormatter.format(value);
-    }
-
-    private String formatAsuSignal(int asu) {
-        String asuString;
-        if (asu != Cell.UNKNOWN_SIGNAL)
-            asuString = String.valueOf(asu);
-        else
-            asuString = "";
-        return asuString;
     }
 
-    private String formatDbmSignal(int dbm) {
-        if (dbm != Cell.UNKNOWN_SIGNAL)
-            return String.valueOf(dbm);
-        else
-            return "";
+    private void appendSignal(CsvRowBuffer row, int signal) {
+        if (signal != Cell.UNKNOWN_SIGNAL)
+            row.appendInt(signal);
     }
 
-    private String formatDate(long timestamp) {
-        return exportDateFormatter.format(new Date(timestamp));
+    private void appendDate(CsvRowBuffer row, long timestamp) {
+        row.append('"');
+        row.appendTimestamp(timestamp, 'T');
+        row.append('"');
     }
 }
@@ -4,43 +4,36 @@
 
 package info.zamojski.soft.towercollector.files.formatters.csv;
 
+import info.zamojski.soft.towercollector.model.Measurement;
 import info.zamojski.soft.towercollector.utils.ApkUtils;
 
-import java.text.NumberFormat;
-import java.util.Locale;
+import java.io.IOException;
+import java.io.Writer;
 
 public abstract class CsvFormatter implements ICsvFormatter {
 
-    protected static final Locale LOCALE = Locale.ENGLISH;
-
-    protected static final NumberFormat coordsDoubleFormatter;
-
-    protected static final NumberFormat intFormatter;
-
     protected static String deviceName;
 
     static {
-        coordsDoubleFormatter = NumberFormat.getNumberInstance(LOCALE);
-        coordsDoubleFormatter.setGroupingUsed(false);
-        coordsDoubleFormatter.setMinimumFractionDigits(8);
-        coordsDoubleFormatter.setMaximumFractionDigits(12);
-
-        intFormatter = NumberFormat.getNumberInstance(LOCALE);
-        intFormatter.setParseIntegerOnly(true);
-        intFormatter.setGroupingUsed(false);
-
         deviceName = ApkUtils.getDeviceName();
     }
 
-    protected String formatCoordinate(double value) {
-        return coordsDoubleFormatter.format(value);
-    }
+    // reused for every entry, so instances must not be shared between threads
+    private final CsvRowBuffer row = new CsvRowBuffer();
 
-    protected String formatInt(int value) {
-        return intFormatter.format(value);
+    @Override
+    public String formatEntry(Measurement m) {
+        row.clear();
+        appendEntry(row, m);
+        return row.toString();
     }
 
-    protected String formatLong(long value) {
-        return intFormatter.format(value);
+    @Override
+    public void writeEntry(Measurement m, Writer writer) throws IOException {
+        row.clear();
+        appendEntry(row, m);
+        row.writeTo(writer);
     }
+
+    protected abstract void appendEntry(CsvRowBuffer row, Measurement m);
 }
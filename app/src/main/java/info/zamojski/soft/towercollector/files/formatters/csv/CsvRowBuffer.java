@@ -0,0 +1,241 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Reusable row buffer which formats numbers and timestamps directly into a char array without temporary objects.
+ * Output is identical to {@link NumberFormat} (English locale, no grouping, half-even rounding) and UTC {@link SimpleDateFormat}.
+ * Decimal values are rounded on the scaled binary value, which may differ from decimal rounding only very close to a tie,
+ * so such values (and values out of the supported range) are passed to the original formatters.
+ * Not thread safe, every formatter instance has its own buffer.
+ */
+public class CsvRowBuffer {
+
+    private static final Locale LOCALE = Locale.ENGLISH;
+
+    public static final int COORDINATE_MIN_FRACTION_DIGITS = 8;
+    public static final int COORDINATE_MAX_FRACTION_DIGITS = 12;
+    public static final int GPS_VALUE_MIN_FRACTION_DIGITS = 0;
+    public static final int GPS_VALUE_MAX_FRACTION_DIGITS = 2;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L
+    };
+    // below 2^48 scaling error is at most 1/64 of the last digit
+    private static final double MAX_SCALED_VALUE = 281474976710656.0;
+    // scaling and binary representation errors together are below 0.03 of the last digit
+    private static final double TIE_MARGIN = 0.05;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    // 10000-01-01T00:00:00Z, five digit years are left to SimpleDateFormat
+    private static final long MAX_FAST_TIMESTAMP = 253402300800000L;
+
+    private char[] buffer = new char[256];
+    private int length;
+    private final char[] digits = new char[20];
+
+    private NumberFormat coordinateFormatter;
+    private NumberFormat gpsValueFormatter;
+    private SimpleDateFormat timestampFormatter;
+    private char timestampFormatterSeparator;
+
+    public void clear() {
+        length = 0;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public CsvRowBuffer append(char value) {
+        ensureCapacity(1);
+        buffer[length++] = value;
+        return this;
+    }
+
+    public CsvRowBuffer append(String value) {
+        int valueLength = value.length();
+        ensureCapacity(valueLength);
+        value.getChars(0, valueLength, buffer, length);
+        length += valueLength;
+        return this;
+    }
+
+    public CsvRowBuffer append(boolean value) {
+        return append(value ? "true" : "false");
+    }
+
+    public CsvRowBuffer appendInt(int value) {
+        return appendLong(value);
+    }
+
+    public CsvRowBuffer appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(String.valueOf(value));
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        int digitsCount = digits.length - position;
+        ensureCapacity(digitsCount);
+        System.arraycopy(digits, position, buffer, length, digitsCount);
+        length += digitsCount;
+        return this;
+    }
+
+    /**
+     * Appends coordinate with 8 to 12 fraction digits.
+     */
+    public CsvRowBuffer appendCoordinate(double value) {
+        if (!appendDecimal(value, COORDINATE_MIN_FRACTION_DIGITS, COORDINATE_MAX_FRACTION_DIGITS)) {
+            if (coordinateFormatter == null) {
+                coordinateFormatter = createDecimalFormatter(COORDINATE_MIN_FRACTION_DIGITS, COORDINATE_MAX_FRACTION_DIGITS);
+            }
+            append(coordinateFormatter.format(value));
+        }
+        return this;
+    }
+
+    /**
+     * Appends GPS value with up to 2 fraction digits.
+     */
+    public CsvRowBuffer appendGpsValue(double value) {
+        if (!appendDecimal(value, GPS_VALUE_MIN_FRACTION_DIGITS, GPS_VALUE_MAX_FRACTION_DIGITS)) {
+            if (gpsValueFormatter == null) {
+                gpsValueFormatter = createDecimalFormatter(GPS_VALUE_MIN_FRACTION_DIGITS, GPS_VALUE_MAX_FRACTION_DIGITS);
+            }
+            append(gpsValueFormatter.format(value));
+        }
+        return this;
+    }
+
+    /**
+     * Appends UTC timestamp in yyyy-MM-dd?HH:mm:ss.SSS'Z' format where ? is the date time separator.
+     */
+    public CsvRowBuffer appendTimestamp(long timestamp, char dateTimeSeparator) {
+        if (timestamp < 0 || timestamp >= MAX_FAST_TIMESTAMP) {
+            if (timestampFormatter == null || timestampFormatterSeparator != dateTimeSeparator) {
+                timestampFormatter = new SimpleDateFormat("yyyy-MM-dd'" + dateTimeSeparator + "'HH:mm:ss.SSS'Z'", LOCALE);
+                timestampFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+                timestampFormatterSeparator = dateTimeSeparator;
+            }
+            return append(timestampFormatter.format(new Date(timestamp)));
+        }
+        long days = timestamp / MILLIS_PER_DAY;
+        int millisOfDay = (int) (timestamp % MILLIS_PER_DAY);
+        // civil date from days since epoch in proleptic Gregorian calendar
+        long z = days + 719468;
+        long era = z / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        ensureCapacity(24);
+        appendPadded(year, 4);
+        buffer[length++] = '-';
+        appendPadded(month, 2);
+        buffer[length++] = '-';
+        appendPadded(day, 2);
+        buffer[length++] = dateTimeSeparator;
+        appendPadded(millisOfDay / 3600000, 2);
+        buffer[length++] = ':';
+        appendPadded(millisOfDay / 60000 % 60, 2);
+        buffer[length++] = ':';
+        appendPadded(millisOfDay / 1000 % 60, 2);
+        buffer[length++] = '.';
+        appendPadded(millisOfDay % 1000, 3);
+        buffer[length++] = 'Z';
+        return this;
+    }
+
+    public void writeTo(Writer writer) throws IOException {
+        writer.write(buffer, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    private boolean appendDecimal(double value, int minFractionDigits, int maxFractionDigits) {
+        long scale = POWERS_OF_TEN[maxFractionDigits];
+        double scaled = Math.abs(value) * scale;
+        // also rejects NaN and infinity
+        if (!(scaled < MAX_SCALED_VALUE)) {
+            return false;
+        }
+        double scaledFloor = Math.floor(scaled);
+        double scaledFraction = scaled - scaledFloor;
+        if (Math.abs(scaledFraction - 0.5) < TIE_MARGIN) {
+            return false;
+        }
+        long rounded = (long) scaledFloor + (scaledFraction > 0.5 ? 1 : 0);
+        boolean negative = (Double.doubleToRawLongBits(value) < 0);
+        if (negative && rounded == 0) {
+            // sign of negative values rounded to zero is formatter specific
+            return false;
+        }
+        if (negative) {
+            append('-');
+        }
+        appendLong(rounded / scale);
+        long fraction = rounded % scale;
+        int fractionDigits = maxFractionDigits;
+        while (fractionDigits > minFractionDigits && fraction % 10 == 0) {
+            fraction /= 10;
+            fractionDigits--;
+        }
+        if (fractionDigits > 0) {
+            ensureCapacity(fractionDigits + 1);
+            buffer[length++] = '.';
+            appendPadded(fraction, fractionDigits);
+        }
+        return true;
+    }
+
+    // requires capacity to be ensured by the caller
+    private void appendPadded(long value, int digitsCount) {
+        for (int i = length + digitsCount - 1; i >= length; i--) {
+            buffer[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+        length += digitsCount;
+    }
+
+    private void ensureCapacity(int additionalLength) {
+        int requiredLength = length + additionalLength;
+        if (requiredLength > buffer.length) {
+            char[] newBuffer = new char[Math.max(requiredLength, buffer.length * 2)];
+            System.arraycopy(buffer, 0, newBuffer, 0, length);
+            buffer = newBuffer;
+        }
+    }
+
+    private static NumberFormat createDecimalFormatter(int minFractionDigits, int maxFractionDigits) {
+        NumberFormat formatter = NumberFormat.getNumberInstance(LOCALE);
+        formatter.setGroupingUsed(false);
+        formatter.setMinimumFractionDigits(minFractionDigits);
+        formatter.setMaximumFractionDigits(maxFractionDigits);
+        return formatter;
+    }
+}
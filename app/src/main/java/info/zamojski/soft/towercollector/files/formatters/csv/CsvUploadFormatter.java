@@ -4,9 +4,7 @@
 
 package info.zamojski.soft.towercollector.files.formatters.csv;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.TimeZone;
+import java.util.List;
 
 import info.zamojski.soft.towercollector.enums.NetworkGroup;
 import info.zamojski.soft.towercollector.model.Cell;
@@ -18,13 +16,10 @@ import info.zamojski.soft.towercollector.utils.StringUtils;
 public class CsvUploadFormatter extends CsvFormatter {
 
     private static final ICellUtils cellUtils;
-    private static final SimpleDateFormat uploadDateFormatter;
 
     static {
         cellUtils = new OpenCellIdCellUtils();
         deviceName = StringUtils.substring(deviceName, 0, 50);
-        uploadDateFormatter = new SimpleDateFormat("\"yyyy-MM-dd HH:mm:ss.SSS'Z'\"", LOCALE);
-        uploadDateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
     }
 
     @Override
@@ -33,118 +28,114 @@ public class CsvUploadFormatter extends CsvFormatter {
     }
 
     @Override
-    public String formatEntry(Measurement m) {
-        StringBuilder sb = new StringBuilder(140);
+    protected void appendEntry(CsvRowBuffer row, Measurement m) {
+        List<Cell> cells = m.getCells();
+        for (int i = 0; i < cells.size(); i++) {
+            Cell c = cells.get(i);
+            row.append('\n');
 
-        for (Cell c : m.getCells()) {
-            sb.append('\n');
-
-            sb.append(formatCoordinate(m.getLatitude()));
-            sb.append(',');
-            sb.append(formatCoordinate(m.getLongitude()));
-            sb.append(',');
+            row.appendCoordinate(m.getLatitude());
+            row.append(',');
+            row.appendCoordinate(m.getLongitude());
+            row.append(',');
 
             // depending on cell type
             if (c.getNetworkType() == NetworkGroup.Cdma || c.getMcc() == Cell.UNKNOWN_CID) {
                 // mcc
-                sb.append(',');
+                row.append(',');
                 // mnc
-                sb.append(',');
+                row.append(',');
                 // sid
-                sb.append(formatInt(c.getMnc()));
-                sb.append(',');
+                row.appendInt(c.getMnc());
+                row.append(',');
                 // lac
-                sb.append(',');
+                row.append(',');
                 // tac
-                sb.append(',');
+                row.append(',');
                 // nid
-                sb.append(formatInt(c.getLac()));
-                sb.append(',');
+                row.appendInt(c.getLac());
+                row.append(',');
                 // cellid
-                sb.append(',');
+                row.append(',');
                 // bid
-                sb.append(formatLong(c.getCid()));
-                sb.append(',');
+                row.appendLong(c.getCid());
+                row.append(',');
             } else {
                 // mcc
-                sb.append(formatInt(c.getMcc()));
-                sb.append(',');
+                row.appendInt(c.getMcc());
+                row.append(',');
                 // mnc
-                sb.append(formatInt(c.getMnc()));
-                sb.append(',');
+                row.appendInt(c.getMnc());
+                row.append(',');
                 // sid
-                sb.append(',');
+                row.append(',');
                 // lac
                 if (c.getNetworkType() != NetworkGroup.Lte && c.getNetworkType() != NetworkGroup.Nr)
-                    sb.append(formatInt(c.getLac()));
-                sb.append(',');
+                    row.appendInt(c.getLac());
+                row.append(',');
                 // tac
                 if (c.getNetworkType() == NetworkGroup.Lte || c.getNetworkType() == NetworkGroup.Nr)
-                    sb.append(formatInt(c.getLac()));
-                sb.append(',');
+                    row.appendInt(c.getLac());
+                row.append(',');
                 // nid
-                sb.append(',');
+                row.append(',');
                 // cellid
-                sb.append(formatLong(c.getCid()));
-                sb.append(',');
+                row.appendLong(c.getCid());
+                row.append(',');
                 // bid
-                sb.append(',');
+                row.append(',');
             }
 
             // psc
             int psc = c.getPsc();
             if (psc != Cell.UNKNOWN_CID && (c.getNetworkType() == NetworkGroup.Wcdma || c.getNetworkType() == NetworkGroup.Tdscdma))
-                sb.append(formatInt(psc));
-            sb.append(',');
+                row.appendInt(psc);
+            row.append(',');
             // pci
             if (psc != Cell.UNKNOWN_CID && (c.getNetworkType() == NetworkGroup.Lte || c.getNetworkType() == NetworkGroup.Nr))
-                sb.append(formatInt(psc));
-            sb.append(',');
+                row.appendInt(psc);
+            row.append(',');
 
-            sb.append(formatSignal(c.getAsu(), c.getDbm()));
-            sb.append(',');
+            appendSignal(row, c.getAsu(), c.getDbm());
+            row.append(',');
             int ta = c.getTa();
             if (ta != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(ta));
-            sb.append(',');
+                row.appendInt(ta);
+            row.append(',');
 
-            sb.append(formatDate(m.getMeasuredAt()));
-            sb.append(',');
+            appendDate(row, m.getMeasuredAt());
+            row.append(',');
 
-            sb.append(formatInt(convertToInt(m.getGpsAccuracy())));
-            sb.append(',');
-            sb.append(formatInt(convertToInt(m.getGpsSpeed())));
-            sb.append(',');
-            sb.append(formatInt(convertToInt(m.getGpsBearing())));
-            sb.append(',');
+            row.appendInt(convertToInt(m.getGpsAccuracy()));
+            row.append(',');
+            row.appendInt(convertToInt(m.getGpsSpeed()));
+            row.append(',');
+            row.appendInt(convertToInt(m.getGpsBearing()));
+            row.append(',');
 
-            sb.append(cellUtils.getSystemType(c.getNetworkType()));
-            sb.append(',');
+            row.append(cellUtils.getSystemType(c.getNetworkType()));
+            row.append(',');
 
-            sb.append("\"");
-            sb.append(deviceName);
-            sb.append("\"");
+            row.append('"');
+            row.append(deviceName);
+            row.append('"');
         }
-
-        return sb.toString();
     }
 
     private int convertToInt(double value) {
         return (int) Math.round(value);
     }
 
-    private String formatSignal(int asu, int dbm) {
-        String signalString;
+    private void appendSignal(CsvRowBuffer row, int asu, int dbm) {
         if (asu != Cell.UNKNOWN_SIGNAL)
-            signalString = String.valueOf(asu);
+            row.appendInt(asu);
         else if (dbm != Cell.UNKNOWN_SIGNAL)
-            signalString = String.valueOf(dbm);
-        else
-            signalString = "";
-        return signalString;
+            row.appendInt(dbm);
     }
 
-    private String formatDate(long timestamp) {
-        return uploadDateFormatter.format(new Date(timestamp));
+    private void appendDate(CsvRowBuffer row, long timestamp) {
+        row.append('"');
+        row.appendTimestamp(timestamp, ' ');
+        row.append('"');
     }
 }
@@ -4,6 +4,9 @@
 
 package info.zamojski.soft.towercollector.files.formatters.csv;
 
+import java.io.IOException;
+import java.io.Writer;
+
 import info.zamojski.soft.towercollector.model.Measurement;
 
 public interface ICsvFormatter {
@@ -12,4 +15,6 @@ public interface ICsvFormatter {
 
     String formatEntry(Measurement m);
 
+    void writeEntry(Measurement m, Writer writer) throws IOException;
+
 }
@@ -23,15 +23,20 @@ public class GpxExportFormatter implements IGpxFormatter {
 
     private static final Locale LOCALE = Locale.ENGLISH;
 
-    private static final NumberFormat coordsDoubleFormatter;
-    private static final NumberFormat gpsDoubleFormatter;
-    private static final SimpleDateFormat exportDateFormatter;
-
-    protected static final NumberFormat intFormatter;
-
     private static final ICellUtils cellUtils;
 
     static {
+        cellUtils = new GeneralCellUtils();
+    }
+
+    // entries are formatted in parallel, so formatters cannot be shared
+    private final NumberFormat coordsDoubleFormatter;
+    private final NumberFormat gpsDoubleFormatter;
+    private final SimpleDateFormat exportDateFormatter;
+
+    protected final NumberFormat intFormatter;
+
+    public GpxExportFormatter() {
         coordsDoubleFormatter = NumberFormat.getNumberInstance(LOCALE);
         coordsDoubleFormatter.setGroupingUsed(false);
         coordsDoubleFormatter.setMinimumFractionDigits(8);
@@ -48,8 +53,6 @@ public class GpxExportFormatter implements IGpxFormatter {
 
         exportDateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", LOCALE);
         exportDateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        cellUtils = new GeneralCellUtils();
     }
 
     @Override
@@ -4,8 +4,8 @@
 
 package info.zamojski.soft.towercollector.files.formatters.json;
 
-import org.json.JSONException;
-
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 import info.zamojski.soft.towercollector.model.Measurement;
@@ -14,7 +14,9 @@ public interface IJsonFormatter {
 
     String formatHeader();
 
-    String formatList(List<Measurement> ms) throws JSONException;
+    String formatList(List<Measurement> ms);
+
+    void writeList(List<Measurement> ms, Writer writer) throws IOException;
 
     String formatNewSegment();
 
@@ -4,10 +4,8 @@
 
 package info.zamojski.soft.towercollector.files.formatters.json;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -37,61 +35,61 @@ public class JsonBroadcastFormatter extends JsonFormatterBase implements IJsonFo
     }
 
     @Override
-    public String formatList(List<Measurement> ms) throws JSONException {
-        if (ms.size() == 0) {
-            return new JSONObject().toString();
-        }
-        JSONObject root = new JSONObject();
-        for (Measurement m : ms) {
-            root.put("measured_at", formatDate(m.getMeasuredAt()));
-            JSONObject gps = new JSONObject();
-            gps.put("lat", formatCoordinate(m.getLatitude()));
-            gps.put("lon", formatCoordinate(m.getLongitude()));
-            gps.put("accuracy", formatGpsValue(m.getGpsAccuracy()));
-            gps.put("speed", formatGpsValue(m.getGpsSpeed()));
-            gps.put("bearing", formatGpsValue(m.getGpsBearing()));
-            gps.put("altitude", formatGpsValue(m.getGpsAltitude()));
-            root.put("gps", gps);
-            JSONArray cells = new JSONArray();
+    public void writeList(List<Measurement> ms, Writer writer) throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(writer);
+        json.beginObject();
+        if (ms.size() != 0) {
+            // broadcast contains single measurement, for longer lists the last one is written
+            Measurement m = ms.get(ms.size() - 1);
+            json.name("measured_at").value(formatDate(m.getMeasuredAt()));
+            json.name("gps").beginObject();
+            json.name("lat").value(formatCoordinate(m.getLatitude()));
+            json.name("lon").value(formatCoordinate(m.getLongitude()));
+            json.name("accuracy").value(formatGpsValue(m.getGpsAccuracy()));
+            json.name("speed").value(formatGpsValue(m.getGpsSpeed()));
+            json.name("bearing").value(formatGpsValue(m.getGpsBearing()));
+            json.name("altitude").value(formatGpsValue(m.getGpsAltitude()));
+            json.endObject();
+            json.name("cells").beginArray();
             for (Cell c : m.getCells()) {
-                JSONObject cell = new JSONObject();
-                cell.put("mcc", formatNullable(c.getMcc(), Cell.UNKNOWN_CID));
-                cell.put("mnc", c.getMnc());
-                cell.put("lac", c.getLac());
-                cell.put("cell_id", c.getCid());
-                cell.put("short_cell_id", formatNullable(c.getShortCid(), Cell.UNKNOWN_CID_LONG));
-                cell.put("rnc", formatNullable(c.getRnc(), Cell.UNKNOWN_CID_LONG));
-                cell.put("psc", formatNullable(c.getPsc(), Cell.UNKNOWN_CID));
-                cell.put("asu", formatNullable(c.getAsu(), Cell.UNKNOWN_SIGNAL));
-                cell.put("dbm", formatNullable(c.getDbm(), Cell.UNKNOWN_SIGNAL));
-                cell.put("ta", formatNullable(c.getTa(), Cell.UNKNOWN_SIGNAL));
-                cell.put("rsrp", formatNullable(c.getRsrp(), Cell.UNKNOWN_SIGNAL));
-                cell.put("rsrq", formatNullable(c.getRsrq(), Cell.UNKNOWN_SIGNAL));
-                cell.put("rssi", formatNullable(c.getRssi(), Cell.UNKNOWN_SIGNAL));
-                cell.put("rssnr", formatNullable(c.getRssnr(), Cell.UNKNOWN_SIGNAL));
-                cell.put("cqi", formatNullable(c.getCqi(), Cell.UNKNOWN_SIGNAL));
-                cell.put("rscp", formatNullable(c.getRscp(), Cell.UNKNOWN_SIGNAL));
-                cell.put("csi_rsrp", formatNullable(c.getCsiRsrp(), Cell.UNKNOWN_SIGNAL));
-                cell.put("csi_rsrq", formatNullable(c.getCsiRsrq(), Cell.UNKNOWN_SIGNAL));
-                cell.put("csi_sinr", formatNullable(c.getCsiSinr(), Cell.UNKNOWN_SIGNAL));
-                cell.put("ss_rsrp", formatNullable(c.getSsRsrp(), Cell.UNKNOWN_SIGNAL));
-                cell.put("ss_rsrq", formatNullable(c.getSsRsrq(), Cell.UNKNOWN_SIGNAL));
-                cell.put("ss_sinr", formatNullable(c.getSsSinr(), Cell.UNKNOWN_SIGNAL));
-                cell.put("cdma_dbm", formatNullable(c.getCdmaDbm(), Cell.UNKNOWN_SIGNAL));
-                cell.put("cdma_ecio", formatNullable(c.getCdmaEcio(), Cell.UNKNOWN_SIGNAL));
-                cell.put("evdo_dbm", formatNullable(c.getEvdoDbm(), Cell.UNKNOWN_SIGNAL));
-                cell.put("evdo_ecio", formatNullable(c.getEvdoEcio(), Cell.UNKNOWN_SIGNAL));
-                cell.put("evdo_snr", formatNullable(c.getEvdoSnr(), Cell.UNKNOWN_SIGNAL));
-                cell.put("ec_no", formatNullable(c.getEcNo(), Cell.UNKNOWN_SIGNAL));
-                cell.put("arfcn", formatNullable(c.getArfcn(), Cell.UNKNOWN_CID));
-                cell.put("neighboring", c.isNeighboring());
-                cell.put("net_type", cellUtils.getSystemType(c.getNetworkType()));
-                cell.put("discovered_at", formatDate(c.getDiscoveredAt()));
-                cells.put(cell);
+                json.beginObject();
+                writeNullable(json.name("mcc"), c.getMcc(), Cell.UNKNOWN_CID);
+                json.name("mnc").value(c.getMnc());
+                json.name("lac").value(c.getLac());
+                json.name("cell_id").value(c.getCid());
+                writeNullable(json.name("short_cell_id"), c.getShortCid(), Cell.UNKNOWN_CID_LONG);
+                writeNullable(json.name("rnc"), c.getRnc(), Cell.UNKNOWN_CID_LONG);
+                writeNullable(json.name("psc"), c.getPsc(), Cell.UNKNOWN_CID);
+                writeNullable(json.name("asu"), c.getAsu(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("dbm"), c.getDbm(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("ta"), c.getTa(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("rsrp"), c.getRsrp(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("rsrq"), c.getRsrq(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("rssi"), c.getRssi(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("rssnr"), c.getRssnr(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("cqi"), c.getCqi(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("rscp"), c.getRscp(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("csi_rsrp"), c.getCsiRsrp(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("csi_rsrq"), c.getCsiRsrq(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("csi_sinr"), c.getCsiSinr(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("ss_rsrp"), c.getSsRsrp(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("ss_rsrq"), c.getSsRsrq(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("ss_sinr"), c.getSsSinr(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("cdma_dbm"), c.getCdmaDbm(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("cdma_ecio"), c.getCdmaEcio(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("evdo_dbm"), c.getEvdoDbm(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("evdo_ecio"), c.getEvdoEcio(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("evdo_snr"), c.getEvdoSnr(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("ec_no"), c.getEcNo(), Cell.UNKNOWN_SIGNAL);
+                writeNullable(json.name("arfcn"), c.getArfcn(), Cell.UNKNOWN_CID);
+                json.name("neighboring").value(c.isNeighboring());
+                json.name("net_type").value(cellUtils.getSystemType(c.getNetworkType()));
+                json.name("discovered_at").value(formatDate(c.getDiscoveredAt()));
+                json.endObject();
             }
-            root.put("cells", cells);
+            json.endArray();
         }
-        return root.toString();
+        json.endObject();
     }
 
     @Override
@@ -108,15 +106,10 @@ public class JsonBroadcastFormatter extends JsonFormatterBase implements IJsonFo
         return exportDateFormatter.format(new Date(timestamp));
     }
 
-    private Object formatNullable(int value, int invalid) {
-        if (value == invalid)
-            return JSONObject.NULL;
-        return value;
-    }
-
-    private Object formatNullable(long value, long invalid) {
+    private void writeNullable(JsonStreamWriter json, long value, long invalid) throws IOException {
         if (value == invalid)
-            return JSONObject.NULL;
-        return value;
+            json.nullValue();
+        else
+            json.value(value);
     }
 }
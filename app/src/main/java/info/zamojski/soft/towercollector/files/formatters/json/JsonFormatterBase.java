@@ -4,9 +4,15 @@
 
 package info.zamojski.soft.towercollector.files.formatters.json;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Locale;
 
+import info.zamojski.soft.towercollector.model.Measurement;
+
 public abstract class JsonFormatterBase {
     protected static final Locale LOCALE = Locale.ENGLISH;
 
@@ -14,6 +20,19 @@ public abstract class JsonFormatterBase {
     private static final int GPS_VALUE_PRECISION = 2;
     private static final int ROUNDING_METHOD = BigDecimal.ROUND_HALF_EVEN;
 
+    public String formatList(List<Measurement> ms) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeList(ms, writer);
+        } catch (IOException ex) {
+            // never thrown by in-memory writer
+            throw new IllegalStateException(ex);
+        }
+        return writer.toString();
+    }
+
+    public abstract void writeList(List<Measurement> ms, Writer writer) throws IOException;
+
     protected double formatCoordinate(double value) {
         return new BigDecimal(value).setScale(COORDS_PRECISION, ROUNDING_METHOD).doubleValue();
     }
@@ -4,9 +4,8 @@
 
 package info.zamojski.soft.towercollector.files.formatters.json;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 import info.zamojski.soft.towercollector.model.Measurement;
@@ -19,18 +18,18 @@ public class JsonMozillaExportFormatter extends JsonMozillaFormatterBase impleme
     }
 
     @Override
-    public String formatList(List<Measurement> ms) throws JSONException {
-        StringBuilder sb = new StringBuilder();
-        List<JSONObject> rawItems = formatItems(ms);
+    public void writeList(List<Measurement> ms, Writer writer) throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(writer);
         boolean notFirst = false;
-        for (JSONObject rawItem : rawItems) {
+        for (Measurement m : ms) {
+            if (!hasSupportedCells(m))
+                continue;
             if (notFirst) {
-                sb.append(",\r\n");
+                writer.write(",\r\n");
             }
             notFirst = true;
-            sb.append(rawItem.toString());
+            writeItem(json, m);
         }
-        return sb.toString();
     }
 
     @Override
@@ -4,11 +4,7 @@
 
 package info.zamojski.soft.towercollector.files.formatters.json;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 
 import info.zamojski.soft.towercollector.enums.NetworkGroup;
@@ -18,6 +14,9 @@ import info.zamojski.soft.towercollector.providers.ICellUtils;
 import info.zamojski.soft.towercollector.providers.MozillaCellUtils;
 import info.zamojski.soft.towercollector.utils.StringUtils;
 
+/**
+ * Writes items of the Mozilla geosubmit schema directly to the output without building JSON objects.
+ */
 public abstract class JsonMozillaFormatterBase extends JsonFormatterBase {
 
     private static final ICellUtils cellUtils;
@@ -26,58 +25,70 @@ public abstract class JsonMozillaFormatterBase extends JsonFormatterBase {
         cellUtils = new MozillaCellUtils();
     }
 
-    protected List<JSONObject> formatItems(List<Measurement> ms) throws JSONException {
-        List<JSONObject> items = new ArrayList<>();
-        for (Measurement m : ms) {
-            JSONObject item = new JSONObject();
-            item.put("timestamp", m.getMeasuredAt());
-            JSONObject position = new JSONObject();
-            position.put("latitude", formatCoordinate(m.getLatitude()));
-            position.put("longitude", formatCoordinate(m.getLongitude()));
-            position.put("longitude", formatCoordinate(m.getLongitude()));
-            position.put("accuracy", formatGpsValue(m.getGpsAccuracy()));
-            position.put("altitude", formatGpsValue(m.getGpsAltitude()));
-            position.put("heading", formatGpsValue(m.getGpsBearing()));
-            position.put("speed", formatGpsValue(m.getGpsSpeed()));
-            position.put("source", "gps");
-            item.put("position", position);
-            JSONArray cellTowers = new JSONArray();
-            for (Cell c : m.getCells()) {
-                if (c.getNetworkType() == NetworkGroup.Cdma || c.getMcc() == Cell.UNKNOWN_CID || c.getNetworkType() == NetworkGroup.Tdscdma || c.getNetworkType() == NetworkGroup.Nr)
-                    continue; // Not supported
-                JSONObject cellTower = new JSONObject();
-                cellTower.put("radioType", formatRadioType(c.getNetworkType()));
-                cellTower.put("mobileCountryCode", c.getMcc());
-                cellTower.put("mobileNetworkCode", c.getMnc());
-                cellTower.put("locationAreaCode", c.getLac());
-                cellTower.put("cellId", c.getCid());
-                int psc = c.getPsc();
-                if (psc != Cell.UNKNOWN_CID)
-                    cellTower.put("primaryScramblingCode", psc);
-                int asu = c.getAsu();
-                if (asu != Cell.UNKNOWN_SIGNAL)
-                    cellTower.put("asu", asu);
-                int dbm = c.getDbm();
-                if (dbm != Cell.UNKNOWN_SIGNAL)
-                    cellTower.put("signalStrength", dbm);
-                int ta = c.getTa();
-                if (ta != Cell.UNKNOWN_SIGNAL)
-                    cellTower.put("timingAdvance", ta);
-                cellTower.put("serving", c.isNeighboring() ? 0 : 1);
-                cellTowers.put(cellTower);
-            }
-            item.put("cellTowers", cellTowers);
-            // add only if measurement contains valid cells
-            if (cellTowers.length() > 0)
-                items.add(item);
+    /**
+     * Items are added only if measurement contains valid cells.
+     */
+    protected boolean hasSupportedCells(Measurement m) {
+        List<Cell> cells = m.getCells();
+        for (int i = 0; i < cells.size(); i++) {
+            if (isSupported(cells.get(i)))
+                return true;
+        }
+        return false;
+    }
+
+    protected void writeItem(JsonStreamWriter json, Measurement m) throws IOException {
+        json.beginObject();
+        json.name("timestamp").value(m.getMeasuredAt());
+        json.name("position").beginObject();
+        json.name("latitude").value(formatCoordinate(m.getLatitude()));
+        json.name("longitude").value(formatCoordinate(m.getLongitude()));
+        json.name("accuracy").value(formatGpsValue(m.getGpsAccuracy()));
+        json.name("altitude").value(formatGpsValue(m.getGpsAltitude()));
+        json.name("heading").value(formatGpsValue(m.getGpsBearing()));
+        json.name("speed").value(formatGpsValue(m.getGpsSpeed()));
+        json.name("source").value("gps");
+        json.endObject();
+        json.name("cellTowers").beginArray();
+        List<Cell> cells = m.getCells();
+        for (int i = 0; i < cells.size(); i++) {
+            Cell c = cells.get(i);
+            if (!isSupported(c))
+                continue;
+            json.beginObject();
+            json.name("radioType").value(formatRadioType(c.getNetworkType()));
+            json.name("mobileCountryCode").value(c.getMcc());
+            json.name("mobileNetworkCode").value(c.getMnc());
+            json.name("locationAreaCode").value(c.getLac());
+            json.name("cellId").value(c.getCid());
+            int psc = c.getPsc();
+            if (psc != Cell.UNKNOWN_CID)
+                json.name("primaryScramblingCode").value(psc);
+            int asu = c.getAsu();
+            if (asu != Cell.UNKNOWN_SIGNAL)
+                json.name("asu").value(asu);
+            int dbm = c.getDbm();
+            if (dbm != Cell.UNKNOWN_SIGNAL)
+                json.name("signalStrength").value(dbm);
+            int ta = c.getTa();
+            if (ta != Cell.UNKNOWN_SIGNAL)
+                json.name("timingAdvance").value(ta);
+            json.name("serving").value(c.isNeighboring() ? 0 : 1);
+            json.endObject();
         }
-        return items;
+        json.endArray();
+        json.endObject();
+    }
+
+    private boolean isSupported(Cell c) {
+        // CDMA, TD-SCDMA and NR are not supported
+        return !(c.getNetworkType() == NetworkGroup.Cdma || c.getMcc() == Cell.UNKNOWN_CID || c.getNetworkType() == NetworkGroup.Tdscdma || c.getNetworkType() == NetworkGroup.Nr);
     }
 
-    private Object formatRadioType(NetworkGroup networkGroup) {
+    private String formatRadioType(NetworkGroup networkGroup) {
         String systemType = cellUtils.getSystemType(networkGroup);
         if (StringUtils.isNullEmptyOrWhitespace(systemType))
-            return JSONObject.NULL;
+            return null;
         return systemType;
     }
 }
@@ -4,10 +4,8 @@
 
 package info.zamojski.soft.towercollector.files.formatters.json;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 import info.zamojski.soft.towercollector.model.Measurement;
@@ -20,18 +18,18 @@ public class JsonMozillaUploadFormatter extends JsonMozillaFormatterBase impleme
     }
 
     @Override
-    public String formatList(List<Measurement> ms) throws JSONException {
-        if (ms.size() == 0) {
-            return new JSONObject().toString();
-        }
-        JSONArray items = new JSONArray();
-        List<JSONObject> rawItems = formatItems(ms);
-        for (JSONObject rawItem : rawItems) {
-            items.put(rawItem);
+    public void writeList(List<Measurement> ms, Writer writer) throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(writer);
+        json.beginObject();
+        if (ms.size() != 0) {
+            json.name("items").beginArray();
+            for (Measurement m : ms) {
+                if (hasSupportedCells(m))
+                    writeItem(json, m);
+            }
+            json.endArray();
         }
-        JSONObject root = new JSONObject();
-        root.put("items", items);
-        return root.toString();
+        json.endObject();
     }
 
     @Override
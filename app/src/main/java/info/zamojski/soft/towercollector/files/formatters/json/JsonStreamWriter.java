@@ -0,0 +1,191 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Minimal streaming JSON writer similar to {@link android.util.JsonWriter} which writes compact JSON
+ * exactly like {@link org.json.JSONObject#toString()} does, including number format and escaping.
+ * Values written at the top level are not separated, callers are responsible for separators between them.
+ */
+public class JsonStreamWriter {
+
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
+    private final Writer out;
+    // whether object or array at given depth already has an element
+    private boolean[] nonEmpty = new boolean[8];
+    private int depth;
+    private boolean afterName;
+
+    public JsonStreamWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        if (depth == 0 || afterName) {
+            throw new IllegalStateException("Name is not allowed here");
+        }
+        beforeElement();
+        string(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    public JsonStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes integral values without fraction and negative zero as -0, same as org.json.
+     */
+    public JsonStreamWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        beforeValue();
+        if (value == 0 && Double.doubleToRawLongBits(value) < 0) {
+            out.write("-0");
+        } else if (value == (double) (long) value) {
+            out.write(Long.toString((long) value));
+        } else {
+            out.write(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonStreamWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    private JsonStreamWriter open(char bracket) throws IOException {
+        beforeValue();
+        if (++depth == nonEmpty.length) {
+            nonEmpty = Arrays.copyOf(nonEmpty, depth * 2);
+        }
+        nonEmpty[depth] = false;
+        out.write(bracket);
+        return this;
+    }
+
+    private JsonStreamWriter close(char bracket) throws IOException {
+        if (depth == 0 || afterName) {
+            throw new IllegalStateException("Nesting problem");
+        }
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (depth > 0) {
+            beforeElement();
+        }
+    }
+
+    private void beforeElement() throws IOException {
+        if (nonEmpty[depth]) {
+            out.write(',');
+        }
+        nonEmpty[depth] = true;
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            switch (c) {
+                case '"':
+                    replacement = "\\\"";
+                    break;
+                case '\\':
+                    replacement = "\\\\";
+                    break;
+                case '/':
+                    replacement = "\\/";
+                    break;
+                case '\t':
+                    replacement = "\\t";
+                    break;
+                case '\b':
+                    replacement = "\\b";
+                    break;
+                case '\n':
+                    replacement = "\\n";
+                    break;
+                case '\r':
+                    replacement = "\\r";
+                    break;
+                case '\f':
+                    replacement = "\\f";
+                    break;
+                default:
+                    if (c > 0x1F)
+                        continue;
+                    replacement = null;
+                    break;
+            }
+            if (start < i) {
+                out.write(value, start, i - start);
+            }
+            if (replacement != null) {
+                out.write(replacement);
+            } else {
+                out.write("\\u00");
+                out.write(HEX_DIGITS.charAt(c >> 4));
+                out.write(HEX_DIGITS.charAt(c & 0xF));
+            }
+            start = i + 1;
+        }
+        if (start < length) {
+            out.write(value, start, length - start);
+        }
+        out.write('"');
+    }
+}
@@ -4,8 +4,6 @@
 
 package info.zamojski.soft.towercollector.files.formatters.kml;
 
-import java.util.List;
-
 import info.zamojski.soft.towercollector.model.Measurement;
 
 public interface IKmlFormatter {
@@ -18,8 +16,14 @@ public interface IKmlFormatter {
 
     String formatLineEntry(Measurement m);
 
-    String formatLineSegment(List<String> entries);
+    String formatLineEntrySeparator();
+
+    String formatLineSegmentHeader();
+
+    String formatLineSegmentFooter();
+
+    String formatPathHeader();
 
-    String formatFooter(List<String> segments);
+    String formatFooter();
 
 }
@@ -0,0 +1,68 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import android.net.Uri;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.files.formatters.columnar.ColumnarWriter;
+import info.zamojski.soft.towercollector.io.filesystem.CompressionFormat;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.utils.ApkUtils;
+
+/**
+ * Writes measurements in compact binary columnar format, values are encoded directly into columns
+ * of the current row group on the writing thread.
+ */
+public class ColumnarGeneratorWrapper extends FileTextGeneratorWrapperBase<Void> {
+
+    private final String deviceName;
+    private ColumnarWriter columnarWriter;
+
+    public ColumnarGeneratorWrapper(Uri storageUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, int compressionLevel) {
+        super(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel);
+        this.deviceName = ApkUtils.getDeviceName();
+    }
+
+    /**
+     * Footer indexes all row groups of the file, so the file cannot be resumed.
+     */
+    @Override
+    public boolean isResumable() {
+        return false;
+    }
+
+    @Override
+    protected void writeHeader(BufferedWriter writer, ExportHeader header) throws IOException {
+        columnarWriter = new ColumnarWriter(getOutputStream(writer), deviceName, ColumnarWriter.DEFAULT_MEASUREMENTS_PER_ROW_GROUP);
+        columnarWriter.writeHeader();
+    }
+
+    @Override
+    protected Void formatEntries(List<Measurement> measurements) {
+        // columns span many parts, nothing to format in advance
+        return null;
+    }
+
+    @Override
+    protected void writeEntries(BufferedWriter writer, List<Measurement> measurements, Void formattedEntries) throws IOException {
+        for (Measurement m : measurements) {
+            columnarWriter.write(m);
+        }
+    }
+
+    @Override
+    protected void writeFooter(BufferedWriter writer) throws IOException {
+        columnarWriter.finish();
+    }
+
+    @Override
+    protected void cleanUp() {
+        columnarWriter = null;
+    }
+}
@@ -6,7 +6,15 @@ package info.zamojski.soft.towercollector.files.generators.wrappers;
 
 import android.net.Uri;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.analytics.IntentSource;
@@ -14,61 +22,150 @@ import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.GeneratorResult;
 import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
 import info.zamojski.soft.towercollector.files.FileGeneratorResult;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IMeasurementPartSource;
 import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
-import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressiveTextGeneratorWrapper;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IStreamingTextGeneratorWrapper;
 import info.zamojski.soft.towercollector.model.AnalyticsStatistics;
+import info.zamojski.soft.towercollector.model.ExportFilter;
+import info.zamojski.soft.towercollector.model.ExportRange;
+import info.zamojski.soft.towercollector.model.Measurement;
 import timber.log.Timber;
 
+/**
+ * Reads measurements from the database once and dispatches every part to all sub generators.
+ * Each sub generator writes its file on a separate thread and has its own bounded queue of parts,
+ * so the total time is close to the time of the slowest format and memory usage stays limited.
+ * Optionally parts are formatted on a pool shared by all sub generators and written in order.
+ */
 public class CompositeTextGeneratorWrapper extends TextGeneratorWrapperBase {
 
-    private List<IProgressiveTextGeneratorWrapper> subGenerators;
+    private static final int PARTS_QUEUE_CAPACITY = 4;
+    // parts formatted or waiting for write per sub generator in addition to formatting threads
+    private static final int EXTRA_PARTS_IN_FLIGHT = 1;
+    private static final long DISPATCH_TIMEOUT = 100; // milliseconds
+    // marks end of data, compared by reference
+    private static final List<Measurement> END_OF_PARTS = new ArrayList<>(0);
+
+    private List<IStreamingTextGeneratorWrapper> subGenerators;
     private final IntentSource intentSource;
-    private int alreadyGenerated = 0;
+    private final int formattingThreads;
+    private final ExportRange range;
+    private final ExportFilter filter;
     private final int maxProgressPercent = 100;
+    private int[] subProgressPercents;
+    private int lastProgressPercent;
 
-    public CompositeTextGeneratorWrapper(List<IProgressiveTextGeneratorWrapper> subGenerators, IntentSource intentSource) {
+    /**
+     * @param formattingThreads number of threads formatting parts, less than 2 means formatting on writer threads
+     * @param range measurements read from the database, sub generators may skip some of them
+     * @param filter conditions of measurements and cells read from the database
+     */
+    public CompositeTextGeneratorWrapper(List<IStreamingTextGeneratorWrapper> subGenerators, IntentSource intentSource, int formattingThreads, ExportRange range, ExportFilter filter) {
         this.subGenerators = subGenerators;
         this.intentSource = intentSource;
+        this.formattingThreads = formattingThreads;
+        this.range = range;
+        this.filter = filter;
     }
 
     public FileGeneratorResult generate() {
-        FileGeneratorResult lastResult = new FileGeneratorResult(GeneratorResult.Unknown, Reason.Unknown, "Nothing to generate");
+        if (subGenerators.isEmpty()) {
+            return new FileGeneratorResult(GeneratorResult.Unknown, Reason.Unknown, "Nothing to generate");
+        }
+        int subGeneratorsCount = subGenerators.size();
+        ExecutorService executor = Executors.newFixedThreadPool(subGeneratorsCount);
+        ExecutorService formattingExecutor = (formattingThreads > 1 ? Executors.newFixedThreadPool(formattingThreads) : null);
+        List<IProgressListener> subProgressListeners = new ArrayList<>(subGeneratorsCount);
         try {
+            // get number of locations to process
+            int locationsCount = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLocationsCount(range, filter);
+            // check if there is anything to process
+            if (locationsCount == 0 && !isAnySubGeneratorResuming()) {
+                Timber.d("generate(): Cancelling save due to no data");
+                return new FileGeneratorResult(GeneratorResult.NoData, Reason.Unknown);
+            }
+            subProgressPercents = new int[subGeneratorsCount];
+            lastProgressPercent = 0;
             notifyProgressListeners(0, maxProgressPercent);
-            for (IProgressiveTextGeneratorWrapper generator : subGenerators) {
-                try {
-                    generator.addProgressListener(subProgressListener);
+            Timber.d("generate(): Exporting %s locations to %s formats using %s formatting threads", locationsCount, subGeneratorsCount, formattingThreads);
+            // start writers
+            ExportHeader header = new ExportHeader();
+            long[] durations = new long[subGeneratorsCount];
+            List<BlockingQueue<List<Measurement>>> queues = new ArrayList<>(subGeneratorsCount);
+            List<Future<FileGeneratorResult>> results = new ArrayList<>(subGeneratorsCount);
+            for (int i = 0; i < subGeneratorsCount; i++) {
+                IStreamingTextGeneratorWrapper generator = subGenerators.get(i);
+                BlockingQueue<List<Measurement>> queue = new ArrayBlockingQueue<>(PARTS_QUEUE_CAPACITY);
+                IProgressListener subProgressListener = createSubProgressListener(i);
+                generator.addProgressListener(subProgressListener);
+                generator.setFormattingExecutor(formattingExecutor, formattingThreads + EXTRA_PARTS_IN_FLIGHT);
+                subProgressListeners.add(subProgressListener);
+                int generatorIndex = i;
+                queues.add(queue);
+                results.add(executor.submit(() -> {
                     long startTime = System.currentTimeMillis();
-                    // run generator
-                    lastResult = generator.generate();
-                    // send stats
-                    long endTime = System.currentTimeMillis();
-                    AnalyticsStatistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
-                    String fileType = generator.getFileType();
-                    long duration = (endTime - startTime);
-                    MyApplication.getAnalytics().sendExportFinished(intentSource, duration, fileType, stats);
-                    if (lastResult.getResult() != GeneratorResult.Succeeded) {
-                        return lastResult;
+                    try {
+                        return generator.generate(new QueuePartSource(queue), header, locationsCount);
+                    } finally {
+                        durations[generatorIndex] = System.currentTimeMillis() - startTime;
                     }
-                    alreadyGenerated++;
-                } finally {
-                    generator.removeProgressListener(subProgressListener);
+                }));
+            }
+            // read once, write many
+            DatabasePartSource source = new DatabasePartSource(range, filter, FileTextGeneratorWrapperBase.LOCATIONS_PER_PART);
+            List<Measurement> measurements;
+            while (!cancel && (measurements = source.nextPart()) != null) {
+                boolean anyWriterRunning = false;
+                for (int i = 0; i < subGeneratorsCount; i++) {
+                    anyWriterRunning |= dispatch(queues.get(i), results.get(i), measurements);
+                }
+                if (!anyWriterRunning) {
+                    Timber.d("generate(): All writers finished before end of data");
+                    break;
                 }
             }
+            for (int i = 0; i < subGeneratorsCount; i++) {
+                dispatch(queues.get(i), results.get(i), END_OF_PARTS);
+            }
+            // collect results in order of formats
+            FileGeneratorResult firstFailedResult = null;
+            FileGeneratorResult lastResult = null;
+            for (int i = 0; i < subGeneratorsCount; i++) {
+                FileGeneratorResult result = getResult(results.get(i));
+                // send stats
+                AnalyticsStatistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
+                MyApplication.getAnalytics().sendExportFinished(intentSource, durations[i], subGenerators.get(i).getFileType(), stats);
+                if (result.getResult() != GeneratorResult.Succeeded && firstFailedResult == null) {
+                    firstFailedResult = result;
+                }
+                lastResult = result;
+            }
+            if (firstFailedResult != null) {
+                return firstFailedResult;
+            }
             // fix for dialog not closed when operation is running in background and data deleted
             notifyProgressListeners(maxProgressPercent, maxProgressPercent);
+            return lastResult;
         } catch (Exception ex) {
             Timber.e(ex, "generate(): Failed to save data on external memory");
             MyApplication.handleSilentException(ex);
+            cancel();
             return new FileGeneratorResult(GeneratorResult.Failed, Reason.Unknown, ex.getMessage());
+        } finally {
+            executor.shutdownNow();
+            if (formattingExecutor != null) {
+                formattingExecutor.shutdownNow();
+            }
+            for (int i = 0; i < subProgressListeners.size(); i++) {
+                subGenerators.get(i).removeProgressListener(subProgressListeners.get(i));
+            }
         }
-        return lastResult;
     }
 
     @Override
     public void cancel() {
         super.cancel();
-        for (IProgressiveTextGeneratorWrapper generator : subGenerators) {
+        for (IStreamingTextGeneratorWrapper generator : subGenerators) {
             generator.cancel();
         }
     }
@@ -83,15 +180,71 @@ public class CompositeTextGeneratorWrapper extends TextGeneratorWrapperBase {
         throw new UnsupportedOperationException("Composite wrapper is not persisted.");
     }
 
-    public List<IProgressiveTextGeneratorWrapper> getSubGenerators() {
+    public List<IStreamingTextGeneratorWrapper> getSubGenerators() {
         return subGenerators;
     }
 
-    private IProgressListener subProgressListener = (value, max) -> {
-        // count fully generated plus in-progress
-        double alreadyGeneratedPercent = 100.0 * alreadyGenerated / subGenerators.size();
-        double inProgressPercent = 100.0 * value / max / subGenerators.size();
-        int currentProgressPercent = (int) Math.round(alreadyGeneratedPercent + inProgressPercent);
-        notifyProgressListeners(currentProgressPercent, maxProgressPercent);
-    };
+    private boolean isAnySubGeneratorResuming() {
+        for (IStreamingTextGeneratorWrapper generator : subGenerators) {
+            if (generator.isResuming()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Puts part into the writer queue waiting for free space as long as the writer is running.
+     */
+    private boolean dispatch(BlockingQueue<List<Measurement>> queue, Future<FileGeneratorResult> result, List<Measurement> measurements) throws InterruptedException {
+        while (!result.isDone()) {
+            if (queue.offer(measurements, DISPATCH_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private FileGeneratorResult getResult(Future<FileGeneratorResult> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException ex) {
+            Timber.e(ex.getCause(), "getResult(): Writer failed");
+            MyApplication.handleSilentException(ex.getCause());
+            return new FileGeneratorResult(GeneratorResult.Failed, Reason.Unknown, ex.getCause().getMessage());
+        }
+    }
+
+    private IProgressListener createSubProgressListener(int generatorIndex) {
+        return (value, max) -> {
+            int currentProgressPercent = maxProgressPercent;
+            synchronized (this) {
+                subProgressPercents[generatorIndex] = (max > 0 ? (int) (100L * value / max) : maxProgressPercent);
+                // overall progress is progress of the slowest format
+                for (int subProgressPercent : subProgressPercents) {
+                    currentProgressPercent = Math.min(currentProgressPercent, subProgressPercent);
+                }
+                if (currentProgressPercent == lastProgressPercent) {
+                    return;
+                }
+                lastProgressPercent = currentProgressPercent;
+            }
+            notifyProgressListeners(currentProgressPercent, maxProgressPercent);
+        };
+    }
+
+    private static class QueuePartSource implements IMeasurementPartSource {
+
+        private final BlockingQueue<List<Measurement>> queue;
+
+        private QueuePartSource(BlockingQueue<List<Measurement>> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public List<Measurement> nextPart() throws InterruptedException {
+            List<Measurement> measurements = queue.take();
+            return (measurements == END_OF_PARTS ? null : measurements);
+        }
+    }
 }
@@ -0,0 +1,52 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IMeasurementPartSource;
+import info.zamojski.soft.towercollector.model.ExportFilter;
+import info.zamojski.soft.towercollector.model.ExportRange;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Reads measurements from the range matching the filter in order, every part starts after the last measurement of the previous part.
+ */
+public class DatabasePartSource implements IMeasurementPartSource {
+
+    private final ExportFilter filter;
+    private final int locationsPerPart;
+    private ExportRange remainingRange;
+
+    public DatabasePartSource(ExportRange range, ExportFilter filter, int locationsPerPart) {
+        this.remainingRange = range;
+        this.filter = filter;
+        this.locationsPerPart = locationsPerPart;
+    }
+
+    @Override
+    public List<Measurement> nextPart() {
+        if (remainingRange == null) {
+            return null;
+        }
+        // get from database
+        List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPart(remainingRange, filter, locationsPerPart);
+        if (measurements.isEmpty()) {
+            remainingRange = null;
+            return null;
+        }
+        // order of returned measurements is not guaranteed
+        Measurement last = measurements.get(0);
+        for (Measurement m : measurements) {
+            if (m.getMeasuredAt() > last.getMeasuredAt() || (m.getMeasuredAt() == last.getMeasuredAt() && m.getMeasurementId() > last.getMeasurementId())) {
+                last = m;
+            }
+        }
+        remainingRange = remainingRange.startingAfter(last.getMeasuredAt(), last.getMeasurementId());
+        return measurements;
+    }
+}
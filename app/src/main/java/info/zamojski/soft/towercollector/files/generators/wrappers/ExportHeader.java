@@ -0,0 +1,41 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.model.Boundaries;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Summary of exported measurements required by file headers, loaded once on first use and shared by all generators.
+ */
+public class ExportHeader {
+
+    private Measurement firstMeasurement;
+    private Measurement lastMeasurement;
+    private Boundaries boundaries;
+
+    public synchronized Measurement getFirstMeasurement() {
+        if (firstMeasurement == null) {
+            firstMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getFirstMeasurement();
+        }
+        return firstMeasurement;
+    }
+
+    public synchronized Measurement getLastMeasurement() {
+        if (lastMeasurement == null) {
+            lastMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
+        }
+        return lastMeasurement;
+    }
+
+    public synchronized Boundaries getBoundaries() {
+        if (boundaries == null) {
+            boundaries = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLocationBounds();
+        }
+        return boundaries;
+    }
+}
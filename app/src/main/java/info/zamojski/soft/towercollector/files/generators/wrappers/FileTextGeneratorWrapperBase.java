@@ -0,0 +1,299 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import android.net.Uri;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.enums.GeneratorResult;
+import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
+import info.zamojski.soft.towercollector.files.FileGeneratorResult;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.ICheckpointListener;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IFormatterFactory;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IMeasurementPartSource;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IStreamingTextGeneratorWrapper;
+import info.zamojski.soft.towercollector.io.filesystem.CompressionFormat;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.model.ExportCheckpoint;
+import info.zamojski.soft.towercollector.model.ExportFilter;
+import info.zamojski.soft.towercollector.model.ExportRange;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.utils.FileUtils;
+import timber.log.Timber;
+
+/**
+ * Base of generators writing a single file, measurements may be read directly from the database
+ * or provided part by part from a shared source.
+ * Parts are formatted in {@link #formatEntries(List)}, optionally in parallel on a formatting executor,
+ * and written in order in {@link #writeEntries(BufferedWriter, List, Object)} which keeps state between parts.
+ */
+public abstract class FileTextGeneratorWrapperBase<T> extends TextGeneratorWrapperBase implements IStreamingTextGeneratorWrapper {
+
+    public static final int LOCATIONS_PER_PART = 80;
+
+    private final Uri storageUri;
+    private final String fileName;
+    private final String compressedExtension;
+    private final CompressionFormat compressionFormat;
+    private final int compressionLevel;
+    private Uri filePath;
+    private OutputStream fileOutputStream;
+    private ExecutorService formattingExecutor;
+    private int maxPartsInFlight;
+    private int processedCount;
+    private int skippedCount;
+    private ExportRange exportRange = ExportRange.ALL;
+    private boolean appendToExistingFile;
+    private ICheckpointListener checkpointListener;
+    private int measurementsPerCheckpoint;
+    private ExportCheckpoint resumeCheckpoint;
+    private long lastMeasuredAt;
+    private int lastMeasurementId;
+    private int measurementsSinceCheckpoint;
+
+    protected FileTextGeneratorWrapperBase(Uri storageUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, int compressionLevel) {
+        this.storageUri = storageUri;
+        this.fileName = fileName;
+        this.compressedExtension = compressedExtension;
+        this.compressionFormat = compressionFormat;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    public FileGeneratorResult generate() {
+        // get number of locations to process
+        int locationsCount = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAllLocationsCount(false);
+        // check if there is anything to process
+        if (locationsCount == 0) {
+            Timber.d("generate(): Cancelling save due to no data");
+            return new FileGeneratorResult(GeneratorResult.NoData, Reason.Unknown);
+        }
+        return generate(new DatabasePartSource(ExportRange.ALL, ExportFilter.NONE, LOCATIONS_PER_PART), new ExportHeader(), locationsCount);
+    }
+
+    /**
+     * Limits written measurements to the range, measurements outside of it are skipped.
+     */
+    public void setExportRange(ExportRange exportRange) {
+        this.exportRange = exportRange;
+    }
+
+    /**
+     * Appends entries to the existing file without writing the header again.
+     */
+    public void setAppendToExistingFile(boolean appendToExistingFile) {
+        this.appendToExistingFile = appendToExistingFile;
+    }
+
+    /**
+     * Reports checkpoints after every given number of written measurements, file is written in segments then.
+     */
+    public void setCheckpointListener(ICheckpointListener checkpointListener, int measurementsPerCheckpoint) {
+        this.checkpointListener = checkpointListener;
+        this.measurementsPerCheckpoint = measurementsPerCheckpoint;
+    }
+
+    /**
+     * Continues writing the file from the checkpoint, the source has to start after measurement of the checkpoint.
+     */
+    public void setResumeCheckpoint(ExportCheckpoint resumeCheckpoint) {
+        this.resumeCheckpoint = resumeCheckpoint;
+    }
+
+    /**
+     * Whether writing of the file can be interrupted at a checkpoint and resumed later.
+     */
+    public boolean isResumable() {
+        return compressionFormat != CompressionFormat.Zip;
+    }
+
+    @Override
+    public boolean isResuming() {
+        return resumeCheckpoint != null;
+    }
+
+    @Override
+    public void setFormattingExecutor(ExecutorService executor, int maxPartsInFlight) {
+        this.formattingExecutor = executor;
+        this.maxPartsInFlight = maxPartsInFlight;
+    }
+
+    @Override
+    public FileGeneratorResult generate(IMeasurementPartSource source, ExportHeader header, int locationsCount) {
+        notifyProgressListeners(0, locationsCount);
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                OrderedPartPipeline<T> pipeline = null;
+                fileOutputStream = outputStream;
+                try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream))) {
+                    // write header unless continuing existing file
+                    if (resumeCheckpoint != null) {
+                        restoreState(resumeCheckpoint);
+                    } else if (!appendToExistingFile) {
+                        writeHeader(bufferedWriter, header);
+                    }
+                    // format parts in parallel, write in order
+                    processedCount = 0;
+                    skippedCount = 0;
+                    measurementsSinceCheckpoint = 0;
+                    lastMeasuredAt = (resumeCheckpoint != null ? resumeCheckpoint.getMeasuredAt() : Long.MIN_VALUE);
+                    lastMeasurementId = (resumeCheckpoint != null ? resumeCheckpoint.getMeasurementId() : Integer.MIN_VALUE);
+                    pipeline = new OrderedPartPipeline<>(formattingExecutor, maxPartsInFlight, FileTextGeneratorWrapperBase.this::formatEntries, (part, formattedEntries) -> {
+                        writeEntries(bufferedWriter, part, formattedEntries);
+                        processedCount += part.size();
+                        notifyProgressListeners(processedCount + skippedCount, locationsCount);
+                        if (checkpointListener != null) {
+                            updateLastMeasurement(part);
+                            measurementsSinceCheckpoint += part.size();
+                            if (measurementsSinceCheckpoint >= measurementsPerCheckpoint) {
+                                bufferedWriter.flush();
+                                long fileOffset = checkpoint();
+                                checkpointListener.onCheckpoint(lastMeasuredAt, lastMeasurementId, fileOffset, getFingerprint(fileOffset));
+                                measurementsSinceCheckpoint = 0;
+                            }
+                        }
+                    });
+                    // get locations in loop
+                    List<Measurement> measurements;
+                    while (!cancel && (measurements = source.nextPart()) != null) {
+                        List<Measurement> measurementsInRange = filterByExportRange(measurements);
+                        skippedCount += measurements.size() - measurementsInRange.size();
+                        if (!measurementsInRange.isEmpty()) {
+                            pipeline.submit(measurementsInRange);
+                        }
+                    }
+                    pipeline.finish();
+                    // write footer
+                    writeFooter(bufferedWriter);
+                } finally {
+                    if (pipeline != null) {
+                        pipeline.cancel();
+                    }
+                    fileOutputStream = null;
+                    cleanUp();
+                }
+            }
+        };
+        WriteResult result;
+        if (checkpointListener != null || resumeCheckpoint != null) {
+            long resumeOffset = (resumeCheckpoint != null ? resumeCheckpoint.getFileOffset() : 0);
+            long resumeFingerprint = (resumeCheckpoint != null ? resumeCheckpoint.getFileFingerprint() : 0);
+            result = fileWriter.writeResumableFile(MyApplication.getApplication(), storageUri, fileName, compressedExtension, compressionFormat, compressionLevel, appendToExistingFile, resumeOffset, resumeFingerprint);
+        } else {
+            result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, fileName, compressedExtension, compressionFormat, compressionLevel, appendToExistingFile);
+        }
+        filePath = result.getFilePath();
+        // fix for dialog not closed when operation is running in background and data deleted
+        notifyProgressListeners(locationsCount, locationsCount);
+        switch (result.getResultType()) {
+            case Success:
+                if (cancel) {
+                    Timber.d("generate(): Export cancelled");
+                    return new FileGeneratorResult(GeneratorResult.Cancelled, Reason.Unknown);
+                } else {
+                    Timber.d("generate(): All %s locations exported", locationsCount);
+                    return new FileGeneratorResult(GeneratorResult.Succeeded, Reason.Unknown);
+                }
+            case StorageNotFound:
+                return new FileGeneratorResult(GeneratorResult.Failed, Reason.LocationNotExists, getStringById(R.string.storage_storage_not_found));
+            case FileNotWritable:
+                return new FileGeneratorResult(GeneratorResult.Failed, Reason.DeviceNotWritable, getStringById(R.string.storage_file_not_writable));
+            case CheckpointMismatch:
+                Timber.d("generate(): File changed since checkpoint, export has to be restarted");
+                return new FileGeneratorResult(GeneratorResult.RestartRequired, Reason.Unknown);
+            case Failed:
+            default:
+                return new FileGeneratorResult(GeneratorResult.Failed, Reason.Unknown, getStringById(R.string.storage_write_failed, result.getErrorMessage()));
+        }
+    }
+
+    private List<Measurement> filterByExportRange(List<Measurement> measurements) {
+        if (exportRange == ExportRange.ALL) {
+            return measurements;
+        }
+        List<Measurement> measurementsInRange = new ArrayList<>(measurements.size());
+        for (Measurement m : measurements) {
+            if (exportRange.contains(m)) {
+                measurementsInRange.add(m);
+            }
+        }
+        return measurementsInRange;
+    }
+
+    private void updateLastMeasurement(List<Measurement> measurements) {
+        for (Measurement m : measurements) {
+            if (m.getMeasuredAt() > lastMeasuredAt || (m.getMeasuredAt() == lastMeasuredAt && m.getMeasurementId() > lastMeasurementId)) {
+                lastMeasuredAt = m.getMeasuredAt();
+                lastMeasurementId = m.getMeasurementId();
+            }
+        }
+    }
+
+    protected abstract void writeHeader(BufferedWriter writer, ExportHeader header) throws Exception;
+
+    /**
+     * Returns stream under the writer for binary formats, text written to the writer is flushed first.
+     */
+    protected OutputStream getOutputStream(BufferedWriter writer) throws IOException {
+        writer.flush();
+        return fileOutputStream;
+    }
+
+    /**
+     * Restores state of writing entries instead of writing header when the file is resumed from the checkpoint.
+     */
+    protected void restoreState(ExportCheckpoint checkpoint) {
+    }
+
+    /**
+     * Formats entries of the part, may be called on formatting threads concurrently for different parts,
+     * so it must not modify state of the generator and must use formatters created per thread.
+     */
+    protected abstract T formatEntries(List<Measurement> measurements) throws Exception;
+
+    /**
+     * Writes formatted entries of the part, called in order of parts on the writing thread.
+     */
+    protected abstract void writeEntries(BufferedWriter writer, List<Measurement> measurements, T formattedEntries) throws Exception;
+
+    protected abstract void writeFooter(BufferedWriter writer) throws Exception;
+
+    protected static <F> ThreadLocal<F> createFormatterPerThread(IFormatterFactory<F> formatterFactory) {
+        return new ThreadLocal<F>() {
+            @Override
+            protected F initialValue() {
+                return formatterFactory.create();
+            }
+        };
+    }
+
+    /**
+     * Releases temporary resources, called also when writing fails.
+     */
+    protected void cleanUp() {
+    }
+
+    @Override
+    public Uri getFullPath() {
+        return filePath;
+    }
+
+    @Override
+    public String getFileType() {
+        return FileUtils.getFileExtension(fileName) + (compressedExtension != null ? "+" + compressedExtension : "");
+    }
+}
@@ -7,112 +7,53 @@ package info.zamojski.soft.towercollector.files.generators.wrappers;
 import android.net.Uri;
 
 import java.io.BufferedWriter;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.IOException;
 import java.util.List;
 
-import info.zamojski.soft.towercollector.MyApplication;
-import info.zamojski.soft.towercollector.R;
-import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
-import info.zamojski.soft.towercollector.enums.GeneratorResult;
-import info.zamojski.soft.towercollector.files.DeviceOperationException;
-import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
-import info.zamojski.soft.towercollector.files.FileGeneratorResult;
 import info.zamojski.soft.towercollector.files.formatters.json.IJsonFormatter;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IFormatterFactory;
 import info.zamojski.soft.towercollector.io.filesystem.CompressionFormat;
-import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
-import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.model.ExportCheckpoint;
 import info.zamojski.soft.towercollector.model.Measurement;
-import info.zamojski.soft.towercollector.utils.FileUtils;
-import timber.log.Timber;
 
-public class JsonTextGeneratorWrapper extends TextGeneratorWrapperBase {
+public class JsonTextGeneratorWrapper extends FileTextGeneratorWrapperBase<String> {
 
-    private final IJsonFormatter formatter;
-    private final Uri storageUri;
-    private final String fileName;
-    private final String compressedExtension;
-    private final CompressionFormat compressionFormat;
-    private Uri filePath;
+    private final ThreadLocal<IJsonFormatter> formatters;
+    private int partsCount;
 
-    public JsonTextGeneratorWrapper(Uri storageUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, IJsonFormatter formatter) {
-        this.storageUri = storageUri;
-        this.fileName = fileName;
-        this.compressedExtension = compressedExtension;
-        this.compressionFormat = compressionFormat;
-        this.formatter = formatter;
+    public JsonTextGeneratorWrapper(Uri storageUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, int compressionLevel, IFormatterFactory<IJsonFormatter> formatterFactory) {
+        super(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel);
+        this.formatters = createFormatterPerThread(formatterFactory);
     }
 
     @Override
-    public FileGeneratorResult generate() {
-        // get number of locations to process
-        int locationsCount = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAllLocationsCount(false);
-        // check if there is anything to process
-        if (locationsCount == 0) {
-            Timber.d("generate(): Cancelling save due to no data");
-            return new FileGeneratorResult(GeneratorResult.NoData, DeviceOperationException.Reason.Unknown);
-        }
-        // calculate number of parts
-        final int LOCATIONS_PER_PART = 80;
-        int partsCount = 1;
-        if (locationsCount > LOCATIONS_PER_PART) {
-            partsCount = (int) Math.ceil(1.0 * locationsCount / LOCATIONS_PER_PART);
-        }
-        notifyProgressListeners(0, locationsCount);
-        int finalPartsCount = partsCount;
-        FileWriter fileWriter = new FileWriter() {
-            @Override
-            protected void writeFileInternal(OutputStream outputStream) throws Exception {
-                try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream))) {
-                    bufferedWriter.write(formatter.formatHeader());
-                    // get locations in loop
-                    for (int i = 0; i < finalPartsCount; i++) {
-                        if (i > 0) {
-                            bufferedWriter.write(formatter.formatNewSegment());
-                        }
-                        // get from database
-                        List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPart(i * LOCATIONS_PER_PART, LOCATIONS_PER_PART);
-                        // write to file
-                        bufferedWriter.write(formatter.formatList(measurements));
-                        notifyProgressListeners(i * LOCATIONS_PER_PART + measurements.size(), locationsCount);
-                        if (cancel) {
-                            break;
-                        }
-                    }
-                    bufferedWriter.write(formatter.formatFooter());
-                }
-            }
-        };
-        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, fileName, compressedExtension, compressionFormat);
-        filePath = result.getFilePath();
-        // fix for dialog not closed when operation is running in background and data deleted
-        notifyProgressListeners(locationsCount, locationsCount);
-        switch (result.getResultType()) {
-            case Success:
-                if (cancel) {
-                    Timber.d("generate(): Export cancelled");
-                    return new FileGeneratorResult(GeneratorResult.Cancelled, Reason.Unknown);
-                } else {
-                    Timber.d("generate(): All %s locations exported", locationsCount);
-                    return new FileGeneratorResult(GeneratorResult.Succeeded, Reason.Unknown);
-                }
-            case StorageNotFound:
-                return new FileGeneratorResult(GeneratorResult.Failed, Reason.LocationNotExists, getStringById(R.string.storage_storage_not_found));
-            case FileNotWritable:
-                return new FileGeneratorResult(GeneratorResult.Failed, Reason.DeviceNotWritable, getStringById(R.string.storage_file_not_writable));
-            case Failed:
-            default:
-                return new FileGeneratorResult(GeneratorResult.Failed, Reason.Unknown, getStringById(R.string.storage_write_failed, result.getErrorMessage()));
-        }
+    protected void writeHeader(BufferedWriter writer, ExportHeader header) throws IOException {
+        writer.write(formatters.get().formatHeader());
+        partsCount = 0;
+    }
+
+    @Override
+    protected void restoreState(ExportCheckpoint checkpoint) {
+        // at least one part has been written before checkpoint
+        partsCount = 1;
     }
 
     @Override
-    public Uri getFullPath() {
-        return filePath;
+    protected String formatEntries(List<Measurement> measurements) {
+        return formatters.get().formatList(measurements);
+    }
+
+    @Override
+    protected void writeEntries(BufferedWriter writer, List<Measurement> measurements, String formattedEntries) throws IOException {
+        if (partsCount > 0) {
+            writer.write(formatters.get().formatNewSegment());
+        }
+        writer.write(formattedEntries);
+        partsCount++;
     }
 
     @Override
-    public String getFileType() {
-        return FileUtils.getFileExtension(fileName) + (compressedExtension != null ? "+" + compressedExtension : "");
+    protected void writeFooter(BufferedWriter writer) throws IOException {
+        writer.write(formatters.get().formatFooter());
     }
 }
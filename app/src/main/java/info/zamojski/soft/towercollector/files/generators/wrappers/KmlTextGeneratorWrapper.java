@@ -6,130 +6,159 @@ package info.zamojski.soft.towercollector.files.generators.wrappers;
 
 import android.net.Uri;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.OutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import info.zamojski.soft.towercollector.MyApplication;
-import info.zamojski.soft.towercollector.R;
-import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
-import info.zamojski.soft.towercollector.enums.GeneratorResult;
-import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
-import info.zamojski.soft.towercollector.files.FileGeneratorResult;
 import info.zamojski.soft.towercollector.files.formatters.kml.IKmlFormatter;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IFormatterFactory;
 import info.zamojski.soft.towercollector.io.filesystem.CompressionFormat;
-import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
-import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
 import info.zamojski.soft.towercollector.model.Measurement;
-import info.zamojski.soft.towercollector.utils.FileUtils;
 import timber.log.Timber;
 
-public class KmlTextGeneratorWrapper extends TextGeneratorWrapperBase {
-
-    private final IKmlFormatter formatter;
-    private final Uri storageUri;
-    private final String fileName;
-    private final String compressedExtension;
-    private final CompressionFormat compressionFormat;
-    private Uri filePath;
-
-    public KmlTextGeneratorWrapper(Uri storageUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, IKmlFormatter formatter) {
-        this.storageUri = storageUri;
-        this.fileName = fileName;
-        this.compressedExtension = compressedExtension;
-        this.compressionFormat = compressionFormat;
-        this.formatter = formatter;
+/**
+ * Writes placemarks directly to the file while path coordinates are spooled to a temporary file
+ * and spliced into the footer, so memory usage doesn't depend on the number of exported locations.
+ */
+public class KmlTextGeneratorWrapper extends FileTextGeneratorWrapperBase<KmlTextGeneratorWrapper.FormattedEntries> {
+
+    private final ThreadLocal<IKmlFormatter> formatters;
+    // remember previous measurement
+    private Measurement prevMeasurement;
+    // track number of segments
+    private int segmentId;
+
+    private File spoolFile;
+    private BufferedWriter spoolWriter;
+    private long spooledLength;
+    // only closed segments are part of the path
+    private long closedSegmentsLength;
+    private int segmentEntriesCount;
+
+    public KmlTextGeneratorWrapper(Uri storageUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, int compressionLevel, IFormatterFactory<IKmlFormatter> formatterFactory) {
+        super(storageUri, fileName, compressedExtension, compressionFormat, compressionLevel);
+        this.formatters = createFormatterPerThread(formatterFactory);
+    }
+
+    @Override
+    protected void writeHeader(BufferedWriter writer, ExportHeader header) throws IOException {
+        IKmlFormatter formatter = formatters.get();
+        Measurement firstMeasurement = header.getFirstMeasurement();
+        writer.write(formatter.formatHeader(firstMeasurement.getMeasuredAt(), header.getLastMeasurement().getMeasuredAt()));
+        prevMeasurement = firstMeasurement;
+        segmentId = 1;
+        spoolFile = File.createTempFile("kml-path", ".tmp", MyApplication.getApplication().getCacheDir());
+        spoolWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spoolFile), StandardCharsets.UTF_8));
+        spooledLength = 0;
+        closedSegmentsLength = 0;
+        spool(formatter.formatLineSegmentHeader());
+        segmentEntriesCount = 0;
+    }
+
+    /**
+     * Path is spooled to a temporary file until the footer is written, so the file cannot be resumed.
+     */
+    @Override
+    public boolean isResumable() {
+        return false;
     }
 
     @Override
-    public FileGeneratorResult generate() {
-        // get number of locations to process
-        int locationsCount = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAllLocationsCount(false);
-        // check if there is anything to process
-        if (locationsCount == 0) {
-            Timber.d("generate(): Cancelling save due to no data");
-            return new FileGeneratorResult(GeneratorResult.NoData, Reason.Unknown);
+    protected FormattedEntries formatEntries(List<Measurement> measurements) {
+        IKmlFormatter formatter = formatters.get();
+        FormattedEntries entries = new FormattedEntries(measurements.size());
+        for (int i = 0; i < measurements.size(); i++) {
+            Measurement m = measurements.get(i);
+            entries.placemarks[i] = formatter.formatEntry(m);
+            entries.lineEntries[i] = formatter.formatLineEntry(m);
         }
-        // calculate number of parts
-        final int LOCATIONS_PER_PART = 80;
-        int partsCount = 1;
-        if (locationsCount > LOCATIONS_PER_PART) {
-            partsCount = (int) Math.ceil(1.0 * locationsCount / LOCATIONS_PER_PART);
+        return entries;
+    }
+
+    @Override
+    protected void writeEntries(BufferedWriter writer, List<Measurement> measurements, FormattedEntries formattedEntries) throws IOException {
+        IKmlFormatter formatter = formatters.get();
+        for (int i = 0; i < measurements.size(); i++) {
+            Measurement m = measurements.get(i);
+            // if time difference is more than 30 minutes then create new segment
+            if ((m.getMeasuredAt() - prevMeasurement.getMeasuredAt()) > 1800000) {
+                writer.write(formatter.formatNewSegment(segmentId++));
+                spool(formatter.formatLineSegmentFooter());
+                closedSegmentsLength = spooledLength;
+                spool(formatter.formatLineSegmentHeader());
+                segmentEntriesCount = 0;
+            }
+            writer.write(formattedEntries.placemarks[i]);
+            if (segmentEntriesCount > 0) {
+                spool(formatter.formatLineEntrySeparator());
+            }
+            spool(formattedEntries.lineEntries[i]);
+            segmentEntriesCount++;
+            prevMeasurement = m;
         }
-        notifyProgressListeners(0, locationsCount);
-        int finalPartsCount = partsCount;
-        FileWriter fileWriter = new FileWriter() {
-            @Override
-            protected void writeFileInternal(OutputStream outputStream) throws Exception {
-                List<String> lineEntries = new ArrayList<>();
-                List<String> lineSegments = new ArrayList<>();
-                try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream))) {
-                    // write header
-                    Measurement firstMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getFirstMeasurement();
-                    Measurement lastMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
-                    bufferedWriter.write(formatter.formatHeader(firstMeasurement.getMeasuredAt(), lastMeasurement.getMeasuredAt()));
-                    // remember previous measurement
-                    Measurement prevMeasurement = firstMeasurement;
-                    // track number of segments
-                    int segmentId = 1;
-                    // get locations in loop
-                    for (int i = 0; i < finalPartsCount; i++) {
-                        // get from database
-                        List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPart(i * LOCATIONS_PER_PART, LOCATIONS_PER_PART);
-                        // write to file
-                        for (Measurement m : measurements) {
-                            // if time difference is more than 30 minutes then create new segment
-                            if ((m.getMeasuredAt() - prevMeasurement.getMeasuredAt()) > 1800000) {
-                                bufferedWriter.write(formatter.formatNewSegment(segmentId++));
-                                lineSegments.add(formatter.formatLineSegment(lineEntries));
-                                lineEntries.clear();
-                            }
-                            bufferedWriter.write(formatter.formatEntry(m));
-                            lineEntries.add(formatter.formatLineEntry(m));
-                            prevMeasurement = m;
-                        }
-                        notifyProgressListeners(i * LOCATIONS_PER_PART + measurements.size(), locationsCount);
-                        if (cancel) {
-                            break;
-                        }
-                    }
-                    // write footer
-                    bufferedWriter.write(formatter.formatFooter(lineSegments));
+    }
+
+    @Override
+    protected void writeFooter(BufferedWriter writer) throws IOException {
+        IKmlFormatter formatter = formatters.get();
+        spoolWriter.close();
+        spoolWriter = null;
+        writer.write(formatter.formatPathHeader());
+        // splice closed segments
+        try (BufferedReader spoolReader = new BufferedReader(new InputStreamReader(new FileInputStream(spoolFile), StandardCharsets.UTF_8))) {
+            char[] buffer = new char[8192];
+            long remaining = closedSegmentsLength;
+            while (remaining > 0) {
+                int read = spoolReader.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Path spool file is shorter than expected");
                 }
+                writer.write(buffer, 0, read);
+                remaining -= read;
             }
-        };
-        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, fileName, compressedExtension, compressionFormat);
-        filePath = result.getFilePath();
-        // fix for dialog not closed when operation is running in background and data deleted
-        notifyProgressListeners(locationsCount, locationsCount);
-        switch (result.getResultType()) {
-            case Success:
-                if (cancel) {
-                    Timber.d("generate(): Export cancelled");
-                    return new FileGeneratorResult(GeneratorResult.Cancelled, Reason.Unknown);
-                } else {
-                    Timber.d("generate(): All %s locations exported", locationsCount);
-                    return new FileGeneratorResult(GeneratorResult.Succeeded, Reason.Unknown);
-                }
-            case StorageNotFound:
-                return new FileGeneratorResult(GeneratorResult.Failed, Reason.LocationNotExists, getStringById(R.string.storage_storage_not_found));
-            case FileNotWritable:
-                return new FileGeneratorResult(GeneratorResult.Failed, Reason.DeviceNotWritable, getStringById(R.string.storage_file_not_writable));
-            case Failed:
-            default:
-                return new FileGeneratorResult(GeneratorResult.Failed, Reason.Unknown, getStringById(R.string.storage_write_failed, result.getErrorMessage()));
         }
+        writer.write(formatter.formatFooter());
     }
 
     @Override
-    public Uri getFullPath() {
-        return filePath;
+    protected void cleanUp() {
+        if (spoolWriter != null) {
+            try {
+                spoolWriter.close();
+            } catch (IOException ex) {
+                Timber.w(ex, "cleanUp(): Failed to close path spool file");
+            }
+            spoolWriter = null;
+        }
+        if (spoolFile != null) {
+            if (!spoolFile.delete()) {
+                Timber.w("cleanUp(): Failed to delete path spool file");
+            }
+            spoolFile = null;
+        }
     }
 
-    @Override
-    public String getFileType() {
-        return FileUtils.getFileExtension(fileName) + (compressedExtension != null ? "+" + compressedExtension : "");
+    private void spool(String value) throws IOException {
+        spoolWriter.write(value);
+        spooledLength += value.length();
+    }
+
+    static class FormattedEntries {
+
+        private final String[] placemarks;
+        private final String[] lineEntries;
+
+        private FormattedEntries(int count) {
+            this.placemarks = new String[count];
+            this.lineEntries = new String[count];
+        }
     }
 }
@@ -0,0 +1,102 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Formats parts of measurements on a shared executor and passes formatted parts to the writer in order of submission.
+ * Number of parts being formatted or waiting for write is limited, so memory usage doesn't depend on the number of parts.
+ * Without executor parts are formatted and written on the calling thread.
+ * Methods must be called from a single thread.
+ */
+public class OrderedPartPipeline<T> {
+
+    public interface IPartFormatter<T> {
+        T format(List<Measurement> part) throws Exception;
+    }
+
+    public interface IPartWriter<T> {
+        void write(List<Measurement> part, T formattedPart) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final int maxPartsInFlight;
+    private final IPartFormatter<T> formatter;
+    private final IPartWriter<T> writer;
+    private final ArrayDeque<InFlightPart<T>> inFlightParts = new ArrayDeque<>();
+
+    public OrderedPartPipeline(ExecutorService executor, int maxPartsInFlight, IPartFormatter<T> formatter, IPartWriter<T> writer) {
+        this.executor = executor;
+        this.maxPartsInFlight = Math.max(1, maxPartsInFlight);
+        this.formatter = formatter;
+        this.writer = writer;
+    }
+
+    /**
+     * Schedules formatting of the part, writes the oldest parts first if too many parts are in flight.
+     */
+    public void submit(List<Measurement> part) throws Exception {
+        if (executor == null) {
+            writer.write(part, formatter.format(part));
+            return;
+        }
+        while (inFlightParts.size() >= maxPartsInFlight) {
+            writeOldest();
+        }
+        Future<T> future = executor.submit(() -> formatter.format(part));
+        inFlightParts.add(new InFlightPart<>(part, future));
+    }
+
+    /**
+     * Writes all remaining parts.
+     */
+    public void finish() throws Exception {
+        while (!inFlightParts.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    /**
+     * Drops parts not written yet, safe to call after finish.
+     */
+    public void cancel() {
+        for (InFlightPart<T> inFlightPart : inFlightParts) {
+            inFlightPart.future.cancel(true);
+        }
+        inFlightParts.clear();
+    }
+
+    private void writeOldest() throws Exception {
+        InFlightPart<T> oldest = inFlightParts.poll();
+        T formattedPart;
+        try {
+            formattedPart = oldest.future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw ex;
+        }
+        writer.write(oldest.part, formattedPart);
+    }
+
+    private static class InFlightPart<T> {
+
+        private final List<Measurement> part;
+        private final Future<T> future;
+
+        private InFlightPart(List<Measurement> part, Future<T> future) {
+            this.part = part;
+            this.future = future;
+        }
+    }
+}
@@ -20,7 +20,7 @@ public abstract class TextGeneratorWrapperBase implements IProgressiveTextGenera
 
     private final List<IProgressListener> progressListeners = new ArrayList<IProgressListener>();
 
-    protected boolean cancel = false;
+    protected volatile boolean cancel = false;
 
     public void addProgressListener(IProgressListener listener) {
         progressListeners.add(listener);
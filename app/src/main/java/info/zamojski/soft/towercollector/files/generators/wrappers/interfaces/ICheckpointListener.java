@@ -0,0 +1,15 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers.interfaces;
+
+public interface ICheckpointListener {
+
+    /**
+     * Called when all measurements until given one are written to the file and writing can be resumed from the offset.
+     * Fingerprint of the file content before the offset tells whether the file is still the same when resuming.
+     */
+    void onCheckpoint(long measuredAt, int measurementId, long fileOffset, long fileFingerprint);
+
+}
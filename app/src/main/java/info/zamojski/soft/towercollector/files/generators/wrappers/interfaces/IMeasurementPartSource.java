@@ -0,0 +1,18 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers.interfaces;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+public interface IMeasurementPartSource {
+
+    /**
+     * Returns next part of measurements in export order or null when there is nothing more to read.
+     */
+    List<Measurement> nextPart() throws InterruptedException;
+
+}
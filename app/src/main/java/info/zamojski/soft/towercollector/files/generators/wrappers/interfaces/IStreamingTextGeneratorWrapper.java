@@ -0,0 +1,26 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers.interfaces;
+
+import java.util.concurrent.ExecutorService;
+
+import info.zamojski.soft.towercollector.files.FileGeneratorResult;
+import info.zamojski.soft.towercollector.files.generators.wrappers.ExportHeader;
+
+public interface IStreamingTextGeneratorWrapper extends IProgressiveTextGeneratorWrapper {
+
+    FileGeneratorResult generate(IMeasurementPartSource source, ExportHeader header, int locationsCount);
+
+    /**
+     * Enables formatting of parts on the executor, null executor means formatting on the writing thread.
+     */
+    void setFormattingExecutor(ExecutorService executor, int maxPartsInFlight);
+
+    /**
+     * Whether the generator continues a file written before which has to be finished even if there are no more measurements.
+     */
+    boolean isResuming();
+
+}
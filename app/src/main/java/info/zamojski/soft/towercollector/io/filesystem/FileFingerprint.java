@@ -0,0 +1,57 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.filesystem;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Checksum of file content right before a position, tells whether a file was replaced or modified since a checkpoint
+ * at the position was saved. Only a window before the position is read, so the check stays cheap for large files.
+ */
+public class FileFingerprint {
+
+    public static final int WINDOW_LENGTH = 64 * 1024;
+
+    private FileFingerprint() {
+    }
+
+    /**
+     * Computes fingerprint of the stream content before the position.
+     *
+     * @throws EOFException when the stream ends before the position
+     */
+    public static long compute(InputStream inputStream, long position) throws IOException {
+        long windowStart = Math.max(0, position - WINDOW_LENGTH);
+        skipFully(inputStream, windowStart);
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        long remaining = position - windowStart;
+        while (remaining > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0)
+                throw new EOFException("Stream ended " + remaining + " bytes before position " + position);
+            crc.update(buffer, 0, read);
+            remaining -= read;
+        }
+        return crc.getValue();
+    }
+
+    private static void skipFully(InputStream inputStream, long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                // skip may return 0 before the end, reading tells if the stream ended
+                if (inputStream.read() < 0)
+                    throw new EOFException("Stream ended " + remaining + " bytes before position " + length);
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
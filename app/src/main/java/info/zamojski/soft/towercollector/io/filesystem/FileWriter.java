@@ -6,11 +6,16 @@ package info.zamojski.soft.towercollector.io.filesystem;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 
 import androidx.documentfile.provider.DocumentFile;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -22,7 +27,34 @@ import timber.log.Timber;
 
 public abstract class FileWriter {
 
-    public WriteResult writeFile(Context context, Uri storageDirectoryUri, String fileName, String compressedExtension, CompressionFormat compressionFormat) {
+    private SegmentedOutputStream segmentedOutputStream;
+    private Context resumableFileContext;
+    private Uri resumableFileUri;
+
+    /**
+     * @param append whether to append to the existing file, supported for uncompressed files and GZIP which allows multiple members
+     */
+    public WriteResult writeFile(Context context, Uri storageDirectoryUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, int compressionLevel, boolean append) {
+        return writeFile(context, storageDirectoryUri, fileName, compressedExtension, compressionFormat, compressionLevel, append, false, 0, 0);
+    }
+
+    /**
+     * Writes file which can be continued after interruption from position returned by {@link #checkpoint()}.
+     * When the file changed since the checkpoint nothing is written and {@link WriteResultType#CheckpointMismatch} is returned,
+     * so the file can be written again from scratch.
+     *
+     * @param resumeOffset      position of the checkpoint to truncate the existing file to and continue writing from, 0 to start from scratch
+     * @param resumeFingerprint fingerprint of the file at the checkpoint returned by {@link #getFingerprint(long)}
+     */
+    public WriteResult writeResumableFile(Context context, Uri storageDirectoryUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, int compressionLevel, boolean append, long resumeOffset, long resumeFingerprint) {
+        return writeFile(context, storageDirectoryUri, fileName, compressedExtension, compressionFormat, compressionLevel, append, true, resumeOffset, resumeFingerprint);
+    }
+
+    private WriteResult writeFile(Context context, Uri storageDirectoryUri, String fileName, String compressedExtension, CompressionFormat compressionFormat, int compressionLevel, boolean append, boolean resumable, long resumeOffset, long resumeFingerprint) {
+        if (append && compressionFormat == CompressionFormat.Zip)
+            throw new IllegalArgumentException("Cannot append to ZIP file.");
+        if (resumable && compressionFormat == CompressionFormat.Zip)
+            throw new IllegalArgumentException("Cannot resume ZIP file.");
         if (storageDirectoryUri == null)
             throw new IllegalArgumentException("Storage directory uri cannot be empty.");
         if (TextUtils.isEmpty(fileName))
@@ -36,9 +68,18 @@ public abstract class FileWriter {
 
         String compressedFileName = fileName + (compressedExtension != null ? "." + compressedExtension : "");
         DocumentFile file = storageDirectory.findFile(compressedFileName);
+        boolean resume = (resumeOffset > 0);
+        if (resume && !isUnchangedSinceCheckpoint(context, file, resumeOffset, resumeFingerprint)) {
+            Timber.i("writeFile(): Cannot resume file %s changed since checkpoint", compressedFileName);
+            return new WriteResult(WriteResultType.CheckpointMismatch, file == null ? null : file.getUri());
+        }
         if (file == null || !file.exists()) {
             file = storageDirectory.createFile(FileUtils.getFileMimeType(compressedFileName), compressedFileName);
             Timber.i("writeFile(): File created %s", file == null ? compressedFileName : file.getUri().toString());
+        } else if (resume) {
+            Timber.i("writeFile(): Resuming file %s from %s bytes", file.getUri().toString(), resumeOffset);
+        } else if (append) {
+            Timber.i("writeFile(): Appending to file %s", file.getUri().toString());
         } else {
             Timber.i("writeFile(): Overwriting file %s", file.getUri().toString());
         }
@@ -48,43 +89,149 @@ public abstract class FileWriter {
             return new WriteResult(WriteResultType.FileNotWritable, file == null ? null : file.getUri());
         }
 
-        try (OutputStream outputStream = context.getContentResolver().openOutputStream(file.getUri(), "wt")) {
-            switch (compressionFormat) {
-                case Zip:
-                    writeZipFileInternal(outputStream, fileName);
-                    break;
-                case GZip:
-                    writeGZipFileInternal(outputStream);
-                    break;
-                default:
-                    writeFileInternal(outputStream);
-                    break;
+        long position = 0;
+        try {
+            if (resume) {
+                truncateFile(context, file.getUri(), resumeOffset);
+                position = resumeOffset;
+            } else if (append) {
+                position = file.length();
+            }
+        } catch (Exception ex) {
+            Timber.w(ex, "writeFile(): Failed to truncate file %s", file.getUri().toString());
+            return new WriteResult(WriteResultType.Failed, file.getUri(), ex.getMessage());
+        }
+
+        try (OutputStream outputStream = context.getContentResolver().openOutputStream(file.getUri(), (append || resume) ? "wa" : "wt")) {
+            if (resumable) {
+                resumableFileContext = context;
+                resumableFileUri = file.getUri();
+                writeSegmentedFileInternal(outputStream, compressionFormat, compressionLevel, position);
+            } else {
+                switch (compressionFormat) {
+                    case Zip:
+                        writeZipFileInternal(outputStream, fileName, compressionLevel);
+                        break;
+                    case GZip:
+                        writeGZipFileInternal(outputStream, compressionLevel);
+                        break;
+                    case ParallelGZip:
+                        writeParallelGZipFileInternal(outputStream, compressionLevel);
+                        break;
+                    default:
+                        writeFileInternal(outputStream);
+                        break;
+                }
             }
             Timber.d("writeFile(): File %s wrote successfully", file.getUri().toString());
             return new WriteResult(WriteResultType.Success, file.getUri());
         } catch (Exception ex) {
             Timber.w(ex, "writeFile(): Failed to write to file %s", file.getUri().toString());
             return new WriteResult(WriteResultType.Failed, file.getUri(), ex.getMessage());
+        } finally {
+            resumableFileContext = null;
+            resumableFileUri = null;
+        }
+    }
+
+    private static boolean isUnchangedSinceCheckpoint(Context context, DocumentFile file, long offset, long fingerprint) {
+        if (file == null || !file.exists() || file.length() < offset)
+            return false;
+        try {
+            return getFingerprint(context, file.getUri(), offset) == fingerprint;
+        } catch (IOException ex) {
+            Timber.w(ex, "isUnchangedSinceCheckpoint(): Failed to read file %s", file.getUri().toString());
+            return false;
         }
     }
 
+    public WriteResult writeFile(Context context, Uri storageDirectoryUri, String fileName, String compressedExtension, CompressionFormat compressionFormat) {
+        return writeFile(context, storageDirectoryUri, fileName, compressedExtension, compressionFormat, Deflater.DEFAULT_COMPRESSION, false);
+    }
+
     public WriteResult writeFile(Context context, Uri storageDirectoryUri, String fileName) {
         return writeFile(context, storageDirectoryUri, fileName, null, CompressionFormat.None);
     }
 
     protected abstract void writeFileInternal(OutputStream outputStream) throws Exception;
 
-    private void writeZipFileInternal(OutputStream outputStream, String fileName) throws Exception {
+    /**
+     * Ends the current compressed segment of resumable file and returns position in the file where writing can be resumed.
+     * Data buffered by writers has to be flushed before.
+     */
+    protected long checkpoint() throws IOException {
+        if (segmentedOutputStream == null)
+            throw new IllegalStateException("File is not resumable.");
+        return segmentedOutputStream.endSegment();
+    }
+
+    /**
+     * Returns fingerprint of the resumable file at position returned by {@link #checkpoint()}.
+     */
+    protected long getFingerprint(long position) throws IOException {
+        if (resumableFileUri == null)
+            throw new IllegalStateException("File is not resumable.");
+        return getFingerprint(resumableFileContext, resumableFileUri, position);
+    }
+
+    public static long getFingerprint(Context context, Uri fileUri, long position) throws IOException {
+        InputStream inputStream = context.getContentResolver().openInputStream(fileUri);
+        if (inputStream == null)
+            throw new IOException("Cannot open file " + fileUri);
+        try (InputStream closeableStream = inputStream) {
+            return FileFingerprint.compute(closeableStream, position);
+        }
+    }
+
+    public static void truncateFile(Context context, Uri fileUri, long length) throws IOException {
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(fileUri, "rw");
+        if (descriptor == null)
+            throw new IOException("Cannot open file " + fileUri);
+        try (ParcelFileDescriptor closeableDescriptor = descriptor;
+             FileOutputStream stream = new FileOutputStream(closeableDescriptor.getFileDescriptor())) {
+            stream.getChannel().truncate(length);
+        }
+    }
+
+    private void writeSegmentedFileInternal(OutputStream outputStream, CompressionFormat compressionFormat, int compressionLevel, long position) throws Exception {
+        try (SegmentedOutputStream stream = new SegmentedOutputStream(outputStream, compressionFormat, compressionLevel, position)) {
+            segmentedOutputStream = stream;
+            writeFileInternal(stream);
+        } finally {
+            segmentedOutputStream = null;
+        }
+    }
+
+    private void writeZipFileInternal(OutputStream outputStream, String fileName, int compressionLevel) throws Exception {
         try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            zipOutputStream.setLevel(compressionLevel);
             ZipEntry zipEntry = new ZipEntry(fileName);
             zipOutputStream.putNextEntry(zipEntry);
             writeFileInternal(zipOutputStream);
         }
     }
 
-    private void writeGZipFileInternal(OutputStream outputStream) throws Exception {
-        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+    private void writeGZipFileInternal(OutputStream outputStream, int compressionLevel) throws Exception {
+        try (GZIPOutputStream gzipOutputStream = new LeveledGZipOutputStream(outputStream, compressionLevel)) {
+            writeFileInternal(gzipOutputStream);
+        }
+    }
+
+    private void writeParallelGZipFileInternal(OutputStream outputStream, int compressionLevel) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        try (ParallelGZipOutputStream gzipOutputStream = new ParallelGZipOutputStream(outputStream, compressionLevel, threads)) {
             writeFileInternal(gzipOutputStream);
         }
     }
+
+    /**
+     * GZIP stream with configurable compression level, level has to be set before any data is written.
+     */
+    public static class LeveledGZipOutputStream extends GZIPOutputStream {
+
+        public LeveledGZipOutputStream(OutputStream outputStream, int compressionLevel) throws IOException {
+            super(outputStream);
+            def.setLevel(compressionLevel);
+        }
+    }
 }
@@ -0,0 +1,186 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.filesystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses independent blocks of input in parallel and writes them in order as members of a multi-member GZIP file,
+ * similar to pigz. Every member is a complete GZIP stream, so the output can be read by any GZIP reader
+ * including {@link java.util.zip.GZIPInputStream}. Number of blocks being compressed is limited,
+ * so memory usage doesn't depend on size of the input.
+ */
+public class ParallelGZipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    // magic, deflate method, no flags, no modification time, no extra flags, unknown OS same as GZIPOutputStream
+    private static final byte[] MEMBER_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int DEFLATE_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final int level;
+    private final int blockSize;
+    private final ExecutorService executor;
+    private final int maxBlocksInFlight;
+    private final ArrayDeque<Future<byte[]>> inFlightBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength;
+    private boolean anyBlockSubmitted;
+    private boolean closed;
+
+    public ParallelGZipOutputStream(OutputStream out, int level, int threads) {
+        this(out, level, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param level compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION} or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public ParallelGZipOutputStream(OutputStream out, int level, int threads, int blockSize) {
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("Block size must be positive");
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        threads = Math.max(1, threads);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.maxBlocksInFlight = 2 * threads;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        ensureOpen();
+        if (offset < 0 || length < 0 || offset + length > buffer.length)
+            throw new IndexOutOfBoundsException();
+        while (length > 0) {
+            int count = Math.min(length, blockSize - blockLength);
+            System.arraycopy(buffer, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            length -= count;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes blocks already compressed, incomplete block is kept until it is full or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        while (!inFlightBlocks.isEmpty() && inFlightBlocks.peek().isDone()) {
+            writeOldest();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            // empty input still needs one member to be a valid GZIP file
+            if (blockLength > 0 || !anyBlockSubmitted) {
+                submitBlock();
+            }
+            while (!inFlightBlocks.isEmpty()) {
+                writeOldest();
+            }
+        } finally {
+            for (Future<byte[]> inFlightBlock : inFlightBlocks) {
+                inFlightBlock.cancel(true);
+            }
+            inFlightBlocks.clear();
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        while (inFlightBlocks.size() >= maxBlocksInFlight) {
+            writeOldest();
+        }
+        byte[] data = block;
+        int length = blockLength;
+        inFlightBlocks.add(executor.submit(() -> compressMember(data, length, level)));
+        anyBlockSubmitted = true;
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void writeOldest() throws IOException {
+        Future<byte[]> oldest = inFlightBlocks.poll();
+        try {
+            out.write(oldest.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compressed block");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("Block compression failed", cause);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+
+    private static byte[] compressMember(byte[] data, int length, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+        member.write(MEMBER_HEADER, 0, MEMBER_HEADER.length);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[Math.min(DEFLATE_BUFFER_SIZE, length + 64)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                member.write(buffer, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeIntLittleEndian(member, crc.getValue());
+        writeIntLittleEndian(member, length);
+        return member.toByteArray();
+    }
+
+    private static void writeIntLittleEndian(ByteArrayOutputStream stream, long value) {
+        stream.write((int) (value & 0xff));
+        stream.write((int) ((value >> 8) & 0xff));
+        stream.write((int) ((value >> 16) & 0xff));
+        stream.write((int) ((value >> 24) & 0xff));
+    }
+}
@@ -0,0 +1,147 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.filesystem;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses written data in segments which can be ended at any time, so position of the file at the end of
+ * a segment is a point where writing can be continued later by appending. Every GZIP segment is a complete
+ * member of a multi-member GZIP file. ZIP is not supported because the archive ends with a central directory.
+ */
+public class SegmentedOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final CountingOutputStream fileStream;
+    private final CompressionFormat compressionFormat;
+    private final int compressionLevel;
+    private OutputStream segmentStream;
+    private boolean anySegmentWritten;
+    private boolean closed;
+
+    /**
+     * @param position number of bytes already in the file, positions returned by {@link #endSegment()} start from it
+     */
+    public SegmentedOutputStream(OutputStream out, CompressionFormat compressionFormat, int compressionLevel, long position) {
+        if (compressionFormat == CompressionFormat.Zip)
+            throw new IllegalArgumentException("ZIP file cannot be written in segments.");
+        this.out = out;
+        this.fileStream = new CountingOutputStream(out, position);
+        this.compressionFormat = compressionFormat;
+        this.compressionLevel = compressionLevel;
+        this.anySegmentWritten = (position > 0);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        getSegmentStream().write(b);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        getSegmentStream().write(buffer, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (segmentStream != null) {
+            segmentStream.flush();
+        }
+        fileStream.flush();
+    }
+
+    /**
+     * Finishes the current segment and returns position of the file after it.
+     */
+    public long endSegment() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        if (segmentStream != null) {
+            // closes only the compressor, the file stays open
+            segmentStream.close();
+            segmentStream = null;
+            anySegmentWritten = true;
+        }
+        fileStream.flush();
+        return fileStream.position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            // empty compressed file still needs one member to be valid
+            if (!anySegmentWritten) {
+                getSegmentStream();
+            }
+            endSegment();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private OutputStream getSegmentStream() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        if (segmentStream == null) {
+            OutputStream nonClosingStream = new NonClosingOutputStream(fileStream);
+            switch (compressionFormat) {
+                case GZip:
+                    segmentStream = new FileWriter.LeveledGZipOutputStream(nonClosingStream, compressionLevel);
+                    break;
+                case ParallelGZip:
+                    segmentStream = new ParallelGZipOutputStream(nonClosingStream, compressionLevel, Runtime.getRuntime().availableProcessors());
+                    break;
+                default:
+                    segmentStream = nonClosingStream;
+                    break;
+            }
+        }
+        return segmentStream;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long position;
+
+        private CountingOutputStream(OutputStream out, long position) {
+            super(out);
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            position += length;
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -8,5 +8,6 @@ public enum WriteResultType {
     Success,
     Failed,
     StorageNotFound,
-    FileNotWritable
+    FileNotWritable,
+    CheckpointMismatch
 }
@@ -0,0 +1,80 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import info.zamojski.soft.towercollector.BuildConfig;
+import info.zamojski.soft.towercollector.io.network.compatibility.ExtendedOkHttpClientBuilder;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Provides HTTP client shared by all network clients of the process, so consecutive requests
+ * reuse open connections instead of paying for TCP and TLS handshakes every time.
+ */
+public class HttpClientProvider {
+
+    public static final int CONN_TIMEOUT = 30000;
+    public static final int READ_TIMEOUT = 30000;
+    public static final int WRITE_TIMEOUT = 30000;
+
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final int KEEP_ALIVE_DURATION_MINUTES = 5;
+    private static final String USER_AGENT = "TowerCollector/" + BuildConfig.VERSION_NAME;
+
+    private static volatile OkHttpClient client = null;
+
+    private HttpClientProvider() {
+    }
+
+    public static OkHttpClient getClient() {
+        if (client == null) {
+            synchronized (HttpClientProvider.class) {
+                if (client == null) {
+                    Timber.d("getClient(): Creating shared HTTP client");
+                    client = newClientBuilder().build();
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Creates builder with the same configuration as the shared client but own connection pool and dispatcher.
+     * Prefer {@link #getClient()} and derive from it using {@link OkHttpClient#newBuilder()} when settings differ.
+     */
+    public static OkHttpClient.Builder newClientBuilder() {
+        return new ExtendedOkHttpClientBuilder()
+                .newBuilder()
+                .connectTimeout(CONN_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
+                .writeTimeout(WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MINUTES, TimeUnit.MINUTES))
+                // HTTP/2 is negotiated using ALPN when server supports it, otherwise keep-alive HTTP/1.1 is used
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .addInterceptor(new UserAgentInterceptor());
+    }
+
+    private static class UserAgentInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            if (request.header("User-Agent") == null) {
+                request = request.newBuilder()
+                        .header("User-Agent", USER_AGENT)
+                        .build();
+            }
+            return chain.proceed(request);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes request content, may be called more than once when the request is retried.
+ */
+public interface IContentWriter {
+    void write(Writer writer) throws IOException;
+}
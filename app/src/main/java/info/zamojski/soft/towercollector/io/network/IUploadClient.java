@@ -5,5 +5,13 @@
 package info.zamojski.soft.towercollector.io.network;
 
 public interface IUploadClient {
-    RequestResult uploadMeasurements(String content);
+    /**
+     * Sends content streamed directly into the request.
+     */
+    RequestResult uploadMeasurements(IContentWriter content);
+
+    /**
+     * Returns size of the uploaded data sent by the last upload, as transferred (after compression).
+     */
+    long getSentBytes();
 }
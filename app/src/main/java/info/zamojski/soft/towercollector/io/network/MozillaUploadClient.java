@@ -7,14 +7,10 @@ package info.zamojski.soft.towercollector.io.network;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
-import java.util.concurrent.TimeUnit;
 
-import info.zamojski.soft.towercollector.BuildConfig;
-import info.zamojski.soft.towercollector.io.network.compatibility.ExtendedOkHttpClientBuilder;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.RequestBody;
 import okhttp3.Response;
 import timber.log.Timber;
 
@@ -22,36 +18,56 @@ public class MozillaUploadClient extends ClientBase implements IUploadClient {
 
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
 
+    private final OkHttpClient client;
     private final String uploadUrl;
+    private final boolean compressionEnabled;
+    private long sentBytes;
 
     public MozillaUploadClient(String url, String apiKey) {
         this(String.format(url, apiKey));
     }
 
     public MozillaUploadClient(String url) {
+        this(url, false);
+    }
+
+    /**
+     * @param compressionEnabled whether request body is GZIP compressed, the service must support Content-Encoding header
+     */
+    public MozillaUploadClient(String url, boolean compressionEnabled) {
+        this(HttpClientProvider.getClient(), url, compressionEnabled);
+    }
+
+    public MozillaUploadClient(OkHttpClient client, String url) {
+        this(client, url, false);
+    }
+
+    public MozillaUploadClient(OkHttpClient client, String url, boolean compressionEnabled) {
+        this.client = client;
         this.uploadUrl = url;
+        this.compressionEnabled = compressionEnabled;
     }
 
     @Override
-    public RequestResult uploadMeasurements(String content) {
-        Timber.d("uploadMeasurements(): Sending post request");
+    public RequestResult uploadMeasurements(IContentWriter content) {
+        Timber.d("uploadMeasurements(): Sending post request, compressed = %s", compressionEnabled);
+        sentBytes = 0;
+        // add json as request content
+        StreamingRequestBody requestBody = new StreamingRequestBody(JSON, content, compressionEnabled);
         try {
-            OkHttpClient client = new ExtendedOkHttpClientBuilder()
-                    .newBuilder()
-                    .connectTimeout(CONN_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .build();
-
-            // add json as request content
-            RequestBody requestBody = RequestBody.create(content, JSON);
-            Request request = new Request.Builder()
-                    .url(uploadUrl)
-                    .header("user-agent", "TowerCollector/" + BuildConfig.VERSION_NAME)
+            Request.Builder requestBuilder = new Request.Builder()
+                    .url(uploadUrl);
+            if (compressionEnabled) {
+                requestBuilder.header("Content-Encoding", "gzip");
+            }
+            Request request = requestBuilder
                     .post(requestBody)
                     .build();
 
-            Response response = client.newCall(request).execute();
-            return handleResponse(response.code(), response.body().string());
+            // response must be closed to return connection to the pool
+            try (Response response = client.newCall(request).execute()) {
+                return handleResponse(response.code(), response.body().string());
+            }
         } catch (SocketTimeoutException | ConnectException ex) {
             Timber.d(ex, "uploadMeasurements(): Timeout encountered");
             return RequestResult.ConnectionError;
@@ -59,9 +75,16 @@ public class MozillaUploadClient extends ClientBase implements IUploadClient {
             Timber.e(ex, "uploadMeasurements(): Errors encountered");
             reportExceptionWithSuppress(ex);
             return RequestResult.Failure;
+        } finally {
+            sentBytes = requestBody.getWrittenBytes();
         }
     }
 
+    @Override
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
     private RequestResult handleResponse(int code, String body) {
         if (code >= 200 && code <= 299) {
             return RequestResult.Success;
@@ -74,6 +97,9 @@ public class MozillaUploadClient extends ClientBase implements IUploadClient {
             reportException(ex);
             return RequestResult.ConfigurationError;
         }
+        if (code == 413) {
+            return RequestResult.PayloadTooLarge;
+        }
         if (code == 403) {
             RuntimeException ex = new RequestException(body);
             reportException(ex);
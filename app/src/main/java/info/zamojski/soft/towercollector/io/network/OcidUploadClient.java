@@ -7,9 +7,7 @@ package info.zamojski.soft.towercollector.io.network;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
-import java.util.concurrent.TimeUnit;
 
-import info.zamojski.soft.towercollector.io.network.compatibility.ExtendedOkHttpClientBuilder;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
@@ -21,51 +19,75 @@ import timber.log.Timber;
 public class OcidUploadClient extends ClientBase implements IUploadClient {
 
     private static final MediaType CSV = MediaType.parse("text/csv");
+    private static final MediaType GZIP = MediaType.parse("application/gzip");
 
+    private final OkHttpClient client;
     private final String url;
     private final String appId;
     private final String apiKey;
+    private final boolean compressionEnabled;
     private long fileSize;
+    private long sentBytes;
 
     public OcidUploadClient(String url, String appId, String apiKey) {
+        this(url, appId, apiKey, false);
+    }
+
+    /**
+     * @param compressionEnabled whether data file is sent as GZIP compressed CSV file
+     */
+    public OcidUploadClient(String url, String appId, String apiKey, boolean compressionEnabled) {
+        this(HttpClientProvider.getClient(), url, appId, apiKey, compressionEnabled);
+    }
+
+    public OcidUploadClient(OkHttpClient client, String url, String appId, String apiKey) {
+        this(client, url, appId, apiKey, false);
+    }
+
+    public OcidUploadClient(OkHttpClient client, String url, String appId, String apiKey, boolean compressionEnabled) {
+        this.client = client;
         this.url = url;
         this.appId = appId;
         this.apiKey = apiKey;
+        this.compressionEnabled = compressionEnabled;
     }
 
     @Override
-    public RequestResult uploadMeasurements(String content) {
+    public RequestResult uploadMeasurements(IContentWriter content) {
         return uploadMeasurementsEncrypted(content);
     }
 
-    private RequestResult uploadMeasurementsEncrypted(String content) {
+    private RequestResult uploadMeasurementsEncrypted(IContentWriter content) {
         Timber.d("uploadMeasurementsEncrypted(): Sending encrypted post request");
-        return uploadMeasurementsCommon(new ExtendedOkHttpClientBuilder().newBuilder(), url, content);
+        return uploadMeasurementsCommon(url, content);
     }
 
-    private RequestResult uploadMeasurementsCommon(OkHttpClient.Builder clientBuilder, String url, String content) {
+    private RequestResult uploadMeasurementsCommon(String url, IContentWriter content) {
+        sentBytes = 0;
+        fileSize = 0;
+        String fileName = "TowerCollector_measurements_" + System.currentTimeMillis() + ".csv";
+        if (compressionEnabled) {
+            fileName += ".gz";
+        }
+        StreamingRequestBody dataFile = new StreamingRequestBody(compressionEnabled ? GZIP : CSV, content, compressionEnabled);
         try {
-            OkHttpClient client = clientBuilder
-                    .connectTimeout(CONN_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .build();
-
-            RequestBody dataFile = RequestBody.create(content, CSV);
-            this.fileSize = dataFile.contentLength();
-
             RequestBody requestBody = new MultipartBody.Builder()
                     .setType(MultipartBody.FORM)
                     .addFormDataPart("key", apiKey)
                     .addFormDataPart("appId", appId)
-                    .addFormDataPart("datafile", "TowerCollector_measurements_" + System.currentTimeMillis() + ".csv", dataFile)
+                    .addFormDataPart("datafile", fileName, dataFile)
                     .build();
             Request request = new Request.Builder()
                     .url(url)
                     .post(requestBody)
                     .build();
 
-            Response response = client.newCall(request).execute();
-            return handleResponse(response.code(), response.body().string());
+            // response must be closed to return connection to the pool
+            try (Response response = client.newCall(request).execute()) {
+                // counted while the file was sent
+                fileSize = dataFile.getWrittenBytes();
+                return handleResponse(response.code(), response.body().string());
+            }
         } catch (SocketTimeoutException | ConnectException ex) {
             Timber.d(ex, "uploadMeasurements(): Timeout encountered");
             return RequestResult.ConnectionError;
@@ -73,9 +95,16 @@ public class OcidUploadClient extends ClientBase implements IUploadClient {
             Timber.d(ex, "uploadMeasurements(): Errors encountered");
             reportExceptionWithSuppress(ex);
             return RequestResult.Failure;
+        } finally {
+            sentBytes = dataFile.getWrittenBytes();
         }
     }
 
+    @Override
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
     private RequestResult handleResponse(int code, String body) {
         body = (body == null ? "" : body.trim());
 
@@ -88,6 +117,10 @@ public class OcidUploadClient extends ClientBase implements IUploadClient {
         if (code == 401 || code == 403 || "Err: Invalid token".equalsIgnoreCase(body)) {
             return RequestResult.InvalidApiKey;
         }
+        if (code == 413 || "Exceeded filesize limit".equalsIgnoreCase(body)) {
+            Timber.d("handleResponse(): Request of %s bytes too large", fileSize);
+            return RequestResult.PayloadTooLarge;
+        }
         if (code == 400) {
             RuntimeException ex = new RequestException(body);
             reportException(ex);
@@ -96,8 +129,6 @@ public class OcidUploadClient extends ClientBase implements IUploadClient {
         // don't report captive portals
         if (code != 302) {
             RuntimeException ex = new RequestException(body);
-            if (body.equalsIgnoreCase("Exceeded filesize limit"))
-                body += ". Actual size=" + fileSize + " bytes.";
             reportException(ex);
         }
         return RequestResult.ConnectionError;
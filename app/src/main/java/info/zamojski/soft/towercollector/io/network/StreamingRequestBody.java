@@ -0,0 +1,96 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Request body serialized directly into the connection while it is sent, so the payload is never held in memory.
+ * Length is unknown upfront and the body is sent in chunks, number of bytes written to the connection
+ * (after optional GZIP compression) is counted while writing.
+ */
+public class StreamingRequestBody extends RequestBody {
+
+    private final MediaType contentType;
+    private final IContentWriter contentWriter;
+    private final boolean compressed;
+    private volatile long writtenBytes;
+
+    public StreamingRequestBody(MediaType contentType, IContentWriter contentWriter, boolean compressed) {
+        this.contentType = contentType;
+        this.contentWriter = contentWriter;
+        this.compressed = compressed;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingSink countingSink = new CountingSink(sink);
+        BufferedSink contentSink = Okio.buffer(compressed ? new GzipSink(countingSink) : countingSink);
+        // closing the writer finishes GZIP stream, counting sink doesn't close the connection
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(contentSink.outputStream(), StandardCharsets.UTF_8))) {
+            contentWriter.write(writer);
+        } catch (RuntimeException ex) {
+            // formatting errors fail the request like any other write error
+            throw new IOException("Failed to write request content", ex);
+        } finally {
+            writtenBytes = countingSink.getCount();
+        }
+    }
+
+    /**
+     * Returns number of bytes written to the connection by the last write.
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    private static class CountingSink extends ForwardingSink {
+
+        private long count;
+
+        private CountingSink(Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            count += byteCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the request sink is closed by OkHttp
+            flush();
+        }
+
+        private long getCount() {
+            return count;
+        }
+    }
+}
@@ -12,6 +12,8 @@ public class AnalyticsStatistics implements Serializable {
     private int days;
     private int locations;
     private int cells;
+    private int checkedLocations;
+    private int suppressedLocations;
 
     public AnalyticsStatistics() {
     }
@@ -40,8 +42,25 @@ public class AnalyticsStatistics implements Serializable {
         this.cells = cells;
     }
 
+    public int getCheckedLocations() {
+        return checkedLocations;
+    }
+
+    public void setCheckedLocations(int checkedLocations) {
+        this.checkedLocations = checkedLocations;
+    }
+
+    public int getSuppressedLocations() {
+        return suppressedLocations;
+    }
+
+    public void setSuppressedLocations(int suppressedLocations) {
+        this.suppressedLocations = suppressedLocations;
+    }
+
     @Override
     public String toString() {
-        return "AnalyticsStatistics [days=" + days + ", locations=" + locations + ", cells=" + cells + "]";
+        return "AnalyticsStatistics [days=" + days + ", locations=" + locations + ", cells=" + cells
+                + ", checkedLocations=" + checkedLocations + ", suppressedLocations=" + suppressedLocations + "]";
     }
 }
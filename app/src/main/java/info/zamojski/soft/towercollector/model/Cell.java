@@ -16,6 +16,7 @@ public class Cell extends CellBase implements Serializable {
     private static final long serialVersionUID = -1561237876324180202L;
 
     public static final int UNKNOWN_SIGNAL = Integer.MAX_VALUE; // safe for all network types, equals CellInfo.UNAVAILABLE which requires newer SDK
+    public static final int UNKNOWN_SUBSCRIPTION_ID = -1; // equals SubscriptionManager.INVALID_SUBSCRIPTION_ID which requires newer SDK
 
     /**
      * Cell ID.
@@ -117,7 +118,10 @@ public class Cell extends CellBase implements Serializable {
      * Absolute Radio Frequency Channel Number.
      */
     private int arfcn = UNKNOWN_CID;
-
+    /**
+     * Subscription (SIM) through which the cell was reported.
+     */
+    private int subscriptionId = UNKNOWN_SUBSCRIPTION_ID;
 
     public int getCellId() {
         return cellId;
@@ -319,6 +323,14 @@ public class Cell extends CellBase implements Serializable {
         this.arfcn = arfcn;
     }
 
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public void setSubscriptionId(int subscriptionId) {
+        this.subscriptionId = subscriptionId;
+    }
+
     public void setGsmCellInfo(int mcc, int mnc, int lac, long cid) {
         this.mcc = mcc;
         this.mnc = mnc;
@@ -611,6 +623,7 @@ public class Cell extends CellBase implements Serializable {
                 ", evdoSnr=" + evdoSnr +
                 ", ecNo=" + ecNo +
                 ", arfcn=" + arfcn +
+                ", subscriptionId=" + subscriptionId +
                 '}';
     }
 }
@@ -0,0 +1,92 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.model;
+
+/**
+ * Last measurement written to the file by export job and position in the file where writing can be resumed.
+ * Fingerprint of the file content before the position detects files changed in the meantime.
+ */
+public class ExportCheckpoint {
+
+    private String fileType;
+    private String jobId;
+    private String fileName;
+    private String compressedExtension;
+    private long measuredAt;
+    private int measurementId;
+    private long fileOffset;
+    private long fileFingerprint;
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getCompressedExtension() {
+        return compressedExtension;
+    }
+
+    public void setCompressedExtension(String compressedExtension) {
+        this.compressedExtension = compressedExtension;
+    }
+
+    public long getMeasuredAt() {
+        return measuredAt;
+    }
+
+    public void setMeasuredAt(long measuredAt) {
+        this.measuredAt = measuredAt;
+    }
+
+    public int getMeasurementId() {
+        return measurementId;
+    }
+
+    public void setMeasurementId(int measurementId) {
+        this.measurementId = measurementId;
+    }
+
+    public long getFileOffset() {
+        return fileOffset;
+    }
+
+    public void setFileOffset(long fileOffset) {
+        this.fileOffset = fileOffset;
+    }
+
+    public long getFileFingerprint() {
+        return fileFingerprint;
+    }
+
+    public void setFileFingerprint(long fileFingerprint) {
+        this.fileFingerprint = fileFingerprint;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportCheckpoint [fileType=" + fileType + ", jobId=" + jobId + ", fileName=" + fileName
+                + ", compressedExtension=" + compressedExtension + ", measuredAt=" + measuredAt
+                + ", measurementId=" + measurementId + ", fileOffset=" + fileOffset + ", fileFingerprint=" + fileFingerprint + "]";
+    }
+}
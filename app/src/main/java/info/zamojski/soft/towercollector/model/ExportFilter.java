@@ -0,0 +1,77 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+
+/**
+ * Limits exported measurements by time and location and their cells by network type and serving state.
+ * Measurements without any matching cell are not exported.
+ */
+public class ExportFilter {
+
+    public static final ExportFilter NONE = new ExportFilter(null, null, null, null, false);
+
+    private final Long measuredFrom;
+    private final Long measuredTo;
+    private final Boundaries boundaries;
+    private final Set<NetworkGroup> networkGroups;
+    private final boolean servingOnly;
+
+    /**
+     * @param measuredFrom  inclusive start of the time range or null
+     * @param measuredTo    inclusive end of the time range or null
+     * @param boundaries    bounding box of locations or null
+     * @param networkGroups network types of exported cells, null or empty means all
+     * @param servingOnly   whether to skip neighboring cells
+     */
+    public ExportFilter(Long measuredFrom, Long measuredTo, Boundaries boundaries, Set<NetworkGroup> networkGroups, boolean servingOnly) {
+        this.measuredFrom = measuredFrom;
+        this.measuredTo = measuredTo;
+        this.boundaries = boundaries;
+        this.networkGroups = (networkGroups == null || networkGroups.isEmpty()
+                ? Collections.<NetworkGroup>emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(networkGroups)));
+        this.servingOnly = servingOnly;
+    }
+
+    public Long getMeasuredFrom() {
+        return measuredFrom;
+    }
+
+    public Long getMeasuredTo() {
+        return measuredTo;
+    }
+
+    public Boundaries getBoundaries() {
+        return boundaries;
+    }
+
+    public Set<NetworkGroup> getNetworkGroups() {
+        return networkGroups;
+    }
+
+    public boolean isServingOnly() {
+        return servingOnly;
+    }
+
+    public boolean hasCellConditions() {
+        return !networkGroups.isEmpty() || servingOnly;
+    }
+
+    public boolean isEmpty() {
+        return measuredFrom == null && measuredTo == null && boundaries == null && !hasCellConditions();
+    }
+
+    @Override
+    public String toString() {
+        return "ExportFilter [measuredFrom=" + measuredFrom + ", measuredTo=" + measuredTo + ", boundaries=" + boundaries
+                + ", networkGroups=" + networkGroups + ", servingOnly=" + servingOnly + "]";
+    }
+}
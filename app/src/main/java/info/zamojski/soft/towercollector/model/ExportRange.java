@@ -0,0 +1,77 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.model;
+
+/**
+ * Range of measurements ordered by time and id, exclusive at the start and inclusive at the end.
+ */
+public class ExportRange {
+
+    public static final ExportRange ALL = new ExportRange(Long.MIN_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final long afterMeasuredAt;
+    private final int afterMeasurementId;
+    private final long untilMeasuredAt;
+    private final int untilMeasurementId;
+
+    public ExportRange(long afterMeasuredAt, int afterMeasurementId, long untilMeasuredAt, int untilMeasurementId) {
+        this.afterMeasuredAt = afterMeasuredAt;
+        this.afterMeasurementId = afterMeasurementId;
+        this.untilMeasuredAt = untilMeasuredAt;
+        this.untilMeasurementId = untilMeasurementId;
+    }
+
+    public static ExportRange until(Measurement last) {
+        return new ExportRange(Long.MIN_VALUE, Integer.MIN_VALUE, last.getMeasuredAt(), last.getMeasurementId());
+    }
+
+    public long getAfterMeasuredAt() {
+        return afterMeasuredAt;
+    }
+
+    public int getAfterMeasurementId() {
+        return afterMeasurementId;
+    }
+
+    public long getUntilMeasuredAt() {
+        return untilMeasuredAt;
+    }
+
+    public int getUntilMeasurementId() {
+        return untilMeasurementId;
+    }
+
+    /**
+     * Returns the same range starting after given measurement.
+     */
+    public ExportRange startingAfter(long measuredAt, int measurementId) {
+        return new ExportRange(measuredAt, measurementId, untilMeasuredAt, untilMeasurementId);
+    }
+
+    /**
+     * Returns range starting at the earlier start of both ranges with the same end.
+     */
+    public ExportRange union(ExportRange other) {
+        if (compare(other.afterMeasuredAt, other.afterMeasurementId, afterMeasuredAt, afterMeasurementId) < 0)
+            return startingAfter(other.afterMeasuredAt, other.afterMeasurementId);
+        return this;
+    }
+
+    public boolean contains(Measurement m) {
+        return compare(m.getMeasuredAt(), m.getMeasurementId(), afterMeasuredAt, afterMeasurementId) > 0
+                && compare(m.getMeasuredAt(), m.getMeasurementId(), untilMeasuredAt, untilMeasurementId) <= 0;
+    }
+
+    private static int compare(long measuredAt, int measurementId, long otherMeasuredAt, int otherMeasurementId) {
+        if (measuredAt != otherMeasuredAt)
+            return measuredAt < otherMeasuredAt ? -1 : 1;
+        return Integer.compare(measurementId, otherMeasurementId);
+    }
+
+    @Override
+    public String toString() {
+        return "ExportRange [after=" + afterMeasuredAt + "/" + afterMeasurementId + ", until=" + untilMeasuredAt + "/" + untilMeasurementId + "]";
+    }
+}
@@ -0,0 +1,107 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.model;
+
+/**
+ * Last measurement exported incrementally to given file type and export in progress if it has not been committed.
+ */
+public class ExportWatermark {
+
+    private String fileType;
+    private long measuredAt;
+    private int measurementId;
+    private String fileName;
+    private String compressedExtension;
+    private boolean pending;
+    private String pendingFileName;
+    private String pendingCompressedExtension;
+    private Long pendingFileLength;
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public long getMeasuredAt() {
+        return measuredAt;
+    }
+
+    public void setMeasuredAt(long measuredAt) {
+        this.measuredAt = measuredAt;
+    }
+
+    public int getMeasurementId() {
+        return measurementId;
+    }
+
+    public void setMeasurementId(int measurementId) {
+        this.measurementId = measurementId;
+    }
+
+    /**
+     * Name of the last written file without compressed extension.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getCompressedExtension() {
+        return compressedExtension;
+    }
+
+    public void setCompressedExtension(String compressedExtension) {
+        this.compressedExtension = compressedExtension;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    public void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
+    public String getPendingFileName() {
+        return pendingFileName;
+    }
+
+    public void setPendingFileName(String pendingFileName) {
+        this.pendingFileName = pendingFileName;
+    }
+
+    public String getPendingCompressedExtension() {
+        return pendingCompressedExtension;
+    }
+
+    public void setPendingCompressedExtension(String pendingCompressedExtension) {
+        this.pendingCompressedExtension = pendingCompressedExtension;
+    }
+
+    /**
+     * Length of the file before appending or null if pending export creates a new file.
+     */
+    public Long getPendingFileLength() {
+        return pendingFileLength;
+    }
+
+    public void setPendingFileLength(Long pendingFileLength) {
+        this.pendingFileLength = pendingFileLength;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportWatermark [fileType=" + fileType + ", measuredAt=" + measuredAt + ", measurementId=" + measurementId
+                + ", fileName=" + fileName + ", compressedExtension=" + compressedExtension + ", pending=" + pending
+                + ", pendingFileName=" + pendingFileName + ", pendingCompressedExtension=" + pendingCompressedExtension
+                + ", pendingFileLength=" + pendingFileLength + "]";
+    }
+}
@@ -0,0 +1,134 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.model;
+
+import info.zamojski.soft.towercollector.enums.UploadJournalState;
+
+/**
+ * Upload part of one target identified by range of measurements ordered by time.
+ * The range contains measurements of the part only up to the highest row id of the part,
+ * rows added later to the same time range are excluded.
+ */
+public class UploadJournalEntry {
+
+    public static final String TARGET_OCID = "ocid";
+    public static final String TARGET_MLS = "mls";
+
+    private long entryId;
+    private String target;
+    private UploadJournalState state;
+    private long firstMeasuredAt;
+    private int firstMeasurementId;
+    private long lastMeasuredAt;
+    private int lastMeasurementId;
+    private int maxMeasurementId;
+    private int measurementsCount;
+    private boolean markAllTargets;
+    private long updatedAt;
+
+    public long getEntryId() {
+        return entryId;
+    }
+
+    public void setEntryId(long entryId) {
+        this.entryId = entryId;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public UploadJournalState getState() {
+        return state;
+    }
+
+    public void setState(UploadJournalState state) {
+        this.state = state;
+    }
+
+    public long getFirstMeasuredAt() {
+        return firstMeasuredAt;
+    }
+
+    public void setFirstMeasuredAt(long firstMeasuredAt) {
+        this.firstMeasuredAt = firstMeasuredAt;
+    }
+
+    public int getFirstMeasurementId() {
+        return firstMeasurementId;
+    }
+
+    public void setFirstMeasurementId(int firstMeasurementId) {
+        this.firstMeasurementId = firstMeasurementId;
+    }
+
+    public long getLastMeasuredAt() {
+        return lastMeasuredAt;
+    }
+
+    public void setLastMeasuredAt(long lastMeasuredAt) {
+        this.lastMeasuredAt = lastMeasuredAt;
+    }
+
+    public int getLastMeasurementId() {
+        return lastMeasurementId;
+    }
+
+    public void setLastMeasurementId(int lastMeasurementId) {
+        this.lastMeasurementId = lastMeasurementId;
+    }
+
+    public int getMaxMeasurementId() {
+        return maxMeasurementId;
+    }
+
+    public void setMaxMeasurementId(int maxMeasurementId) {
+        this.maxMeasurementId = maxMeasurementId;
+    }
+
+    public int getMeasurementsCount() {
+        return measurementsCount;
+    }
+
+    public void setMeasurementsCount(int measurementsCount) {
+        this.measurementsCount = measurementsCount;
+    }
+
+    /**
+     * Returns whether acknowledged part is marked as uploaded to all targets, like when reupload of failed uploads
+     * is disabled, otherwise only to the target of the entry.
+     */
+    public boolean isMarkAllTargets() {
+        return markAllTargets;
+    }
+
+    public void setMarkAllTargets(boolean markAllTargets) {
+        this.markAllTargets = markAllTargets;
+    }
+
+    /**
+     * Returns time of the last state change, for acknowledged entries time when the server accepted the part.
+     */
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadJournalEntry [entryId=" + entryId + ", target=" + target + ", state=" + state
+                + ", firstMeasuredAt=" + firstMeasuredAt + ", firstMeasurementId=" + firstMeasurementId
+                + ", lastMeasuredAt=" + lastMeasuredAt + ", lastMeasurementId=" + lastMeasurementId
+                + ", maxMeasurementId=" + maxMeasurementId + ", measurementsCount=" + measurementsCount
+                + ", markAllTargets=" + markAllTargets + ", updatedAt=" + updatedAt + "]";
+    }
+}
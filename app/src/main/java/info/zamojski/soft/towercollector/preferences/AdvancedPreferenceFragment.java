@@ -17,11 +17,15 @@ import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceManager;
 import androidx.preference.SwitchPreferenceCompat;
 
+import java.util.List;
+
 import info.zamojski.soft.towercollector.BuildConfig;
 import info.zamojski.soft.towercollector.CollectorService;
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.dev.Benchmark;
+import info.zamojski.soft.towercollector.dev.BenchmarkFactory;
 import info.zamojski.soft.towercollector.dev.DatabaseOperations;
 import info.zamojski.soft.towercollector.dev.PreferencesOperations;
 import info.zamojski.soft.towercollector.utils.StorageUtils;
@@ -45,6 +49,7 @@ public class AdvancedPreferenceFragment extends DialogEnabledPreferenceFragment
         setupDatabaseExport();
         setupPreferencesImport();
         setupPreferencesExport();
+        setupBenchmarks();
     }
 
     private void setupDatabaseImport() {
@@ -98,6 +103,29 @@ public class AdvancedPreferenceFragment extends DialogEnabledPreferenceFragment
         });
     }
 
+    private void setupBenchmarks() {
+        PreferenceCategory benchmarksCategoryPreference = findPreference(getString(R.string.preferences_advanced_category_benchmarks_key));
+        List<Benchmark> benchmarks = new BenchmarkFactory().createBenchmarks();
+        if (benchmarks.isEmpty()) {
+            getPreferenceScreen().removePreference(benchmarksCategoryPreference);
+            return;
+        }
+        for (Benchmark benchmark : benchmarks) {
+            Preference benchmarkPreference = new Preference(requireContext());
+            benchmarkPreference.setKey(benchmark.getKey());
+            benchmarkPreference.setTitle(benchmark.getTitleResId());
+            benchmarkPreference.setSummary(benchmark.getSummaryResId());
+            benchmarkPreference.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    runBenchmark(benchmark);
+                    return true;
+                }
+            });
+            benchmarksCategoryPreference.addPreference(benchmarkPreference);
+        }
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -196,4 +224,14 @@ public class AdvancedPreferenceFragment extends DialogEnabledPreferenceFragment
             StorageUtils.requestStorageUri(getActivity());
         }
     }
+
+    private void runBenchmark(Benchmark benchmark) {
+        Timber.d("runBenchmark(): Running %s", benchmark.getKey());
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (StorageUtils.canWriteStorageUri(storageUri)) {
+            benchmark.run(MyApplication.getApplication());
+        } else {
+            StorageUtils.requestStorageUri(getActivity());
+        }
+    }
 }
@@ -128,6 +128,7 @@ public class CollectorPreferenceFragment extends DialogEnabledPreferenceFragment
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(getString(R.string.preferences_gps_optimizations_enabled_key))
                 || key.equals(getString(R.string.preferences_collect_neighboring_cells_key))
+                || key.equals(getString(R.string.preferences_suppress_near_duplicates_key))
                 || key.equals(getString(R.string.preferences_notify_measurements_collected_key))
                 || key.equals(getString(R.string.preferences_hide_collector_notification_key))) {
             if (MyApplication.isBackgroundTaskRunning(CollectorService.class)) {
@@ -11,18 +11,22 @@ import android.os.Bundle;
 import androidx.preference.ListPreference;
 import androidx.preference.PreferenceManager;
 
+import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import timber.log.Timber;
 
 public class ExportPreferenceFragment extends PreferenceFragmentBase implements OnSharedPreferenceChangeListener {
 
     private ListPreference compressionFormatPreference;
+    private ListPreference compressionLevelPreference;
 
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
         addPreferencesFromResource(R.xml.preferences_export);
 
         compressionFormatPreference = findPreference(getString(R.string.preferences_export_compression_format_key));
+        compressionLevelPreference = findPreference(getString(R.string.preferences_export_compression_level_key));
     }
 
     @Override
@@ -31,6 +35,7 @@ public class ExportPreferenceFragment extends PreferenceFragmentBase implements
         PreferenceManager.getDefaultSharedPreferences(getActivity()).registerOnSharedPreferenceChangeListener(this);
         // set summaries
         setupListPreferenceSummary(compressionFormatPreference, R.string.preferences_export_compression_format_summary);
+        setupListPreferenceSummary(compressionLevelPreference, R.string.preferences_export_compression_level_summary);
     }
 
     @Override
@@ -46,6 +51,18 @@ public class ExportPreferenceFragment extends PreferenceFragmentBase implements
             CharSequence compressionFormatLabel = compressionFormatPreference.getEntry();
             Timber.d("onSharedPreferenceChanged(): User set compression format = \"%s\"", compressionFormatValue);
             compressionFormatPreference.setSummary(formatValueString(R.string.preferences_export_compression_format_summary, compressionFormatLabel));
+        } else if (key.equals(getString(R.string.preferences_export_compression_level_key))) {
+            String compressionLevelValue = compressionLevelPreference.getValue();
+            CharSequence compressionLevelLabel = compressionLevelPreference.getEntry();
+            Timber.d("onSharedPreferenceChanged(): User set compression level = \"%s\"", compressionLevelValue);
+            compressionLevelPreference.setSummary(formatValueString(R.string.preferences_export_compression_level_summary, compressionLevelLabel));
+        } else if (key.equals(getString(R.string.preferences_export_incremental_key))) {
+            boolean incremental = MyApplication.getPreferencesProvider().isExportIncremental();
+            Timber.d("onSharedPreferenceChanged(): User set incremental export = %s", incremental);
+            if (!incremental) {
+                // start from scratch when enabled again
+                MeasurementsDatabase.getInstance(MyApplication.getApplication()).clearExportWatermarks();
+            }
         }
     }
 }
@@ -6,6 +6,7 @@ package info.zamojski.soft.towercollector.preferences;
 
 import info.zamojski.soft.towercollector.R;
 import info.zamojski.soft.towercollector.controls.TrimmedEditTextPreference;
+import info.zamojski.soft.towercollector.uploader.PeriodicUploadScheduler;
 import info.zamojski.soft.towercollector.utils.NetworkUtils;
 import info.zamojski.soft.towercollector.utils.OpenCellIdUtils;
 import timber.log.Timber;
@@ -18,6 +19,7 @@ import android.text.TextUtils;
 import android.widget.Toast;
 
 import androidx.preference.PreferenceManager;
+import androidx.preference.SeekBarPreference;
 import androidx.preference.SwitchPreferenceCompat;
 
 public class UploadPreferenceFragment extends DialogEnabledPreferenceFragment implements OnSharedPreferenceChangeListener {
@@ -25,6 +27,11 @@ public class UploadPreferenceFragment extends DialogEnabledPreferenceFragment im
     private TrimmedEditTextPreference apiKeyPreference;
     private SwitchPreferenceCompat customMlsEnabledPreference;
     private TrimmedEditTextPreference customMlsUrlPreference;
+    private SwitchPreferenceCompat customMlsCompressionEnabledPreference;
+    private SwitchPreferenceCompat periodicUploadEnabledPreference;
+    private SwitchPreferenceCompat periodicUploadUnmeteredOnlyPreference;
+    private SwitchPreferenceCompat periodicUploadChargingOnlyPreference;
+    private SeekBarPreference periodicUploadThresholdPreference;
 
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
@@ -40,6 +47,12 @@ public class UploadPreferenceFragment extends DialogEnabledPreferenceFragment im
         customMlsUrlPreference.setOnBindEditTextListener(editText -> {
             editText.setInputType(InputType.TYPE_CLASS_TEXT);
         });
+        customMlsCompressionEnabledPreference = findPreference(getString(R.string.preferences_custom_mls_compression_enabled_key));
+
+        periodicUploadEnabledPreference = findPreference(getString(R.string.preferences_periodic_upload_enabled_key));
+        periodicUploadUnmeteredOnlyPreference = findPreference(getString(R.string.preferences_periodic_upload_unmetered_only_key));
+        periodicUploadChargingOnlyPreference = findPreference(getString(R.string.preferences_periodic_upload_charging_only_key));
+        periodicUploadThresholdPreference = findPreference(getString(R.string.preferences_periodic_upload_threshold_key));
 
         setupRegisterApiKeyLink();
 
@@ -55,6 +68,8 @@ public class UploadPreferenceFragment extends DialogEnabledPreferenceFragment im
         // set summaries
         apiKeyPreference.setSummary(formatValueString(R.string.preferences_opencellid_api_key_summary, (apiKeyPreference.getText().length() > 0 ? apiKeyPreference.getText() : getString(R.string.preferences_value_undefined))));
         customMlsUrlPreference.setVisible(customMlsEnabledPreference.isChecked());
+        customMlsCompressionEnabledPreference.setVisible(customMlsEnabledPreference.isChecked());
+        setPeriodicUploadPreferencesVisible(periodicUploadEnabledPreference.isChecked());
         customMlsUrlPreference.setSummary(formatValueString(R.string.preferences_custom_mls_url_summary, (customMlsUrlPreference.getText().length() > 0 ? customMlsUrlPreference.getText() : getString(R.string.preferences_value_undefined))));
     }
 
@@ -80,6 +95,14 @@ public class UploadPreferenceFragment extends DialogEnabledPreferenceFragment im
         } else if (key.equals(getString(R.string.preferences_custom_mls_enabled_key))) {
             boolean isCustomMlsEnabled = customMlsEnabledPreference.isChecked();
             customMlsUrlPreference.setVisible(isCustomMlsEnabled);
+            customMlsCompressionEnabledPreference.setVisible(isCustomMlsEnabled);
+        } else if (key.equals(getString(R.string.preferences_periodic_upload_enabled_key))) {
+            setPeriodicUploadPreferencesVisible(periodicUploadEnabledPreference.isChecked());
+            PeriodicUploadScheduler.schedule(getActivity().getApplicationContext());
+        } else if (key.equals(getString(R.string.preferences_periodic_upload_unmetered_only_key))
+                || key.equals(getString(R.string.preferences_periodic_upload_charging_only_key))) {
+            // constraints are fixed in scheduled request
+            PeriodicUploadScheduler.schedule(getActivity().getApplicationContext());
         } else if (key.equals(getString(R.string.preferences_custom_mls_url_key))) {
             String customMlsUrlValue = customMlsUrlPreference.getText();
             Timber.d("onSharedPreferenceChanged(): User set custom MLS url = \"%s\"", customMlsUrlValue);
@@ -94,6 +117,12 @@ public class UploadPreferenceFragment extends DialogEnabledPreferenceFragment im
         }
     }
 
+    private void setPeriodicUploadPreferencesVisible(boolean visible) {
+        periodicUploadUnmeteredOnlyPreference.setVisible(visible);
+        periodicUploadChargingOnlyPreference.setVisible(visible);
+        periodicUploadThresholdPreference.setVisible(visible);
+    }
+
     private void setupRegisterApiKeyLink() {
         setupOpenInDefaultWebBrowser(R.string.preferences_opencellid_api_key_link_key, R.string.preferences_opencellid_org_sign_up_link);
     }
@@ -109,6 +109,11 @@ public class PreferencesProvider {
         return value;
     }
 
+    public boolean getSuppressNearDuplicateMeasurements() {
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_suppress_near_duplicates_key, R.bool.preferences_suppress_near_duplicates_default_value);
+        return value;
+    }
+
     public boolean getNotifyMeasurementsCollected() {
         boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_notify_measurements_collected_key, R.bool.preferences_notify_measurements_collected_default_value);
         return value;
@@ -180,6 +185,24 @@ public class PreferencesProvider {
         integerPreferenceProvider.setPreference(R.string.preferences_main_window_recent_tab_key, tabIndex);
     }
 
+    public int getOpenCellIdUploadPartSize() {
+        int value = integerPreferenceProvider.getPreference(R.string.preferences_opencellid_upload_part_size_key, R.integer.preferences_opencellid_upload_part_size_default_value);
+        return value;
+    }
+
+    public void setOpenCellIdUploadPartSize(int partSize) {
+        integerPreferenceProvider.setPreference(R.string.preferences_opencellid_upload_part_size_key, partSize);
+    }
+
+    public int getMlsUploadPartSize() {
+        int value = integerPreferenceProvider.getPreference(R.string.preferences_mls_upload_part_size_key, R.integer.preferences_mls_upload_part_size_default_value);
+        return value;
+    }
+
+    public void setMlsUploadPartSize(int partSize) {
+        integerPreferenceProvider.setPreference(R.string.preferences_mls_upload_part_size_key, partSize);
+    }
+
     public boolean getShowConfiguratorBeforeUpload() {
         boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_upload_show_configurator_key, R.bool.preferences_upload_show_configurator_default_value);
         return value;
@@ -198,6 +221,31 @@ public class PreferencesProvider {
         booleanPreferenceProvider.setPreference(R.string.preferences_opencellid_enabled_key, value);
     }
 
+    public boolean isPeriodicUploadEnabled() {
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_periodic_upload_enabled_key, R.bool.preferences_periodic_upload_enabled_default_value);
+        return value;
+    }
+
+    public boolean isPeriodicUploadUnmeteredOnly() {
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_periodic_upload_unmetered_only_key, R.bool.preferences_periodic_upload_unmetered_only_default_value);
+        return value;
+    }
+
+    public boolean isPeriodicUploadChargingOnly() {
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_periodic_upload_charging_only_key, R.bool.preferences_periodic_upload_charging_only_default_value);
+        return value;
+    }
+
+    public int getPeriodicUploadThreshold() {
+        int value = integerPreferenceProvider.getPreference(R.string.preferences_periodic_upload_threshold_key, R.integer.preferences_periodic_upload_threshold_default_value);
+        return value;
+    }
+
+    public boolean isOpenCellIdUploadCompressionEnabled() {
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_opencellid_compression_enabled_key, R.bool.preferences_opencellid_compression_enabled_default_value);
+        return value;
+    }
+
     public boolean isMlsUploadEnabled() {
         boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_mls_enabled_key, R.bool.preferences_mls_enabled_default_value);
         return value;
@@ -213,6 +261,11 @@ public class PreferencesProvider {
         return value;
     }
 
+    public boolean isCustomMlsUploadCompressionEnabled() {
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_custom_mls_compression_enabled_key, R.bool.preferences_custom_mls_compression_enabled_default_value);
+        return value;
+    }
+
     public void setMlsUploadEnabled(boolean value) {
         booleanPreferenceProvider.setPreference(R.string.preferences_mls_enabled_key, value);
     }
@@ -242,6 +295,21 @@ public class PreferencesProvider {
         return value;
     }
 
+    public String getExportCompressionLevel() {
+        String value = stringPreferenceProvider.getPreference(R.string.preferences_export_compression_level_key, R.string.preferences_export_compression_level_default_value);
+        return value;
+    }
+
+    public boolean isExportIncremental() {
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_export_incremental_key, R.bool.preferences_export_incremental_default_value);
+        return value;
+    }
+
+    public boolean getExportParallelFormatting() {
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_export_parallel_formatting_key, R.bool.preferences_export_parallel_formatting_default_value);
+        return value;
+    }
+
     public boolean isShowCollectorStatusBarEnabled() {
         boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_show_collector_status_bar_key, R.bool.preferences_show_collector_status_bar_default_value);
         return value;
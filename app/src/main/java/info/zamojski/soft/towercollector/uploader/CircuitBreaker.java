@@ -0,0 +1,72 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import timber.log.Timber;
+
+/**
+ * Stops sending to a target after consecutive failed requests, so other targets can proceed without waiting
+ * for timeouts of the failing one. After the open period a single trial request is let through,
+ * connection or server error opens it again and any other result closes it, even when the request was rejected.
+ */
+public class CircuitBreaker {
+
+    public static final int FAILURE_THRESHOLD = 5;
+    public static final long OPEN_DURATION_MILLIS = 60000;
+
+    private enum State {
+        Closed,
+        Open,
+        HalfOpen
+    }
+
+    private final String targetName;
+    private final IClock clock;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private State state = State.Closed;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public CircuitBreaker(String targetName, IClock clock) {
+        this(targetName, clock, FAILURE_THRESHOLD, OPEN_DURATION_MILLIS);
+    }
+
+    public CircuitBreaker(String targetName, IClock clock, int failureThreshold, long openDurationMillis) {
+        this.targetName = targetName;
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    public synchronized boolean allowRequest() {
+        if (state == State.Open && clock.currentTimeMillis() - openedAt >= openDurationMillis) {
+            Timber.d("allowRequest(): Trying %s after %s ms", targetName, openDurationMillis);
+            state = State.HalfOpen;
+        }
+        return state != State.Open;
+    }
+
+    public synchronized boolean isOpen() {
+        return state == State.Open;
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.Closed) {
+            Timber.d("onSuccess(): Closing circuit of %s", targetName);
+        }
+        state = State.Closed;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HalfOpen || (state == State.Closed && consecutiveFailures >= failureThreshold)) {
+            Timber.d("onFailure(): Opening circuit of %s after %s consecutive failures", targetName, consecutiveFailures);
+            state = State.Open;
+            openedAt = clock.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+/**
+ * Source of time for retries, so backoff and circuit breaker can be driven by a fake clock without waiting.
+ */
+public interface IClock {
+
+    long currentTimeMillis();
+
+    void sleep(long millis) throws InterruptedException;
+}
@@ -0,0 +1,103 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import android.content.Context;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.analytics.IntentSource;
+import info.zamojski.soft.towercollector.providers.preferences.PreferencesProvider;
+import timber.log.Timber;
+
+/**
+ * Schedules automatic upload run by WorkManager when the device is on allowed network and has enough battery.
+ * Every run uploads a limited number of measurements, so the backlog is sent continuously in small parts.
+ */
+public class PeriodicUploadScheduler {
+
+    public static final String WORK_NAME = "PERIODIC_UPLOADER_WORKER";
+    public static final int BATCH_SIZE = 2000;
+    private static final long REPEAT_INTERVAL_MINUTES = 60;
+
+    public static void schedule(Context context) {
+        schedule(context, 0);
+    }
+
+    private static void schedule(Context context, long initialDelayMinutes) {
+        PreferencesProvider preferencesProvider = MyApplication.getPreferencesProvider();
+        WorkManager workManager = WorkManager.getInstance(context);
+        if (!preferencesProvider.isPeriodicUploadEnabled()) {
+            Timber.d("schedule(): Cancelling periodic upload");
+            workManager.cancelUniqueWork(WORK_NAME);
+            return;
+        }
+        boolean unmeteredOnly = preferencesProvider.isPeriodicUploadUnmeteredOnly();
+        boolean chargingOnly = preferencesProvider.isPeriodicUploadChargingOnly();
+        Timber.d("schedule(): Scheduling periodic upload, unmetered only = %s, charging only = %s, initial delay = %s min", unmeteredOnly, chargingOnly, initialDelayMinutes);
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(unmeteredOnly ? NetworkType.UNMETERED : NetworkType.CONNECTED)
+                .setRequiresCharging(chargingOnly)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        // upload targets are read from preferences at the time of the run
+        PeriodicWorkRequest uploaderWorkRequest = new PeriodicWorkRequest.Builder(UploaderWorker.class, REPEAT_INTERVAL_MINUTES, TimeUnit.MINUTES)
+                .setConstraints(constraints)
+                .setInitialDelay(initialDelayMinutes, TimeUnit.MINUTES)
+                .setInputData(new Data.Builder()
+                        .putBoolean(UploaderWorker.INTENT_KEY_PERIODIC, true)
+                        .putString(UploaderWorker.INTENT_KEY_START_INTENT_SOURCE, IntentSource.System.name())
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, UploaderWorker.RETRY_BACKOFF_DELAY_MILLIS, TimeUnit.MILLISECONDS)
+                .addTag(WORK_NAME)
+                .build();
+        workManager.enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.UPDATE, uploaderWorkRequest);
+    }
+
+    /**
+     * Stops automatic upload if it is running. Periodic work can be stopped only by cancelling it,
+     * so it is scheduled again to run after the repeat interval. State of the work is read without blocking the caller.
+     *
+     * @param onFinished called when the upload has been stopped or wasn't running, can be null
+     */
+    public static void stopRunningUpload(Context context, Runnable onFinished) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        ListenableFuture<List<WorkInfo>> workInfos = workManager.getWorkInfosForUniqueWork(WORK_NAME);
+        // called on background thread of WorkManager when the state has been read
+        workInfos.addListener(() -> {
+            try {
+                for (WorkInfo workInfo : workInfos.get()) {
+                    if (workInfo.getState() == WorkInfo.State.RUNNING) {
+                        Timber.d("stopRunningUpload(): Stopping periodic upload");
+                        workManager.cancelUniqueWork(WORK_NAME);
+                        // don't start again right away
+                        schedule(context, REPEAT_INTERVAL_MINUTES);
+                        return;
+                    }
+                }
+            } catch (ExecutionException | InterruptedException ex) {
+                Timber.e(ex, "stopRunningUpload(): Failed to stop periodic upload");
+            } finally {
+                if (onFinished != null)
+                    onFinished.run();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+}
@@ -0,0 +1,118 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.dao.IUploadDatabase;
+import info.zamojski.soft.towercollector.enums.UploadJournalState;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.UploadJournalEntry;
+import timber.log.Timber;
+
+/**
+ * Records progress of every upload part per target, so upload interrupted between a request accepted
+ * by the server and marking its measurements doesn't send them again. The journal is empty after every
+ * upload which finished, entries left at start belong to interrupted upload.
+ */
+public class UploadJournal {
+
+    private final IUploadDatabase database;
+
+    public UploadJournal(IUploadDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Finishes interrupted upload. Parts acknowledged by the server but not marked are marked without sending,
+     * to the same targets as the upload would mark them, parts with unknown result are sent again. Uploaded measurements are cleaned so the next upload
+     * starts from the first pending measurement.
+     *
+     * @return true when previous upload was interrupted
+     */
+    public boolean reconcile() {
+        List<UploadJournalEntry> entries = database.getUploadJournalEntries();
+        if (entries.isEmpty())
+            return false;
+        int reconciledCount = 0;
+        int unknownCount = 0;
+        for (UploadJournalEntry entry : entries) {
+            if (entry.getState() == UploadJournalState.Acknowledged) {
+                reconciledCount += database.markUploadJournalEntryAsUploaded(entry);
+            } else if (entry.getState() != UploadJournalState.Marked) {
+                unknownCount += entry.getMeasurementsCount();
+            }
+        }
+        Timber.i("reconcile(): Previous upload interrupted, marked %s acknowledged measurements, %s measurements will be sent again", reconciledCount, unknownCount);
+        database.deleteUploadJournalEntries(false);
+        // normally done at the end of upload
+        database.clearOlderUploadedPartiallyAndUploadedFully();
+        return true;
+    }
+
+    /**
+     * Records part of the target before it is sent.
+     *
+     * @param measurements   measurements marked when the part is acknowledged
+     * @param markAllTargets whether acknowledged part is marked as uploaded to all targets or only to the target
+     * @return entry of the part or null when there is nothing to send
+     */
+    public UploadJournalEntry prepare(String target, List<Measurement> measurements, boolean markAllTargets) {
+        if (measurements.isEmpty())
+            return null;
+        Measurement first = null, last = null;
+        int maxMeasurementId = Integer.MIN_VALUE;
+        for (Measurement m : measurements) {
+            if (first == null || compare(m, first) < 0)
+                first = m;
+            if (last == null || compare(m, last) > 0)
+                last = m;
+            maxMeasurementId = Math.max(maxMeasurementId, m.getMeasurementId());
+        }
+        UploadJournalEntry entry = new UploadJournalEntry();
+        entry.setTarget(target);
+        entry.setState(UploadJournalState.Prepared);
+        entry.setFirstMeasuredAt(first.getMeasuredAt());
+        entry.setFirstMeasurementId(first.getMeasurementId());
+        entry.setLastMeasuredAt(last.getMeasuredAt());
+        entry.setLastMeasurementId(last.getMeasurementId());
+        entry.setMaxMeasurementId(maxMeasurementId);
+        entry.setMeasurementsCount(measurements.size());
+        entry.setMarkAllTargets(markAllTargets);
+        entry.setUpdatedAt(System.currentTimeMillis());
+        database.insertUploadJournalEntry(entry);
+        return entry;
+    }
+
+    public void setState(UploadJournalEntry entry, UploadJournalState state) {
+        if (entry == null)
+            return;
+        entry.setState(state);
+        entry.setUpdatedAt(System.currentTimeMillis());
+        database.updateUploadJournalEntryState(entry);
+    }
+
+    /**
+     * Records that measurements of the entries have been marked as uploaded.
+     */
+    public void setMarked(UploadJournalEntry... entries) {
+        for (UploadJournalEntry entry : entries) {
+            setState(entry, UploadJournalState.Marked);
+        }
+    }
+
+    /**
+     * Clears journal of finished upload. Acknowledged parts which couldn't be marked are kept for next upload.
+     */
+    public void finish() {
+        database.deleteUploadJournalEntries(true);
+    }
+
+    private static int compare(Measurement m1, Measurement m2) {
+        // the same order as parts are read in
+        int result = Long.compare(m1.getMeasuredAt(), m2.getMeasuredAt());
+        return (result != 0 ? result : Integer.compare(m1.getMeasurementId(), m2.getMeasurementId()));
+    }
+}
@@ -0,0 +1,52 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Measurements of one upload part split by targets which still need them.
+ */
+public class UploadPart {
+
+    private final int index;
+    private final int offset;
+    private final List<Measurement> measurements;
+    private final List<Measurement> ocidMeasurements;
+    private final List<Measurement> mlsMeasurements;
+
+    public UploadPart(int index, int offset, List<Measurement> measurements, List<Measurement> ocidMeasurements, List<Measurement> mlsMeasurements) {
+        this.index = index;
+        this.offset = offset;
+        this.measurements = measurements;
+        this.ocidMeasurements = ocidMeasurements;
+        this.mlsMeasurements = mlsMeasurements;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns position of the first measurement of the part among all measurements.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public List<Measurement> getMeasurements() {
+        return measurements;
+    }
+
+    public List<Measurement> getOcidMeasurements() {
+        return ocidMeasurements;
+    }
+
+    public List<Measurement> getMlsMeasurements() {
+        return mlsMeasurements;
+    }
+}
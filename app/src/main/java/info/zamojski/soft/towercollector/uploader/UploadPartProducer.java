@@ -0,0 +1,173 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import info.zamojski.soft.towercollector.dao.IUploadDatabase;
+import info.zamojski.soft.towercollector.model.Measurement;
+import timber.log.Timber;
+
+/**
+ * Reads upload parts on a background thread while previous parts are being sent.
+ * Parts are returned strictly in order and at most {@code depth} prepared parts wait in memory.
+ * Size of every part is the smallest size of targets still being uploaded at the time the part is read.
+ * Reading ahead is safe because parts are selected by offset in the whole table ordered by time
+ * and marking measurements as uploaded doesn't remove them until the upload finishes.
+ * Reading can be limited to a number of measurements pending for the targets, not counting measurements
+ * kept only for other targets.
+ */
+public class UploadPartProducer {
+
+    private static final long QUEUE_TIMEOUT = 100; // milliseconds
+    // marks end of parts, compared by reference
+    private static final UploadPart END_OF_PARTS = new UploadPart(-1, -1, null, null, null);
+
+    private final IUploadDatabase database;
+    private final int startOffset;
+    private final int locationsCount;
+    private final int maxPendingCount;
+    private final boolean ocidEnabled;
+    private final boolean mlsEnabled;
+    private final UploadPartSizeController ocidPartSizeController;
+    private final UploadPartSizeController mlsPartSizeController;
+    private final BlockingQueue<UploadPart> queue;
+    private volatile boolean ocidRequired;
+    private volatile boolean mlsRequired;
+    private volatile boolean stopped;
+    private ExecutorService executor;
+    private Future<?> result;
+
+    /**
+     * @param startOffset     offset of the first part
+     * @param maxPendingCount number of measurements pending for the targets after which no more parts are read
+     */
+    public UploadPartProducer(IUploadDatabase database, int startOffset, int locationsCount, int maxPendingCount, UploadPartSizeController ocidPartSizeController, UploadPartSizeController mlsPartSizeController, int depth, boolean ocidRequired, boolean mlsRequired) {
+        this.database = database;
+        this.startOffset = startOffset;
+        this.locationsCount = locationsCount;
+        this.maxPendingCount = maxPendingCount;
+        this.ocidEnabled = ocidRequired;
+        this.mlsEnabled = mlsRequired;
+        this.ocidPartSizeController = ocidPartSizeController;
+        this.mlsPartSizeController = mlsPartSizeController;
+        this.queue = new ArrayBlockingQueue<>(depth);
+        this.ocidRequired = ocidRequired;
+        this.mlsRequired = mlsRequired;
+    }
+
+    public void start() {
+        executor = Executors.newSingleThreadExecutor();
+        result = executor.submit(() -> {
+            int offset = startOffset;
+            int pendingCount = 0;
+            for (int i = 0; offset < locationsCount && pendingCount < maxPendingCount && !stopped; i++) {
+                int partSize = getPartSize();
+                UploadPart part = preparePart(i, offset, partSize);
+                if (!put(part))
+                    return null;
+                offset += partSize;
+                pendingCount += getPendingCount(part);
+            }
+            put(END_OF_PARTS);
+            return null;
+        });
+    }
+
+    /**
+     * Returns next part in order, null when there are no more parts.
+     *
+     * @throws ExecutionException when preparation of the part failed
+     */
+    public UploadPart nextPart() throws InterruptedException, ExecutionException {
+        while (true) {
+            UploadPart part = queue.poll(QUEUE_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (part == null && result.isDone()) {
+                // the last part could be added right before finish
+                part = queue.poll();
+                if (part == null) {
+                    result.get();
+                    return null;
+                }
+            }
+            if (part != null)
+                return (part == END_OF_PARTS ? null : part);
+        }
+    }
+
+    /**
+     * Excludes target which won't be uploaded anymore from choosing size of next parts.
+     */
+    public void setOcidRequired(boolean ocidRequired) {
+        this.ocidRequired = ocidRequired;
+    }
+
+    public void setMlsRequired(boolean mlsRequired) {
+        this.mlsRequired = mlsRequired;
+    }
+
+    public void stop() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        queue.clear();
+    }
+
+    private boolean put(UploadPart part) throws InterruptedException {
+        while (!stopped) {
+            if (queue.offer(part, QUEUE_TIMEOUT, TimeUnit.MILLISECONDS))
+                return true;
+        }
+        return false;
+    }
+
+    private int getPartSize() {
+        int partSize = UploadPartSizeController.MAX_PART_SIZE;
+        if (ocidRequired)
+            partSize = Math.min(partSize, ocidPartSizeController.getPartSize());
+        if (mlsRequired)
+            partSize = Math.min(partSize, mlsPartSizeController.getPartSize());
+        return partSize;
+    }
+
+    private int getPendingCount(UploadPart part) {
+        if (part.getMeasurements() == null)
+            return 0;
+        int pendingCount = 0;
+        for (Measurement m : part.getMeasurements()) {
+            if ((ocidEnabled && m.getUploadedToOcidAt() == null) || (mlsEnabled && m.getUploadedToMlsAt() == null))
+                pendingCount++;
+        }
+        return pendingCount;
+    }
+
+    private UploadPart preparePart(int index, int offset, int partSize) {
+        // prepare data starting from oldest
+        List<Measurement> measurements = database.getMeasurementsPartIncludingPartiallyUploaded(offset, partSize);
+        List<Measurement> ocidMeasurements = new ArrayList<>();
+        List<Measurement> mlsMeasurements = new ArrayList<>();
+        if (measurements != null) {
+            for (Measurement m : measurements) {
+                if (m.getUploadedToOcidAt() == null) {
+                    ocidMeasurements.add(m);
+                }
+                if (m.getUploadedToMlsAt() == null) {
+                    mlsMeasurements.add(m);
+                }
+            }
+        }
+        Timber.d("preparePart(): Prepared part %s of size %s at offset %s", index, partSize, offset);
+        return new UploadPart(index, offset, measurements, ocidMeasurements, mlsMeasurements);
+    }
+}
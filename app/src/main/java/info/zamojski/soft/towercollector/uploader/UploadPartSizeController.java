@@ -0,0 +1,63 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import timber.log.Timber;
+
+/**
+ * Adapts number of measurements sent in one request of a target. Size grows while requests succeed quickly
+ * and backs off when requests are slow, time out or are refused as too large. Size limit learned from refused
+ * requests is kept for the whole upload, so the size doesn't oscillate around the server limit.
+ */
+public class UploadPartSizeController {
+
+    public static final int MIN_PART_SIZE = 10;
+    public static final int MAX_PART_SIZE = 2000;
+    private static final long FAST_REQUEST_MILLIS = 5000;
+    private static final long SLOW_REQUEST_MILLIS = 15000;
+
+    private final String targetName;
+    private int partSize;
+    private int maxPartSize = MAX_PART_SIZE;
+
+    public UploadPartSizeController(String targetName, int initialPartSize) {
+        this.targetName = targetName;
+        this.partSize = limit(initialPartSize);
+    }
+
+    public synchronized int getPartSize() {
+        return partSize;
+    }
+
+    public synchronized void onSucceeded(int measurementsCount, long durationMillis) {
+        if (durationMillis > SLOW_REQUEST_MILLIS) {
+            setPartSize(partSize * 3 / 4, "slow request");
+        } else if (durationMillis < FAST_REQUEST_MILLIS && measurementsCount * 2 >= partSize) {
+            // grow only when the request was big enough to prove the current size
+            setPartSize(partSize + Math.max(partSize / 2, 1), "fast request");
+        }
+    }
+
+    public synchronized void onTimeout() {
+        setPartSize(partSize / 2, "timeout");
+    }
+
+    public synchronized void onTooLarge(int measurementsCount) {
+        maxPartSize = Math.max(MIN_PART_SIZE, Math.min(maxPartSize, measurementsCount * 3 / 4));
+        setPartSize(Math.min(partSize / 2, maxPartSize), "request too large");
+    }
+
+    private void setPartSize(int newPartSize, String reason) {
+        newPartSize = limit(newPartSize);
+        if (newPartSize != partSize) {
+            Timber.d("setPartSize(): Changing %s part size from %s to %s due to %s", targetName, partSize, newPartSize, reason);
+            partSize = newPartSize;
+        }
+    }
+
+    private int limit(int value) {
+        return Math.max(MIN_PART_SIZE, Math.min(maxPartSize, value));
+    }
+}
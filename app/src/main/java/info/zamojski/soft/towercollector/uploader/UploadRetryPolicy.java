@@ -0,0 +1,81 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import java.util.Random;
+
+import info.zamojski.soft.towercollector.io.network.RequestResult;
+import timber.log.Timber;
+
+/**
+ * Repeats request of a part which failed due to connection or server error with exponentially growing delay.
+ * Delay is randomized between half and full value (jitter), so many devices don't retry at the same time.
+ * Retries stop when the circuit breaker of the target opens or when the upload is stopped, also during the delay.
+ */
+public class UploadRetryPolicy {
+
+    public static final int MAX_ATTEMPTS = 3;
+    public static final long BASE_DELAY_MILLIS = 2000;
+    public static final long MAX_DELAY_MILLIS = 30000;
+    // stop is checked between slices of the delay
+    public static final long SLEEP_SLICE_MILLIS = 500;
+
+    interface IRequest {
+        RequestResult send() throws InterruptedException;
+    }
+
+    interface IStopCondition {
+        boolean isStopped();
+    }
+
+    private final IClock clock;
+    private final Random random;
+
+    public UploadRetryPolicy(IClock clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+    }
+
+    public RequestResult execute(CircuitBreaker circuitBreaker, IRequest request, IStopCondition stopCondition) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            RequestResult result = request.send();
+            if (!isRetryable(result)) {
+                // trial is resolved also when target rejected the request
+                circuitBreaker.onSuccess();
+                return result;
+            }
+            circuitBreaker.onFailure();
+            if (attempt >= MAX_ATTEMPTS || !circuitBreaker.allowRequest() || stopCondition.isStopped())
+                return result;
+            long delay = getDelayMillis(attempt);
+            Timber.d("execute(): Attempt %s failed with %s, retrying in %s ms", attempt, result, delay);
+            if (!sleep(delay, stopCondition))
+                return result;
+        }
+    }
+
+    private boolean sleep(long delay, IStopCondition stopCondition) throws InterruptedException {
+        long remaining = delay;
+        while (remaining > 0) {
+            long slice = Math.min(remaining, SLEEP_SLICE_MILLIS);
+            clock.sleep(slice);
+            remaining -= slice;
+            if (stopCondition.isStopped()) {
+                Timber.d("sleep(): Stopped with %s ms of delay remaining", remaining);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isRetryable(RequestResult result) {
+        return result == RequestResult.ConnectionError || result == RequestResult.ServerError;
+    }
+
+    long getDelayMillis(int attempt) {
+        long delay = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt - 1, 16));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+}
@@ -0,0 +1,371 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.dao.IUploadDatabase;
+import info.zamojski.soft.towercollector.enums.UploadJournalState;
+import info.zamojski.soft.towercollector.enums.UploadResult;
+import info.zamojski.soft.towercollector.events.PrintMainWindowEvent;
+import info.zamojski.soft.towercollector.files.formatters.csv.CsvUploadFormatter;
+import info.zamojski.soft.towercollector.files.formatters.csv.ICsvFormatter;
+import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaUploadFormatter;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
+import info.zamojski.soft.towercollector.io.network.IContentWriter;
+import info.zamojski.soft.towercollector.io.network.IUploadClient;
+import info.zamojski.soft.towercollector.io.network.RequestResult;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.Statistics;
+import info.zamojski.soft.towercollector.model.UploadJournalEntry;
+import timber.log.Timber;
+
+/**
+ * Sends parts read by {@link UploadPartProducer} to enabled targets and marks measurements accepted by them as uploaded,
+ * recording progress of every part in {@link UploadJournal}. Target is enabled by setting its client factory.
+ */
+public class UploadSession {
+
+    public interface IClientFactory {
+        IUploadClient create();
+    }
+
+    private final IUploadDatabase database;
+    private final UploadJournal journal;
+    private final UploadRetryPolicy retryPolicy;
+    private final EventBus eventBus;
+    private final boolean isReuploadIfUploadFailsEnabled;
+    private final IProgressListener progressListener;
+    private final UploadRetryPolicy.IStopCondition stopCondition;
+
+    private IClientFactory ocidClientFactory;
+    private UploadPartSizeController ocidPartSizeController;
+    private CircuitBreaker ocidCircuitBreaker;
+    private IClientFactory mlsClientFactory;
+    private UploadPartSizeController mlsPartSizeController;
+    private CircuitBreaker mlsCircuitBreaker;
+
+    // written by the thread sending to the target, read after the target completed
+    private long ocidSentBytes;
+    private long mlsSentBytes;
+
+    private UploadResult ocidUploadResult = UploadResult.NotStarted;
+    private UploadResult mlsUploadResult = UploadResult.NotStarted;
+
+    public UploadSession(IUploadDatabase database, UploadJournal journal, UploadRetryPolicy retryPolicy, EventBus eventBus, boolean isReuploadIfUploadFailsEnabled,
+                         IProgressListener progressListener, UploadRetryPolicy.IStopCondition stopCondition) {
+        this.database = database;
+        this.journal = journal;
+        this.retryPolicy = retryPolicy;
+        this.eventBus = eventBus;
+        this.isReuploadIfUploadFailsEnabled = isReuploadIfUploadFailsEnabled;
+        this.progressListener = progressListener;
+        this.stopCondition = stopCondition;
+    }
+
+    public void setOcidTarget(IClientFactory clientFactory, UploadPartSizeController partSizeController, CircuitBreaker circuitBreaker) {
+        this.ocidClientFactory = clientFactory;
+        this.ocidPartSizeController = partSizeController;
+        this.ocidCircuitBreaker = circuitBreaker;
+    }
+
+    public void setMlsTarget(IClientFactory clientFactory, UploadPartSizeController partSizeController, CircuitBreaker circuitBreaker) {
+        this.mlsClientFactory = clientFactory;
+        this.mlsPartSizeController = partSizeController;
+        this.mlsCircuitBreaker = circuitBreaker;
+    }
+
+    public UploadResult getOcidUploadResult() {
+        return ocidUploadResult;
+    }
+
+    public UploadResult getMlsUploadResult() {
+        return mlsUploadResult;
+    }
+
+    public long getOcidSentBytes() {
+        return ocidSentBytes;
+    }
+
+    public long getMlsSentBytes() {
+        return mlsSentBytes;
+    }
+
+    /**
+     * Uploads all parts of the started producer, the second target is sent on the executor in parallel.
+     *
+     * @param startOffset offset of the first part
+     * @param progressMax number of measurements read by the producer
+     * @return number of parts succeeded for OCID and MLS
+     */
+    public int[] upload(UploadPartProducer producer, int startOffset, int progressMax, ExecutorService targetExecutor) throws InterruptedException, ExecutionException {
+        boolean isOpenCellIdUploadEnabled = (ocidClientFactory != null);
+        boolean isMlsUploadEnabled = (mlsClientFactory != null);
+        int ocidSucceededParts = 0, mlsSucceededParts = 0;
+        boolean continueOcidUpload = isOpenCellIdUploadEnabled;
+        boolean continueMlsUpload = isMlsUploadEnabled;
+        Statistics stats = database.getMeasurementsStatistics();
+        int numberToUploadOcid = stats.getToUploadOcid();
+        int numberToUploadMls = stats.getToUploadMls();
+        // the whole part is marked for all targets when one target succeeded without reupload or the only enabled target succeeded,
+        // journaled the same way so interrupted upload is finished like it would be
+        boolean markAllTargets = !isReuploadIfUploadFailsEnabled || !isOpenCellIdUploadEnabled || !isMlsUploadEnabled;
+        // for each part start new upload
+        while (true) {
+            // check if cancelled
+            if (stopCondition.isStopped()) {
+                ocidUploadResult = UploadResult.Cancelled;
+                mlsUploadResult = UploadResult.Cancelled;
+                break;
+            }
+            // next part has been read while previous one was being sent
+            UploadPart part = producer.nextPart();
+            if (part == null)
+                break;
+            // notify in percent
+            int progress = (int) Math.min(100.0, 100.0 * (part.getOffset() - startOffset) / progressMax);
+            progressListener.reportProgress(progress, 100);
+            List<Measurement> measurements = part.getMeasurements();
+
+            Timber.d("upload(): Continue upload to OCID = %s, MLS = %s", continueOcidUpload, continueMlsUpload);
+
+            // journal the part before sending, so acknowledged part isn't sent again after interruption
+            // target with open circuit is skipped and keeps its last result
+            boolean sendToOcid = continueOcidUpload && ocidCircuitBreaker.allowRequest();
+            boolean sendToMls = continueMlsUpload && mlsCircuitBreaker.allowRequest();
+            UploadJournalEntry ocidJournalEntry = (sendToOcid ? prepareJournalEntry(UploadJournalEntry.TARGET_OCID, part, part.getOcidMeasurements(), markAllTargets) : null);
+            UploadJournalEntry mlsJournalEntry = (sendToMls ? prepareJournalEntry(UploadJournalEntry.TARGET_MLS, part, part.getMlsMeasurements(), markAllTargets) : null);
+
+            Future<UploadResult> mlsUploadFuture = null;
+            if (continueMlsUpload) {
+                List<Measurement> mlsMeasurements = part.getMlsMeasurements();
+                if (sendToMls)
+                    mlsUploadFuture = targetExecutor.submit(() -> uploadToMls(mlsMeasurements, mlsJournalEntry));
+                numberToUploadMls -= mlsMeasurements.size();
+            }
+            if (continueOcidUpload) {
+                List<Measurement> ocidMeasurements = part.getOcidMeasurements();
+                if (sendToOcid)
+                    ocidUploadResult = uploadToOcid(ocidMeasurements, ocidJournalEntry);
+                numberToUploadOcid -= ocidMeasurements.size();
+            }
+            // results of both targets are reconciled only when both requests completed
+            if (mlsUploadFuture != null) {
+                mlsUploadResult = getUploadResult(mlsUploadFuture);
+            }
+
+            if (ocidUploadResult == UploadResult.PartiallySucceeded)
+                ocidSucceededParts++;
+            if (mlsUploadResult == UploadResult.PartiallySucceeded)
+                mlsSucceededParts++;
+
+            continueOcidUpload &= ocidUploadResult == UploadResult.PartiallySucceeded || numberToUploadOcid > 0;
+            continueMlsUpload &= mlsUploadResult == UploadResult.PartiallySucceeded || numberToUploadMls > 0;
+            producer.setOcidRequired(continueOcidUpload);
+            producer.setMlsRequired(continueMlsUpload);
+
+            boolean ocidSuccessful = (ocidUploadResult == UploadResult.PartiallySucceeded);
+            boolean mlsSuccessful = (mlsUploadResult == UploadResult.PartiallySucceeded);
+
+            if (isReuploadIfUploadFailsEnabled) {
+                // all enabled succeeded
+                if ((ocidSuccessful || !isOpenCellIdUploadEnabled) && (mlsSuccessful || !isMlsUploadEnabled)) {
+                    Timber.d("upload(): Deleting measurements because OCID enabled = %s and successful = %s, MLS enabled = %s and successful = %s", isOpenCellIdUploadEnabled, ocidSuccessful, isMlsUploadEnabled, mlsSuccessful);
+                    // delete sent measurements
+                    int[] rowIds = getMeasurementIds(measurements);
+                    int numberOfDeleted = database.markAsUploaded(rowIds, System.currentTimeMillis(), System.currentTimeMillis());
+                    if (numberOfDeleted == 0) {
+                        ocidUploadResult = UploadResult.DeleteFailed;
+                        mlsUploadResult = UploadResult.DeleteFailed;
+                        break;
+                    }
+                    journal.setMarked(ocidJournalEntry, mlsJournalEntry);
+                } else if (ocidSuccessful && isMlsUploadEnabled) {
+                    Timber.d("upload(): Marking measurements as uploaded to OCID");
+                    // keep for mls
+                    int[] rowIds = getMeasurementIds(part.getOcidMeasurements());
+                    int numberOfDeleted = database.markAsUploaded(rowIds, System.currentTimeMillis(), null);
+                    if (numberOfDeleted == 0) {
+                        ocidUploadResult = UploadResult.DeleteFailed;
+                        break;
+                    }
+                    journal.setMarked(ocidJournalEntry);
+                } else if (mlsSuccessful && isOpenCellIdUploadEnabled) {
+                    Timber.d("upload(): Marking measurements as uploaded to MLS");
+                    // keep for ocid
+                    int[] rowIds = getMeasurementIds(part.getMlsMeasurements());
+                    int numberOfDeleted = database.markAsUploaded(rowIds, null, System.currentTimeMillis());
+                    if (numberOfDeleted == 0) {
+                        mlsUploadResult = UploadResult.DeleteFailed;
+                        break;
+                    }
+                    journal.setMarked(mlsJournalEntry);
+                } else {
+                    Timber.d("upload(): Skipping delete because all uploads failed");
+                    // all uploads failed - measurements were not uploaded
+                }
+            } else if ((isOpenCellIdUploadEnabled && ocidSuccessful) || (isMlsUploadEnabled && mlsSuccessful)) {
+                Timber.d("upload(): Deleting measurements because OCID enabled = %s and successful = %s, MLS enabled = %s and successful = %s", isOpenCellIdUploadEnabled, ocidSuccessful, isMlsUploadEnabled, mlsSuccessful);
+                // delete sent measurements
+                int[] rowIds = getMeasurementIds(measurements);
+                int numberOfDeleted = database.markAsUploaded(rowIds, System.currentTimeMillis(), System.currentTimeMillis());
+                if (numberOfDeleted == 0) {
+                    ocidUploadResult = UploadResult.DeleteFailed;
+                    mlsUploadResult = UploadResult.DeleteFailed;
+                    break;
+                }
+                journal.setMarked(ocidJournalEntry, mlsJournalEntry);
+            }
+            // broadcast part uploaded (if error not encountered earlier)
+            eventBus.post(new PrintMainWindowEvent());
+
+            // nothing left to send or all remaining targets keep failing
+            if ((!continueOcidUpload || ocidCircuitBreaker.isOpen()) && (!continueMlsUpload || mlsCircuitBreaker.isOpen()))
+                break;
+        }
+
+        journal.finish();
+        // clean anyway because it doesn't hurt
+        database.clearOlderUploadedPartiallyAndUploadedFully();
+
+        return new int[]{ocidSucceededParts, mlsSucceededParts};
+    }
+
+    private UploadJournalEntry prepareJournalEntry(String target, UploadPart part, List<Measurement> targetMeasurements, boolean markAllTargets) {
+        // nothing is sent to the target
+        if (targetMeasurements.isEmpty())
+            return null;
+        return journal.prepare(target, markAllTargets ? part.getMeasurements() : targetMeasurements, markAllTargets);
+    }
+
+    private int[] getMeasurementIds(List<Measurement> measurements) {
+        int j = 0;
+        int[] rowIds = new int[measurements.size()];
+        for (Measurement m : measurements) {
+            rowIds[j++] = m.getMeasurementId();
+        }
+        return rowIds;
+    }
+
+    private void updatePartSize(UploadPartSizeController partSizeController, RequestResult response, int measurementsCount, long duration) {
+        if (response == RequestResult.Success) {
+            partSizeController.onSucceeded(measurementsCount, duration);
+        } else if (response == RequestResult.ConnectionError) {
+            partSizeController.onTimeout();
+        } else if (response == RequestResult.PayloadTooLarge) {
+            partSizeController.onTooLarge(measurementsCount);
+        }
+    }
+
+    private UploadResult getUploadResult(Future<UploadResult> uploadFuture) throws InterruptedException {
+        try {
+            return uploadFuture.get();
+        } catch (ExecutionException ex) {
+            Timber.e(ex.getCause(), "getUploadResult(): Upload failed");
+            MyApplication.handleSilentException(ex.getCause());
+            return UploadResult.Failure;
+        }
+    }
+
+    private UploadResult uploadToOcid(List<Measurement> measurements, UploadJournalEntry journalEntry) throws InterruptedException {
+        if (measurements.isEmpty())
+            return UploadResult.NoData;
+        // measurements are formatted while the request is sent
+        ICsvFormatter formatter = new CsvUploadFormatter();
+        IContentWriter csvContent = writer -> {
+            writer.write(formatter.formatHeader());
+            for (Measurement m : measurements) {
+                formatter.writeEntry(m, writer);
+            }
+        };
+        // send request
+        try {
+            IUploadClient client = ocidClientFactory.create();
+            RequestResult response = retryPolicy.execute(ocidCircuitBreaker, () -> {
+                journal.setState(journalEntry, UploadJournalState.Sent);
+                long startTime = System.currentTimeMillis();
+                RequestResult result = client.uploadMeasurements(csvContent);
+                long duration = System.currentTimeMillis() - startTime;
+                ocidSentBytes += client.getSentBytes();
+                Timber.d("uploadToOcid(): Server response: %s in %s ms", result, duration);
+                updatePartSize(ocidPartSizeController, result, measurements.size(), duration);
+                return result;
+            }, stopCondition);
+            // check whether it makes sense to continue
+            if (response == RequestResult.ConfigurationError) {
+                return UploadResult.InvalidData;
+            } else if (response == RequestResult.ServerError) {
+                return UploadResult.ServerError;
+            } else if (response == RequestResult.ConnectionError) {
+                return UploadResult.ConnectionError;
+            } else if (response == RequestResult.Failure) {
+                return UploadResult.Failure;
+            } else if (response == RequestResult.InvalidApiKey) {
+                return UploadResult.InvalidApiKey;
+            } else if (response == RequestResult.PayloadTooLarge) {
+                return UploadResult.PayloadTooLarge;
+            } else if (response == RequestResult.Success) {
+                Timber.d("uploadToOcid(): Uploaded %s measurements", measurements.size());
+                journal.setState(journalEntry, UploadJournalState.Acknowledged);
+                return UploadResult.PartiallySucceeded;
+            } else {
+                throw new UnsupportedOperationException(String.format("Unsupported upload result %s", response));
+            }
+        } catch (SecurityException ex) {
+            Timber.e(ex, "uploadToOcid(): Internet permission is denied");
+            return UploadResult.PermissionDenied;
+        }
+    }
+
+    private UploadResult uploadToMls(List<Measurement> measurements, UploadJournalEntry journalEntry) throws InterruptedException {
+        if (measurements.isEmpty())
+            return UploadResult.NoData;
+        // measurements are formatted while the request is sent
+        IContentWriter jsonContent = writer -> new JsonMozillaUploadFormatter().writeList(measurements, writer);
+        // send request
+        try {
+            IUploadClient client = mlsClientFactory.create();
+            RequestResult response = retryPolicy.execute(mlsCircuitBreaker, () -> {
+                journal.setState(journalEntry, UploadJournalState.Sent);
+                long startTime = System.currentTimeMillis();
+                RequestResult result = client.uploadMeasurements(jsonContent);
+                long duration = System.currentTimeMillis() - startTime;
+                mlsSentBytes += client.getSentBytes();
+                Timber.d("uploadToMls(): Server response: %s in %s ms", result, duration);
+                updatePartSize(mlsPartSizeController, result, measurements.size(), duration);
+                return result;
+            }, stopCondition);
+            // check whether it makes sense to continue
+            if (response == RequestResult.ConfigurationError) {
+                return UploadResult.InvalidData;
+            } else if (response == RequestResult.ServerError) {
+                return UploadResult.ServerError;
+            } else if (response == RequestResult.ConnectionError) {
+                return UploadResult.ConnectionError;
+            } else if (response == RequestResult.LimitExceeded) {
+                return UploadResult.LimitExceeded;
+            } else if (response == RequestResult.PayloadTooLarge) {
+                return UploadResult.PayloadTooLarge;
+            } else if (response == RequestResult.Failure) {
+                return UploadResult.Failure;
+            } else if (response == RequestResult.Success) {
+                Timber.d("uploadToMls(): Uploaded %s measurements", measurements.size());
+                journal.setState(journalEntry, UploadJournalState.Acknowledged);
+                return UploadResult.PartiallySucceeded;
+            } else {
+                throw new UnsupportedOperationException(String.format("Unsupported upload result %s", response));
+            }
+        } catch (SecurityException ex) {
+            Timber.e(ex, "uploadToMls(): Internet permission is denied");
+            return UploadResult.PermissionDenied;
+        }
+    }
+}
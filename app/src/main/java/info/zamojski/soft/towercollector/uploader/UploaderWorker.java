@@ -8,6 +8,7 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.os.Build;
+import android.text.format.Formatter;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.StringRes;
@@ -18,10 +19,9 @@ import androidx.work.WorkerParameters;
 
 import org.greenrobot.eventbus.EventBus;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import info.zamojski.soft.towercollector.BuildConfig;
 import info.zamojski.soft.towercollector.MyApplication;
@@ -32,18 +32,10 @@ import info.zamojski.soft.towercollector.analytics.internal.Label;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.UploadResult;
 import info.zamojski.soft.towercollector.events.PrintMainWindowEvent;
-import info.zamojski.soft.towercollector.files.formatters.csv.CsvUploadFormatter;
-import info.zamojski.soft.towercollector.files.formatters.csv.ICsvFormatter;
-import info.zamojski.soft.towercollector.files.formatters.json.IJsonFormatter;
-import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaUploadFormatter;
 import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
-import info.zamojski.soft.towercollector.io.network.IUploadClient;
 import info.zamojski.soft.towercollector.io.network.MozillaUploadClient;
 import info.zamojski.soft.towercollector.io.network.OcidUploadClient;
-import info.zamojski.soft.towercollector.io.network.RequestResult;
 import info.zamojski.soft.towercollector.model.AnalyticsStatistics;
-import info.zamojski.soft.towercollector.model.Measurement;
-import info.zamojski.soft.towercollector.model.Statistics;
 import info.zamojski.soft.towercollector.utils.ApkUtils;
 import info.zamojski.soft.towercollector.utils.NetworkUtils;
 import info.zamojski.soft.towercollector.utils.OpenCellIdUtils;
@@ -60,13 +52,18 @@ public class UploaderWorker extends Worker implements IProgressListener {
     public static final String INTENT_KEY_UPLOAD_TO_CUSTOM_MLS = "upload_to_custom_mls";
     public static final String INTENT_KEY_UPLOAD_TRY_REUPLOAD = "try_reupload";
     public static final String INTENT_KEY_START_INTENT_SOURCE = "start_intent_source";
+    public static final String INTENT_KEY_PERIODIC = "periodic";
     public static final String PROGRESS = "PROGRESS";
     public static final String PROGRESS_MAX = "PROGRESS_MAX";
     public static final int PROGRESS_MIN_VALUE = 0;
     public static final int PROGRESS_MAX_VALUE = 100;
     public static final String MESSAGE = "MESSAGE";
     public static final int NOTIFICATION_ID = 'U';
-    private static final int LOCATIONS_PER_PART = 85;
+    // parts read in advance while the current part is being sent
+    private static final int PREPARED_PARTS_DEPTH = 2;
+    // background uploads failed on all targets are retried by WorkManager
+    public static final long RETRY_BACKOFF_DELAY_MILLIS = 60000;
+    private static final int MAX_RUN_ATTEMPTS = 5;
 
     private final NotificationManager notificationManager;
     private final UploaderNotificationHelper notificationHelper;
@@ -82,11 +79,16 @@ public class UploaderWorker extends Worker implements IProgressListener {
     private boolean isMlsUploadEnabled;
     private boolean isCustomMlsUploadEnabled;
     private boolean isReuploadIfUploadFailsEnabled;
+    private boolean isOpenCellIdUploadCompressionEnabled;
+    private boolean isCustomMlsUploadCompressionEnabled;
+    private long ocidSentBytes;
+    private long mlsSentBytes;
 
     private UploadResult ocidUploadResult = UploadResult.NotStarted;
     private UploadResult mlsUploadResult = UploadResult.NotStarted;
 
     private IntentSource startIntentSource;
+    private boolean isPeriodic;
 
     public UploaderWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
@@ -104,6 +106,11 @@ public class UploaderWorker extends Worker implements IProgressListener {
     @NonNull
     @Override
     public Result doWork() {
+        // scheduled run is skipped quietly without showing notification
+        isPeriodic = getInputData().getBoolean(INTENT_KEY_PERIODIC, false);
+        if (isPeriodic && !isPeriodicUploadNeeded()) {
+            return Result.success();
+        }
         try {
             Notification notification = notificationHelper.createNotification(notificationManager);
             ForegroundInfo foregroundInfo = new ForegroundInfo(NOTIFICATION_ID, notification);
@@ -121,6 +128,8 @@ public class UploaderWorker extends Worker implements IProgressListener {
             isUseSharedOpenCellIdApiKeyEnabled = getInputData().getBoolean(INTENT_KEY_UPLOAD_TO_OCID_SHARED, MyApplication.getPreferencesProvider().isUseSharedOpenCellIdApiKeyEnabled());
             isMlsUploadEnabled = getInputData().getBoolean(INTENT_KEY_UPLOAD_TO_MLS, MyApplication.getPreferencesProvider().isMlsUploadEnabled());
             isCustomMlsUploadEnabled = getInputData().getBoolean(INTENT_KEY_UPLOAD_TO_CUSTOM_MLS, MyApplication.getPreferencesProvider().isCustomMlsUploadEnabled());
+            isOpenCellIdUploadCompressionEnabled = MyApplication.getPreferencesProvider().isOpenCellIdUploadCompressionEnabled();
+            isCustomMlsUploadCompressionEnabled = MyApplication.getPreferencesProvider().isCustomMlsUploadCompressionEnabled();
             // TODO temporary hack to disable unavailable official MLS service
             isMlsUploadEnabled = isMlsUploadEnabled && isCustomMlsUploadEnabled;
             isReuploadIfUploadFailsEnabled = getInputData().getBoolean(INTENT_KEY_UPLOAD_TRY_REUPLOAD, MyApplication.getPreferencesProvider().isReuploadIfUploadFailsEnabled());
@@ -129,8 +138,24 @@ public class UploaderWorker extends Worker implements IProgressListener {
             ocidApiKey = isUseSharedOpenCellIdApiKeyEnabled ? OpenCellIdUtils.getSharedApiKey() : OpenCellIdUtils.getApiKey();
             mlsApiKey = BuildConfig.MLS_API_KEY;
 
+            // finish previous upload if it was interrupted, before counting what is left
+            MeasurementsDatabase database = MeasurementsDatabase.getInstance(MyApplication.getApplication());
+            UploadJournal journal = new UploadJournal(database);
+            journal.reconcile();
+
             // get number of locations to upload
-            int locationsCount = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAllLocationsCount(true);
+            int locationsCount = database.getAllLocationsCount(true);
+            int startOffset = 0;
+            int maxPendingCount = Integer.MAX_VALUE;
+            if (isPeriodic) {
+                // upload in small parts, rest will be uploaded by next runs
+                // start at the first measurement pending for enabled targets and count only pending ones,
+                // so measurements kept for other targets don't use up the batch
+                maxPendingCount = Math.min(database.getPendingLocationsCount(isOpenCellIdUploadEnabled, isMlsUploadEnabled), PeriodicUploadScheduler.BATCH_SIZE);
+                startOffset = database.getFirstPendingLocationOffset(isOpenCellIdUploadEnabled, isMlsUploadEnabled);
+                if (maxPendingCount == 0)
+                    locationsCount = 0;
+            }
 
             // check if there is anything to upload
             if (locationsCount == 0) {
@@ -144,13 +169,44 @@ public class UploaderWorker extends Worker implements IProgressListener {
             AnalyticsStatistics startStats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
             long startTime = System.currentTimeMillis();
 
-            // calculate number of upload parts
-            int partsCount = 1;
-            if (locationsCount > LOCATIONS_PER_PART) {
-                partsCount = (int) Math.ceil(1.0 * locationsCount / LOCATIONS_PER_PART);
+            // part sizes learned during previous uploads
+            UploadPartSizeController ocidPartSizeController = new UploadPartSizeController("OCID", MyApplication.getPreferencesProvider().getOpenCellIdUploadPartSize());
+            UploadPartSizeController mlsPartSizeController = new UploadPartSizeController("MLS", MyApplication.getPreferencesProvider().getMlsUploadPartSize());
+            // failed parts are retried, target failing repeatedly is skipped to let the other one proceed
+            IClock clock = new RealClock();
+            UploadRetryPolicy retryPolicy = new UploadRetryPolicy(clock, new Random());
+            UploadSession session = new UploadSession(database, journal, retryPolicy, EventBus.getDefault(), isReuploadIfUploadFailsEnabled, this, this::isStopped);
+            if (isOpenCellIdUploadEnabled)
+                session.setOcidTarget(() -> new OcidUploadClient(ocidUploadUrl, appId, ocidApiKey, isOpenCellIdUploadCompressionEnabled), ocidPartSizeController, new CircuitBreaker("OCID", clock));
+            if (isMlsUploadEnabled)
+                session.setMlsTarget(() -> isCustomMlsUploadEnabled ? new MozillaUploadClient(customMlsUploadUrl, isCustomMlsUploadCompressionEnabled) : new MozillaUploadClient(mlsUploadUrl, mlsApiKey), mlsPartSizeController, new CircuitBreaker("MLS", clock));
+
+            UploadPartProducer producer = new UploadPartProducer(database, startOffset, locationsCount, maxPendingCount, ocidPartSizeController, mlsPartSizeController, PREPARED_PARTS_DEPTH, isOpenCellIdUploadEnabled, isMlsUploadEnabled);
+            // second target is sent in parallel on the shared client, so the part takes as long as the slower service
+            ExecutorService targetExecutor = Executors.newSingleThreadExecutor();
+            int[] succeededParts;
+            producer.start();
+            try {
+                // pending measurements are read from the first one
+                int progressMax = Math.min(locationsCount - startOffset, maxPendingCount);
+                succeededParts = session.upload(producer, startOffset, progressMax, targetExecutor);
+            } finally {
+                producer.stop();
+                targetExecutor.shutdownNow();
+            }
+            ocidUploadResult = session.getOcidUploadResult();
+            mlsUploadResult = session.getMlsUploadResult();
+            ocidSentBytes = session.getOcidSentBytes();
+            mlsSentBytes = session.getMlsSentBytes();
+            if (isOpenCellIdUploadEnabled)
+                MyApplication.getPreferencesProvider().setOpenCellIdUploadPartSize(ocidPartSizeController.getPartSize());
+            if (isMlsUploadEnabled)
+                MyApplication.getPreferencesProvider().setMlsUploadPartSize(mlsPartSizeController.getPartSize());
+
+            if (shouldRetry(succeededParts)) {
+                Timber.d("doWork(): All targets failed, retrying later, attempt %s", getRunAttemptCount());
+                return Result.retry();
             }
-
-            int[] succeededParts = upload(partsCount);
 
             // sum up results and update notification for ocid
             if (ocidUploadResult == UploadResult.PartiallySucceeded) {
@@ -173,11 +229,13 @@ public class UploaderWorker extends Worker implements IProgressListener {
                 }
             }
 
+            long endTime = System.currentTimeMillis();
+            long duration = (endTime - startTime);
+            Timber.d("doWork(): Sent %s bytes to OCID and %s bytes to MLS in %s ms", ocidSentBytes, mlsSentBytes, duration);
+
             // send stats only when succeeded
             if (ocidUploadResult == UploadResult.Success || ocidUploadResult == UploadResult.PartiallySucceeded
                     || mlsUploadResult == UploadResult.Success || mlsUploadResult == UploadResult.PartiallySucceeded) {
-                long endTime = System.currentTimeMillis();
-                long duration = (endTime - startTime);
                 String networkType = NetworkUtils.getNetworkType(MyApplication.getApplication());
                 AnalyticsStatistics endStats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
                 AnalyticsStatistics stats = new AnalyticsStatistics();
@@ -196,6 +254,11 @@ public class UploaderWorker extends Worker implements IProgressListener {
             String mlsDescription = getStringById(getDescription(mlsUploadResult));
             String mlsSummary = getStringById(R.string.uploader_result_message, mlsMessage, mlsDescription);
             String message = getStringById(R.string.uploader_result_description, ocidSummary, mlsSummary);
+            if (ocidSentBytes > 0 || mlsSentBytes > 0) {
+                String ocidSentSize = Formatter.formatShortFileSize(MyApplication.getApplication(), ocidSentBytes);
+                String mlsSentSize = Formatter.formatShortFileSize(MyApplication.getApplication(), mlsSentBytes);
+                message += "\n\n" + getStringById(R.string.uploader_result_transfer, ocidSentSize, mlsSentSize, (int) (duration / 1000));
+            }
             return Result.success(getMessageData(message));
         } catch (Exception ex) {
             Timber.e(ex, "doWork(): Uploader failed");
@@ -270,6 +333,8 @@ public class UploaderWorker extends Worker implements IProgressListener {
                 return R.string.permission_denied;
             case LimitExceeded:
                 return R.string.uploader_limit_exceeded;
+            case PayloadTooLarge:
+                return R.string.uploader_payload_too_large;
             default:
                 return R.string.unknown_error;
         }
@@ -303,238 +368,35 @@ public class UploaderWorker extends Worker implements IProgressListener {
                 return R.string.permission_uploader_denied_message;
             case LimitExceeded:
                 return R.string.uploader_limit_exceeded_description;
+            case PayloadTooLarge:
+                return R.string.uploader_payload_too_large_description;
             default:
                 return R.string.unknown_error;
         }
     }
 
-    private int[] upload(int partsCount) {
-        int ocidSucceededParts = 0, mlsSucceededParts = 0;
-        boolean continueOcidUpload = isOpenCellIdUploadEnabled;
-        boolean continueMlsUpload = isMlsUploadEnabled;
-        Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
-        int numberToUploadOcid = stats.getToUploadOcid();
-        int numberToUploadMls = stats.getToUploadMls();
-        // for each part start new upload
-        for (int i = 0; i < partsCount; i++) {
-            // check if cancelled
-            if (isStopped()) {
-                ocidUploadResult = UploadResult.Cancelled;
-                mlsUploadResult = UploadResult.Cancelled;
-                break;
-            }
-            // notify
-            int progress = (int) (100.0 * i / partsCount);
-            reportProgress(progress, PROGRESS_MAX_VALUE);
-            // prepare data starting from oldest
-            List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPartIncludingPartiallyUploaded(i * LOCATIONS_PER_PART, LOCATIONS_PER_PART);
-
-            Timber.d("upload(): Continue upload to OCID = %s, MLS = %s", continueOcidUpload, continueMlsUpload);
-
-            Map<UploadTarget, List<Measurement>> groupedMeasurements = groupByUploaded(measurements);
-            if (continueOcidUpload) {
-                List<Measurement> ocidMeasurements = groupedMeasurements.get(UploadTarget.Ocid);
-                ocidUploadResult = uploadToOcid(ocidMeasurements);
-                numberToUploadOcid -= ocidMeasurements.size();
-            }
-            if (continueMlsUpload) {
-                List<Measurement> mlsMeasurements = groupedMeasurements.get(UploadTarget.Mls);
-                mlsUploadResult = uploadToMls(mlsMeasurements);
-                numberToUploadMls -= mlsMeasurements.size();
-            }
-
-            if (ocidUploadResult == UploadResult.PartiallySucceeded)
-                ocidSucceededParts++;
-            if (mlsUploadResult == UploadResult.PartiallySucceeded)
-                mlsSucceededParts++;
-
-            continueOcidUpload &= ocidUploadResult == UploadResult.PartiallySucceeded || numberToUploadOcid > 0;
-            continueMlsUpload &= mlsUploadResult == UploadResult.PartiallySucceeded || numberToUploadMls > 0;
-
-            boolean ocidSuccessful = (ocidUploadResult == UploadResult.PartiallySucceeded);
-            boolean mlsSuccessful = (mlsUploadResult == UploadResult.PartiallySucceeded);
-
-            if (isReuploadIfUploadFailsEnabled) {
-                // all enabled succeeded
-                if ((ocidSuccessful || !isOpenCellIdUploadEnabled) && (mlsSuccessful || !isMlsUploadEnabled)) {
-                    Timber.d("upload(): Deleting measurements because OCID enabled = %s and successful = %s, MLS enabled = %s and successful = %s", isOpenCellIdUploadEnabled, ocidSuccessful, isMlsUploadEnabled, mlsSuccessful);
-                    // delete sent measurements
-                    int[] rowIds = getMeasurementIds(measurements);
-                    int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, System.currentTimeMillis(), System.currentTimeMillis());
-                    if (numberOfDeleted == 0) {
-                        ocidUploadResult = UploadResult.DeleteFailed;
-                        mlsUploadResult = UploadResult.DeleteFailed;
-                        break;
-                    }
-                } else if (ocidSuccessful && isMlsUploadEnabled) {
-                    Timber.d("upload(): Marking measurements as uploaded to OCID");
-                    // keep for mls
-                    int[] rowIds = getMeasurementIds(groupedMeasurements.get(UploadTarget.Ocid));
-                    int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, System.currentTimeMillis(), null);
-                    if (numberOfDeleted == 0) {
-                        ocidUploadResult = UploadResult.DeleteFailed;
-                        break;
-                    }
-                } else if (mlsSuccessful && isOpenCellIdUploadEnabled) {
-                    Timber.d("upload(): Marking measurements as uploaded to MLS");
-                    // keep for ocid
-                    int[] rowIds = getMeasurementIds(groupedMeasurements.get(UploadTarget.Mls));
-                    int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, null, System.currentTimeMillis());
-                    if (numberOfDeleted == 0) {
-                        mlsUploadResult = UploadResult.DeleteFailed;
-                        break;
-                    }
-                } else {
-                    Timber.d("upload(): Skipping delete because all uploads failed");
-                    // all uploads failed - measurements were not uploaded
-                }
-            } else if ((isOpenCellIdUploadEnabled && ocidSuccessful) || (isMlsUploadEnabled && mlsSuccessful)) {
-                Timber.d("upload(): Deleting measurements because OCID enabled = %s and successful = %s, MLS enabled = %s and successful = %s", isOpenCellIdUploadEnabled, ocidSuccessful, isMlsUploadEnabled, mlsSuccessful);
-                // delete sent measurements
-                int[] rowIds = getMeasurementIds(measurements);
-                int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, System.currentTimeMillis(), System.currentTimeMillis());
-                if (numberOfDeleted == 0) {
-                    ocidUploadResult = UploadResult.DeleteFailed;
-                    mlsUploadResult = UploadResult.DeleteFailed;
-                    break;
-                }
-            }
-            // broadcast part uploaded (if error not encountered earlier)
-            EventBus.getDefault().post(new PrintMainWindowEvent());
-
-            if (!continueOcidUpload && !continueMlsUpload)
-                break;
-        }
-
-        // clean anyway because it doesn't hurt
-        MeasurementsDatabase.getInstance(MyApplication.getApplication()).clearOlderUploadedPartiallyAndUploadedFully();
-
-        return new int[]{ocidSucceededParts, mlsSucceededParts};
-    }
-
-    private Map<UploadTarget, List<Measurement>> groupByUploaded(List<Measurement> measurements) {
-        Map<UploadTarget, List<Measurement>> filtered = new HashMap<>();
-        filtered.put(UploadTarget.Ocid, new ArrayList<Measurement>());
-        filtered.put(UploadTarget.Mls, new ArrayList<Measurement>());
-        if (measurements != null) {
-            for (Measurement m : measurements) {
-                if (m.getUploadedToOcidAt() == null) {
-                    filtered.get(UploadTarget.Ocid).add(m);
-                }
-                if (m.getUploadedToMlsAt() == null) {
-                    filtered.get(UploadTarget.Mls).add(m);
-                }
-            }
-        }
-        return filtered;
-    }
-
-    private int[] getMeasurementIds(List<Measurement> measurements) {
-        int j = 0;
-        int[] rowIds = new int[measurements.size()];
-        for (Measurement m : measurements) {
-            rowIds[j++] = m.getMeasurementId();
+    private boolean isPeriodicUploadNeeded() {
+        String runningTaskName = MyApplication.getBackgroundTaskName();
+        if (runningTaskName != null) {
+            Timber.d("isPeriodicUploadNeeded(): Skipping periodic upload because %s is running", runningTaskName);
+            return false;
         }
-        return rowIds;
+        int threshold = MyApplication.getPreferencesProvider().getPeriodicUploadThreshold();
+        int locationsCount = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAllLocationsCount(false);
+        Timber.d("isPeriodicUploadNeeded(): %s locations to upload, threshold %s", locationsCount, threshold);
+        return locationsCount > 0 && locationsCount >= threshold;
     }
 
-    private UploadResult uploadToOcid(List<Measurement> measurements) {
-        if (measurements.isEmpty())
-            return UploadResult.NoData;
-        StringBuilder memoryFile = new StringBuilder();
-        ICsvFormatter formatter = new CsvUploadFormatter();
-        // write measurements
-        try {
-            memoryFile.append(formatter.formatHeader());
-            for (Measurement m : measurements) {
-                memoryFile.append(formatter.formatEntry(m));
-            }
-        } catch (Exception ex) {
-            // this should never happen for in-memory writes
-            Timber.e(ex, "uploadToOcid(): Error while generating file");
-            MyApplication.handleSilentException(ex);
-            return UploadResult.Failure;
-        }
-        // get content
-        String csvContent = memoryFile.toString();
-        // send request
-        try {
-            IUploadClient client = new OcidUploadClient(ocidUploadUrl, appId, ocidApiKey);
-            RequestResult response = client.uploadMeasurements(csvContent);
-            Timber.d("uploadToOcid(): Server response: %s", response);
-            // check whether it makes sense to continue
-            if (response == RequestResult.ConfigurationError) {
-                return UploadResult.InvalidData;
-            } else if (response == RequestResult.ServerError) {
-                return UploadResult.ServerError;
-            } else if (response == RequestResult.ConnectionError) {
-                return UploadResult.ConnectionError;
-            } else if (response == RequestResult.Failure) {
-                return UploadResult.Failure;
-            } else if (response == RequestResult.InvalidApiKey) {
-                return UploadResult.InvalidApiKey;
-            } else if (response == RequestResult.Success) {
-                Timber.d("uploadToOcid(): Uploaded %s measurements", measurements.size());
-                return UploadResult.PartiallySucceeded;
-            } else {
-                throw new UnsupportedOperationException(String.format("Unsupported upload result %s", response));
-            }
-        } catch (SecurityException ex) {
-            Timber.e(ex, "uploadToOcid(): Internet permission is denied");
-            return UploadResult.PermissionDenied;
-        }
-    }
-
-    private UploadResult uploadToMls(List<Measurement> measurements) {
-        if (measurements.isEmpty())
-            return UploadResult.NoData;
-        StringBuilder memoryFile = new StringBuilder();
-        IJsonFormatter formatter = new JsonMozillaUploadFormatter();
-        // write measurements
-        try {
-            memoryFile.append(formatter.formatList(measurements));
-        } catch (Exception ex) {
-            // this should never happen for in-memory writes
-            Timber.e(ex, "uploadToMls(): Error while generating file");
-            MyApplication.handleSilentException(ex);
-            return UploadResult.Failure;
-        }
-        // get content
-        String jsonContent = memoryFile.toString();
-        // send request
-        try {
-            IUploadClient client;
-            if (isCustomMlsUploadEnabled)
-                client = new MozillaUploadClient(customMlsUploadUrl);
-            else
-                client = new MozillaUploadClient(mlsUploadUrl, mlsApiKey);
-            RequestResult response = client.uploadMeasurements(jsonContent);
-            Timber.d("uploadToMls(): Server response: %s", response);
-            // check whether it makes sense to continue
-            if (response == RequestResult.ConfigurationError) {
-                return UploadResult.InvalidData;
-            } else if (response == RequestResult.ServerError) {
-                return UploadResult.ServerError;
-            } else if (response == RequestResult.ConnectionError) {
-                return UploadResult.ConnectionError;
-            } else if (response == RequestResult.LimitExceeded) {
-                return UploadResult.LimitExceeded;
-            } else if (response == RequestResult.Failure) {
-                return UploadResult.Failure;
-            } else if (response == RequestResult.Success) {
-                Timber.d("uploadToMls(): Uploaded %s measurements", measurements.size());
-                return UploadResult.PartiallySucceeded;
-            } else {
-                throw new UnsupportedOperationException(String.format("Unsupported upload result %s", response));
-            }
-        } catch (SecurityException ex) {
-            Timber.e(ex, "uploadToMls(): Internet permission is denied");
-            return UploadResult.PermissionDenied;
-        }
+    private boolean shouldRetry(int[] succeededParts) {
+        // user waits for the result in the app
+        if (startIntentSource == IntentSource.User || getRunAttemptCount() + 1 >= MAX_RUN_ATTEMPTS)
+            return false;
+        boolean ocidFailed = !isOpenCellIdUploadEnabled || (succeededParts[0] == 0 && isTemporaryFailure(ocidUploadResult));
+        boolean mlsFailed = !isMlsUploadEnabled || (succeededParts[1] == 0 && isTemporaryFailure(mlsUploadResult));
+        return (isOpenCellIdUploadEnabled || isMlsUploadEnabled) && ocidFailed && mlsFailed;
     }
 
-    private enum UploadTarget {
-        Ocid,
-        Mls
+    private boolean isTemporaryFailure(UploadResult uploadResult) {
+        return uploadResult == UploadResult.ConnectionError || uploadResult == UploadResult.ServerError;
     }
 }
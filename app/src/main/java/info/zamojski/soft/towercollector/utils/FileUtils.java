@@ -22,6 +22,7 @@ public class FileUtils {
         put("gpx", "application/gpx+xml");
         put("kml", "application/vnd.google-earth.kml+xml");
         put("kmz", "application/vnd.google-earth.kmz");
+        put("tcc", "application/octet-stream");
         put("zip", "application/zip");
         put("gz", "application/gzip");
         put("xml", "application/xml");
@@ -73,7 +74,7 @@ public class FileUtils {
             return getFileMimeType(paths[0]);
         for (String path : paths) {
             String fileExtension = getFileExtension(path).toLowerCase();
-            if ("gz".equals(fileExtension) || "zip".equals(fileExtension) || "kmz".equals(fileExtension))
+            if ("gz".equals(fileExtension) || "zip".equals(fileExtension) || "kmz".equals(fileExtension) || "tcc".equals(fileExtension))
                 return "application/octet-stream";
         }
         return "text/*";
@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.utils;
+
+public class GeoUtils {
+
+    private static final double EARTH_MEAN_RADIUS = 6371008.8; // in m
+    private static final int COS_LATITUDE_CELLS_PER_DEGREE = 10;
+    private static final double[] COS_LATITUDE = new double[180 * COS_LATITUDE_CELLS_PER_DEGREE + 1];
+    // above this span equirectangular projection error grows quickly, so haversine is used instead
+    private static final double MAX_APPROXIMATION_SPAN = 1.0; // in degrees
+
+    static {
+        for (int i = 0; i < COS_LATITUDE.length; i++) {
+            double latitude = (double) i / COS_LATITUDE_CELLS_PER_DEGREE - 90.0;
+            COS_LATITUDE[i] = Math.cos(Math.toRadians(latitude));
+        }
+    }
+
+    /**
+     * Returns distance in meters between two points using equirectangular approximation with cosine of latitude
+     * taken from a 0.1 degree lookup table. For points closer than 1 degree the result differs from haversine by
+     * less than 0.5% up to 80 degrees of latitude, the spherical Earth model adds up to another 0.5% compared to
+     * {@link android.location.Location#distanceTo}. This is well within the tolerance of distance conditions.
+     * Farther points fall back to {@link #getHaversineDistance}.
+     */
+    public static float getApproximateDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double latitudeDiff = latitude2 - latitude1;
+        double longitudeDiff = normalizeLongitudeDiff(longitude2 - longitude1);
+        if (Math.abs(latitudeDiff) > MAX_APPROXIMATION_SPAN || Math.abs(longitudeDiff) > MAX_APPROXIMATION_SPAN) {
+            return getHaversineDistance(latitude1, longitude1, latitude2, longitude2);
+        }
+        double x = Math.toRadians(longitudeDiff) * getCosLatitude((latitude1 + latitude2) / 2.0);
+        double y = Math.toRadians(latitudeDiff);
+        return (float) (EARTH_MEAN_RADIUS * Math.sqrt(x * x + y * y));
+    }
+
+    /**
+     * Returns great-circle distance in meters between two points on a spherical Earth.
+     */
+    public static float getHaversineDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinLatitudeDiff = Math.sin(Math.toRadians(latitude2 - latitude1) / 2.0);
+        double sinLongitudeDiff = Math.sin(Math.toRadians(longitude2 - longitude1) / 2.0);
+        double a = sinLatitudeDiff * sinLatitudeDiff
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * sinLongitudeDiff * sinLongitudeDiff;
+        return (float) (2.0 * EARTH_MEAN_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a))));
+    }
+
+    private static double getCosLatitude(double latitude) {
+        int index = (int) Math.round((latitude + 90.0) * COS_LATITUDE_CELLS_PER_DEGREE);
+        if (index < 0)
+            index = 0;
+        else if (index >= COS_LATITUDE.length)
+            index = COS_LATITUDE.length - 1;
+        return COS_LATITUDE[index];
+    }
+
+    private static double normalizeLongitudeDiff(double longitudeDiff) {
+        if (longitudeDiff > 180.0)
+            return longitudeDiff - 360.0;
+        if (longitudeDiff < -180.0)
+            return longitudeDiff + 360.0;
+        return longitudeDiff;
+    }
+}
@@ -113,6 +113,19 @@ public class StorageUtils {
         return storageDirectory != null && storageDirectory.canWrite();
     }
 
+    /**
+     * Returns existing file in the storage or null if it doesn't exist.
+     */
+    public static DocumentFile findFile(Uri storageUri, String fileName) {
+        if (storageUri == null || fileName == null)
+            return null;
+        DocumentFile storageDirectory = DocumentFile.fromTreeUri(MyApplication.getApplication(), storageUri);
+        if (storageDirectory == null)
+            return null;
+        DocumentFile file = storageDirectory.findFile(fileName);
+        return (file != null && file.exists() ? file : null);
+    }
+
     private static boolean canMigrateLegacyStorage() {
         // only if storage permission granted
         boolean hasStoragePermission = PermissionUtils.hasPermissions(MyApplication.getApplication(), Manifest.permission.WRITE_EXTERNAL_STORAGE, Manifest.permission.READ_EXTERNAL_STORAGE);
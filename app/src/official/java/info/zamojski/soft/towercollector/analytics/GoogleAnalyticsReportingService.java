@@ -60,6 +60,8 @@ public class GoogleAnalyticsReportingService implements IAnalyticsReportingServi
         bundle.putInt(Parameter.CollectorApiVersion, apiVersion);
         bundle.putInt(Parameter.Locations, stats.getLocations());
         bundle.putInt(Parameter.Cells, stats.getCells());
+        bundle.putInt(Parameter.CheckedLocations, stats.getCheckedLocations());
+        bundle.putInt(Parameter.SuppressedLocations, stats.getSuppressedLocations());
         bundle.putLong(Parameter.Duration, duration);
         for (Map.Entry<NetworkGroup, Integer> entry : collectedCellTypes.entrySet()) {
             bundle.putInt(Parameter.NetworkType + "_" + entry.getKey(), entry.getValue());
@@ -0,0 +1,15 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import java.util.Collections;
+import java.util.List;
+
+public class BenchmarkFactory {
+    public List<Benchmark> createBenchmarks() {
+        // benchmarks are not shipped in release builds
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,304 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector;
+
+import android.location.Location;
+import android.telephony.CellInfo;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import cz.mroczis.netmonster.core.model.cell.ICell;
+import info.zamojski.soft.towercollector.events.Api17PlusMeasurementProcessingEvent;
+import info.zamojski.soft.towercollector.events.NetMonsterMeasurementProcessingEvent;
+import info.zamojski.soft.towercollector.uploader.FakeClock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class MeasurementUpdaterTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 500;
+    private static final int SUBSCRIPTIONS = 3;
+    private static final int FIXES = 20;
+    private static final long RANDOM_SEED = 20130417;
+
+    private final List<Object> events = Collections.synchronizedList(new ArrayList<>());
+
+    // position of every value set by the test, encoded as thread * ITERATIONS + iteration
+    private final Map<Object, Integer> positions = new IdentityHashMap<>();
+
+    private FakeClock clock;
+    private MeasurementUpdater updater;
+
+    @Before
+    public void setUp() {
+        EventBus eventBus = EventBus.builder().build();
+        eventBus.register(this);
+        clock = new FakeClock(0);
+        updater = new MeasurementUpdater(eventBus, clock);
+    }
+
+    @Subscribe
+    public void onEvent(Api17PlusMeasurementProcessingEvent event) {
+        events.add(event);
+    }
+
+    @Subscribe
+    public void onEvent(NetMonsterMeasurementProcessingEvent event) {
+        events.add(event);
+    }
+
+    @Test
+    public void keepsAllUpdatesFromConcurrentThreads() throws Exception {
+        Location[][] locations = new Location[THREADS][ITERATIONS];
+        CellInfo[][] cellInfo = new CellInfo[THREADS][ITERATIONS];
+        ICell[][] netMonsterCells = new ICell[THREADS][ITERATIONS];
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < ITERATIONS; i++) {
+                int position = thread * ITERATIONS + i;
+                locations[thread][i] = mock(Location.class);
+                positions.put(locations[thread][i], position);
+                cellInfo[thread][i] = mock(CellInfo.class);
+                positions.put(cellInfo[thread][i], position);
+                netMonsterCells[thread][i] = mock(ICell.class);
+                positions.put(netMonsterCells[thread][i], position);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int subscriptionId = thread;
+                Location[] threadLocations = locations[thread];
+                CellInfo[] threadCellInfo = cellInfo[thread];
+                ICell[] threadNetMonsterCells = netMonsterCells[thread];
+                futures.add(executor.submit(() -> {
+                    startLatch.await();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        updater.setLastLocation(threadLocations[i], i);
+                        updater.setLastCellInfo(subscriptionId, Collections.singletonList(threadCellInfo[i]));
+                        updater.setLastNetMonsterCell(Collections.singletonList(threadNetMonsterCells[i]));
+                    }
+                    return null;
+                }));
+            }
+            startLatch.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // events of the same thread are never processed in reverse order
+        assertOrdered(events);
+        // last event comes from the final snapshot
+        NetMonsterMeasurementProcessingEvent lastNetMonsterEvent = (NetMonsterMeasurementProcessingEvent) events.get(events.size() - 1);
+        assertLastOfThread(lastNetMonsterEvent.getLastLocation());
+        assertLastOfThread(lastNetMonsterEvent.getLastCells().get(0));
+
+        // without NetMonster cells the final snapshot is posted as merged cells of all subscriptions
+        updater.setLastNetMonsterCell(Collections.emptyList());
+        Api17PlusMeasurementProcessingEvent lastEvent = (Api17PlusMeasurementProcessingEvent) events.get(events.size() - 1);
+        assertSame(lastNetMonsterEvent.getLastLocation(), lastEvent.getLastLocation());
+        // no subscription lost its last update
+        assertEquals(THREADS, lastEvent.getLastCellInfo().size());
+        for (int thread = 0; thread < THREADS; thread++) {
+            CellInfo lastCellInfo = cellInfo[thread][ITERATIONS - 1];
+            assertTrue("Subscription " + thread, lastEvent.getLastCellInfo().contains(lastCellInfo));
+            assertEquals(Integer.valueOf(thread), lastEvent.getSubscriptionIds().get(lastCellInfo));
+        }
+    }
+
+    @Test
+    public void postsOnlyWhenReadyToProcess() {
+        CellInfo cell = mock(CellInfo.class);
+        updater.setLastCellInfo(1, Collections.singletonList(cell));
+        updater.setLastNetMonsterCell(Collections.singletonList(mock(ICell.class)));
+        assertEquals(0, events.size());
+        Location location = mock(Location.class);
+        updater.setLastLocation(location, 0);
+        assertEquals(1, events.size());
+        assertTrue(events.get(0) instanceof NetMonsterMeasurementProcessingEvent);
+        updater.setLastNetMonsterCell(Collections.emptyList());
+        assertEquals(2, events.size());
+        Api17PlusMeasurementProcessingEvent event = (Api17PlusMeasurementProcessingEvent) events.get(1);
+        assertSame(location, event.getLastLocation());
+        assertEquals(Collections.singletonList(cell), event.getLastCellInfo());
+    }
+
+    @Test
+    public void mergesSubscriptionsIntoOneEventPerFix() {
+        Random random = new Random(RANDOM_SEED);
+        Map<Integer, List<CellInfo>> cellInfoBySubscription = new LinkedHashMap<>();
+        for (int subscriptionId = 1; subscriptionId <= SUBSCRIPTIONS; subscriptionId++) {
+            cellInfoBySubscription.put(subscriptionId, Collections.singletonList(mock(CellInfo.class)));
+        }
+        updater.setLastLocation(mock(Location.class), 0);
+        // periodic refresh reports all subscriptions at once
+        updater.setLastCellInfo(cellInfoBySubscription);
+        assertEquals(1, events.size());
+        assertEquals(SUBSCRIPTIONS, ((Api17PlusMeasurementProcessingEvent) events.get(0)).getLastCellInfo().size());
+        for (int fix = 1; fix <= FIXES; fix++) {
+            Location location = mock(Location.class);
+            updater.setLastLocation(location, fix);
+            assertEquals(2 * fix, events.size());
+            // every subscription reports in its own callback, in random order
+            List<Integer> subscriptionIds = new ArrayList<>(cellInfoBySubscription.keySet());
+            Collections.shuffle(subscriptionIds, random);
+            Map<CellInfo, Integer> expectedSubscriptionIds = new IdentityHashMap<>();
+            for (int subscriptionId : subscriptionIds) {
+                CellInfo cell = mock(CellInfo.class);
+                expectedSubscriptionIds.put(cell, subscriptionId);
+                updater.setLastCellInfo(subscriptionId, Collections.singletonList(cell));
+            }
+            // one merged event instead of one per subscription
+            assertEquals(2 * fix + 1, events.size());
+            Api17PlusMeasurementProcessingEvent event = (Api17PlusMeasurementProcessingEvent) events.get(events.size() - 1);
+            assertSame(location, event.getLastLocation());
+            assertEquals(SUBSCRIPTIONS, event.getLastCellInfo().size());
+            for (CellInfo cell : event.getLastCellInfo()) {
+                assertEquals(expectedSubscriptionIds.get(cell), event.getSubscriptionIds().get(cell));
+            }
+        }
+    }
+
+    @Test
+    public void waitsForAllSubscriptionsToReport() {
+        Map<Integer, List<CellInfo>> cellInfoBySubscription = new LinkedHashMap<>();
+        cellInfoBySubscription.put(1, Collections.singletonList(mock(CellInfo.class)));
+        cellInfoBySubscription.put(2, Collections.singletonList(mock(CellInfo.class)));
+        updater.setLastCellInfo(cellInfoBySubscription);
+        updater.setLastLocation(mock(Location.class), 0);
+        assertEquals(1, events.size());
+        // the same subscription reporting again does not complete the measurement
+        updater.setLastCellInfo(1, Collections.singletonList(mock(CellInfo.class)));
+        CellInfo lastCell = mock(CellInfo.class);
+        updater.setLastCellInfo(1, Collections.singletonList(lastCell));
+        assertEquals(1, events.size());
+        CellInfo otherCell = mock(CellInfo.class);
+        updater.setLastCellInfo(2, Collections.singletonList(otherCell));
+        assertEquals(2, events.size());
+        Api17PlusMeasurementProcessingEvent event = (Api17PlusMeasurementProcessingEvent) events.get(1);
+        assertEquals(Arrays.asList(lastCell, otherCell), event.getLastCellInfo());
+    }
+
+    @Test
+    public void completesRoundWithoutSubscriptionWhichStoppedReporting() {
+        Map<Integer, List<CellInfo>> cellInfoBySubscription = new LinkedHashMap<>();
+        cellInfoBySubscription.put(1, Collections.singletonList(mock(CellInfo.class)));
+        cellInfoBySubscription.put(2, Collections.singletonList(mock(CellInfo.class)));
+        updater.setLastCellInfo(cellInfoBySubscription);
+        updater.setLastLocation(mock(Location.class), 0);
+        assertEquals(1, events.size());
+        // subscription 2 stops reporting, round waits for it as long as its cells are up to date
+        clock.advance(MeasurementUpdater.MAX_CELL_INFO_LANE_AGE / 2);
+        updater.setLastCellInfo(1, Collections.singletonList(mock(CellInfo.class)));
+        assertEquals(1, events.size());
+        clock.advance(MeasurementUpdater.MAX_CELL_INFO_LANE_AGE / 2 + 1);
+        CellInfo lastCell = mock(CellInfo.class);
+        updater.setLastCellInfo(1, Collections.singletonList(lastCell));
+        assertEquals(2, events.size());
+        Api17PlusMeasurementProcessingEvent event = (Api17PlusMeasurementProcessingEvent) events.get(1);
+        assertEquals(Collections.singletonList(lastCell), event.getLastCellInfo());
+        assertEquals(Integer.valueOf(1), event.getSubscriptionIds().get(lastCell));
+        // next rounds complete without it too
+        CellInfo nextCell = mock(CellInfo.class);
+        updater.setLastCellInfo(1, Collections.singletonList(nextCell));
+        assertEquals(3, events.size());
+        assertEquals(Collections.singletonList(nextCell), ((Api17PlusMeasurementProcessingEvent) events.get(2)).getLastCellInfo());
+    }
+
+    @Test(timeout = 10000)
+    public void doesNotBlockUpdatesWhileEventIsProcessed() throws Exception {
+        EventBus eventBus = EventBus.builder().build();
+        BlockingSubscriber subscriber = new BlockingSubscriber();
+        eventBus.register(subscriber);
+        updater = new MeasurementUpdater(eventBus);
+        updater.setLastNetMonsterCell(Collections.singletonList(mock(ICell.class)));
+        Location firstLocation = mock(Location.class);
+        Location secondLocation = mock(Location.class);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> future = executor.submit(() -> updater.setLastLocation(firstLocation, 0));
+            assertTrue(subscriber.processingLatch.await(5, TimeUnit.SECONDS));
+            // returns while the first event is still processed on the other thread
+            updater.setLastLocation(secondLocation, 1);
+            assertEquals(1, subscriber.events.size());
+            subscriber.releaseLatch.countDown();
+            future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, subscriber.events.size());
+        assertSame(firstLocation, subscriber.events.get(0).getLastLocation());
+        assertSame(secondLocation, subscriber.events.get(1).getLastLocation());
+    }
+
+    private void assertOrdered(List<Object> events) {
+        int[] lastLocationPositions = new int[THREADS];
+        int[] lastCellPositions = new int[THREADS];
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i) instanceof NetMonsterMeasurementProcessingEvent) {
+                NetMonsterMeasurementProcessingEvent event = (NetMonsterMeasurementProcessingEvent) events.get(i);
+                assertNewer("Event " + i + " location", lastLocationPositions, event.getLastLocation());
+                assertNewer("Event " + i + " cells", lastCellPositions, event.getLastCells().get(0));
+            } else {
+                // cells are merged before the first NetMonster cells are set
+                Api17PlusMeasurementProcessingEvent event = (Api17PlusMeasurementProcessingEvent) events.get(i);
+                assertNewer("Event " + i + " location", lastLocationPositions, event.getLastLocation());
+            }
+        }
+    }
+
+    private void assertNewer(String message, int[] lastPositions, Object value) {
+        Integer position = positions.get(value);
+        assertNotNull(message, position);
+        int thread = position / ITERATIONS;
+        int iteration = position % ITERATIONS;
+        assertTrue(message + " of thread " + thread + " went back from " + lastPositions[thread] + " to " + iteration, iteration >= lastPositions[thread]);
+        lastPositions[thread] = iteration;
+    }
+
+    private void assertLastOfThread(Object value) {
+        assertEquals(ITERATIONS - 1, positions.get(value) % ITERATIONS);
+    }
+
+    public static class BlockingSubscriber {
+
+        private final List<NetMonsterMeasurementProcessingEvent> events = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch processingLatch = new CountDownLatch(1);
+        private final CountDownLatch releaseLatch = new CountDownLatch(1);
+
+        @Subscribe
+        public void onEvent(NetMonsterMeasurementProcessingEvent event) throws InterruptedException {
+            events.add(event);
+            processingLatch.countDown();
+            releaseLatch.await();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector;
+
+import android.telephony.CellInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.collector.converters.CellIdentityConverter;
+import info.zamojski.soft.towercollector.model.Cell;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SubscriptionCellInfoFilterTest {
+
+    private CellIdentityConverter cellIdentityConverter;
+    private SubscriptionCellInfoFilter filter;
+
+    private CellInfo cell1;
+    private CellInfo neighboringCell1;
+    private CellInfo cell2;
+    private CellInfo unknownOperatorCell;
+    private List<CellInfo> allCellInfo;
+
+    @Before
+    public void setUp() {
+        cellIdentityConverter = mock(CellIdentityConverter.class);
+        filter = new SubscriptionCellInfoFilter(cellIdentityConverter);
+        cell1 = createCell(260, 6);
+        neighboringCell1 = createCell(260, 6);
+        cell2 = createCell(260, 1);
+        unknownOperatorCell = createCell(Cell.UNKNOWN_CID, Cell.UNKNOWN_CID);
+        // returned by getAllCellInfo of every subscription
+        allCellInfo = Arrays.asList(cell1, cell2, unknownOperatorCell, neighboringCell1, null);
+    }
+
+    @Test
+    public void keepsCellsOfNetworkOperator() {
+        assertEquals(Arrays.asList(cell1, unknownOperatorCell, neighboringCell1), filter.filter(allCellInfo, "26006", true));
+        assertEquals(Collections.singletonList(cell2), filter.filter(allCellInfo, "26001", false));
+    }
+
+    @Test
+    public void keepsOnlyUnknownOperatorCellsWhenNotRegistered() {
+        assertEquals(Collections.singletonList(unknownOperatorCell), filter.filter(allCellInfo, "", true));
+        assertEquals(Collections.emptyList(), filter.filter(allCellInfo, null, false));
+    }
+
+    private CellInfo createCell(int mcc, int mnc) {
+        CellInfo cellInfo = mock(CellInfo.class);
+        Cell cell = new Cell();
+        cell.setLteCellInfo(mcc, mnc, 49101, 26888192, 172);
+        when(cellIdentityConverter.convert(cellInfo)).thenReturn(cell);
+        return cellInfo;
+    }
+}
@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector.parsers;
+
+import android.location.Location;
+import android.telephony.CellInfo;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import info.zamojski.soft.towercollector.collector.MeasurementUpdater;
+import info.zamojski.soft.towercollector.collector.converters.CellIdentityConverter;
+import info.zamojski.soft.towercollector.events.Api17PlusMeasurementProcessingEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class Api17PlusMeasurementParserTest {
+
+    private static final int SUBSCRIPTION_1 = 1;
+    private static final int SUBSCRIPTION_2 = 2;
+
+    private final List<Api17PlusMeasurementProcessingEvent> events = new ArrayList<>();
+
+    private CellIdentityConverter cellIdentityConverter;
+    private Api17PlusMeasurementParser parser;
+
+    @Before
+    public void setUp() {
+        cellIdentityConverter = mock(CellIdentityConverter.class);
+        parser = new Api17PlusMeasurementParser(null, null, null, null, cellIdentityConverter, null, null, true);
+    }
+
+    @Subscribe
+    public void onEvent(Api17PlusMeasurementProcessingEvent event) {
+        events.add(event);
+    }
+
+    @Test
+    public void tagsCellsReportedByManySubscriptionsWithRegisteredSubscription() {
+        // both radios see the cell registered by the other one as a neighbor
+        CellInfo registeredCell1 = createCell("260_1_100_1", true);
+        CellInfo neighboringCell1 = createCell("260_6_200_2", false);
+        CellInfo registeredCell2 = createCell("260_6_200_2", true);
+        CellInfo neighboringCell2 = createCell("260_1_100_1", false);
+        CellInfo otherNeighboringCell = createCell("260_1_100_3", false);
+        Map<Integer, List<CellInfo>> cellInfoBySubscription = new LinkedHashMap<>();
+        cellInfoBySubscription.put(SUBSCRIPTION_1, Arrays.asList(registeredCell1, neighboringCell1, otherNeighboringCell));
+        cellInfoBySubscription.put(SUBSCRIPTION_2, Arrays.asList(neighboringCell2, registeredCell2));
+        Api17PlusMeasurementProcessingEvent event = process(cellInfoBySubscription);
+
+        List<CellInfo> cells = event.getLastCellInfo();
+        parser.removeDuplicatedCells(cells);
+
+        assertEquals(Arrays.asList(registeredCell1, otherNeighboringCell, registeredCell2), cells);
+        assertEquals(Integer.valueOf(SUBSCRIPTION_1), event.getSubscriptionIds().get(registeredCell1));
+        assertEquals(Integer.valueOf(SUBSCRIPTION_1), event.getSubscriptionIds().get(otherNeighboringCell));
+        assertEquals(Integer.valueOf(SUBSCRIPTION_2), event.getSubscriptionIds().get(registeredCell2));
+    }
+
+    @Test
+    public void keepsFirstOfEqualDuplicatedCells() {
+        // the same neighbor reported by both radios
+        CellInfo registeredCell1 = createCell("260_1_100_1", true);
+        CellInfo registeredCell2 = createCell("260_6_200_2", true);
+        CellInfo neighboringCell1 = createCell("260_3_300_3", false);
+        CellInfo neighboringCell2 = createCell("260_3_300_3", false);
+        Map<Integer, List<CellInfo>> cellInfoBySubscription = new LinkedHashMap<>();
+        cellInfoBySubscription.put(SUBSCRIPTION_1, Arrays.asList(registeredCell1, neighboringCell1));
+        cellInfoBySubscription.put(SUBSCRIPTION_2, Arrays.asList(registeredCell2, neighboringCell2));
+        Api17PlusMeasurementProcessingEvent event = process(cellInfoBySubscription);
+
+        List<CellInfo> cells = event.getLastCellInfo();
+        parser.removeDuplicatedCells(cells);
+
+        assertEquals(Arrays.asList(registeredCell1, neighboringCell1, registeredCell2), cells);
+        assertEquals(Integer.valueOf(SUBSCRIPTION_1), event.getSubscriptionIds().get(neighboringCell1));
+        assertEquals(Integer.valueOf(SUBSCRIPTION_2), event.getSubscriptionIds().get(registeredCell2));
+    }
+
+    private Api17PlusMeasurementProcessingEvent process(Map<Integer, List<CellInfo>> cellInfoBySubscription) {
+        EventBus eventBus = EventBus.builder().build();
+        eventBus.register(this);
+        MeasurementUpdater updater = new MeasurementUpdater(eventBus);
+        updater.setLastLocation(mock(Location.class), 0);
+        updater.setLastCellInfo(cellInfoBySubscription);
+        assertEquals(1, events.size());
+        return events.get(0);
+    }
+
+    private CellInfo createCell(String key, boolean registered) {
+        CellInfo cell = mock(CellInfo.class);
+        when(cell.isRegistered()).thenReturn(registered);
+        when(cellIdentityConverter.createCellKey(cell)).thenReturn(key);
+        return cell;
+    }
+}
@@ -0,0 +1,125 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector.suppressors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NearDuplicateMeasurementSuppressorTest {
+
+    private static final double LATITUDE = 52.2297;
+    private static final double LONGITUDE = 21.0122;
+    private static final float ACCURACY = 20; // in meters
+    // about 5.5 m and 22 m to the north
+    private static final double SMALL_LATITUDE_SHIFT = 0.00005;
+    private static final double ACCURACY_LATITUDE_SHIFT = 0.0002;
+
+    private static final long SERVING_CID = 26888192;
+    private static final long NEIGHBORING_CID = 26888193;
+    private static final long OTHER_NEIGHBORING_CID = 26888194;
+
+    private NearDuplicateMeasurementSuppressor suppressor;
+
+    @Before
+    public void setUp() {
+        suppressor = new NearDuplicateMeasurementSuppressor();
+        suppressor.onSaved(createMeasurement(LATITUDE, -80, -95, NEIGHBORING_CID));
+    }
+
+    @Test
+    public void suppressesIdenticalCellsWithSignalChangeUpToThreshold() {
+        assertTrue(suppressor.isSuppressed(createMeasurement(LATITUDE, -80, -95, NEIGHBORING_CID)));
+        assertTrue(suppressor.isSuppressed(createMeasurement(LATITUDE, -83, -92, NEIGHBORING_CID)));
+        assertTrue(suppressor.isSuppressed(createMeasurement(LATITUDE + SMALL_LATITUDE_SHIFT, -77, -98, NEIGHBORING_CID)));
+    }
+
+    @Test
+    public void suppressesCellsReportedInDifferentOrder() {
+        Measurement measurement = new Measurement();
+        measurement.setLatitude(LATITUDE);
+        measurement.setLongitude(LONGITUDE);
+        measurement.setGpsAccuracy(ACCURACY);
+        measurement.addCell(createCell(NEIGHBORING_CID, true, -95));
+        measurement.addCell(createCell(SERVING_CID, false, -80));
+        assertTrue(suppressor.isSuppressed(measurement));
+    }
+
+    @Test
+    public void doesNotSuppressSignalChangeAboveThreshold() {
+        assertFalse(suppressor.isSuppressed(createMeasurement(LATITUDE, -84, -95, NEIGHBORING_CID)));
+        assertFalse(suppressor.isSuppressed(createMeasurement(LATITUDE, -80, -99, NEIGHBORING_CID)));
+        assertFalse(suppressor.isSuppressed(createMeasurement(LATITUDE, Cell.UNKNOWN_SIGNAL, -95, NEIGHBORING_CID)));
+    }
+
+    @Test
+    public void doesNotSuppressDifferentNeighboringCells() {
+        assertFalse(suppressor.isSuppressed(createMeasurement(LATITUDE, -80, -95, OTHER_NEIGHBORING_CID)));
+        Measurement measurement = createMeasurement(LATITUDE, -80, -95, NEIGHBORING_CID);
+        measurement.addCell(createCell(OTHER_NEIGHBORING_CID, true, -101));
+        assertFalse(suppressor.isSuppressed(measurement));
+    }
+
+    @Test
+    public void doesNotSuppressMovementOfAtLeastAccuracy() {
+        assertFalse(suppressor.isSuppressed(createMeasurement(LATITUDE + ACCURACY_LATITUDE_SHIFT, -80, -95, NEIGHBORING_CID)));
+        assertFalse(suppressor.isSuppressed(createMeasurement(LATITUDE - ACCURACY_LATITUDE_SHIFT, -80, -95, NEIGHBORING_CID)));
+    }
+
+    @Test
+    public void evictsOldestFingerprintWhenHistoryIsFull() {
+        for (int i = 1; i < NearDuplicateMeasurementSuppressor.DEFAULT_HISTORY_SIZE; i++) {
+            suppressor.onSaved(createMeasurement(LATITUDE, -80, -95, OTHER_NEIGHBORING_CID + i));
+        }
+        // all fingerprints are still kept
+        assertTrue(suppressor.isSuppressed(createMeasurement(LATITUDE, -80, -95, NEIGHBORING_CID)));
+        suppressor.onSaved(createMeasurement(LATITUDE, -80, -95, OTHER_NEIGHBORING_CID));
+        // the first one is replaced by the last one
+        assertFalse(suppressor.isSuppressed(createMeasurement(LATITUDE, -80, -95, NEIGHBORING_CID)));
+        for (int i = 1; i < NearDuplicateMeasurementSuppressor.DEFAULT_HISTORY_SIZE; i++) {
+            assertTrue(suppressor.isSuppressed(createMeasurement(LATITUDE, -80, -95, OTHER_NEIGHBORING_CID + i)));
+        }
+        assertTrue(suppressor.isSuppressed(createMeasurement(LATITUDE, -80, -95, OTHER_NEIGHBORING_CID)));
+    }
+
+    @Test
+    public void countsCheckedAndSuppressedMeasurements() {
+        assertEquals(0, suppressor.getCheckedCount());
+        assertEquals(0, suppressor.getSuppressedCount());
+        suppressor.isSuppressed(createMeasurement(LATITUDE, -81, -95, NEIGHBORING_CID));
+        suppressor.isSuppressed(createMeasurement(LATITUDE, -90, -95, NEIGHBORING_CID));
+        suppressor.isSuppressed(createMeasurement(LATITUDE, -80, -94, NEIGHBORING_CID));
+        assertEquals(3, suppressor.getCheckedCount());
+        assertEquals(2, suppressor.getSuppressedCount());
+        // saving does not count
+        suppressor.onSaved(createMeasurement(LATITUDE, -90, -95, NEIGHBORING_CID));
+        assertEquals(3, suppressor.getCheckedCount());
+        assertEquals(2, suppressor.getSuppressedCount());
+    }
+
+    private static Measurement createMeasurement(double latitude, int servingDbm, int neighboringDbm, long neighboringCid) {
+        Measurement measurement = new Measurement();
+        measurement.setLatitude(latitude);
+        measurement.setLongitude(LONGITUDE);
+        measurement.setGpsAccuracy(ACCURACY);
+        measurement.addCell(createCell(SERVING_CID, false, servingDbm));
+        measurement.addCell(createCell(neighboringCid, true, neighboringDbm));
+        return measurement;
+    }
+
+    private static Cell createCell(long cid, boolean neighboring, int dbm) {
+        Cell cell = new Cell();
+        cell.setLteCellInfo(260, 6, 49101, cid, 172);
+        cell.setNeighboring(neighboring);
+        cell.setDbm(dbm);
+        return cell;
+    }
+}
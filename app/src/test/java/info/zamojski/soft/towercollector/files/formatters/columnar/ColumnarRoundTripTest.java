@@ -0,0 +1,214 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.columnar;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import info.zamojski.soft.towercollector.dev.MeasurementBuilder;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.MeasurementFixtures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes measurements with {@link ColumnarWriter} and checks that {@link ColumnarReader} returns them
+ * unchanged with precision of the format.
+ */
+public class ColumnarRoundTripTest {
+
+    private static final long RANDOM_SEED = 20130417;
+    private static final String DEVICE_NAME = "Zażółć Gęślą 5G";
+
+    @Test
+    public void roundTripsAllNetworkTypes() throws IOException {
+        List<Measurement> measurements = MeasurementFixtures.createMeasurements();
+        int[] rowGroupSizes = {1, 7, 100, ColumnarWriter.DEFAULT_MEASUREMENTS_PER_ROW_GROUP};
+        for (int rowGroupSize : rowGroupSizes) {
+            ColumnarReader reader = new ColumnarReader(write(measurements, rowGroupSize));
+            assertEquals(DEVICE_NAME, reader.getDeviceName());
+            assertEquals((measurements.size() + rowGroupSize - 1) / rowGroupSize, reader.getRowGroups().size());
+            assertMeasurements(measurements, reader.readAll());
+        }
+    }
+
+    @Test
+    public void roundTripsRouteWithRepeatedCells() throws IOException {
+        List<Measurement> measurements = createRoute(25000);
+        byte[] data = write(measurements, ColumnarWriter.DEFAULT_MEASUREMENTS_PER_ROW_GROUP);
+        assertMeasurements(measurements, ColumnarReader.read(new ByteArrayInputStream(data)).readAll());
+    }
+
+    @Test
+    public void indexesRowGroups() throws IOException {
+        List<Measurement> measurements = createRoute(1000);
+        // out of order measurement within the second row group
+        measurements.get(450).setMeasuredAt(measurements.get(400).getMeasuredAt() - 1);
+        int rowGroupSize = 300;
+        ColumnarReader reader = new ColumnarReader(write(measurements, rowGroupSize));
+        List<ColumnarRowGroup> rowGroups = reader.getRowGroups();
+        assertEquals(4, rowGroups.size());
+        for (int i = 0; i < rowGroups.size(); i++) {
+            ColumnarRowGroup rowGroup = rowGroups.get(i);
+            List<Measurement> expected = measurements.subList(i * rowGroupSize, Math.min(measurements.size(), (i + 1) * rowGroupSize));
+            long minMeasuredAt = Long.MAX_VALUE, maxMeasuredAt = Long.MIN_VALUE;
+            int cellCount = 0;
+            for (Measurement m : expected) {
+                minMeasuredAt = Math.min(minMeasuredAt, m.getMeasuredAt());
+                maxMeasuredAt = Math.max(maxMeasuredAt, m.getMeasuredAt());
+                cellCount += m.getCells().size();
+            }
+            assertEquals(expected.size(), rowGroup.getMeasurementCount());
+            assertEquals(cellCount, rowGroup.getCellCount());
+            assertEquals(minMeasuredAt, rowGroup.getMinMeasuredAt());
+            assertEquals(maxMeasuredAt, rowGroup.getMaxMeasuredAt());
+            // row groups can be read independently
+            assertMeasurements(expected, reader.readRowGroup(rowGroup));
+        }
+    }
+
+    @Test
+    public void roundTripsEmptyFile() throws IOException {
+        ColumnarReader reader = new ColumnarReader(write(new ArrayList<>(), 10));
+        assertEquals(DEVICE_NAME, reader.getDeviceName());
+        assertEquals(0, reader.getRowGroups().size());
+        assertEquals(0, reader.readAll().size());
+    }
+
+    @Test
+    public void rejectsInvalidFiles() throws IOException {
+        byte[] valid = write(MeasurementFixtures.createEdgeMeasurements(), 3);
+        byte[] badMagic = valid.clone();
+        badMagic[0] = 'X';
+        assertRejected(badMagic);
+        byte[] badVersion = valid.clone();
+        badVersion[ColumnarFormat.MAGIC.length] = ColumnarFormat.VERSION + 1;
+        assertRejected(badVersion);
+        assertRejected(Arrays.copyOf(valid, valid.length - 1));
+        assertRejected(Arrays.copyOfRange(valid, 1, valid.length));
+        assertRejected(new byte[0]);
+    }
+
+    @Test
+    public void encodesZigZagAndFixedPoint() {
+        long[] values = {0, 1, -1, 63, -64, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            assertEquals(value, ColumnarFormat.decodeZigZag(ColumnarFormat.encodeZigZag(value)));
+        }
+        // small magnitudes use small codes
+        assertEquals(0, ColumnarFormat.encodeZigZag(0));
+        assertEquals(1, ColumnarFormat.encodeZigZag(-1));
+        assertEquals(2, ColumnarFormat.encodeZigZag(1));
+        assertEquals(520693267L, ColumnarFormat.toFixedPoint(52.06932670000005, ColumnarFormat.COORDINATE_SCALE));
+        assertEquals(-1794781224L, ColumnarFormat.toFixedPoint(-179.4781224, ColumnarFormat.COORDINATE_SCALE));
+        assertEquals(52.0693267, ColumnarFormat.fromFixedPoint(520693267L, ColumnarFormat.COORDINATE_SCALE), 0);
+    }
+
+    private static byte[] write(List<Measurement> measurements, int measurementsPerRowGroup) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(outputStream, DEVICE_NAME, measurementsPerRowGroup);
+        writer.writeHeader();
+        for (Measurement m : measurements) {
+            writer.write(m);
+        }
+        writer.finish();
+        return outputStream.toByteArray();
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            new ColumnarReader(data).readAll();
+            fail("Invalid file accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    private static void assertMeasurements(List<Measurement> expected, List<Measurement> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertMeasurement("Measurement " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertMeasurement(String message, Measurement expected, Measurement actual) {
+        assertEquals(message, expected.getMeasuredAt(), actual.getMeasuredAt());
+        assertFixedPoint(message + " latitude", expected.getLatitude(), actual.getLatitude(), ColumnarFormat.COORDINATE_SCALE);
+        assertFixedPoint(message + " longitude", expected.getLongitude(), actual.getLongitude(), ColumnarFormat.COORDINATE_SCALE);
+        assertFixedPoint(message + " accuracy", expected.getGpsAccuracy(), actual.getGpsAccuracy(), ColumnarFormat.GPS_VALUE_SCALE);
+        assertFixedPoint(message + " speed", expected.getGpsSpeed(), actual.getGpsSpeed(), ColumnarFormat.GPS_VALUE_SCALE);
+        assertFixedPoint(message + " bearing", expected.getGpsBearing(), actual.getGpsBearing(), ColumnarFormat.GPS_VALUE_SCALE);
+        assertFixedPoint(message + " altitude", expected.getGpsAltitude(), actual.getGpsAltitude(), ColumnarFormat.GPS_VALUE_SCALE);
+        assertEquals(message + " cell count", expected.getCells().size(), actual.getCells().size());
+        for (int i = 0; i < expected.getCells().size(); i++) {
+            Cell e = expected.getCells().get(i);
+            Cell a = actual.getCells().get(i);
+            String cellMessage = message + " cell " + i;
+            assertEquals(cellMessage, e.getNetworkType(), a.getNetworkType());
+            assertEquals(cellMessage, e.getMcc(), a.getMcc());
+            assertEquals(cellMessage, e.getMnc(), a.getMnc());
+            assertEquals(cellMessage, e.getLac(), a.getLac());
+            assertEquals(cellMessage, e.getCid(), a.getCid());
+            assertEquals(cellMessage, e.getPsc(), a.getPsc());
+            assertEquals(cellMessage, e.getDiscoveredAt(), a.getDiscoveredAt());
+            assertEquals(cellMessage, e.isNeighboring(), a.isNeighboring());
+            for (ColumnarFormat.SignalColumn signalColumn : ColumnarFormat.SIGNAL_COLUMNS) {
+                assertEquals(cellMessage + " signal column " + signalColumn.getColumnId(), signalColumn.getValue(e), signalColumn.getValue(a));
+            }
+        }
+    }
+
+    private static void assertFixedPoint(String message, double expected, double actual, double scale) {
+        assertEquals(message, ColumnarFormat.toFixedPoint(expected, scale), ColumnarFormat.toFixedPoint(actual, scale));
+    }
+
+    private static List<Measurement> createRoute(int count) {
+        Random random = new Random(RANDOM_SEED);
+        List<Measurement> measurements = new ArrayList<>(count);
+        long timestamp = 1577836800000L;
+        double latitude = 52.0693267;
+        double longitude = 19.4781224;
+        for (int i = 0; i < count; i++) {
+            // route driven with measurements every few seconds
+            timestamp += 1000 + random.nextInt(4000);
+            latitude += (random.nextDouble() - 0.5) * 0.001;
+            longitude += (random.nextDouble() - 0.5) * 0.001;
+            MeasurementBuilder builder = new MeasurementBuilder()
+                    .setLocation(latitude, longitude, 150 + random.nextInt(50), 3 + random.nextFloat() * 20)
+                    .setMovement(random.nextFloat() * 360, random.nextFloat() * 30)
+                    .setTime(timestamp);
+            int cellId = i / 50 + random.nextInt(3);
+            if (i % 3 == 0) {
+                builder.setGsmCell(260, 6, 5114, 10558 + cellId).setGsmSignal(15, -83, Cell.UNKNOWN_SIGNAL, -83, 50);
+            } else {
+                builder.setLteCell(260, 6, 49101, 26888192 + cellId, 172).setLteSignal(30, -110 + random.nextInt(20), 5, -110, -11, -80, 12, 10, 1850);
+            }
+            Measurement m = builder.build();
+            m.getCells().get(0).setDiscoveredAt(timestamp - random.nextInt(1000));
+            m.getCells().get(0).setSubscriptionId(1 + i % 2);
+            // neighboring cells without identity
+            int neighboringCount = random.nextInt(4);
+            for (int j = 0; j < neighboringCount; j++) {
+                Cell neighbor = new Cell();
+                neighbor.setLteCellInfo(Cell.UNKNOWN_CID, Cell.UNKNOWN_CID, Cell.UNKNOWN_CID, Cell.UNKNOWN_CID_LONG, 100 + random.nextInt(20));
+                neighbor.setLteSignalInfo(Cell.UNKNOWN_SIGNAL, -120 + random.nextInt(20), Cell.UNKNOWN_SIGNAL, -120, -15, Cell.UNKNOWN_SIGNAL, Cell.UNKNOWN_SIGNAL, Cell.UNKNOWN_SIGNAL, 1850);
+                neighbor.setNeighboring(true);
+                neighbor.setDiscoveredAt(timestamp);
+                m.addCell(neighbor);
+            }
+            measurements.add(m);
+        }
+        return measurements;
+    }
+}
@@ -0,0 +1,101 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.csv;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.MeasurementFixtures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares formatter output with files written by the formatters based on {@link java.text.NumberFormat}
+ * and {@link java.text.SimpleDateFormat} before they were replaced by {@link CsvRowBuffer}.
+ */
+public class CsvFormatterGoldenTest {
+
+    private static final String GOLDEN_DEVICE_NAME = "Golden Device";
+
+    private static List<Measurement> measurements;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // load both formatters first, upload formatter shortens the name in its static initializer
+        new CsvExportFormatter();
+        new CsvUploadFormatter();
+        CsvFormatter.deviceName = GOLDEN_DEVICE_NAME;
+        measurements = MeasurementFixtures.createMeasurements();
+    }
+
+    @Test
+    public void exportFormatEntryMatchesGoldenFile() throws IOException {
+        assertLines(readGoldenFile("csv_export.csv"), formatEntries(new CsvExportFormatter()));
+    }
+
+    @Test
+    public void exportWriteEntryMatchesGoldenFile() throws IOException {
+        assertLines(readGoldenFile("csv_export.csv"), writeEntries(new CsvExportFormatter()));
+    }
+
+    @Test
+    public void uploadFormatEntryMatchesGoldenFile() throws IOException {
+        assertLines(readGoldenFile("csv_upload.csv"), formatEntries(new CsvUploadFormatter()));
+    }
+
+    @Test
+    public void uploadWriteEntryMatchesGoldenFile() throws IOException {
+        assertLines(readGoldenFile("csv_upload.csv"), writeEntries(new CsvUploadFormatter()));
+    }
+
+    private static String formatEntries(ICsvFormatter formatter) {
+        StringBuilder sb = new StringBuilder(formatter.formatHeader());
+        for (Measurement m : measurements) {
+            sb.append(formatter.formatEntry(m));
+        }
+        return sb.toString();
+    }
+
+    private static String writeEntries(ICsvFormatter formatter) throws IOException {
+        StringWriter writer = new StringWriter();
+        writer.write(formatter.formatHeader());
+        for (Measurement m : measurements) {
+            formatter.writeEntry(m, writer);
+        }
+        return writer.toString();
+    }
+
+    private static void assertLines(String expected, String actual) {
+        // line by line first to point at the first difference
+        String[] expectedLines = expected.split("\n", -1);
+        String[] actualLines = actual.split("\n", -1);
+        for (int i = 0; i < Math.min(expectedLines.length, actualLines.length); i++) {
+            assertEquals("Line " + (i + 1), expectedLines[i], actualLines[i]);
+        }
+        assertEquals(expected, actual);
+    }
+
+    private static String readGoldenFile(String name) throws IOException {
+        try (InputStream inputStream = CsvFormatterGoldenTest.class.getResourceAsStream("/golden/" + name)) {
+            assertNotNull(name, inputStream);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
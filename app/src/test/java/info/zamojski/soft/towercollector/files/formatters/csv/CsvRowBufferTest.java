@@ -0,0 +1,148 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.csv;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares values written by {@link CsvRowBuffer} with the platform formatters it replaced.
+ */
+public class CsvRowBufferTest {
+
+    private static final int CHECKED_VALUES = 200000;
+    private static final long RANDOM_SEED = 20130417;
+
+    private static final double[] EDGE_VALUES = {0, -0.0, 1, -1, 0.5, -0.5, 0.125, 0.005, 0.015, 0.025, 1e-13, -1e-13, 5e-13,
+            90, -90, 180, -180, 52.06932670000005, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e20, -1e20};
+    private static final long[] EDGE_TIMESTAMPS = {0, -1, 951782400000L, 4107542399999L, 253402300799999L, 253402300800000L, Long.MIN_VALUE / 2};
+
+    private interface ValueCheck {
+        String append(CsvRowBuffer row, Random random);
+    }
+
+    @Test
+    public void coordinatesMatchNumberFormat() {
+        NumberFormat formatter = createDecimalFormatter(CsvRowBuffer.COORDINATE_MIN_FRACTION_DIGITS, CsvRowBuffer.COORDINATE_MAX_FRACTION_DIGITS);
+        verify((row, random) -> {
+            double value = edgeOrRandom(random, random.nextDouble() * 360 - 180);
+            row.appendCoordinate(value);
+            return formatter.format(value);
+        });
+    }
+
+    @Test
+    public void coordinatesNearTieMatchNumberFormat() {
+        NumberFormat formatter = createDecimalFormatter(CsvRowBuffer.COORDINATE_MIN_FRACTION_DIGITS, CsvRowBuffer.COORDINATE_MAX_FRACTION_DIGITS);
+        verify((row, random) -> {
+            // values rounded to the last digit plus half of it
+            double value = Math.round((random.nextDouble() * 360 - 180) * 1e12) / 1e12 + 5e-13;
+            row.appendCoordinate(value);
+            return formatter.format(value);
+        });
+    }
+
+    @Test
+    public void gpsValuesMatchNumberFormat() {
+        NumberFormat formatter = createDecimalFormatter(CsvRowBuffer.GPS_VALUE_MIN_FRACTION_DIGITS, CsvRowBuffer.GPS_VALUE_MAX_FRACTION_DIGITS);
+        verify((row, random) -> {
+            double value = edgeOrRandom(random, random.nextBoolean()
+                    ? Math.round(random.nextDouble() * 200000) / 1000.0
+                    : random.nextFloat() * 9000 - 500);
+            row.appendGpsValue(value);
+            return formatter.format(value);
+        });
+    }
+
+    @Test
+    public void longsMatchNumberFormat() {
+        NumberFormat formatter = NumberFormat.getNumberInstance(Locale.ENGLISH);
+        formatter.setParseIntegerOnly(true);
+        formatter.setGroupingUsed(false);
+        verify((row, random) -> {
+            long value = random.nextInt(100) == 0 ? (random.nextBoolean() ? Long.MIN_VALUE : Long.MAX_VALUE) : random.nextLong() >> random.nextInt(64);
+            row.appendLong(value);
+            return formatter.format(value);
+        });
+    }
+
+    @Test
+    public void exportTimestampsMatchSimpleDateFormat() {
+        SimpleDateFormat formatter = createDateFormatter("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        verify((row, random) -> {
+            long value = edgeOrRandom(random, (long) (random.nextDouble() * 4102444800000L));
+            row.appendTimestamp(value, 'T');
+            return formatter.format(new Date(value));
+        });
+    }
+
+    @Test
+    public void uploadTimestampsMatchSimpleDateFormat() {
+        SimpleDateFormat formatter = createDateFormatter("yyyy-MM-dd HH:mm:ss.SSS'Z'");
+        verify((row, random) -> {
+            long value = edgeOrRandom(random, (long) (random.nextDouble() * 4102444800000L));
+            row.appendTimestamp(value, ' ');
+            return formatter.format(new Date(value));
+        });
+    }
+
+    @Test
+    public void writeToCopiesWholeRow() throws IOException {
+        CsvRowBuffer row = new CsvRowBuffer();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            row.append("cell").append(',').appendInt(i).append(',').append(i % 2 == 0);
+            expected.append("cell").append(',').append(i).append(',').append(i % 2 == 0);
+        }
+        StringWriter writer = new StringWriter();
+        row.writeTo(writer);
+        assertEquals(expected.toString(), writer.toString());
+        assertEquals(expected.length(), row.length());
+        row.clear();
+        assertEquals("", row.toString());
+    }
+
+    private static void verify(ValueCheck check) {
+        Random random = new Random(RANDOM_SEED);
+        CsvRowBuffer row = new CsvRowBuffer();
+        for (int i = 0; i < CHECKED_VALUES; i++) {
+            row.clear();
+            String expected = check.append(row, random);
+            assertEquals("Value " + i, expected, row.toString());
+        }
+    }
+
+    private static double edgeOrRandom(Random random, double randomValue) {
+        return random.nextInt(100) == 0 ? EDGE_VALUES[random.nextInt(EDGE_VALUES.length)] : randomValue;
+    }
+
+    private static long edgeOrRandom(Random random, long randomValue) {
+        return random.nextInt(100) == 0 ? EDGE_TIMESTAMPS[random.nextInt(EDGE_TIMESTAMPS.length)] : randomValue;
+    }
+
+    private static NumberFormat createDecimalFormatter(int minFractionDigits, int maxFractionDigits) {
+        NumberFormat formatter = NumberFormat.getNumberInstance(Locale.ENGLISH);
+        formatter.setGroupingUsed(false);
+        formatter.setMinimumFractionDigits(minFractionDigits);
+        formatter.setMaximumFractionDigits(maxFractionDigits);
+        return formatter;
+    }
+
+    private static SimpleDateFormat createDateFormatter(String pattern) {
+        SimpleDateFormat formatter = new SimpleDateFormat(pattern, Locale.ENGLISH);
+        formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return formatter;
+    }
+}
@@ -0,0 +1,259 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.json;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.MeasurementFixtures;
+import info.zamojski.soft.towercollector.providers.GeneralCellUtils;
+import info.zamojski.soft.towercollector.providers.ICellUtils;
+import info.zamojski.soft.towercollector.providers.MozillaCellUtils;
+import info.zamojski.soft.towercollector.utils.StringUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that streaming formatters produce the same documents as the {@link JSONObject} trees built by formatters before.
+ * Documents are compared structurally because key order of org.json on the JVM differs from Android.
+ */
+public class JsonFormatterEquivalenceTest {
+
+    // same as upload part size
+    private static final int MEASUREMENTS_PER_PART = 85;
+
+    private static final ICellUtils mozillaCellUtils = new MozillaCellUtils();
+    private static final ICellUtils generalCellUtils = new GeneralCellUtils();
+
+    private static List<List<Measurement>> parts;
+
+    @BeforeClass
+    public static void setUpClass() {
+        parts = new ArrayList<>();
+        List<Measurement> measurements = MeasurementFixtures.createMeasurements();
+        for (int i = 0; i < measurements.size(); i += MEASUREMENTS_PER_PART) {
+            parts.add(measurements.subList(i, Math.min(measurements.size(), i + MEASUREMENTS_PER_PART)));
+        }
+        parts.add(Collections.emptyList());
+    }
+
+    @Test
+    public void mozillaExportMatchesObjectTree() throws JSONException {
+        IJsonFormatter formatter = new JsonMozillaExportFormatter();
+        for (List<Measurement> part : parts) {
+            List<JSONObject> expected = formatLegacyItems(part);
+            String actual = formatter.formatList(part);
+            if (expected.isEmpty()) {
+                assertEquals("", actual);
+                continue;
+            }
+            // items are separated the same way as segments
+            String[] actualItems = actual.split(formatter.formatNewSegment(), -1);
+            assertEquals(expected.size(), actualItems.length);
+            for (int i = 0; i < expected.size(); i++) {
+                assertSimilar(expected.get(i), new JSONObject(actualItems[i]));
+            }
+        }
+    }
+
+    @Test
+    public void mozillaExportDocumentIsValid() throws JSONException {
+        IJsonFormatter formatter = new JsonMozillaExportFormatter();
+        StringBuilder document = new StringBuilder(formatter.formatHeader());
+        boolean notFirst = false;
+        int expectedItems = 0;
+        for (List<Measurement> part : parts) {
+            String list = formatter.formatList(part);
+            if (list.isEmpty())
+                continue;
+            if (notFirst)
+                document.append(formatter.formatNewSegment());
+            notFirst = true;
+            document.append(list);
+            expectedItems += formatLegacyItems(part).size();
+        }
+        document.append(formatter.formatFooter());
+        assertEquals(expectedItems, new JSONObject(document.toString()).getJSONArray("items").length());
+    }
+
+    @Test
+    public void mozillaUploadMatchesObjectTree() throws JSONException {
+        IJsonFormatter formatter = new JsonMozillaUploadFormatter();
+        for (List<Measurement> part : parts) {
+            assertSimilar(formatLegacyUpload(part), new JSONObject(formatter.formatList(part)));
+        }
+    }
+
+    @Test
+    public void broadcastMatchesObjectTree() throws JSONException {
+        IJsonFormatter formatter = new JsonBroadcastFormatter();
+        for (List<Measurement> part : parts) {
+            for (Measurement m : part) {
+                List<Measurement> single = Collections.singletonList(m);
+                assertSimilar(formatLegacyBroadcast(single), new JSONObject(formatter.formatList(single)));
+            }
+            // the last measurement wins for longer lists
+            assertSimilar(formatLegacyBroadcast(part), new JSONObject(formatter.formatList(part)));
+        }
+    }
+
+    @Test
+    public void writeListMatchesFormatList() throws IOException {
+        IJsonFormatter[] formatters = {new JsonMozillaExportFormatter(), new JsonMozillaUploadFormatter(), new JsonBroadcastFormatter()};
+        for (IJsonFormatter formatter : formatters) {
+            for (List<Measurement> part : parts) {
+                StringWriter writer = new StringWriter();
+                formatter.writeList(part, writer);
+                assertEquals(formatter.formatList(part), writer.toString());
+            }
+        }
+    }
+
+    private static void assertSimilar(JSONObject expected, JSONObject actual) {
+        assertTrue("Expected " + expected + " but was " + actual, expected.similar(actual));
+    }
+
+    // reference implementation based on JSON object trees
+
+    private static JSONObject formatLegacyUpload(List<Measurement> ms) throws JSONException {
+        if (ms.size() == 0) {
+            return new JSONObject();
+        }
+        JSONArray items = new JSONArray();
+        for (JSONObject rawItem : formatLegacyItems(ms)) {
+            items.put(rawItem);
+        }
+        JSONObject root = new JSONObject();
+        root.put("items", items);
+        return root;
+    }
+
+    private static List<JSONObject> formatLegacyItems(List<Measurement> ms) throws JSONException {
+        List<JSONObject> items = new ArrayList<>();
+        for (Measurement m : ms) {
+            JSONObject item = new JSONObject();
+            item.put("timestamp", m.getMeasuredAt());
+            JSONObject position = new JSONObject();
+            position.put("latitude", round(m.getLatitude(), 12));
+            position.put("longitude", round(m.getLongitude(), 12));
+            position.put("accuracy", round(m.getGpsAccuracy(), 2));
+            position.put("altitude", round(m.getGpsAltitude(), 2));
+            position.put("heading", round(m.getGpsBearing(), 2));
+            position.put("speed", round(m.getGpsSpeed(), 2));
+            position.put("source", "gps");
+            item.put("position", position);
+            JSONArray cellTowers = new JSONArray();
+            for (Cell c : m.getCells()) {
+                if (c.getNetworkType() == NetworkGroup.Cdma || c.getMcc() == Cell.UNKNOWN_CID || c.getNetworkType() == NetworkGroup.Tdscdma || c.getNetworkType() == NetworkGroup.Nr)
+                    continue;
+                JSONObject cellTower = new JSONObject();
+                String systemType = mozillaCellUtils.getSystemType(c.getNetworkType());
+                cellTower.put("radioType", StringUtils.isNullEmptyOrWhitespace(systemType) ? JSONObject.NULL : systemType);
+                cellTower.put("mobileCountryCode", c.getMcc());
+                cellTower.put("mobileNetworkCode", c.getMnc());
+                cellTower.put("locationAreaCode", c.getLac());
+                cellTower.put("cellId", c.getCid());
+                if (c.getPsc() != Cell.UNKNOWN_CID)
+                    cellTower.put("primaryScramblingCode", c.getPsc());
+                if (c.getAsu() != Cell.UNKNOWN_SIGNAL)
+                    cellTower.put("asu", c.getAsu());
+                if (c.getDbm() != Cell.UNKNOWN_SIGNAL)
+                    cellTower.put("signalStrength", c.getDbm());
+                if (c.getTa() != Cell.UNKNOWN_SIGNAL)
+                    cellTower.put("timingAdvance", c.getTa());
+                cellTower.put("serving", c.isNeighboring() ? 0 : 1);
+                cellTowers.put(cellTower);
+            }
+            item.put("cellTowers", cellTowers);
+            if (cellTowers.length() > 0)
+                items.add(item);
+        }
+        return items;
+    }
+
+    private static JSONObject formatLegacyBroadcast(List<Measurement> ms) throws JSONException {
+        SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ENGLISH);
+        dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        JSONObject root = new JSONObject();
+        for (Measurement m : ms) {
+            root.put("measured_at", dateFormatter.format(new Date(m.getMeasuredAt())));
+            JSONObject gps = new JSONObject();
+            gps.put("lat", round(m.getLatitude(), 12));
+            gps.put("lon", round(m.getLongitude(), 12));
+            gps.put("accuracy", round(m.getGpsAccuracy(), 2));
+            gps.put("speed", round(m.getGpsSpeed(), 2));
+            gps.put("bearing", round(m.getGpsBearing(), 2));
+            gps.put("altitude", round(m.getGpsAltitude(), 2));
+            root.put("gps", gps);
+            JSONArray cells = new JSONArray();
+            for (Cell c : m.getCells()) {
+                JSONObject cell = new JSONObject();
+                cell.put("mcc", nullable(c.getMcc(), Cell.UNKNOWN_CID));
+                cell.put("mnc", c.getMnc());
+                cell.put("lac", c.getLac());
+                cell.put("cell_id", c.getCid());
+                cell.put("short_cell_id", nullable(c.getShortCid(), Cell.UNKNOWN_CID_LONG));
+                cell.put("rnc", nullable(c.getRnc(), Cell.UNKNOWN_CID_LONG));
+                cell.put("psc", nullable(c.getPsc(), Cell.UNKNOWN_CID));
+                cell.put("asu", nullable(c.getAsu(), Cell.UNKNOWN_SIGNAL));
+                cell.put("dbm", nullable(c.getDbm(), Cell.UNKNOWN_SIGNAL));
+                cell.put("ta", nullable(c.getTa(), Cell.UNKNOWN_SIGNAL));
+                cell.put("rsrp", nullable(c.getRsrp(), Cell.UNKNOWN_SIGNAL));
+                cell.put("rsrq", nullable(c.getRsrq(), Cell.UNKNOWN_SIGNAL));
+                cell.put("rssi", nullable(c.getRssi(), Cell.UNKNOWN_SIGNAL));
+                cell.put("rssnr", nullable(c.getRssnr(), Cell.UNKNOWN_SIGNAL));
+                cell.put("cqi", nullable(c.getCqi(), Cell.UNKNOWN_SIGNAL));
+                cell.put("rscp", nullable(c.getRscp(), Cell.UNKNOWN_SIGNAL));
+                cell.put("csi_rsrp", nullable(c.getCsiRsrp(), Cell.UNKNOWN_SIGNAL));
+                cell.put("csi_rsrq", nullable(c.getCsiRsrq(), Cell.UNKNOWN_SIGNAL));
+                cell.put("csi_sinr", nullable(c.getCsiSinr(), Cell.UNKNOWN_SIGNAL));
+                cell.put("ss_rsrp", nullable(c.getSsRsrp(), Cell.UNKNOWN_SIGNAL));
+                cell.put("ss_rsrq", nullable(c.getSsRsrq(), Cell.UNKNOWN_SIGNAL));
+                cell.put("ss_sinr", nullable(c.getSsSinr(), Cell.UNKNOWN_SIGNAL));
+                cell.put("cdma_dbm", nullable(c.getCdmaDbm(), Cell.UNKNOWN_SIGNAL));
+                cell.put("cdma_ecio", nullable(c.getCdmaEcio(), Cell.UNKNOWN_SIGNAL));
+                cell.put("evdo_dbm", nullable(c.getEvdoDbm(), Cell.UNKNOWN_SIGNAL));
+                cell.put("evdo_ecio", nullable(c.getEvdoEcio(), Cell.UNKNOWN_SIGNAL));
+                cell.put("evdo_snr", nullable(c.getEvdoSnr(), Cell.UNKNOWN_SIGNAL));
+                cell.put("ec_no", nullable(c.getEcNo(), Cell.UNKNOWN_SIGNAL));
+                cell.put("arfcn", nullable(c.getArfcn(), Cell.UNKNOWN_CID));
+                cell.put("neighboring", c.isNeighboring());
+                cell.put("net_type", generalCellUtils.getSystemType(c.getNetworkType()));
+                cell.put("discovered_at", dateFormatter.format(new Date(c.getDiscoveredAt())));
+                cells.put(cell);
+            }
+            root.put("cells", cells);
+        }
+        return root;
+    }
+
+    private static double round(double value, int scale) {
+        return new BigDecimal(value).setScale(scale, BigDecimal.ROUND_HALF_EVEN).doubleValue();
+    }
+
+    private static Object nullable(long value, long invalid) {
+        if (value == invalid)
+            return JSONObject.NULL;
+        return value;
+    }
+}
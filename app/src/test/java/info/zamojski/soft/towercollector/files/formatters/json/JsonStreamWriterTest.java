@@ -0,0 +1,138 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.json;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonStreamWriterTest {
+
+    private static final long RANDOM_SEED = 20130417;
+
+    @Test
+    public void writesCompactDocument() throws IOException {
+        StringWriter writer = new StringWriter();
+        new JsonStreamWriter(writer)
+                .beginObject()
+                .name("a").value(1)
+                .name("b").beginArray().value(true).nullValue().value("x").beginObject().endObject().endArray()
+                .name("c").beginArray().endArray()
+                .name("d").value(0.5)
+                .endObject();
+        assertEquals("{\"a\":1,\"b\":[true,null,\"x\",{}],\"c\":[],\"d\":0.5}", writer.toString());
+    }
+
+    @Test
+    public void escapesEveryCharacter() throws IOException, JSONException {
+        StringBuilder sb = new StringBuilder();
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            sb.append(c);
+        }
+        String value = sb.toString() + "</script>\\\"";
+        String json = writeValue(value);
+        for (int i = 1; i < json.length() - 1; i++) {
+            assertTrue("Unescaped control character at " + i, json.charAt(i) > 0x1F);
+        }
+        assertEquals(value, new JSONArray("[" + json + "]").getString(0));
+    }
+
+    @Test
+    public void writesNumbersLikeJsonObject() throws IOException, JSONException {
+        assertEquals("[0]", writeValue(0.0));
+        assertEquals("[-0]", writeValue(-0.0));
+        assertEquals("[52]", writeValue(52.0));
+        assertEquals("[-1.5]", writeValue(-1.5));
+        assertEquals("[1.0E-13]", writeValue(1e-13));
+        assertEquals("[" + Long.MIN_VALUE + "]", writeValue(Long.MIN_VALUE));
+        Random random = new Random(RANDOM_SEED);
+        for (int i = 0; i < 100000; i++) {
+            double value = random.nextBoolean()
+                    ? Math.round((random.nextDouble() * 360 - 180) * 1e12) / 1e12
+                    : Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(value) || Double.isInfinite(value))
+                continue;
+            assertEquals(value, new JSONArray(writeValue(value)).getDouble(0), 0);
+        }
+    }
+
+    @Test
+    public void rejectsNonFiniteNumbers() throws IOException {
+        double[] values = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            try {
+                writeValue(value);
+                fail("Accepted " + value);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void rejectsInvalidNesting() throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(new StringWriter());
+        try {
+            json.name("a");
+            fail("Accepted name outside of object");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        json.beginObject().name("a");
+        try {
+            json.endObject();
+            fail("Accepted object without value");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void supportsDeepNesting() throws IOException, JSONException {
+        StringWriter writer = new StringWriter();
+        JsonStreamWriter json = new JsonStreamWriter(writer);
+        for (int i = 0; i < 100; i++) {
+            json.beginObject().name("n");
+        }
+        json.value(1);
+        for (int i = 0; i < 100; i++) {
+            json.endObject();
+        }
+        JSONObject object = new JSONObject(writer.toString());
+        for (int i = 0; i < 99; i++) {
+            object = object.getJSONObject("n");
+        }
+        assertEquals(1, object.getInt("n"));
+        assertFalse(writer.toString().contains(" "));
+    }
+
+    private static String writeValue(String value) throws IOException {
+        StringWriter writer = new StringWriter();
+        new JsonStreamWriter(writer).beginArray().value(value).endArray();
+        return writer.toString().substring(1, writer.toString().length() - 1);
+    }
+
+    private static String writeValue(double value) throws IOException {
+        StringWriter writer = new StringWriter();
+        new JsonStreamWriter(writer).beginArray().value(value).endArray();
+        return writer.toString();
+    }
+
+    private static String writeValue(long value) throws IOException {
+        StringWriter writer = new StringWriter();
+        new JsonStreamWriter(writer).beginArray().value(value).endArray();
+        return writer.toString();
+    }
+}
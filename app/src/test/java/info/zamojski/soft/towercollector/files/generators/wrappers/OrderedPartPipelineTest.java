@@ -0,0 +1,171 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrderedPartPipelineTest {
+
+    private static final int THREADS = 4;
+    private static final int PARTS = 500;
+    private static final long RANDOM_SEED = 20130417;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void writesPartsInSubmissionOrder() throws Exception {
+        List<List<Measurement>> parts = createParts(PARTS);
+        Random random = new Random(RANDOM_SEED);
+        int[] delays = new int[PARTS];
+        for (int i = 0; i < PARTS; i++) {
+            delays[i] = random.nextInt(3);
+        }
+        List<Integer> written = new ArrayList<>();
+        OrderedPartPipeline<Integer> pipeline = new OrderedPartPipeline<>(executor, THREADS + 1,
+                part -> {
+                    int index = part.get(0).getMeasurementId();
+                    // later parts often finish before earlier ones
+                    Thread.sleep(delays[index]);
+                    return index;
+                },
+                (part, formattedPart) -> {
+                    assertEquals(part.get(0).getMeasurementId(), (int) formattedPart);
+                    written.add(formattedPart);
+                });
+        for (List<Measurement> part : parts) {
+            pipeline.submit(part);
+        }
+        pipeline.finish();
+        assertEquals(PARTS, written.size());
+        for (int i = 0; i < PARTS; i++) {
+            assertEquals(i, (int) written.get(i));
+        }
+    }
+
+    @Test
+    public void limitsPartsInFlight() throws Exception {
+        int maxPartsInFlight = 3;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        OrderedPartPipeline<Integer> pipeline = new OrderedPartPipeline<>(executor, maxPartsInFlight,
+                part -> part.get(0).getMeasurementId(),
+                (part, formattedPart) -> inFlight.decrementAndGet());
+        for (List<Measurement> part : createParts(PARTS)) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            pipeline.submit(part);
+        }
+        pipeline.finish();
+        assertEquals(0, inFlight.get());
+        // the submitted part is counted before the oldest one is written
+        assertTrue("Max in flight " + maxInFlight.get(), maxInFlight.get() <= maxPartsInFlight + 1);
+    }
+
+    @Test
+    public void formatsOnCallingThreadWithoutExecutor() throws Exception {
+        Thread caller = Thread.currentThread();
+        List<Integer> written = new ArrayList<>();
+        OrderedPartPipeline<Integer> pipeline = new OrderedPartPipeline<>(null, THREADS,
+                part -> {
+                    assertSame(caller, Thread.currentThread());
+                    return part.get(0).getMeasurementId();
+                },
+                (part, formattedPart) -> written.add(formattedPart));
+        List<List<Measurement>> parts = createParts(10);
+        for (int i = 0; i < parts.size(); i++) {
+            pipeline.submit(parts.get(i));
+            // written before submit returns
+            assertEquals(i + 1, written.size());
+        }
+        pipeline.finish();
+        assertEquals(parts.size(), written.size());
+    }
+
+    @Test
+    public void rethrowsFormatterException() throws Exception {
+        IOException failure = new IOException("Format failed");
+        List<Integer> written = new ArrayList<>();
+        OrderedPartPipeline<Integer> pipeline = new OrderedPartPipeline<>(executor, THREADS,
+                part -> {
+                    int index = part.get(0).getMeasurementId();
+                    if (index == 5)
+                        throw failure;
+                    return index;
+                },
+                (part, formattedPart) -> written.add(formattedPart));
+        try {
+            for (List<Measurement> part : createParts(20)) {
+                pipeline.submit(part);
+            }
+            pipeline.finish();
+            fail("Exception not rethrown");
+        } catch (IOException ex) {
+            assertSame(failure, ex);
+        } finally {
+            pipeline.cancel();
+        }
+        // parts before the failed one are written
+        assertEquals(5, written.size());
+    }
+
+    @Test
+    public void cancelDropsPendingParts() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> written = new ArrayList<>();
+        OrderedPartPipeline<Integer> pipeline = new OrderedPartPipeline<>(executor, THREADS,
+                part -> {
+                    release.await();
+                    return part.get(0).getMeasurementId();
+                },
+                (part, formattedPart) -> written.add(formattedPart));
+        for (List<Measurement> part : createParts(THREADS)) {
+            pipeline.submit(part);
+        }
+        pipeline.cancel();
+        release.countDown();
+        pipeline.finish();
+        assertEquals(0, written.size());
+    }
+
+    private static List<List<Measurement>> createParts(int count) {
+        List<List<Measurement>> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Measurement m = new Measurement();
+            m.setMeasurementId(i);
+            parts.add(Collections.singletonList(m));
+        }
+        return parts;
+    }
+}
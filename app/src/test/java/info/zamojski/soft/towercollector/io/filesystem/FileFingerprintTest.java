@@ -0,0 +1,87 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.filesystem;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public class FileFingerprintTest {
+
+    private static final long RANDOM_SEED = 20130417;
+    private static final int FILE_LENGTH = 3 * FileFingerprint.WINDOW_LENGTH;
+    private static final int POSITION = 2 * FileFingerprint.WINDOW_LENGTH + 17;
+
+    @Test
+    public void returnsTheSameFingerprintOfTheSameContent() throws IOException {
+        byte[] content = createContent();
+        assertEquals(compute(content, POSITION), compute(content.clone(), POSITION));
+    }
+
+    @Test
+    public void detectsChangeInsideWindow() throws IOException {
+        byte[] content = createContent();
+        long fingerprint = compute(content, POSITION);
+        int[] changedPositions = {POSITION - 1, POSITION - FileFingerprint.WINDOW_LENGTH};
+        for (int changedPosition : changedPositions) {
+            byte[] changedContent = content.clone();
+            changedContent[changedPosition]++;
+            assertNotEquals("Change at " + changedPosition, fingerprint, compute(changedContent, POSITION));
+        }
+    }
+
+    @Test
+    public void ignoresChangeOutsideWindow() throws IOException {
+        byte[] content = createContent();
+        long fingerprint = compute(content, POSITION);
+        int[] changedPositions = {0, POSITION - FileFingerprint.WINDOW_LENGTH - 1, POSITION, FILE_LENGTH - 1};
+        for (int changedPosition : changedPositions) {
+            byte[] changedContent = content.clone();
+            changedContent[changedPosition]++;
+            assertEquals("Change at " + changedPosition, fingerprint, compute(changedContent, POSITION));
+        }
+    }
+
+    @Test
+    public void readsFromStartBeforeFirstWindow() throws IOException {
+        byte[] content = createContent();
+        int position = FileFingerprint.WINDOW_LENGTH / 2;
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, position);
+        assertEquals(crc.getValue(), compute(content, position));
+        assertEquals(new CRC32().getValue(), compute(content, 0));
+    }
+
+    @Test
+    public void rejectsStreamShorterThanPosition() throws IOException {
+        int[] lengths = {0, POSITION - FileFingerprint.WINDOW_LENGTH - 1, POSITION - 1};
+        for (int length : lengths) {
+            try {
+                compute(new byte[length], POSITION);
+                fail("Stream of length " + length + " accepted");
+            } catch (EOFException ex) {
+                // expected
+            }
+        }
+    }
+
+    private static long compute(byte[] content, long position) throws IOException {
+        return FileFingerprint.compute(new ByteArrayInputStream(content), position);
+    }
+
+    private static byte[] createContent() {
+        byte[] content = new byte[FILE_LENGTH];
+        new Random(RANDOM_SEED).nextBytes(content);
+        return content;
+    }
+}
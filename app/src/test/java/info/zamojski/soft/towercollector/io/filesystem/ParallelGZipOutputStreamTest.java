@@ -0,0 +1,169 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.filesystem;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelGZipOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final long RANDOM_SEED = 20130417;
+
+    @Test
+    public void roundTripsInputOfAnySize() throws IOException {
+        int[] sizes = {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 10 * BLOCK_SIZE, 100 * BLOCK_SIZE + 17};
+        for (int size : sizes) {
+            for (int threads = 1; threads <= 4; threads++) {
+                byte[] input = createCompressibleInput(size);
+                assertArrayEquals("Size " + size + ", threads " + threads, input, decompress(compress(input, Deflater.DEFAULT_COMPRESSION, threads, new Random(RANDOM_SEED))));
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsRandomInput() throws IOException {
+        byte[] input = new byte[50 * BLOCK_SIZE + 3];
+        new Random(RANDOM_SEED).nextBytes(input);
+        assertArrayEquals(input, decompress(compress(input, Deflater.BEST_SPEED, 4, new Random(RANDOM_SEED))));
+    }
+
+    @Test
+    public void roundTripsAllLevels() throws IOException {
+        byte[] input = createCompressibleInput(20 * BLOCK_SIZE);
+        for (int level = Deflater.BEST_SPEED; level <= Deflater.BEST_COMPRESSION; level++) {
+            byte[] compressed = compress(input, level, 2, new Random(RANDOM_SEED));
+            assertTrue("Level " + level + " did not compress", compressed.length < input.length / 2);
+            assertArrayEquals("Level " + level, input, decompress(compressed));
+        }
+    }
+
+    @Test
+    public void writesOneMemberPerBlock() throws IOException {
+        byte[] input = createCompressibleInput(5 * BLOCK_SIZE + 1);
+        byte[] compressed = compress(input, Deflater.DEFAULT_COMPRESSION, 3, new Random(RANDOM_SEED));
+        int members = 0;
+        for (int i = 0; i + 2 < compressed.length; i++) {
+            if (compressed[i] == 0x1f && compressed[i + 1] == (byte) 0x8b && compressed[i + 2] == Deflater.DEFLATED)
+                members++;
+        }
+        // compressed text does not contain the header by accident
+        assertEquals(6, members);
+    }
+
+    @Test
+    public void emptyInputIsValidGzipFile() throws IOException {
+        byte[] compressed = compress(new byte[0], Deflater.DEFAULT_COMPRESSION, 2, new Random(RANDOM_SEED));
+        assertTrue(compressed.length > 0);
+        assertEquals(0, decompress(compressed).length);
+    }
+
+    @Test
+    public void flushWritesOnlyCompressedBlocks() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelGZipOutputStream gzip = new ParallelGZipOutputStream(out, Deflater.DEFAULT_COMPRESSION, 1, BLOCK_SIZE);
+        gzip.write(createCompressibleInput(BLOCK_SIZE / 2));
+        gzip.flush();
+        // incomplete block is kept
+        assertEquals(0, out.size());
+        gzip.close();
+        assertTrue(out.size() > 0);
+    }
+
+    @Test
+    public void closeIsIdempotentAndClosesOutput() throws IOException {
+        boolean[] closed = {false};
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        ParallelGZipOutputStream gzip = new ParallelGZipOutputStream(out, Deflater.DEFAULT_COMPRESSION, 2, BLOCK_SIZE);
+        gzip.write(1);
+        gzip.close();
+        int size = out.size();
+        gzip.close();
+        assertTrue(closed[0]);
+        assertEquals(size, out.size());
+        try {
+            gzip.write(1);
+            fail("Write after close accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectsInvalidArguments() {
+        try {
+            new ParallelGZipOutputStream(new ByteArrayOutputStream(), 10, 1);
+            fail("Invalid level accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            new ParallelGZipOutputStream(new ByteArrayOutputStream(), Deflater.DEFAULT_COMPRESSION, 1, 0);
+            fail("Invalid block size accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    private static byte[] compress(byte[] input, int level, int threads, Random random) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGZipOutputStream gzip = new ParallelGZipOutputStream(out, level, threads, BLOCK_SIZE)) {
+            // mix of single bytes and chunks crossing block boundaries
+            int offset = 0;
+            while (offset < input.length) {
+                if (random.nextInt(10) == 0) {
+                    gzip.write(input[offset++]);
+                } else {
+                    int length = Math.min(input.length - offset, random.nextInt(3 * BLOCK_SIZE));
+                    gzip.write(input, offset, length);
+                    offset += length;
+                }
+                if (random.nextInt(20) == 0)
+                    gzip.flush();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] createCompressibleInput(int size) {
+        StringBuilder sb = new StringBuilder(size + 100);
+        Random random = new Random(RANDOM_SEED);
+        while (sb.length() < size) {
+            sb.append(52 + random.nextInt(100) / 100.0).append(',').append(19 + random.nextInt(100) / 100.0).append(",260,6,LTE\r\n");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,93 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpClientProviderTest {
+
+    private static final int PARTS = 20;
+    private static final int OCID_DELAY_MILLIS = 300;
+    private static final int MLS_DELAY_MILLIS = 600;
+    private static final String CONTENT = "mcc,mnc,lac,cellid,lon,lat\n";
+
+    private MockWebServer ocidServer;
+    private MockWebServer mlsServer;
+
+    @Before
+    public void setUp() throws Exception {
+        ocidServer = new MockWebServer();
+        ocidServer.start();
+        mlsServer = new MockWebServer();
+        mlsServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ocidServer.shutdown();
+        mlsServer.shutdown();
+    }
+
+    @Test
+    public void reusesConnectionForConsecutiveParts() throws Exception {
+        OkHttpClient httpClient = OcidUploadClientTest.createHttpClient();
+        for (int i = 0; i < PARTS; i++) {
+            ocidServer.enqueue(new MockResponse().setBody("0,OK"));
+            // uploader creates new upload client for every part
+            IUploadClient client = new OcidUploadClient(httpClient, ocidServer.url("/").toString(), "appId", "apiKey");
+            assertEquals(RequestResult.Success, client.uploadMeasurements(writer -> writer.write(CONTENT)));
+        }
+        for (int i = 0; i < PARTS; i++) {
+            RecordedRequest request = ocidServer.takeRequest();
+            // all requests sent over the first connection
+            assertEquals(i, request.getSequenceNumber());
+            assertTrue(request.getHeader("User-Agent").startsWith("TowerCollector/"));
+        }
+    }
+
+    @Test
+    public void sendsTargetsConcurrently() throws Exception {
+        OkHttpClient httpClient = OcidUploadClientTest.createHttpClient();
+        IUploadClient ocidClient = new OcidUploadClient(httpClient, ocidServer.url("/").toString(), "appId", "apiKey");
+        IUploadClient mlsClient = new MozillaUploadClient(httpClient, mlsServer.url("/").toString());
+        ExecutorService targetExecutor = Executors.newSingleThreadExecutor();
+        try {
+            // warm up connections, so handshakes are not measured
+            sendPart(ocidClient, mlsClient, targetExecutor, 0, 0);
+            long startTime = System.nanoTime();
+            sendPart(ocidClient, mlsClient, targetExecutor, OCID_DELAY_MILLIS, MLS_DELAY_MILLIS);
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            // part takes as long as the slower target instead of the sum of both
+            assertTrue("Duration " + duration, duration >= MLS_DELAY_MILLIS);
+            assertTrue("Duration " + duration, duration < OCID_DELAY_MILLIS + MLS_DELAY_MILLIS);
+        } finally {
+            targetExecutor.shutdownNow();
+        }
+    }
+
+    private void sendPart(IUploadClient ocidClient, IUploadClient mlsClient, ExecutorService targetExecutor, int ocidDelayMillis, int mlsDelayMillis) throws Exception {
+        ocidServer.enqueue(new MockResponse().setBody("0,OK").setHeadersDelay(ocidDelayMillis, TimeUnit.MILLISECONDS));
+        mlsServer.enqueue(new MockResponse().setHeadersDelay(mlsDelayMillis, TimeUnit.MILLISECONDS));
+        // the same way as the uploader, second target is sent on executor
+        Future<RequestResult> mlsResult = targetExecutor.submit(() -> mlsClient.uploadMeasurements(writer -> writer.write("{}")));
+        assertEquals(RequestResult.Success, ocidClient.uploadMeasurements(writer -> writer.write(CONTENT)));
+        assertEquals(RequestResult.Success, mlsResult.get());
+    }
+}
@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MozillaUploadClientTest {
+
+    private static final String CONTENT = "{\"items\":[{\"timestamp\":1577836800000,\"position\":{\"latitude\":52.0693,\"longitude\":19.4781}}]}";
+
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final List<Exception> reportedExceptions = new ArrayList<>();
+
+    @Test
+    public void sendsJson() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        TestMozillaUploadClient client = createClient(OcidUploadClientTest.createHttpClient(), false);
+        assertEquals(RequestResult.Success, client.uploadMeasurements(writer -> writer.write(CONTENT)));
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals("application/json; charset=utf-8", request.getHeader("Content-Type"));
+        assertNull(request.getHeader("Content-Encoding"));
+        // streamed without known length
+        assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+        assertEquals(CONTENT, request.getBody().readUtf8());
+        assertEquals(CONTENT.length(), client.getSentBytes());
+    }
+
+    @Test
+    public void sendsCompressedJson() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(202));
+        TestMozillaUploadClient client = createClient(OcidUploadClientTest.createHttpClient(), true);
+        assertEquals(RequestResult.Success, client.uploadMeasurements(writer -> writer.write(CONTENT)));
+        RecordedRequest request = server.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        byte[] body = request.getBody().readByteArray();
+        assertArrayEquals(CONTENT.getBytes(StandardCharsets.UTF_8), OcidUploadClientTest.gunzip(body));
+        // compressed size is counted
+        assertEquals(body.length, client.getSentBytes());
+    }
+
+    @Test
+    public void mapsResponses() {
+        assertResponse(200, RequestResult.Success, false);
+        assertResponse(202, RequestResult.Success, false);
+        assertResponse(204, RequestResult.Success, false);
+        assertResponse(500, RequestResult.ServerError, false);
+        assertResponse(503, RequestResult.ServerError, false);
+        assertResponse(400, RequestResult.ConfigurationError, true);
+        assertResponse(413, RequestResult.PayloadTooLarge, false);
+        assertResponse(403, RequestResult.LimitExceeded, true);
+        // captive portal
+        assertResponse(302, RequestResult.ConnectionError, false);
+        assertResponse(404, RequestResult.ConnectionError, true);
+    }
+
+    @Test
+    public void returnsFailureWhenContentCannotBeWritten() {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        RequestResult result = createClient(OcidUploadClientTest.createHttpClient(), true).uploadMeasurements(writer -> {
+            throw new IllegalStateException("Invalid measurement");
+        });
+        assertEquals(RequestResult.Failure, result);
+        assertEquals(1, reportedExceptions.size());
+    }
+
+    private void assertResponse(int code, RequestResult expected, boolean reported) {
+        reportedExceptions.clear();
+        server.enqueue(new MockResponse().setResponseCode(code));
+        RequestResult result = createClient(OcidUploadClientTest.createHttpClient(), false).uploadMeasurements(writer -> writer.write(CONTENT));
+        assertEquals("Code " + code, expected, result);
+        assertEquals("Code " + code, reported ? 1 : 0, reportedExceptions.size());
+    }
+
+    private TestMozillaUploadClient createClient(OkHttpClient httpClient, boolean compressionEnabled) {
+        return new TestMozillaUploadClient(httpClient, server.url("/v2/geosubmit").toString(), compressionEnabled);
+    }
+
+    private class TestMozillaUploadClient extends MozillaUploadClient {
+
+        private TestMozillaUploadClient(OkHttpClient client, String url, boolean compressionEnabled) {
+            super(client, url, compressionEnabled);
+        }
+
+        @Override
+        protected void reportException(Exception ex) {
+            reportedExceptions.add(ex);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import okhttp3.ConnectionSpec;
+import okhttp3.MediaType;
+import okhttp3.MultipartReader;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OcidUploadClientTest {
+
+    private static final String APP_ID = "TowerCollectorTest";
+    private static final String API_KEY = "pk.0123456789abcdef";
+    private static final String CONTENT = "mcc,mnc,lac,cellid,lon,lat\n260,6,5114,10558,19.4781,52.0693\n";
+
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final List<Exception> reportedExceptions = new ArrayList<>();
+
+    @Test
+    public void sendsMultipartForm() throws Exception {
+        server.enqueue(new MockResponse().setBody("0,OK"));
+        TestOcidUploadClient client = createClient(createHttpClient(), false);
+        assertEquals(RequestResult.Success, client.uploadMeasurements(writer -> writer.write(CONTENT)));
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        List<MultipartReader.Part> parts = new ArrayList<>();
+        List<byte[]> bodies = new ArrayList<>();
+        readParts(request, parts, bodies);
+        assertEquals(3, parts.size());
+        assertEquals("form-data; name=\"key\"", parts.get(0).headers().get("Content-Disposition"));
+        assertEquals(API_KEY, new String(bodies.get(0), StandardCharsets.UTF_8));
+        assertEquals("form-data; name=\"appId\"", parts.get(1).headers().get("Content-Disposition"));
+        assertEquals(APP_ID, new String(bodies.get(1), StandardCharsets.UTF_8));
+        String disposition = parts.get(2).headers().get("Content-Disposition");
+        assertTrue(disposition, disposition.matches("form-data; name=\"datafile\"; filename=\"TowerCollector_measurements_\\d+\\.csv\""));
+        assertEquals("text/csv", parts.get(2).headers().get("Content-Type"));
+        assertEquals(CONTENT, new String(bodies.get(2), StandardCharsets.UTF_8));
+        assertEquals(bodies.get(2).length, client.getSentBytes());
+        assertEquals(0, reportedExceptions.size());
+    }
+
+    @Test
+    public void sendsCompressedDataFile() throws Exception {
+        server.enqueue(new MockResponse().setBody("0,OK"));
+        TestOcidUploadClient client = createClient(createHttpClient(), true);
+        assertEquals(RequestResult.Success, client.uploadMeasurements(writer -> writer.write(CONTENT)));
+        List<MultipartReader.Part> parts = new ArrayList<>();
+        List<byte[]> bodies = new ArrayList<>();
+        readParts(server.takeRequest(), parts, bodies);
+        String disposition = parts.get(2).headers().get("Content-Disposition");
+        assertTrue(disposition, disposition.endsWith(".csv.gz\""));
+        assertEquals("application/gzip", parts.get(2).headers().get("Content-Type"));
+        assertArrayEquals(CONTENT.getBytes(StandardCharsets.UTF_8), gunzip(bodies.get(2)));
+        // compressed size is counted
+        assertEquals(bodies.get(2).length, client.getSentBytes());
+    }
+
+    @Test
+    public void mapsResponses() {
+        assertResponse(200, "0,OK", RequestResult.Success, false);
+        assertResponse(200, " 0,ok\r\n", RequestResult.Success, false);
+        assertResponse(500, "", RequestResult.ServerError, false);
+        assertResponse(503, "Service Unavailable", RequestResult.ServerError, false);
+        assertResponse(401, "", RequestResult.InvalidApiKey, false);
+        assertResponse(403, "", RequestResult.InvalidApiKey, false);
+        assertResponse(200, "Err: Invalid token", RequestResult.InvalidApiKey, false);
+        assertResponse(413, "", RequestResult.PayloadTooLarge, false);
+        assertResponse(200, "Exceeded filesize limit", RequestResult.PayloadTooLarge, false);
+        assertResponse(400, "Err: Invalid format", RequestResult.ConfigurationError, true);
+        // captive portal
+        assertResponse(302, "", RequestResult.ConnectionError, false);
+        assertResponse(404, "Not Found", RequestResult.ConnectionError, true);
+        assertResponse(200, "Unexpected", RequestResult.ConnectionError, true);
+    }
+
+    @Test
+    public void returnsConnectionErrorOnTimeout() {
+        server.enqueue(new MockResponse().setBody("0,OK").setHeadersDelay(2, TimeUnit.SECONDS));
+        OkHttpClient httpClient = createHttpClient().newBuilder()
+                .readTimeout(200, TimeUnit.MILLISECONDS)
+                .build();
+        assertEquals(RequestResult.ConnectionError, createClient(httpClient, false).uploadMeasurements(writer -> writer.write(CONTENT)));
+        assertEquals(0, reportedExceptions.size());
+    }
+
+    @Test
+    public void returnsFailureWhenContentCannotBeWritten() {
+        server.enqueue(new MockResponse().setBody("0,OK"));
+        RequestResult result = createClient(createHttpClient(), false).uploadMeasurements(writer -> {
+            throw new IllegalStateException("Invalid measurement");
+        });
+        assertEquals(RequestResult.Failure, result);
+        assertEquals(1, reportedExceptions.size());
+    }
+
+    private void assertResponse(int code, String body, RequestResult expected, boolean reported) {
+        reportedExceptions.clear();
+        server.enqueue(new MockResponse().setResponseCode(code).setBody(body));
+        RequestResult result = createClient(createHttpClient(), false).uploadMeasurements(writer -> writer.write(CONTENT));
+        String message = code + " " + body;
+        assertEquals(message, expected, result);
+        assertEquals(message, reported ? 1 : 0, reportedExceptions.size());
+    }
+
+    private TestOcidUploadClient createClient(OkHttpClient httpClient, boolean compressionEnabled) {
+        return new TestOcidUploadClient(httpClient, server.url("/api/measure/uploadCsv").toString(), compressionEnabled);
+    }
+
+    static OkHttpClient createHttpClient() {
+        // mock server uses plain HTTP which is disabled by TLS compatibility specs on old Android versions
+        return HttpClientProvider.newClientBuilder()
+                .connectionSpecs(Collections.singletonList(ConnectionSpec.CLEARTEXT))
+                .build();
+    }
+
+    private static void readParts(RecordedRequest request, List<MultipartReader.Part> parts, List<byte[]> bodies) throws IOException {
+        MediaType contentType = MediaType.parse(request.getHeader("Content-Type"));
+        assertEquals("multipart/form-data", contentType.type() + "/" + contentType.subtype());
+        try (MultipartReader reader = new MultipartReader(request.getBody(), contentType.parameter("boundary"))) {
+            MultipartReader.Part part;
+            while ((part = reader.nextPart()) != null) {
+                parts.add(part);
+                bodies.add(part.body().readByteArray());
+            }
+        }
+    }
+
+    static byte[] gunzip(byte[] data) throws IOException {
+        try (InputStream inputStream = new GZIPInputStream(new Buffer().write(data).inputStream())) {
+            return new Buffer().readFrom(inputStream).readByteArray();
+        }
+    }
+
+    private class TestOcidUploadClient extends OcidUploadClient {
+
+        private TestOcidUploadClient(OkHttpClient client, String url, boolean compressionEnabled) {
+            super(client, url, APP_ID, API_KEY, compressionEnabled);
+        }
+
+        @Override
+        protected void reportException(Exception ex) {
+            reportedExceptions.add(ex);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import info.zamojski.soft.towercollector.dev.MeasurementBuilder;
+
+/**
+ * Deterministic measurements shared by formatter and storage tests.
+ * Golden files in test resources were written from this data set, so changing it requires regenerating them.
+ */
+public class MeasurementFixtures {
+
+    private static final long RANDOM_SEED = 20130417;
+    private static final int RANDOM_MEASUREMENTS = 400;
+    private static final long BASE_TIMESTAMP = 1577836800000L; // 2020-01-01T00:00:00.000Z
+
+    public static List<Measurement> createMeasurements() {
+        List<Measurement> measurements = new ArrayList<>();
+        measurements.addAll(createEdgeMeasurements());
+        measurements.addAll(createRandomMeasurements());
+        return measurements;
+    }
+
+    public static List<Measurement> createEdgeMeasurements() {
+        List<Measurement> measurements = new ArrayList<>();
+        // every network type with all values known
+        measurements.add(new MeasurementBuilder()
+                .setGsmCell(260, 6, 5114, 10558).setGsmSignal(15, -83, 1, -83, 50)
+                .setLocation(52.06932670000005, 19.48014779999999, 150.5, 3.5f)
+                .setMovement(123.45f, 1.25f)
+                .setTime(BASE_TIMESTAMP).build());
+        measurements.add(new MeasurementBuilder()
+                .setWcdmaCell(260, 6, 5114, 268435455, 211).setWcdmaSignal(20, -73, -10, 10688)
+                .setLocation(-33.865143, 151.2099, -12.75, 0.5f)
+                .setMovement(359.999f, 0.005f)
+                .setTime(951782400000L).build()); // leap day
+        measurements.add(new MeasurementBuilder()
+                .setLteCell(260, 6, 49101, 26888192, 172).setLteSignal(30, -110, 5, -110, -11, -80, 12, 10, 1850)
+                .setLocation(0, 0, 0, 0)
+                .setMovement(0, 0)
+                .setTime(0).build());
+        measurements.add(new MeasurementBuilder()
+                .setCdmaCell(4, 12, 1234).setCdmaSignal(10, -90, -89, -50, -95, -60, 8)
+                .setLocation(40.7128, -74.006, 10, 25.125f)
+                .setMovement(270.015f, 13.335f)
+                .setTime(4107542399999L).build()); // last millisecond of 2099
+        measurements.add(new MeasurementBuilder()
+                .setNrCell(260, 6, 49101, 68719476735L, 500).setNrSignal(40, -95, -95, -11, 15, -94, -10, 16, 643334)
+                .setLocation(89.999999999999, -179.999999999999, 8848.86, 1000f)
+                .setMovement(180f, 83.333f)
+                .setTime(BASE_TIMESTAMP + 999).build());
+        measurements.add(new MeasurementBuilder()
+                .setTdscdmaCell(460, 0, 10123, 65535, 33).setTdscdmaSignal(25, -85, -87, 10088)
+                .setLocation(39.9042, 116.4074, 43.5, 7.25f)
+                .setMovement(90.5f, 2.5f)
+                .setTime(BASE_TIMESTAMP + 86399999L).build());
+        // unknown signal values
+        measurements.add(new MeasurementBuilder()
+                .setGsmCell(310, 410, 1, 1)
+                .setLocation(1e-13, -1e-13, 0.125, 0.015f)
+                .setMovement(0.025f, 0.005f)
+                .setTime(BASE_TIMESTAMP + 1).build());
+        measurements.add(new MeasurementBuilder()
+                .setLteCell(310, 410, 65535, 268435455, 503)
+                .setLocation(-0.0, 180, -0.5, 0.025f)
+                .setMovement(0, 0)
+                .setTime(BASE_TIMESTAMP + 2).build());
+        measurements.add(new MeasurementBuilder()
+                .setNrCell(310, 410, 16777215, 1L, 0)
+                .setLocation(-90, -180, 0.005, 1)
+                .setMovement(0, 0)
+                .setTime(BASE_TIMESTAMP + 3).build());
+        // main cell with neighbours, including neighbours without cell identity
+        Measurement withNeighbours = new MeasurementBuilder()
+                .setLteCell(262, 1, 40100, 12345678, 101).setLteSignal(35, -95, 3, -95, -9, -65, 20, 12, 6300)
+                .setLocation(52.520008, 13.404954, 34, 4)
+                .setMovement(45, 10)
+                .setTime(BASE_TIMESTAMP + 4).build();
+        for (Cell c : withNeighbours.getCells()) {
+            c.setDiscoveredAt(BASE_TIMESTAMP + 4);
+        }
+        Cell identifiedNeighbour = new Cell();
+        identifiedNeighbour.setLteCellInfo(262, 1, 40100, 12345679, 102);
+        identifiedNeighbour.setLteSignalInfo(20, -110, Cell.UNKNOWN_SIGNAL, -110, -14, Cell.UNKNOWN_SIGNAL, Cell.UNKNOWN_SIGNAL, Cell.UNKNOWN_SIGNAL, 6300);
+        identifiedNeighbour.setNeighboring(true);
+        identifiedNeighbour.setDiscoveredAt(BASE_TIMESTAMP + 3);
+        withNeighbours.addCell(identifiedNeighbour);
+        Cell anonymousNeighbour = new Cell();
+        anonymousNeighbour.setLteCellInfo(Cell.UNKNOWN_CID, Cell.UNKNOWN_CID, Cell.UNKNOWN_CID, Cell.UNKNOWN_CID, 103);
+        anonymousNeighbour.setLteSignalInfo(5, -120, Cell.UNKNOWN_SIGNAL, -120, -19, Cell.UNKNOWN_SIGNAL, Cell.UNKNOWN_SIGNAL, Cell.UNKNOWN_SIGNAL, 1850);
+        anonymousNeighbour.setNeighboring(true);
+        anonymousNeighbour.setDiscoveredAt(BASE_TIMESTAMP + 2);
+        withNeighbours.addCell(anonymousNeighbour);
+        measurements.add(withNeighbours);
+        return measurements;
+    }
+
+    public static List<Measurement> createRandomMeasurements() {
+        Random random = new Random(RANDOM_SEED);
+        List<Measurement> measurements = new ArrayList<>(RANDOM_MEASUREMENTS);
+        for (int i = 0; i < RANDOM_MEASUREMENTS; i++) {
+            MeasurementBuilder builder = new MeasurementBuilder()
+                    .setLocation(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, random.nextDouble() * 2000 - 100, random.nextFloat() * 50)
+                    .setMovement(random.nextFloat() * 360, random.nextFloat() * 40)
+                    .setTime(BASE_TIMESTAMP + (long) (random.nextDouble() * 1e11));
+            int mcc = 200 + random.nextInt(600);
+            int mnc = random.nextInt(1000);
+            switch (i % 6) {
+                case 0:
+                    builder.setGsmCell(mcc, mnc, 1 + random.nextInt(65534), random.nextInt(65536))
+                            .setGsmSignal(random.nextInt(32), -113 + random.nextInt(62), random.nextInt(64), -113 + random.nextInt(62), random.nextInt(1024));
+                    break;
+                case 1:
+                    builder.setWcdmaCell(mcc, mnc, 1 + random.nextInt(65534), random.nextInt(268435456), random.nextInt(512))
+                            .setWcdmaSignal(random.nextInt(92), -120 + random.nextInt(96), -24 + random.nextInt(25), random.nextInt(16384));
+                    break;
+                case 2:
+                    builder.setLteCell(mcc, mnc, 1 + random.nextInt(65534), random.nextInt(268435456), random.nextInt(504))
+                            .setLteSignal(random.nextInt(98), -140 + random.nextInt(97), random.nextInt(1283), -140 + random.nextInt(97), -20 + random.nextInt(18), -113 + random.nextInt(62), -200 + random.nextInt(501), random.nextInt(16), random.nextInt(262144));
+                    break;
+                case 3:
+                    builder.setCdmaCell(random.nextInt(32768), random.nextInt(65536), random.nextInt(65536))
+                            .setCdmaSignal(random.nextInt(98), -120 + random.nextInt(80), -120 + random.nextInt(80), -160 + random.nextInt(161), -120 + random.nextInt(80), -160 + random.nextInt(161), random.nextInt(9));
+                    break;
+                case 4:
+                    builder.setNrCell(mcc, mnc, random.nextInt(16777216), (long) (random.nextDouble() * 68719476735L), random.nextInt(1008))
+                            .setNrSignal(random.nextInt(98), -140 + random.nextInt(97), -140 + random.nextInt(97), -20 + random.nextInt(24), -23 + random.nextInt(64), -140 + random.nextInt(97), -20 + random.nextInt(24), -23 + random.nextInt(64), random.nextInt(3279166));
+                    break;
+                default:
+                    builder.setTdscdmaCell(mcc, mnc, 1 + random.nextInt(65534), random.nextInt(65536), random.nextInt(128))
+                            .setTdscdmaSignal(random.nextInt(97), -120 + random.nextInt(96), -120 + random.nextInt(96), random.nextInt(65536));
+                    break;
+            }
+            measurements.add(builder.build());
+        }
+        return measurements;
+    }
+}
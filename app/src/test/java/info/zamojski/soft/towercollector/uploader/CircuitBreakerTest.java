@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_DURATION_MILLIS = 60000;
+
+    private final FakeClock clock = new FakeClock(1577836800000L);
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("Test", clock, FAILURE_THRESHOLD, OPEN_DURATION_MILLIS);
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            circuitBreaker.onFailure();
+            assertTrue(circuitBreaker.allowRequest());
+        }
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.isOpen());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < FAILURE_THRESHOLD - 1; j++) {
+                circuitBreaker.onFailure();
+            }
+            circuitBreaker.onSuccess();
+        }
+        assertFalse(circuitBreaker.isOpen());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void letsTrialThroughAfterOpenPeriod() {
+        open();
+        clock.advance(OPEN_DURATION_MILLIS - 1);
+        assertFalse(circuitBreaker.allowRequest());
+        clock.advance(1);
+        assertTrue(circuitBreaker.allowRequest());
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void failedTrialOpensAgain() {
+        open();
+        clock.advance(OPEN_DURATION_MILLIS);
+        assertTrue(circuitBreaker.allowRequest());
+        // single failure is enough in half-open state
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.isOpen());
+        assertFalse(circuitBreaker.allowRequest());
+        // open period starts again from the failed trial
+        clock.advance(OPEN_DURATION_MILLIS - 1);
+        assertFalse(circuitBreaker.allowRequest());
+        clock.advance(1);
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void completedTrialCloses() {
+        open();
+        clock.advance(OPEN_DURATION_MILLIS);
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.onSuccess();
+        assertFalse(circuitBreaker.isOpen());
+        // closed again, threshold applies
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    private void open() {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertTrue(circuitBreaker.isOpen());
+    }
+}
@@ -0,0 +1,48 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clock which advances only when sleeping, recording requested sleeps.
+ */
+public class FakeClock implements IClock {
+
+    private long currentTimeMillis;
+    private final List<Long> sleeps = new ArrayList<>();
+
+    public FakeClock(long currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    @Override
+    public void sleep(long millis) {
+        sleeps.add(millis);
+        currentTimeMillis += millis;
+    }
+
+    public void advance(long millis) {
+        currentTimeMillis += millis;
+    }
+
+    List<Long> getSleeps() {
+        return sleeps;
+    }
+
+    long getSleptMillis() {
+        long total = 0;
+        for (long millis : sleeps) {
+            total += millis;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,199 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import info.zamojski.soft.towercollector.dao.IUploadDatabase;
+import info.zamojski.soft.towercollector.enums.UploadJournalState;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.Statistics;
+import info.zamojski.soft.towercollector.model.UploadJournalEntry;
+
+/**
+ * Keeps measurements and upload journal in memory with the same semantics as the database.
+ * Stored measurements are returned as they are, marking changes measurements already returned.
+ */
+class FakeUploadDatabase implements IUploadDatabase {
+
+    private final List<Measurement> measurements = new ArrayList<>();
+    private final List<UploadJournalEntry> journal = new ArrayList<>();
+    private final Set<Integer> markedForOcid = new HashSet<>();
+    private final Set<Integer> markedForMls = new HashSet<>();
+    private long nextEntryId = 1;
+    private int failMarkingAfter = Integer.MAX_VALUE;
+
+    FakeUploadDatabase(List<Measurement> measurements) {
+        this.measurements.addAll(measurements);
+        // the same order as parts are read in
+        this.measurements.sort(Comparator.comparingLong(Measurement::getMeasuredAt).thenComparingInt(Measurement::getMeasurementId));
+    }
+
+    /**
+     * Makes marking of measurements as uploaded fail after given number of successful calls.
+     */
+    synchronized void failMarkingAfter(int calls) {
+        failMarkingAfter = calls;
+    }
+
+    synchronized Set<Integer> getMarkedForOcid() {
+        return new HashSet<>(markedForOcid);
+    }
+
+    synchronized Set<Integer> getMarkedForMls() {
+        return new HashSet<>(markedForMls);
+    }
+
+    synchronized int getMeasurementsCount() {
+        return measurements.size();
+    }
+
+    @Override
+    public synchronized Statistics getMeasurementsStatistics() {
+        Statistics stats = new Statistics();
+        int toUploadOcid = 0, toUploadMls = 0;
+        for (Measurement m : measurements) {
+            if (m.getUploadedToOcidAt() == null)
+                toUploadOcid++;
+            if (m.getUploadedToMlsAt() == null)
+                toUploadMls++;
+        }
+        stats.setToUploadOcid(toUploadOcid);
+        stats.setToUploadMls(toUploadMls);
+        return stats;
+    }
+
+    @Override
+    public synchronized List<Measurement> getMeasurementsPartIncludingPartiallyUploaded(int offset, int limit) {
+        int from = Math.min(offset, measurements.size());
+        return new ArrayList<>(measurements.subList(from, Math.min(measurements.size(), from + limit)));
+    }
+
+    @Override
+    public synchronized int markAsUploaded(int[] measurementIds, Long uploadedToOcidAt, Long uploadedToMlsAt) {
+        if (failMarkingAfter-- <= 0)
+            return 0;
+        Set<Integer> ids = new HashSet<>();
+        for (int measurementId : measurementIds) {
+            ids.add(measurementId);
+        }
+        int updated = 0;
+        for (Measurement m : measurements) {
+            if (ids.contains(m.getMeasurementId())) {
+                mark(m, uploadedToOcidAt, uploadedToMlsAt);
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized int clearOlderUploadedPartiallyAndUploadedFully() {
+        // measurements are uploaded recently, only fully uploaded are removed
+        int deleted = 0;
+        for (Iterator<Measurement> iterator = measurements.iterator(); iterator.hasNext(); ) {
+            Measurement m = iterator.next();
+            if (m.getUploadedToOcidAt() != null && m.getUploadedToMlsAt() != null) {
+                iterator.remove();
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public synchronized long insertUploadJournalEntry(UploadJournalEntry entry) {
+        entry.setEntryId(nextEntryId++);
+        journal.add(copy(entry));
+        return entry.getEntryId();
+    }
+
+    @Override
+    public synchronized void updateUploadJournalEntryState(UploadJournalEntry entry) {
+        for (UploadJournalEntry stored : journal) {
+            if (stored.getEntryId() == entry.getEntryId()) {
+                stored.setState(entry.getState());
+                stored.setUpdatedAt(entry.getUpdatedAt());
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<UploadJournalEntry> getUploadJournalEntries() {
+        List<UploadJournalEntry> entries = new ArrayList<>();
+        for (UploadJournalEntry stored : journal) {
+            entries.add(copy(stored));
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized int markUploadJournalEntryAsUploaded(UploadJournalEntry entry) {
+        boolean isOcidEntry = UploadJournalEntry.TARGET_OCID.equals(entry.getTarget());
+        Long uploadedAt = entry.getUpdatedAt();
+        int updated = 0;
+        for (Measurement m : measurements) {
+            if (m.getMeasurementId() > entry.getMaxMeasurementId()
+                    || compare(m, entry.getFirstMeasuredAt(), entry.getFirstMeasurementId()) < 0
+                    || compare(m, entry.getLastMeasuredAt(), entry.getLastMeasurementId()) > 0)
+                continue;
+            boolean markOcid = (isOcidEntry || entry.isMarkAllTargets()) && m.getUploadedToOcidAt() == null;
+            boolean markMls = (!isOcidEntry || entry.isMarkAllTargets()) && m.getUploadedToMlsAt() == null;
+            if (markOcid || markMls) {
+                mark(m, markOcid ? uploadedAt : null, markMls ? uploadedAt : null);
+                updated++;
+            }
+        }
+        for (UploadJournalEntry stored : journal) {
+            if (stored.getEntryId() == entry.getEntryId())
+                stored.setState(UploadJournalState.Marked);
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized int deleteUploadJournalEntries(boolean keepAcknowledged) {
+        int sizeBefore = journal.size();
+        journal.removeIf(entry -> !keepAcknowledged || entry.getState() != UploadJournalState.Acknowledged);
+        return sizeBefore - journal.size();
+    }
+
+    private void mark(Measurement m, Long uploadedToOcidAt, Long uploadedToMlsAt) {
+        if (uploadedToOcidAt != null) {
+            m.setUploadedToOcidAt(uploadedToOcidAt);
+            markedForOcid.add(m.getMeasurementId());
+        }
+        if (uploadedToMlsAt != null) {
+            m.setUploadedToMlsAt(uploadedToMlsAt);
+            markedForMls.add(m.getMeasurementId());
+        }
+    }
+
+    private static int compare(Measurement m, long measuredAt, int measurementId) {
+        int result = Long.compare(m.getMeasuredAt(), measuredAt);
+        return (result != 0 ? result : Integer.compare(m.getMeasurementId(), measurementId));
+    }
+
+    private static UploadJournalEntry copy(UploadJournalEntry entry) {
+        UploadJournalEntry copy = new UploadJournalEntry();
+        copy.setEntryId(entry.getEntryId());
+        copy.setTarget(entry.getTarget());
+        copy.setState(entry.getState());
+        copy.setFirstMeasuredAt(entry.getFirstMeasuredAt());
+        copy.setFirstMeasurementId(entry.getFirstMeasurementId());
+        copy.setLastMeasuredAt(entry.getLastMeasuredAt());
+        copy.setLastMeasurementId(entry.getLastMeasurementId());
+        copy.setMaxMeasurementId(entry.getMaxMeasurementId());
+        copy.setMeasurementsCount(entry.getMeasurementsCount());
+        copy.setMarkAllTargets(entry.isMarkAllTargets());
+        copy.setUpdatedAt(entry.getUpdatedAt());
+        return copy;
+    }
+}
@@ -0,0 +1,364 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import org.greenrobot.eventbus.EventBus;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.zamojski.soft.towercollector.dev.MeasurementBuilder;
+import info.zamojski.soft.towercollector.enums.UploadResult;
+import info.zamojski.soft.towercollector.io.network.HttpClientProvider;
+import info.zamojski.soft.towercollector.io.network.MozillaUploadClient;
+import info.zamojski.soft.towercollector.io.network.OcidUploadClient;
+import info.zamojski.soft.towercollector.model.Measurement;
+import okhttp3.ConnectionSpec;
+import okhttp3.MediaType;
+import okhttp3.MultipartReader;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Uploads generated measurements to mock OCID and MLS servers through {@link UploadSession} the same way
+ * as {@link UploaderWorker} does, with parts read by {@link UploadPartProducer} from in-memory database,
+ * sized by {@link UploadPartSizeController}, retried by {@link UploadRetryPolicy}, guarded by {@link CircuitBreaker}
+ * and journaled by {@link UploadJournal}. Servers emulate latency, limited bandwidth, server errors, responses lost
+ * after accepting the data and body size limit. Checks that only measurements accepted by the server are marked
+ * as uploaded and that interrupted marking is finished from the journal.
+ */
+public class UploadEndToEndTest {
+
+    private static final int MEASUREMENTS_COUNT = 100000;
+    private static final int INITIAL_PART_SIZE = 85;
+    private static final int PREPARED_PARTS_DEPTH = 2;
+    private static final long RANDOM_SEED = 20130417;
+    private static final long START_TIME_MILLIS = 1577836800000L;
+    private static final int FIRST_CELL_ID = 26888192;
+
+    private MockWebServer ocidServer;
+    private MockWebServer mlsServer;
+    private OkHttpClient httpClient;
+
+    @Before
+    public void setUp() throws Exception {
+        ocidServer = new MockWebServer();
+        ocidServer.start();
+        mlsServer = new MockWebServer();
+        mlsServer.start();
+        // mock servers use plain HTTP which is disabled by TLS compatibility specs on old Android versions
+        httpClient = HttpClientProvider.newClientBuilder()
+                .connectionSpecs(Collections.singletonList(ConnectionSpec.CLEARTEXT))
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ocidServer.shutdown();
+        mlsServer.shutdown();
+    }
+
+    @Test
+    public void uploadsAllMeasurementsOverFastNetwork() throws Exception {
+        FakeUploadDatabase database = new FakeUploadDatabase(createMeasurements(MEASUREMENTS_COUNT));
+        UploadDispatcher ocidDispatcher = new UploadDispatcher(true, 20, 0, 0, 0, 0, false);
+        UploadDispatcher mlsDispatcher = new UploadDispatcher(false, 20, 0, 0, 0, 0, false);
+        SessionResult result = upload("fast", database, ocidDispatcher, mlsDispatcher, true);
+        assertEquals(result.getThroughput(), UploadResult.PartiallySucceeded, result.session.getOcidUploadResult());
+        assertEquals(result.getThroughput(), UploadResult.PartiallySucceeded, result.session.getMlsUploadResult());
+        assertMarkedAccepted(result.getThroughput(), database.getMarkedForOcid(), ocidDispatcher);
+        assertMarkedAccepted(result.getThroughput(), database.getMarkedForMls(), mlsDispatcher);
+        assertEquals(result.getThroughput(), MEASUREMENTS_COUNT, database.getMarkedForOcid().size());
+        assertEquals(result.getThroughput(), MEASUREMENTS_COUNT, database.getMarkedForMls().size());
+        // nothing is sent twice
+        assertEquals(result.getThroughput(), MEASUREMENTS_COUNT, ocidDispatcher.acceptedMeasurements.get());
+        assertEquals(result.getThroughput(), MEASUREMENTS_COUNT, mlsDispatcher.acceptedMeasurements.get());
+        // uploaded measurements are cleaned and the journal is empty after finished upload
+        assertEquals(0, database.getMeasurementsCount());
+        assertTrue(database.getUploadJournalEntries().isEmpty());
+    }
+
+    @Test
+    public void marksOnlyAcceptedMeasurementsOverFaultyNetwork() throws Exception {
+        FakeUploadDatabase database = new FakeUploadDatabase(createMeasurements(MEASUREMENTS_COUNT / 5));
+        UploadDispatcher ocidDispatcher = new UploadDispatcher(true, 150, 4 * 1024 * 1024, 0.05, 0.02, 256 * 1024, false);
+        UploadDispatcher mlsDispatcher = new UploadDispatcher(false, 150, 4 * 1024 * 1024, 0.05, 0.02, 256 * 1024, false);
+        SessionResult result = upload("faulty", database, ocidDispatcher, mlsDispatcher, true);
+        assertMarkedAccepted(result.getThroughput(), database.getMarkedForOcid(), ocidDispatcher);
+        assertMarkedAccepted(result.getThroughput(), database.getMarkedForMls(), mlsDispatcher);
+        assertTrue(result.getThroughput(), database.getMarkedForOcid().size() > 0);
+        assertTrue(result.getThroughput(), database.getMarkedForMls().size() > 0);
+        // measurements are sent again only when response of accepted request was lost
+        for (UploadDispatcher dispatcher : new UploadDispatcher[]{ocidDispatcher, mlsDispatcher}) {
+            int duplicated = dispatcher.acceptedMeasurements.get() - dispatcher.accepted.size();
+            assertTrue(result.getThroughput() + ", duplicated " + duplicated, duplicated == 0 || dispatcher.droppedResponses.get() > 0);
+        }
+        assertTrue(database.getUploadJournalEntries().isEmpty());
+    }
+
+    @Test
+    public void marksNothingForTargetWithInvalidApiKey() throws Exception {
+        int count = 1000;
+        FakeUploadDatabase database = new FakeUploadDatabase(createMeasurements(count));
+        UploadDispatcher ocidDispatcher = new UploadDispatcher(true, 20, 0, 0, 0, 0, true);
+        UploadDispatcher mlsDispatcher = new UploadDispatcher(false, 20, 0, 0, 0, 0, false);
+        SessionResult result = upload("invalid_ocid_key", database, ocidDispatcher, mlsDispatcher, true);
+        assertEquals(result.getThroughput(), UploadResult.InvalidApiKey, result.session.getOcidUploadResult());
+        assertEquals(0, database.getMarkedForOcid().size());
+        assertMarkedAccepted(result.getThroughput(), database.getMarkedForMls(), mlsDispatcher);
+        assertEquals(result.getThroughput(), count, database.getMarkedForMls().size());
+        // kept for the other target
+        assertEquals(count, database.getMeasurementsCount());
+    }
+
+    @Test
+    public void finishesMarkingOfAcknowledgedPartFromJournal() throws Exception {
+        int count = 1000;
+        FakeUploadDatabase database = new FakeUploadDatabase(createMeasurements(count));
+        // the third part is accepted by both servers but marking it fails
+        database.failMarkingAfter(2);
+        UploadDispatcher ocidDispatcher = new UploadDispatcher(true, 20, 0, 0, 0, 0, false);
+        UploadDispatcher mlsDispatcher = new UploadDispatcher(false, 20, 0, 0, 0, 0, false);
+        SessionResult result = upload("marking_failed", database, ocidDispatcher, mlsDispatcher, false);
+        assertEquals(result.getThroughput(), UploadResult.DeleteFailed, result.session.getOcidUploadResult());
+        assertEquals(result.getThroughput(), UploadResult.DeleteFailed, result.session.getMlsUploadResult());
+        assertTrue(database.getMarkedForOcid().size() < ocidDispatcher.accepted.size());
+        assertEquals(2, database.getUploadJournalEntries().size());
+        // next upload starts with marking acknowledged part without sending it again
+        assertTrue(new UploadJournal(database).reconcile());
+        assertMarkedAccepted(result.getThroughput(), database.getMarkedForOcid(), ocidDispatcher);
+        assertMarkedAccepted(result.getThroughput(), database.getMarkedForMls(), mlsDispatcher);
+        assertEquals(ocidDispatcher.accepted.size(), database.getMarkedForOcid().size());
+        assertEquals(mlsDispatcher.accepted.size(), database.getMarkedForMls().size());
+        assertTrue(database.getUploadJournalEntries().isEmpty());
+        assertEquals(count - ocidDispatcher.accepted.size(), database.getMeasurementsCount());
+    }
+
+    private SessionResult upload(String scenario, FakeUploadDatabase database, UploadDispatcher ocidDispatcher, UploadDispatcher mlsDispatcher,
+                                 boolean reuploadIfUploadFails) throws Exception {
+        ocidServer.setDispatcher(ocidDispatcher);
+        mlsServer.setDispatcher(mlsDispatcher);
+        String ocidUrl = ocidServer.url("/api/measure/uploadCsv").toString();
+        String mlsUrl = mlsServer.url("/v2/geosubmit").toString();
+        // delays between retries are not waited for
+        FakeClock clock = new FakeClock(START_TIME_MILLIS);
+        UploadRetryPolicy retryPolicy = new UploadRetryPolicy(clock, new Random(RANDOM_SEED));
+        UploadPartSizeController ocidPartSizeController = new UploadPartSizeController("OCID", INITIAL_PART_SIZE);
+        UploadPartSizeController mlsPartSizeController = new UploadPartSizeController("MLS", INITIAL_PART_SIZE);
+        UploadSession session = new UploadSession(database, new UploadJournal(database), retryPolicy, EventBus.builder().build(), reuploadIfUploadFails,
+                (value, max) -> {
+                }, () -> false);
+        session.setOcidTarget(() -> new OcidUploadClient(httpClient, ocidUrl, "TowerCollectorTest", "apiKey"), ocidPartSizeController, new CircuitBreaker("OCID", clock));
+        session.setMlsTarget(() -> new MozillaUploadClient(httpClient, mlsUrl), mlsPartSizeController, new CircuitBreaker("MLS", clock));
+        int count = database.getMeasurementsCount();
+        UploadPartProducer producer = new UploadPartProducer(database, 0, count, Integer.MAX_VALUE, ocidPartSizeController, mlsPartSizeController, PREPARED_PARTS_DEPTH, true, true);
+        ExecutorService targetExecutor = Executors.newSingleThreadExecutor();
+        long startTime = System.nanoTime();
+        producer.start();
+        try {
+            session.upload(producer, 0, count, targetExecutor);
+        } finally {
+            producer.stop();
+            targetExecutor.shutdownNow();
+        }
+        long durationMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), 1);
+        return new SessionResult(scenario, session, database, ocidDispatcher, mlsDispatcher, durationMillis);
+    }
+
+    private static void assertMarkedAccepted(String message, Set<Integer> markedMeasurementIds, UploadDispatcher dispatcher) {
+        int markedNotAccepted = 0;
+        for (int measurementId : markedMeasurementIds) {
+            if (!dispatcher.accepted.contains(getCellId(measurementId)))
+                markedNotAccepted++;
+        }
+        assertEquals(message + ", marked but not accepted", 0, markedNotAccepted);
+    }
+
+    private static List<Measurement> createMeasurements(int count) {
+        Random random = new Random(RANDOM_SEED);
+        List<Measurement> measurements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // cell id identifies the measurement on the server
+            Measurement m = new MeasurementBuilder()
+                    .setLocation(52 + random.nextDouble(), 19 + random.nextDouble(), 150 + random.nextDouble() * 50, 3 + random.nextFloat() * 20)
+                    .setMovement(random.nextFloat() * 360, random.nextFloat() * 30)
+                    .setTime(START_TIME_MILLIS + i * 1000L)
+                    .setLteCell(260, 6, 49101, FIRST_CELL_ID + i, 172)
+                    .setLteSignal(30, -110, 5, -110, -11, -80, 12, 10, 1850)
+                    .build();
+            m.setMeasurementId(i + 1);
+            measurements.add(m);
+        }
+        return measurements;
+    }
+
+    private static long getCellId(int measurementId) {
+        // the same as generated measurements
+        return FIRST_CELL_ID + measurementId - 1;
+    }
+
+    private static class SessionResult {
+
+        private final String scenario;
+        private final UploadSession session;
+        private final FakeUploadDatabase database;
+        private final UploadDispatcher ocidDispatcher;
+        private final UploadDispatcher mlsDispatcher;
+        private final long durationMillis;
+
+        private SessionResult(String scenario, UploadSession session, FakeUploadDatabase database, UploadDispatcher ocidDispatcher,
+                              UploadDispatcher mlsDispatcher, long durationMillis) {
+            this.scenario = scenario;
+            this.session = session;
+            this.database = database;
+            this.ocidDispatcher = ocidDispatcher;
+            this.mlsDispatcher = mlsDispatcher;
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * Describes requests and throughput of both targets, used as assertion message.
+         */
+        private String getThroughput() {
+            return String.format(Locale.ENGLISH, "%s in %s ms, %s, %s", scenario, durationMillis,
+                    getThroughput("OCID", ocidDispatcher, session.getOcidSentBytes(), database.getMarkedForOcid().size()),
+                    getThroughput("MLS", mlsDispatcher, session.getMlsSentBytes(), database.getMarkedForMls().size()));
+        }
+
+        private String getThroughput(String name, UploadDispatcher dispatcher, long sentBytes, int markedCount) {
+            return String.format(Locale.ENGLISH, "%s: %s requests (%s rejected, %s responses dropped), %s measurements/s, %s KB/s, %s marked",
+                    name, dispatcher.requests.get(), dispatcher.rejectedRequests.get(), dispatcher.droppedResponses.get(),
+                    markedCount * 1000L / durationMillis, sentBytes * 1000 / durationMillis / 1024, markedCount);
+        }
+    }
+
+    /**
+     * Answers like OCID CSV upload or MLS geosubmit and records cells of accepted requests.
+     */
+    private static class UploadDispatcher extends Dispatcher {
+
+        private static final int OCID_CELL_ID_COLUMN = 8;
+
+        private final boolean ocid;
+        private final int roundTripMillis;
+        private final long bytesPerSecond;
+        private final double serverErrorRate;
+        private final double droppedResponseRate;
+        private final long maxBodyBytes;
+        private final boolean invalidApiKey;
+        private final Random random = new Random(RANDOM_SEED);
+
+        private final Set<Long> accepted = Collections.synchronizedSet(new HashSet<>());
+        private final AtomicInteger acceptedMeasurements = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger rejectedRequests = new AtomicInteger();
+        private final AtomicInteger droppedResponses = new AtomicInteger();
+        private final AtomicLong receivedBytes = new AtomicLong();
+
+        private UploadDispatcher(boolean ocid, int roundTripMillis, long bytesPerSecond, double serverErrorRate,
+                                 double droppedResponseRate, long maxBodyBytes, boolean invalidApiKey) {
+            this.ocid = ocid;
+            this.roundTripMillis = roundTripMillis;
+            this.bytesPerSecond = bytesPerSecond;
+            this.serverErrorRate = serverErrorRate;
+            this.droppedResponseRate = droppedResponseRate;
+            this.maxBodyBytes = maxBodyBytes;
+            this.invalidApiKey = invalidApiKey;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            requests.incrementAndGet();
+            long bodySize = request.getBodySize();
+            receivedBytes.addAndGet(bodySize);
+            // time of sending the body over limited bandwidth
+            long delayMillis = roundTripMillis + (bytesPerSecond > 0 ? bodySize * 1000 / bytesPerSecond : 0);
+            double failure;
+            synchronized (random) {
+                failure = random.nextDouble();
+            }
+            MockResponse response = new MockResponse().setHeadersDelay(delayMillis, TimeUnit.MILLISECONDS);
+            if (maxBodyBytes > 0 && bodySize > maxBodyBytes) {
+                rejectedRequests.incrementAndGet();
+                return (ocid ? response.setBody("Exceeded filesize limit") : response.setResponseCode(413));
+            }
+            if (ocid && invalidApiKey) {
+                rejectedRequests.incrementAndGet();
+                return response.setBody("Err: Invalid token");
+            }
+            if (failure < serverErrorRate) {
+                rejectedRequests.incrementAndGet();
+                return response.setResponseCode(503);
+            }
+            List<Long> cellIds;
+            try {
+                cellIds = (ocid ? readCsvCellIds(request) : readJsonCellIds(request));
+            } catch (Exception ex) {
+                throw new IllegalStateException("Invalid request body", ex);
+            }
+            accepted.addAll(cellIds);
+            acceptedMeasurements.addAndGet(cellIds.size());
+            if (failure < serverErrorRate + droppedResponseRate) {
+                // data is accepted but the client doesn't know it
+                droppedResponses.incrementAndGet();
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            }
+            return (ocid ? response.setBody("0,OK") : response.setBody("{}"));
+        }
+
+        private static List<Long> readCsvCellIds(RecordedRequest request) throws IOException {
+            MediaType contentType = MediaType.parse(request.getHeader("Content-Type"));
+            String csv = null;
+            try (MultipartReader reader = new MultipartReader(request.getBody(), contentType.parameter("boundary"))) {
+                MultipartReader.Part part;
+                while ((part = reader.nextPart()) != null) {
+                    String body = part.body().readString(StandardCharsets.UTF_8);
+                    if (part.headers().get("Content-Disposition").contains("name=\"datafile\""))
+                        csv = body;
+                }
+            }
+            String[] rows = csv.split("\n");
+            List<Long> cellIds = new ArrayList<>(rows.length);
+            // first row is header
+            for (int i = 1; i < rows.length; i++) {
+                cellIds.add(Long.parseLong(rows[i].split(",", -1)[OCID_CELL_ID_COLUMN]));
+            }
+            return cellIds;
+        }
+
+        private static List<Long> readJsonCellIds(RecordedRequest request) {
+            JSONArray items = new JSONObject(request.getBody().readUtf8()).getJSONArray("items");
+            List<Long> cellIds = new ArrayList<>(items.length());
+            for (int i = 0; i < items.length(); i++) {
+                cellIds.add(items.getJSONObject(i).getJSONArray("cellTowers").getJSONObject(0).getLong("cellId"));
+            }
+            return cellIds;
+        }
+    }
+}
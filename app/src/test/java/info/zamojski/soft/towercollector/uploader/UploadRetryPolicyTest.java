@@ -0,0 +1,131 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.uploader;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import info.zamojski.soft.towercollector.io.network.RequestResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UploadRetryPolicyTest {
+
+    private static final long RANDOM_SEED = 20130417;
+    private static final long START_TIME_MILLIS = 1577836800000L;
+
+    private final FakeClock clock = new FakeClock(START_TIME_MILLIS);
+    private final UploadRetryPolicy retryPolicy = new UploadRetryPolicy(clock, new Random(RANDOM_SEED));
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("Test", clock);
+
+    @Test
+    public void returnsSuccessWithoutRetry() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        assertEquals(RequestResult.Success, execute(attempts, RequestResult.Success));
+        assertEquals(1, attempts.get());
+        assertEquals(0, clock.getSleeps().size());
+    }
+
+    @Test
+    public void retriesConnectionAndServerErrors() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        assertEquals(RequestResult.Success, execute(attempts, RequestResult.ConnectionError, RequestResult.ServerError, RequestResult.Success));
+        assertEquals(3, attempts.get());
+        // delays of the first and second attempt
+        long sleptMillis = clock.getSleptMillis();
+        assertTrue("Slept " + sleptMillis, sleptMillis >= UploadRetryPolicy.BASE_DELAY_MILLIS / 2 + UploadRetryPolicy.BASE_DELAY_MILLIS);
+        assertTrue("Slept " + sleptMillis, sleptMillis <= UploadRetryPolicy.BASE_DELAY_MILLIS + 2 * UploadRetryPolicy.BASE_DELAY_MILLIS);
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void stopsAfterMaxAttempts() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        assertEquals(RequestResult.ServerError, execute(attempts, RequestResult.ServerError, RequestResult.ServerError, RequestResult.ServerError, RequestResult.Success));
+        assertEquals(UploadRetryPolicy.MAX_ATTEMPTS, attempts.get());
+    }
+
+    @Test
+    public void doesNotRetryOtherResults() throws InterruptedException {
+        RequestResult[] results = {RequestResult.Failure, RequestResult.ConfigurationError, RequestResult.InvalidApiKey, RequestResult.LimitExceeded, RequestResult.PayloadTooLarge};
+        for (RequestResult result : results) {
+            AtomicInteger attempts = new AtomicInteger();
+            assertEquals(result, execute(attempts, result, RequestResult.Success));
+            assertEquals(result.name(), 1, attempts.get());
+        }
+        assertEquals(0, clock.getSleeps().size());
+    }
+
+    @Test
+    public void stopsRetryingWhenCircuitOpens() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("Test", clock, 2, CircuitBreaker.OPEN_DURATION_MILLIS);
+        AtomicInteger attempts = new AtomicInteger();
+        RequestResult result = retryPolicy.execute(circuitBreaker, () -> {
+            attempts.incrementAndGet();
+            return RequestResult.ConnectionError;
+        }, () -> false);
+        assertEquals(RequestResult.ConnectionError, result);
+        assertEquals(2, attempts.get());
+        assertTrue(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void rejectedTrialClosesCircuit() throws InterruptedException {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            circuitBreaker.onFailure();
+        }
+        clock.advance(CircuitBreaker.OPEN_DURATION_MILLIS);
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(RequestResult.PayloadTooLarge, execute(new AtomicInteger(), RequestResult.PayloadTooLarge));
+        // not half-open anymore, single failure doesn't open it
+        circuitBreaker.onFailure();
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void stopsDuringBackoff() throws InterruptedException {
+        long stopAfterMillis = 700;
+        AtomicInteger attempts = new AtomicInteger();
+        RequestResult result = retryPolicy.execute(circuitBreaker, () -> {
+            attempts.incrementAndGet();
+            return RequestResult.ServerError;
+        }, () -> clock.currentTimeMillis() - START_TIME_MILLIS >= stopAfterMillis);
+        assertEquals(RequestResult.ServerError, result);
+        assertEquals(1, attempts.get());
+        // first delay is at least one second, stop is noticed after the slice it happened in
+        for (long sleep : clock.getSleeps()) {
+            assertTrue(sleep <= UploadRetryPolicy.SLEEP_SLICE_MILLIS);
+        }
+        assertEquals(2 * UploadRetryPolicy.SLEEP_SLICE_MILLIS, clock.getSleptMillis());
+    }
+
+    @Test
+    public void delaysGrowExponentiallyWithJitter() {
+        for (int attempt = 1; attempt <= 20; attempt++) {
+            long maxDelay = Math.min(UploadRetryPolicy.MAX_DELAY_MILLIS, UploadRetryPolicy.BASE_DELAY_MILLIS << (attempt - 1));
+            for (int i = 0; i < 1000; i++) {
+                long delay = retryPolicy.getDelayMillis(attempt);
+                assertTrue("Attempt " + attempt + " delay " + delay, delay >= maxDelay / 2 && delay <= maxDelay);
+            }
+        }
+        // the same seed gives the same delays
+        UploadRetryPolicy first = new UploadRetryPolicy(clock, new Random(RANDOM_SEED));
+        UploadRetryPolicy second = new UploadRetryPolicy(clock, new Random(RANDOM_SEED));
+        for (int attempt = 1; attempt <= 20; attempt++) {
+            assertEquals(first.getDelayMillis(attempt), second.getDelayMillis(attempt));
+        }
+    }
+
+    private RequestResult execute(AtomicInteger attempts, RequestResult... results) throws InterruptedException {
+        List<RequestResult> resultList = Arrays.asList(results);
+        return retryPolicy.execute(circuitBreaker, () -> resultList.get(attempts.getAndIncrement()), () -> false);
+    }
+}
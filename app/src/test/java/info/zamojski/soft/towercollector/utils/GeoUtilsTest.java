@@ -0,0 +1,154 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks error bounds documented on {@link GeoUtils#getApproximateDistance}.
+ */
+public class GeoUtilsTest {
+
+    private static final long RANDOM_SEED = 20130417;
+    private static final int CHECKED_PAIRS = 200000;
+    private static final double MAX_HAVERSINE_ERROR = 0.005;
+    private static final double MAX_ELLIPSOID_ERROR = 0.005;
+
+    @Test
+    public void approximationIsCloseToHaversineWithinOneDegree() {
+        Random random = new Random(RANDOM_SEED);
+        double maxError = 0;
+        for (int i = 0; i < CHECKED_PAIRS; i++) {
+            double latitude1 = random.nextDouble() * 160 - 80;
+            double longitude1 = random.nextDouble() * 360 - 180;
+            double latitude2 = clamp(latitude1 + randomSpan(random), -80, 80);
+            double longitude2 = longitude1 + randomSpan(random);
+            double expected = GeoUtils.getHaversineDistance(latitude1, longitude1, latitude2, longitude2);
+            double actual = GeoUtils.getApproximateDistance(latitude1, longitude1, latitude2, longitude2);
+            if (expected < 1)
+                continue;
+            maxError = Math.max(maxError, Math.abs(actual - expected) / expected);
+        }
+        assertTrue("Max relative error " + maxError, maxError < MAX_HAVERSINE_ERROR);
+    }
+
+    @Test
+    public void approximationIsCloseToEllipsoidDistance() {
+        Random random = new Random(RANDOM_SEED);
+        double maxError = 0;
+        for (int i = 0; i < CHECKED_PAIRS; i++) {
+            double latitude1 = random.nextDouble() * 160 - 80;
+            double longitude1 = random.nextDouble() * 360 - 180;
+            double latitude2 = clamp(latitude1 + randomSpan(random), -80, 80);
+            double longitude2 = longitude1 + randomSpan(random);
+            double expected = getVincentyDistance(latitude1, longitude1, latitude2, longitude2);
+            double actual = GeoUtils.getApproximateDistance(latitude1, longitude1, latitude2, longitude2);
+            if (expected < 1)
+                continue;
+            maxError = Math.max(maxError, Math.abs(actual - expected) / expected);
+        }
+        assertTrue("Max relative error " + maxError, maxError < MAX_HAVERSINE_ERROR + MAX_ELLIPSOID_ERROR);
+    }
+
+    @Test
+    public void shortDistancesAreAccurate() {
+        // typical minimal distance conditions, 52N
+        double latitude = 52.0694;
+        double longitude = 19.4783;
+        double[] meters = {1, 5, 10, 50, 100, 500, 1000, 5000};
+        for (double distance : meters) {
+            double latitudeSpan = Math.toDegrees(distance / 6371008.8);
+            double longitudeSpan = latitudeSpan / Math.cos(Math.toRadians(latitude));
+            assertEquals(distance, GeoUtils.getApproximateDistance(latitude, longitude, latitude + latitudeSpan, longitude), distance * MAX_HAVERSINE_ERROR);
+            assertEquals(distance, GeoUtils.getApproximateDistance(latitude, longitude, latitude, longitude + longitudeSpan), distance * MAX_HAVERSINE_ERROR);
+        }
+    }
+
+    @Test
+    public void farPointsUseHaversine() {
+        assertEquals(GeoUtils.getHaversineDistance(52, 19, 54, 21), GeoUtils.getApproximateDistance(52, 19, 54, 21), 0);
+        assertEquals(GeoUtils.getHaversineDistance(-33.8, 151.2, 40.7, -74), GeoUtils.getApproximateDistance(-33.8, 151.2, 40.7, -74), 0);
+        // half of the equator
+        assertEquals(Math.PI * 6371008.8, GeoUtils.getApproximateDistance(0, 0, 0, 180), 1);
+    }
+
+    @Test
+    public void approximationHandlesAntimeridianAndPoles() {
+        double across = GeoUtils.getApproximateDistance(10, 179.9, 10, -179.9);
+        assertEquals(GeoUtils.getHaversineDistance(10, 179.9, 10, 180.1), across, across * MAX_HAVERSINE_ERROR);
+        double nearPole = GeoUtils.getApproximateDistance(89.5, 0, 89.9, 0);
+        assertEquals(GeoUtils.getHaversineDistance(89.5, 0, 89.9, 0), nearPole, nearPole * MAX_HAVERSINE_ERROR);
+    }
+
+    @Test
+    public void distanceIsSymmetricAndZeroForSamePoint() {
+        assertEquals(0, GeoUtils.getApproximateDistance(52.0694, 19.4783, 52.0694, 19.4783), 0);
+        assertEquals(0, GeoUtils.getHaversineDistance(52.0694, 19.4783, 52.0694, 19.4783), 0);
+        Random random = new Random(RANDOM_SEED);
+        for (int i = 0; i < 1000; i++) {
+            double latitude1 = random.nextDouble() * 160 - 80;
+            double longitude1 = random.nextDouble() * 360 - 180;
+            double latitude2 = clamp(latitude1 + randomSpan(random), -80, 80);
+            double longitude2 = longitude1 + randomSpan(random);
+            assertEquals(GeoUtils.getApproximateDistance(latitude1, longitude1, latitude2, longitude2),
+                    GeoUtils.getApproximateDistance(latitude2, longitude2, latitude1, longitude1), 1e-3);
+        }
+    }
+
+    private static double randomSpan(Random random) {
+        // mostly short distances like between consecutive fixes
+        double span = random.nextBoolean() ? random.nextDouble() * 0.01 : random.nextDouble();
+        return random.nextBoolean() ? span : -span;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Inverse Vincenty formula on the WGS84 ellipsoid, the same model as used by {@link android.location.Location#distanceBetween}.
+     */
+    private static double getVincentyDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double a = 6378137.0;
+        double b = 6356752.3142;
+        double f = (a - b) / a;
+        double l = Math.toRadians(longitude2 - longitude1);
+        double u1 = Math.atan((1.0 - f) * Math.tan(Math.toRadians(latitude1)));
+        double u2 = Math.atan((1.0 - f) * Math.tan(Math.toRadians(latitude2)));
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+        double lambda = l;
+        double sinSigma = 0, cosSigma = 0, sigma = 0, cosSqAlpha = 0, cos2SigmaM = 0;
+        for (int i = 0; i < 100; i++) {
+            double lambdaOrig = lambda;
+            double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            if (sinSigma == 0)
+                return 0;
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            cos2SigmaM = cosSqAlpha == 0 ? 0 : cosSigma - 2.0 * sinU1 * sinU2 / cosSqAlpha;
+            double c = f / 16.0 * cosSqAlpha * (4.0 + f * (4.0 - 3.0 * cosSqAlpha));
+            lambda = l + (1.0 - c) * f * sinAlpha * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM)));
+            if (Math.abs(lambda - lambdaOrig) < 1e-12)
+                break;
+        }
+        double uSquared = cosSqAlpha * (a * a - b * b) / (b * b);
+        double bigA = 1 + uSquared / 16384.0 * (4096.0 + uSquared * (-768 + uSquared * (320.0 - 175.0 * uSquared)));
+        double bigB = uSquared / 1024.0 * (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+        double deltaSigma = bigB * sinSigma * (cos2SigmaM + bigB / 4.0 * (cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM)
+                - bigB / 6.0 * cos2SigmaM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SigmaM * cos2SigmaM)));
+        return b * bigA * (sigma - deltaSigma);
+    }
+}